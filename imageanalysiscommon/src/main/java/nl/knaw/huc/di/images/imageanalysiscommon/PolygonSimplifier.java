@@ -0,0 +1,87 @@
+package nl.knaw.huc.di.images.imageanalysiscommon;
+
+/**
+ * Douglas-Peucker simplification on primitive coordinate arrays.
+ * The implementation has no shared state, so it can be used from multiple threads without locking.
+ * It keeps the same points as the high quality mode of com.goebl.simplify.Simplify.
+ */
+public class PolygonSimplifier {
+
+    private PolygonSimplifier() {
+    }
+
+    /**
+     * Marks the points that remain after simplification.
+     *
+     * @param xs        x coordinates of the points
+     * @param ys        y coordinates of the points
+     * @param length    the number of points to use from xs and ys
+     * @param tolerance the maximum distance of a removed point to the simplified polyline
+     * @param keep      output, keep[i] is true when point i remains, should have at least length elements
+     * @return the number of remaining points
+     */
+    public static int simplify(double[] xs, double[] ys, int length, double tolerance, boolean[] keep) {
+        if (length <= 2) {
+            for (int i = 0; i < length; i++) {
+                keep[i] = true;
+            }
+            return length;
+        }
+        for (int i = 0; i < length; i++) {
+            keep[i] = false;
+        }
+        final double squareTolerance = tolerance * tolerance;
+        keep[0] = true;
+        keep[length - 1] = true;
+        int kept = 2;
+
+        // every range adds at most one point, so the stack never holds more than length ranges
+        final int[] stack = new int[2 * length];
+        int stackSize = 0;
+        stack[stackSize++] = 0;
+        stack[stackSize++] = length - 1;
+        while (stackSize > 0) {
+            final int last = stack[--stackSize];
+            final int first = stack[--stackSize];
+            int index = -1;
+            double maxSquareDistance = 0;
+            for (int i = first + 1; i < last; i++) {
+                final double squareDistance = squareSegmentDistance(xs[i], ys[i], xs[first], ys[first], xs[last], ys[last]);
+                if (squareDistance > maxSquareDistance) {
+                    index = i;
+                    maxSquareDistance = squareDistance;
+                }
+            }
+            if (maxSquareDistance > squareTolerance) {
+                keep[index] = true;
+                kept++;
+                stack[stackSize++] = first;
+                stack[stackSize++] = index;
+                stack[stackSize++] = index;
+                stack[stackSize++] = last;
+            }
+        }
+        return kept;
+    }
+
+    /**
+     * @return the square of the distance of point 0 to the segment between point 1 and point 2
+     */
+    static double squareSegmentDistance(double x0, double y0, double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+        if (dx != 0.0d || dy != 0.0d) {
+            final double t = ((x0 - x1) * dx + (y0 - y1) * dy) / (dx * dx + dy * dy);
+            if (t > 1.0d) {
+                x1 = x2;
+                y1 = y2;
+            } else if (t > 0.0d) {
+                x1 += dx * t;
+                y1 += dy * t;
+            }
+        }
+        dx = x0 - x1;
+        dy = y0 - y1;
+        return dx * dx + dy * dy;
+    }
+}
@@ -0,0 +1,192 @@
+package nl.knaw.huc.di.images.imageanalysiscommon;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Snapshot;
+import com.codahale.metrics.Timer;
+
+import java.io.PrintStream;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Times the stages the minions and LayoutProc go through for a page. Every stage has a timer, a counter of the total
+ * time spent in it and a histogram and counter of the number of items (text lines, snippets) it handled per call.
+ * <p>
+ * The metrics go to a MetricRegistry of their own, the webservice replaces it with the registry it exports on
+ * /prometheus. Run from the command line, the minions can print a report of the metrics when they are done.
+ */
+public final class StageMetrics {
+    public enum Stage {
+        READ("Read"),
+        DECODE("Decode"),
+        EXTRACT("Extract"),
+        ATTACH("Attach"),
+        RECALCULATE_CONTOURS("RecalculateContours"),
+        CUT("Cut"),
+        // cutting a whole page, the tail latency of the pages shows in its p95 and max
+        CUT_PAGE("CutPage"),
+        SERIALIZE("Serialize"),
+        VALIDATE("Validate"),
+        WRITE("Write");
+
+        private final String name;
+
+        Stage(String name) {
+            this.name = name;
+        }
+
+        public String getTimerName() {
+            return "Stage" + name + "Time";
+        }
+
+        public String getTotalNanosName() {
+            return "Stage" + name + "TotalNanos";
+        }
+
+        public String getItemsName() {
+            return "Stage" + name + "Items";
+        }
+
+        public String getTotalItemsName() {
+            return "Stage" + name + "TotalItems";
+        }
+    }
+
+    private static volatile MetricRegistry metricRegistry = new MetricRegistry();
+
+    private StageMetrics() {
+    }
+
+    public static void setMetricRegistry(MetricRegistry metricRegistry) {
+        StageMetrics.metricRegistry = metricRegistry;
+    }
+
+    public static MetricRegistry getMetricRegistry() {
+        return metricRegistry;
+    }
+
+    /**
+     * Use it in a try-with-resources block, the stage is timed until the timer is closed.
+     */
+    public static StageTimer time(Stage stage) {
+        return new StageTimer(metricRegistry, stage);
+    }
+
+    public static void recordItems(Stage stage, long items) {
+        final MetricRegistry registry = metricRegistry;
+        registry.histogram(stage.getItemsName()).update(items);
+        registry.counter(stage.getTotalItemsName()).inc(items);
+    }
+
+    /**
+     * Prints a table with a row for every stage that has been timed.
+     */
+    public static void printTable(PrintStream out) {
+        out.printf(Locale.ROOT, "%-20s %8s %10s %10s %10s %10s %10s %10s%n",
+                "stage", "count", "total s", "mean ms", "p95 ms", "max ms", "items", "items/s");
+        for (Stage stage : Stage.values()) {
+            final Timer timer = metricRegistry.getTimers().get(stage.getTimerName());
+            if (timer == null || timer.getCount() == 0) {
+                continue;
+            }
+            final Report report = new Report(stage, timer);
+            out.printf(Locale.ROOT, "%-20s %8d %10.2f %10.2f %10.2f %10.2f %10d %10.1f%n",
+                    stage.name().toLowerCase(Locale.ROOT), report.count, report.totalSeconds, report.meanMillis,
+                    report.p95Millis, report.maxMillis, report.items, report.getItemsPerSecond());
+        }
+    }
+
+    /**
+     * @return a json object with the numbers of {@link #printTable(PrintStream)} for every stage that has been timed
+     */
+    public static String toJson() {
+        final StringBuilder json = new StringBuilder("{");
+        for (Stage stage : Stage.values()) {
+            final Timer timer = metricRegistry.getTimers().get(stage.getTimerName());
+            if (timer == null || timer.getCount() == 0) {
+                continue;
+            }
+            final Report report = new Report(stage, timer);
+            if (json.length() > 1) {
+                json.append(", ");
+            }
+            json.append(String.format(Locale.ROOT, "\"%s\": {\"count\": %d, \"totalSeconds\": %.3f, "
+                            + "\"meanMillis\": %.3f, \"p95Millis\": %.3f, \"maxMillis\": %.3f, \"items\": %d, "
+                            + "\"itemsPerSecond\": %.3f}",
+                    stage.name().toLowerCase(Locale.ROOT), report.count, report.totalSeconds, report.meanMillis,
+                    report.p95Millis, report.maxMillis, report.items, report.getItemsPerSecond()));
+        }
+        return json.append("}").toString();
+    }
+
+    /**
+     * @param format "table" or "json"
+     */
+    public static void printReport(String format, PrintStream out) {
+        if ("json".equals(format)) {
+            out.println(toJson());
+        } else {
+            printTable(out);
+        }
+    }
+
+    public static class StageTimer implements AutoCloseable {
+        private final MetricRegistry registry;
+        private final Stage stage;
+        private final long start = System.nanoTime();
+        private boolean closed;
+
+        private StageTimer(MetricRegistry registry, Stage stage) {
+            this.registry = registry;
+            this.stage = stage;
+        }
+
+        /**
+         * @return the elapsed nanoseconds
+         */
+        public long stop() {
+            final long elapsed = System.nanoTime() - start;
+            if (!closed) {
+                closed = true;
+                registry.timer(stage.getTimerName()).update(elapsed, TimeUnit.NANOSECONDS);
+                registry.counter(stage.getTotalNanosName()).inc(elapsed);
+            }
+            return elapsed;
+        }
+
+        @Override
+        public void close() {
+            stop();
+        }
+    }
+
+    private static class Report {
+        private final long count;
+        private final double totalSeconds;
+        private final double meanMillis;
+        private final double p95Millis;
+        private final double maxMillis;
+        private final long items;
+
+        private Report(Stage stage, Timer timer) {
+            // the snapshot is a sample of the recent calls, the totals are counted exactly
+            final Snapshot snapshot = timer.getSnapshot();
+            this.count = timer.getCount();
+            this.totalSeconds = (double) getCount(stage.getTotalNanosName()) / TimeUnit.SECONDS.toNanos(1);
+            this.meanMillis = snapshot.getMean() / TimeUnit.MILLISECONDS.toNanos(1);
+            this.p95Millis = snapshot.get95thPercentile() / TimeUnit.MILLISECONDS.toNanos(1);
+            this.maxMillis = (double) snapshot.getMax() / TimeUnit.MILLISECONDS.toNanos(1);
+            this.items = getCount(stage.getTotalItemsName());
+        }
+
+        private static long getCount(String name) {
+            final Counter counter = metricRegistry.getCounters().get(name);
+            return counter == null ? 0 : counter.getCount();
+        }
+
+        private double getItemsPerSecond() {
+            return totalSeconds > 0 ? items / totalSeconds : 0;
+        }
+    }
+}
@@ -1,13 +1,10 @@
 package nl.knaw.huc.di.images.imageanalysiscommon;
 
-import com.goebl.simplify.PointExtractor;
-import com.goebl.simplify.Simplify;
 import com.google.common.base.Strings;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
 
 public class StringConverter {
@@ -126,35 +123,35 @@ public class StringConverter {
         return expanded;
     }
 
-    private static PointExtractor<Point> pointPointExtractor = new PointExtractor<Point>() {
-        @Override
-        public double getX(Point point) {
-            return point.x;
-        }
-
-        @Override
-        public double getY(Point point) {
-            return point.y;
-        }
-
-    };
-
-    public static synchronized List<Point> simplifyPolygon(List<Point> points) {
+    public static List<Point> simplifyPolygon(List<Point> points) {
         return simplifyPolygon(points, 5);
     }
 
-    public static synchronized List<Point> simplifyPolygon(List<Point> points, double tolerance) {
+    public static List<Point> simplifyPolygon(List<Point> points, double tolerance) {
         if (points.size() <= 2) {
             return points;
         }
-        Simplify<Point> simplify = new Simplify<Point>(new Point[0], pointPointExtractor);
-
-        Point[] allPoints = points.toArray(new Point[0]);
-        boolean highQuality = true; // Douglas-Peucker, false for Radial-Distance
+        final int size = points.size();
+        final double[] xs = new double[size];
+        final double[] ys = new double[size];
+        int index = 0;
+        for (Point point : points) {
+            xs[index] = point.x;
+            ys[index] = point.y;
+            index++;
+        }
+        final boolean[] keep = new boolean[size];
+        // Douglas-Peucker
+        final int kept = PolygonSimplifier.simplify(xs, ys, size, tolerance, keep);
 
-        // run simplification process
-        Point[] lessPoints = simplify.simplify(allPoints, tolerance, highQuality);
-        return Arrays.asList(lessPoints);
+        final List<Point> lessPoints = new ArrayList<>(kept);
+        index = 0;
+        for (Point point : points) {
+            if (keep[index++]) {
+                lessPoints.add(point);
+            }
+        }
+        return lessPoints;
     }
 
     public static String boundingBoxToPoints(Rect boundingBox) {
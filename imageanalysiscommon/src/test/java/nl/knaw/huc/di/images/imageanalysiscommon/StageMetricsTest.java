@@ -0,0 +1,69 @@
+package nl.knaw.huc.di.images.imageanalysiscommon;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+public class StageMetricsTest {
+    private MetricRegistry previous;
+    private MetricRegistry metricRegistry;
+
+    @Before
+    public void setUp() {
+        previous = StageMetrics.getMetricRegistry();
+        metricRegistry = new MetricRegistry();
+        StageMetrics.setMetricRegistry(metricRegistry);
+    }
+
+    @After
+    public void tearDown() {
+        StageMetrics.setMetricRegistry(previous);
+    }
+
+    @Test
+    public void recordsTimesAndItemsPerStage() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.CUT)) {
+                Thread.sleep(2);
+            }
+            StageMetrics.recordItems(StageMetrics.Stage.CUT, 10);
+        }
+
+        Assert.assertEquals(3, metricRegistry.timer("StageCutTime").getCount());
+        Assert.assertTrue(metricRegistry.counter("StageCutTotalNanos").getCount() >= 6_000_000);
+        Assert.assertEquals(3, metricRegistry.histogram("StageCutItems").getCount());
+        Assert.assertEquals(30, metricRegistry.counter("StageCutTotalItems").getCount());
+    }
+
+    @Test
+    public void stoppingTwiceRecordsOnce() {
+        final StageMetrics.StageTimer timer = StageMetrics.time(StageMetrics.Stage.READ);
+        timer.stop();
+        timer.close();
+
+        Assert.assertEquals(1, metricRegistry.timer("StageReadTime").getCount());
+    }
+
+    @Test
+    public void reportsOnlyTheStagesThatRan() {
+        StageMetrics.time(StageMetrics.Stage.SERIALIZE).close();
+        StageMetrics.recordItems(StageMetrics.Stage.SERIALIZE, 4);
+
+        final String json = StageMetrics.toJson();
+        Assert.assertTrue(json, json.startsWith("{\"serialize\": {\"count\": 1, "));
+        Assert.assertTrue(json, json.contains("\"items\": 4"));
+        Assert.assertFalse(json, json.contains("\"write\""));
+
+        final ByteArrayOutputStream table = new ByteArrayOutputStream();
+        StageMetrics.printReport("table", new PrintStream(table, true, StandardCharsets.UTF_8));
+        final String[] lines = table.toString(StandardCharsets.UTF_8).split("\n");
+        Assert.assertEquals(2, lines.length);
+        Assert.assertTrue(lines[1], lines[1].startsWith("serialize"));
+    }
+}
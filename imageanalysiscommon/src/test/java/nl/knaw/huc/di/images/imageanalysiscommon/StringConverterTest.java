@@ -1,11 +1,19 @@
 package nl.knaw.huc.di.images.imageanalysiscommon;
 
+import com.goebl.simplify.PointExtractor;
+import com.goebl.simplify.Simplify;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 import org.opencv.core.Point;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class StringConverterTest {
     @Test
@@ -51,4 +59,84 @@ public class StringConverterTest {
         Assert.assertEquals(2000d, length, 0.01);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void simplifyPolygonKeepsTheSamePointsAsSimplify() {
+        final PointExtractor<Point> pointExtractor = new PointExtractor<Point>() {
+            @Override
+            public double getX(Point point) {
+                return point.x;
+            }
+
+            @Override
+            public double getY(Point point) {
+                return point.y;
+            }
+        };
+        for (int seed = 0; seed < 500; seed++) {
+            final Random random = new Random(seed);
+            // Simplify itself does not handle polygons with less than three points
+            final List<Point> polygon = createPolygon(random, 3 + random.nextInt(200));
+            for (double tolerance : new double[]{0, 0.5, 1, 5, 20}) {
+                final Point[] expected = new Simplify<>(new Point[0], pointExtractor)
+                        .simplify(polygon.toArray(new Point[0]), tolerance, true);
+
+                final List<Point> simplified = StringConverter.simplifyPolygon(polygon, tolerance);
+
+                Assert.assertEquals("seed " + seed + ", tolerance " + tolerance, Arrays.asList(expected), simplified);
+            }
+        }
+    }
+
+    // prints the throughput instead of checking it, run with -Dbenchmark=true
+    @Test
+    public void simplifyPolygonThroughputBenchmark() throws Exception {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+        final List<List<Point>> polygons = new ArrayList<>();
+        final Random random = new Random(1);
+        for (int i = 0; i < 2000; i++) {
+            polygons.add(createPolygon(random, 500));
+        }
+        final int processors = Runtime.getRuntime().availableProcessors();
+        for (int threads = 1; threads <= Math.max(processors, 4); threads *= 2) {
+            final ExecutorService executorService = Executors.newFixedThreadPool(threads);
+            try {
+                final long start = System.nanoTime();
+                final List<Future<Integer>> futures = new ArrayList<>();
+                for (int thread = 0; thread < threads; thread++) {
+                    // every thread simplifies all polygons, so the work per thread is constant
+                    futures.add(executorService.submit(() -> {
+                        int points = 0;
+                        for (List<Point> polygon : polygons) {
+                            points += StringConverter.simplifyPolygon(polygon).size();
+                        }
+                        return points;
+                    }));
+                }
+                for (Future<Integer> future : futures) {
+                    future.get();
+                }
+                final double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.println("simplifyPolygon with " + threads + " threads: "
+                        + Math.round(threads * polygons.size() / seconds) + " polygons/s");
+            } finally {
+                executorService.shutdown();
+            }
+        }
+    }
+
+    // a closed contour with noise, similar to a text line polygon
+    private static List<Point> createPolygon(Random random, int numberOfPoints) {
+        final List<Point> points = new ArrayList<>();
+        final int half = numberOfPoints / 2;
+        for (int i = 0; i < half; i++) {
+            points.add(new Point(i * 3 + random.nextInt(3), 100 + random.nextInt(8)));
+        }
+        for (int i = half - 1; i >= 0 && points.size() < numberOfPoints; i--) {
+            points.add(new Point(i * 3 + random.nextInt(3), 150 + random.nextInt(8)));
+        }
+        while (points.size() < numberOfPoints) {
+            points.add(new Point(random.nextInt(10), random.nextInt(200)));
+        }
+        return points;
+    }
+}
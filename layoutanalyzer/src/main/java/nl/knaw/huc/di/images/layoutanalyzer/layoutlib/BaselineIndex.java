@@ -0,0 +1,128 @@
+package nl.knaw.huc.di.images.layoutanalyzer.layoutlib;
+
+import nl.knaw.huc.di.images.layoutds.models.Page.TextLine;
+import org.opencv.core.Rect;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per page index of the bounding boxes of the baselines of text lines.
+ * The baselines are parsed once, when the index is created. The boxes are sorted on their top, so the closest line
+ * above or below can be found with a binary search, followed by a scan that stops at the first horizontally
+ * overlapping line.
+ * The results are the same as those of {@link LayoutProc#closestLineAbove(TextLine, List)} and
+ * {@link LayoutProc#closestLineBelow(TextLine, List)}, including the preference for the first line in the list when
+ * two lines have the same distance.
+ * The index does not observe changes to the baselines, so create a new one when baselines are changed.
+ */
+public class BaselineIndex {
+    private final TextLine[] textLines;
+    private final Rect[] rects;
+    private final int[] order;
+    private final int[] sortedTops;
+    private final Map<TextLine, Integer> positions;
+
+    public BaselineIndex(List<TextLine> textLines) {
+        final int size = textLines.size();
+        this.textLines = textLines.toArray(new TextLine[0]);
+        this.rects = new Rect[size];
+        this.positions = new IdentityHashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            rects[i] = LayoutProc.getBoundingBox(this.textLines[i].getBaseline().getGeometry());
+            positions.putIfAbsent(this.textLines[i], i);
+        }
+
+        // stable sort, so lines with the same top stay in list order
+        Integer[] sorted = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, Comparator.comparingInt(index -> rects[index].y));
+        this.order = new int[size];
+        this.sortedTops = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = sorted[i];
+            sortedTops[i] = rects[sorted[i]].y;
+        }
+    }
+
+    /**
+     * @return the bounding box of the baseline of the text line, parsed at most once for lines in the index
+     */
+    public Rect getBaselineBoundingBox(TextLine textLine) {
+        final Integer position = positions.get(textLine);
+        if (position != null) {
+            return rects[position];
+        }
+        return LayoutProc.getBoundingBox(textLine.getBaseline().getGeometry());
+    }
+
+    public TextLine closestLineAbove(TextLine current) {
+        final Rect currentRect = getBaselineBoundingBox(current);
+        // last position with a top smaller than the top of current
+        int position = firstPositionWithTopAtLeast(currentRect.y) - 1;
+        while (position >= 0) {
+            final int top = sortedTops[position];
+            int best = -1;
+            // all lines with the same top are at the same distance, prefer the first in the list
+            while (position >= 0 && sortedTops[position] == top) {
+                final int index = order[position];
+                if (overlapsHorizontally(rects[index], currentRect) && (best == -1 || index < best)) {
+                    best = index;
+                }
+                position--;
+            }
+            if (best != -1) {
+                return textLines[best];
+            }
+        }
+        return null;
+    }
+
+    public TextLine closestLineBelow(TextLine current) {
+        final Rect currentRect = getBaselineBoundingBox(current);
+        if (currentRect.y == Integer.MAX_VALUE) {
+            return null;
+        }
+        // first position with a top bigger than the top of current
+        int position = firstPositionWithTopAtLeast(currentRect.y + 1);
+        while (position < sortedTops.length) {
+            final int top = sortedTops[position];
+            int best = -1;
+            while (position < sortedTops.length && sortedTops[position] == top) {
+                final int index = order[position];
+                if (overlapsHorizontally(rects[index], currentRect) && (best == -1 || index < best)) {
+                    best = index;
+                }
+                position++;
+            }
+            if (best != -1) {
+                return textLines[best];
+            }
+        }
+        return null;
+    }
+
+    private int firstPositionWithTopAtLeast(int y) {
+        int low = 0;
+        int high = sortedTops.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (sortedTops[middle] < y) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private static boolean overlapsHorizontally(Rect otherRect, Rect currentRect) {
+        return otherRect.x + otherRect.width > currentRect.x
+                && otherRect.x < currentRect.x + currentRect.width;
+    }
+}
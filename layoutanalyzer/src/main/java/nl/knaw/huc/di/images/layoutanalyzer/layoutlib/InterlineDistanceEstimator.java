@@ -0,0 +1,194 @@
+package nl.knaw.huc.di.images.layoutanalyzer.layoutlib;
+
+import nl.knaw.huc.di.images.imageanalysiscommon.StringConverter;
+import nl.knaw.huc.di.images.layoutanalyzer.Statistics;
+import nl.knaw.huc.di.images.layoutds.models.Page.TextLine;
+import org.opencv.core.Point;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Estimates the median distance between the baseline points of a text line and the closest baseline point of the
+ * other text lines on the page.
+ * All baselines are parsed once and the points are put in a 2d tree, so every nearest neighbour query is logarithmic
+ * instead of a linear search over all points of the page.
+ * The result is the same as that of the original implementation of {@link LayoutProc#interlineMedian(List)}:
+ * points equal to one of the points of the line itself are ignored and, like the original closest point search,
+ * the first remaining point on the page only counts when it is the only one remaining.
+ */
+public class InterlineDistanceEstimator {
+    private final double[] xs;
+    private final double[] ys;
+    // points with the same coordinates share a class
+    private final int[] pointClasses;
+    private final int[] classSizes;
+    // start of the points of each line in xs and ys, the last element is the total number of points
+    private final int[] lineStarts;
+    // 2d tree stored implicitly: the node of a range is the middle of the range, the axis alternates per level
+    private final int[] tree;
+
+    public InterlineDistanceEstimator(List<TextLine> textLines) {
+        List<Point> allPoints = new ArrayList<>();
+        lineStarts = new int[textLines.size() + 1];
+        for (int i = 0; i < textLines.size(); i++) {
+            lineStarts[i] = allPoints.size();
+            allPoints.addAll(textLines.get(i).getBaseline().getGeometry().toPoints());
+        }
+        final int numberOfPoints = allPoints.size();
+        lineStarts[textLines.size()] = numberOfPoints;
+
+        xs = new double[numberOfPoints];
+        ys = new double[numberOfPoints];
+        pointClasses = new int[numberOfPoints];
+        Map<Point, Integer> classes = new HashMap<>();
+        for (int i = 0; i < numberOfPoints; i++) {
+            final Point point = allPoints.get(i);
+            xs[i] = point.x;
+            ys[i] = point.y;
+            // adding 0.0 turns -0.0 into 0.0, Point.equals considers them equal, Point.hashCode does not
+            pointClasses[i] = classes.computeIfAbsent(new Point(point.x + 0.0, point.y + 0.0), key -> classes.size());
+        }
+        classSizes = new int[classes.size()];
+        for (int pointClass : pointClasses) {
+            classSizes[pointClass]++;
+        }
+
+        tree = new int[numberOfPoints];
+        for (int i = 0; i < numberOfPoints; i++) {
+            tree[i] = i;
+        }
+        build(0, numberOfPoints, 0);
+    }
+
+    public double median() {
+        return new Statistics(distances()).median();
+    }
+
+    public List<Double> distances() {
+        final List<Double> distances = new ArrayList<>();
+        final int numberOfPoints = xs.length;
+        final boolean[] excludedClasses = new boolean[classSizes.length];
+        for (int line = 0; line < lineStarts.length - 1; line++) {
+            final int start = lineStarts[line];
+            final int stop = lineStarts[line + 1];
+            if (start == stop) {
+                continue;
+            }
+            int excludedPoints = 0;
+            for (int i = start; i < stop; i++) {
+                if (!excludedClasses[pointClasses[i]]) {
+                    excludedClasses[pointClasses[i]] = true;
+                    excludedPoints += classSizes[pointClasses[i]];
+                }
+            }
+            final int remaining = numberOfPoints - excludedPoints;
+            if (remaining > 0) {
+                int first = 0;
+                while (excludedClasses[pointClasses[first]]) {
+                    first++;
+                }
+                for (int i = start; i < stop; i++) {
+                    final int closest;
+                    if (remaining == 1) {
+                        closest = first;
+                    } else {
+                        closest = nearest(xs[i], ys[i], excludedClasses, first);
+                    }
+                    distances.add(distance(xs[closest], ys[closest], xs[i], ys[i]));
+                }
+            }
+            for (int i = start; i < stop; i++) {
+                excludedClasses[pointClasses[i]] = false;
+            }
+        }
+        return distances;
+    }
+
+    private static double distance(double x1, double y1, double x2, double y2) {
+        // same calculation as StringConverter.distance
+        return Math.sqrt(Math.pow((x1 - x2), 2.0) + Math.pow((y1 - y2), 2.0));
+    }
+
+    private void build(int start, int stop, int depth) {
+        if (stop - start <= 1) {
+            return;
+        }
+        final int middle = (start + stop) >>> 1;
+        select(start, stop - 1, middle, depth % 2 == 0 ? xs : ys);
+        build(start, middle, depth + 1);
+        build(middle + 1, stop, depth + 1);
+    }
+
+    // quickselect, puts the k-th smallest coordinate of tree[left..right] at position k
+    private void select(int left, int right, int k, double[] coordinates) {
+        while (left < right) {
+            final double pivot = coordinates[tree[(left + right) >>> 1]];
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (coordinates[tree[i]] < pivot) {
+                    i++;
+                }
+                while (coordinates[tree[j]] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    final int tmp = tree[i];
+                    tree[i] = tree[j];
+                    tree[j] = tmp;
+                    i++;
+                    j--;
+                }
+            }
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private int nearest(double x, double y, boolean[] excludedClasses, int excludedPoint) {
+        final Nearest nearest = new Nearest();
+        nearest(0, xs.length, 0, x, y, excludedClasses, excludedPoint, nearest);
+        return nearest.index;
+    }
+
+    private void nearest(int start, int stop, int depth, double x, double y, boolean[] excludedClasses,
+                         int excludedPoint, Nearest nearest) {
+        if (start >= stop) {
+            return;
+        }
+        final int middle = (start + stop) >>> 1;
+        final int point = tree[middle];
+        if (point != excludedPoint && !excludedClasses[pointClasses[point]]) {
+            final double distance = distance(x, y, xs[point], ys[point]);
+            if (distance < nearest.distance) {
+                nearest.distance = distance;
+                nearest.index = point;
+            }
+        }
+        final double difference = depth % 2 == 0 ? x - xs[point] : y - ys[point];
+        if (difference < 0) {
+            nearest(start, middle, depth + 1, x, y, excludedClasses, excludedPoint, nearest);
+            if (-difference < nearest.distance) {
+                nearest(middle + 1, stop, depth + 1, x, y, excludedClasses, excludedPoint, nearest);
+            }
+        } else {
+            nearest(middle + 1, stop, depth + 1, x, y, excludedClasses, excludedPoint, nearest);
+            if (difference < nearest.distance) {
+                nearest(start, middle, depth + 1, x, y, excludedClasses, excludedPoint, nearest);
+            }
+        }
+    }
+
+    private static class Nearest {
+        private int index = -1;
+        private double distance = Double.MAX_VALUE;
+    }
+}
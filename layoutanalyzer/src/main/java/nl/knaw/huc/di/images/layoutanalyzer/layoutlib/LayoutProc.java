@@ -3,6 +3,7 @@ package nl.knaw.huc.di.images.layoutanalyzer.layoutlib;
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import nl.knaw.huc.di.images.imageanalysiscommon.StageMetrics;
 import nl.knaw.huc.di.images.imageanalysiscommon.StringConverter;
 import nl.knaw.huc.di.images.imageanalysiscommon.UnicodeToAsciiTranslitirator;
 import nl.knaw.huc.di.images.imageanalysiscommon.visualization.VisualizationHelper;
@@ -520,28 +521,13 @@ public class LayoutProc {
     }
 
     public static double interlineMedian(List<TextLine> textLines) {
-        ArrayList<Double> distances = new ArrayList<>();
-        for (TextLine textLine : textLines) {
-            List<Point> allPoints = getAllPoints(textLines);
-            ArrayList<Point> points = StringConverter.stringToPoint(textLine.getBaseline().getPoints());
-            allPoints.removeAll(points);
-            for (Point point : points) {
-                Point closestPoint = closestPoint(allPoints, point);
-                if (closestPoint == null) {
-                    continue;
-                }
-                double distance = distance(closestPoint, point);
-                distances.add(distance);
-            }
-        }
-        Statistics statistics = new Statistics(distances);
-        return statistics.median();
+        return new InterlineDistanceEstimator(textLines).median();
     }
 
     private static List<Point> getAllPoints(List<TextLine> textLines) {
         ArrayList<Point> allPoints = new ArrayList<>();
         for (TextLine textLine : textLines) {
-            ArrayList<Point> points = StringConverter.stringToPoint(textLine.getBaseline().getPoints());
+            ArrayList<Point> points = textLine.getBaseline().getGeometry().toPoints();
             allPoints.addAll(points);
         }
         return allPoints;
@@ -778,7 +764,7 @@ public class LayoutProc {
         double interlineDistance = interlineMedian(textlines);
 
         for (TextLine textLine : textlines) {
-            ArrayList<Point> points = StringConverter.stringToPoint(textLine.getBaseline().getPoints());
+            ArrayList<Point> points = textLine.getBaseline().getGeometry().toPoints();
             List<Point> allPoints = getAllPoints(textlines);
             allPoints.removeAll(points);
             Point previousPoint = null;
@@ -1695,8 +1681,12 @@ public class LayoutProc {
         return new Rect(xStart, yStart, xStop - xStart, yStop - yStart);
     }
 
+    public static Rect getBoundingBox(PointsGeometry geometry) {
+        return new Rect(geometry.getMinX(), geometry.getMinY(), geometry.getMaxX() - geometry.getMinX(), geometry.getMaxY() - geometry.getMinY());
+    }
+
     public static Rect getBoundingBoxTextLine(TextLine textLine){
-        return getBoundingBox(StringConverter.stringToPoint(textLine.getCoords().getPoints()));
+        return getBoundingBox(textLine.getCoords().getGeometry());
     }
 
     public static Rect growCluster(Rect region, TextLine textLine){
@@ -1733,8 +1723,8 @@ public class LayoutProc {
     }
 
     private static boolean isBelow(TextRegion existing, TextRegion couldBeBelow) {
-        Rect firstRect = getBoundingBox(StringConverter.stringToPoint(existing.getCoords().getPoints()));
-        Rect secondRect = getBoundingBox(StringConverter.stringToPoint(couldBeBelow.getCoords().getPoints()));
+        Rect firstRect = getBoundingBox(existing.getCoords().getGeometry());
+        Rect secondRect = getBoundingBox(couldBeBelow.getCoords().getGeometry());
         return firstRect.y  < secondRect.y;
     }
 
@@ -1743,20 +1733,20 @@ public class LayoutProc {
     }
 
     private static boolean isCompletelyBelow(TextRegion existing, TextRegion couldBeBelow){
-        Rect firstRect = getBoundingBox(StringConverter.stringToPoint(existing.getCoords().getPoints()));
-        Rect secondRect = getBoundingBox(StringConverter.stringToPoint(couldBeBelow.getCoords().getPoints()));
+        Rect firstRect = getBoundingBox(existing.getCoords().getGeometry());
+        Rect secondRect = getBoundingBox(couldBeBelow.getCoords().getGeometry());
         return firstRect.x < secondRect.x && firstRect.x+firstRect.width > secondRect.x+secondRect.width && isBelow(existing, couldBeBelow);
     }
 
     private static boolean isCompletelyAbove(TextRegion existing, TextRegion couldBeAbove) {
-        Rect firstRect = getBoundingBox(StringConverter.stringToPoint(existing.getCoords().getPoints()));
-        Rect secondRect = getBoundingBox(StringConverter.stringToPoint(couldBeAbove.getCoords().getPoints()));
+        Rect firstRect = getBoundingBox(existing.getCoords().getGeometry());
+        Rect secondRect = getBoundingBox(couldBeAbove.getCoords().getGeometry());
         return firstRect.x < secondRect.x && firstRect.x + firstRect.width > secondRect.x + secondRect.width && isAbove(existing, couldBeAbove);
     }
 
     private static boolean isRightOf(TextRegion existing, TextRegion couldBeRightOf) {
-        Rect firstRect = getBoundingBox(StringConverter.stringToPoint(existing.getCoords().getPoints()));
-        Rect secondRect = getBoundingBox(StringConverter.stringToPoint(couldBeRightOf.getCoords().getPoints()));
+        Rect firstRect = getBoundingBox(existing.getCoords().getGeometry());
+        Rect secondRect = getBoundingBox(couldBeRightOf.getCoords().getGeometry());
         return firstRect.x + firstRect.width < secondRect.x;
     }
 
@@ -1769,7 +1759,7 @@ public class LayoutProc {
         int minY = Integer.MAX_VALUE;
         for (TextRegion textRegion : page.getPage().getTextRegions()) {
             tmpRegionList.add(textRegion);
-            Rect boundingBox = getBoundingBox(StringConverter.stringToPoint(textRegion.getCoords().getPoints()));
+            Rect boundingBox = getBoundingBox(textRegion.getCoords().getGeometry());
             if (boundingBox.x < minX) {
                 minX = boundingBox.x;
             }
@@ -1812,12 +1802,12 @@ public class LayoutProc {
                 } else {
                     // based on last found region select next region
                     TextRegion previousRegion = newSortedTextRegionsBatch.get(newSortedTextRegionsBatch.size() - 1);
-                    Rect boundingBoxPreviousRegion = getBoundingBox(StringConverter.stringToPoint(previousRegion.getCoords().getPoints()));
+                    Rect boundingBoxPreviousRegion = getBoundingBox(previousRegion.getCoords().getGeometry());
 
                     double bestDistance = Double.MAX_VALUE;
                     // find region that matches bottom left with top left and is not right of previous region
                     for (TextRegion textRegion : unsortedTextRegions) {
-                        Rect boundingBox = getBoundingBox(StringConverter.stringToPoint(textRegion.getCoords().getPoints()));
+                        Rect boundingBox = getBoundingBox(textRegion.getCoords().getGeometry());
                         double currentDistance =
                                 StringConverter.distance(
                                         new Point(boundingBoxPreviousRegion.x, boundingBoxPreviousRegion.y + boundingBoxPreviousRegion.height),
@@ -1829,12 +1819,12 @@ public class LayoutProc {
                     }
                     // find region that matches bottom center with top center
                     if (previousRegion.getTextLines() != null && previousRegion.getTextLines().size() > 0) {
-                        boundingBoxPreviousRegion = getBoundingBox(StringConverter.stringToPoint(previousRegion.getTextLines().get(previousRegion.getTextLines().size() - 1).getCoords().getPoints()));
+                        boundingBoxPreviousRegion = getBoundingBox(previousRegion.getTextLines().get(previousRegion.getTextLines().size() - 1).getCoords().getGeometry());
                     }
                     for (TextRegion textRegion : unsortedTextRegions) {
-                        Rect boundingBox = getBoundingBox(StringConverter.stringToPoint(textRegion.getCoords().getPoints()));
+                        Rect boundingBox = getBoundingBox(textRegion.getCoords().getGeometry());
                         if (textRegion.getTextLines() != null && textRegion.getTextLines().size() > 0) {
-                            boundingBox = getBoundingBox(StringConverter.stringToPoint(textRegion.getTextLines().get(0).getCoords().getPoints()));
+                            boundingBox = getBoundingBox(textRegion.getTextLines().get(0).getCoords().getGeometry());
                         }
                         double currentDistance =
                                 StringConverter.distance(
@@ -1847,7 +1837,7 @@ public class LayoutProc {
                     }
 
                     for (TextRegion textRegion : unsortedTextRegions) {
-                        Rect boundingBox = getBoundingBox(StringConverter.stringToPoint(textRegion.getCoords().getPoints()));
+                        Rect boundingBox = getBoundingBox(textRegion.getCoords().getGeometry());
                         double currentDistance = boundingBox.y - boundingBoxPreviousRegion.y;
                         if (isCompletelyBelow(previousRegion, textRegion) && currentDistance<bestDistance) {
                             bestDistance = currentDistance;
@@ -1906,7 +1896,7 @@ public class LayoutProc {
     private static TextRegion getTopLeftRegion(List<TextRegion> textRegions, int x, int y, TextRegion best) {
         double bestDistance = Double.MAX_VALUE;
         for (TextRegion textRegion : textRegions) {
-            Rect boundingBox = getBoundingBox(StringConverter.stringToPoint(textRegion.getCoords().getPoints()));
+            Rect boundingBox = getBoundingBox(textRegion.getCoords().getGeometry());
             double currentDistance =
                     StringConverter.distance(
                             new Point(x, y),
@@ -1933,7 +1923,7 @@ public class LayoutProc {
             TextRegion best = null;
             double bestDistance = Double.MAX_VALUE;
             for (TextRegion textRegion : textRegions) {
-                Rect boundingBox = getBoundingBox(StringConverter.stringToPoint(textRegion.getCoords().getPoints()));
+                Rect boundingBox = getBoundingBox(textRegion.getCoords().getGeometry());
                 double currentDistance =
                         StringConverter.distance(
                                 new Point(0, 0),
@@ -1970,7 +1960,7 @@ public class LayoutProc {
             int leftX = Integer.MAX_VALUE;
             int topY = Integer.MAX_VALUE;
             for (TextRegion textRegion : textRegions) {
-                Rect boundingBox = getBoundingBox(StringConverter.stringToPoint(textRegion.getCoords().getPoints()));
+                Rect boundingBox = getBoundingBox(textRegion.getCoords().getGeometry());
                 if (topLeft == null ||
                         boundingBox.x < (leftX)
 //                        && boundingBox.y<= topY
@@ -1998,35 +1988,87 @@ public class LayoutProc {
         energyMatTmp.convertTo(seamImage, CV_64F);
         OpenCVWrapper.release(energyMatTmp);
 
-        for (int j = 0; j < seamImage.width(); j++) {
-            for (int i = 0; i < seamImage.height(); i++) {
-                double lowest = Float.MAX_VALUE;
-                for (int m = -1; m <= 1; m++) {
-                    int y = i + m;
-                    int x = j - 1;
-                    if (y < 0) {
-                        y = 0;
-                    }
-                    if (y >= seamImage.height()) {
-                        y = seamImage.height() - 1;
-                    }
+        final int width = seamImage.width();
+        final int height = seamImage.height();
+        final double[] rowMajor = getDoubles(seamImage);
+        // the cumulative energy of a column only depends on the previous column, so work on columns stored contiguously
+        final double[] columnMajor = new double[rowMajor.length];
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                columnMajor[j * height + i] = rowMajor[i * width + j];
+            }
+        }
+        calcSeamColumns(columnMajor, width, height);
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                rowMajor[i * width + j] = columnMajor[j * height + i];
+            }
+        }
+        if (rowMajor.length > 0) {
+            seamImage.put(0, 0, rowMajor);
+        }
 
-                    if (x < 0) {
-                        lowest = 0;
-                    } else {
-                        double value = seamImage.get(y, x)[0];
+        Imgproc.resize(seamImage, seamImage, new Size(energyMat.width(), energyMat.height()));
+        return seamImage;
+    }
+
+    /**
+     * Adds to every cell the lowest cumulative energy of its three neighbours in the previous column.
+     *
+     * @param columns the energy, stored column by column
+     */
+    private static void calcSeamColumns(double[] columns, int width, int height) {
+        for (int j = 0; j < width; j++) {
+            final int previous = (j - 1) * height;
+            final int current = j * height;
+            for (int i = 0; i < height; i++) {
+                double lowest = Float.MAX_VALUE;
+                if (j == 0) {
+                    lowest = 0;
+                } else {
+                    for (int m = -1; m <= 1; m++) {
+                        int y = i + m;
+                        if (y < 0) {
+                            y = 0;
+                        }
+                        if (y >= height) {
+                            y = height - 1;
+                        }
+                        double value = columns[previous + y];
                         if (value < lowest) {
                             lowest = value;
                         }
                     }
                 }
-                double[] putter = new double[1];
-                putter[0] = lowest + seamImage.get(i, j)[0];
-                seamImage.put(i, j, putter);
+                columns[current + i] = lowest + columns[current + i];
             }
         }
-        Imgproc.resize(seamImage, seamImage, new Size(energyMat.width(), energyMat.height()));
-        return seamImage;
+    }
+
+    /**
+     * @return the values of a single channel Mat as doubles, row by row
+     */
+    private static double[] getDoubles(Mat mat) {
+        final double[] data = new double[(int) mat.total()];
+        if (data.length == 0) {
+            return data;
+        }
+        if (mat.type() == CV_64FC1) {
+            mat.get(0, 0, data);
+        } else {
+            Mat converted = new Mat();
+            mat.convertTo(converted, CV_64F);
+            converted.get(0, 0, data);
+            OpenCVWrapper.release(converted);
+        }
+        return data;
+    }
+
+    private static double getSeamValue(double[] seamData, int width, int height, int y, int x) {
+        if (y < 0 || y >= height || x < 0 || x >= width) {
+            throw new IndexOutOfBoundsException("(" + x + ", " + y + ") is outside the seam image of " + width + "x" + height);
+        }
+        return seamData[y * width + x];
     }
 
     public static double getMeanAngle(List<Double> anglesDeg) {
@@ -2079,11 +2121,11 @@ public class LayoutProc {
     }
 
     public static TextLine closestLineAbove(TextLine current, List<TextLine> textLines) {
-        Rect currentRect = LayoutProc.getBoundingBox(StringConverter.stringToPoint(current.getBaseline().getPoints()));
+        Rect currentRect = LayoutProc.getBoundingBox(current.getBaseline().getGeometry());
         TextLine closest = null;
         int closestDistance = Integer.MAX_VALUE;
         for (TextLine textLine : textLines) {
-            Rect otherRect = LayoutProc.getBoundingBox(StringConverter.stringToPoint(textLine.getBaseline().getPoints()));
+            Rect otherRect = LayoutProc.getBoundingBox(textLine.getBaseline().getGeometry());
             int distance = currentRect.y - otherRect.y;
             if (otherRect.x + otherRect.width > currentRect.x
                     && otherRect.x < currentRect.x + currentRect.width
@@ -2096,12 +2138,12 @@ public class LayoutProc {
         return closest;
     }
 
-    public static synchronized TextLine closestLineBelow(TextLine current, List<TextLine> textLines) {
-        Rect currentRect = LayoutProc.getBoundingBox(StringConverter.stringToPoint(current.getBaseline().getPoints()));
+    public static TextLine closestLineBelow(TextLine current, List<TextLine> textLines) {
+        Rect currentRect = LayoutProc.getBoundingBox(current.getBaseline().getGeometry());
         TextLine closest = null;
         int closestDistance = Integer.MAX_VALUE;
         for (TextLine textLine : textLines) {
-            Rect otherRect = LayoutProc.getBoundingBox(StringConverter.stringToPoint(textLine.getBaseline().getPoints()));
+            Rect otherRect = LayoutProc.getBoundingBox(textLine.getBaseline().getGeometry());
             int distance = otherRect.y - currentRect.y;
             if (otherRect.x + otherRect.width > currentRect.x
                     && otherRect.x < currentRect.x + currentRect.width
@@ -2173,7 +2215,7 @@ public class LayoutProc {
 
     private static void drawBaselines(List<TextLine> textlines, Mat image) {
         for (TextLine textLine : textlines) {
-            ArrayList<Point> points = StringConverter.stringToPoint(textLine.getBaseline().getPoints());
+            ArrayList<Point> points = textLine.getBaseline().getGeometry().toPoints();
             Point lastPoint = null;
             for (Point point : points) {
                 if (point.x < 0) {
@@ -2196,10 +2238,9 @@ public class LayoutProc {
         }
     }
 
-    private static double getLocalInterlineDistance(double interlineDistance, Rect baselineRect, TextLine closestAbove) {
+    private static double getLocalInterlineDistance(double interlineDistance, Rect baselineRect, Rect closestAboveRect) {
         double localInterlineDistance = interlineDistance;
-        if (closestAbove != null) {
-            Rect closestAboveRect = LayoutProc.getBoundingBox(StringConverter.stringToPoint(closestAbove.getBaseline().getPoints()));
+        if (closestAboveRect != null) {
             int tmpDistance = baselineRect.y - (closestAboveRect.y + closestAboveRect.height);
             if (tmpDistance > interlineDistance) {
                 if (2 * interlineDistance > tmpDistance) {
@@ -2261,11 +2302,14 @@ public class LayoutProc {
     //this function finds the path with the highest energy
     public static List<Point> findSeam(Mat seamImage) {
         List<Point> points = new ArrayList<>();
+        final int width = seamImage.width();
+        final int height = seamImage.height();
+        final double[] seamData = getDoubles(seamImage);
         int yStart = 0;
-        int xStart = seamImage.width() - 1;
+        int xStart = width - 1;
         double maxEnergy = -1;
         for (int i = 0; i < seamImage.rows(); i++) {
-            double energy = seamImage.get(i, xStart)[0];
+            double energy = getSeamValue(seamData, width, height, i, xStart);
             if (energy > maxEnergy) {
                 yStart = i;
                 maxEnergy = energy;
@@ -2274,9 +2318,9 @@ public class LayoutProc {
 
         points.add(new Point(xStart, yStart));
         for (int j = xStart; j > 0; j--) {
-            double first = seamImage.get(yStart - 1, j)[0];
-            double middle = seamImage.get(yStart, j)[0];
-            double last = seamImage.get(yStart + 1, j)[0];
+            double first = getSeamValue(seamData, width, height, yStart - 1, j);
+            double middle = getSeamValue(seamData, width, height, yStart, j);
+            double last = getSeamValue(seamData, width, height, yStart + 1, j);
             if (first > middle && first > last) {
                 yStart--;
             } else if (last > middle) {
@@ -2451,6 +2495,7 @@ public class LayoutProc {
             point.x = (point.x - xOffset) - margin;
         }
         List<Point> points = new ArrayList<>();
+        final double[] seamData = getDoubles(seamImage);
         int yStart = (int) ((baseLinePoints.get(baseLinePoints.size() - 1).y - yOffset) + seamOffsetFromBaseline);
         if (yStart >= seamImage.height()) {
             yStart = seamImage.height() - 1;
@@ -2476,9 +2521,9 @@ public class LayoutProc {
             if (yStart < 1) {
                 new Exception(identifier + "image too small? seamImage.height(): " + seamImage.height()).printStackTrace();
             }
-            double first = seamImage.get(yStart - 1, j)[0];
-            double middle = seamImage.get(yStart, j)[0];
-            double last = seamImage.get(yStart + 1, j)[0];
+            double first = getSeamValue(seamData, seamImage.width(), seamImage.height(), yStart - 1, j);
+            double middle = getSeamValue(seamData, seamImage.width(), seamImage.height(), yStart, j);
+            double last = getSeamValue(seamData, seamImage.width(), seamImage.height(), yStart + 1, j);
             boolean outside = false;
             if (first < middle && first < last) {
                 yStart--;
@@ -2565,6 +2610,17 @@ public class LayoutProc {
      * @param scaleDownFactor
      */
     public static void recalculateTextLineContoursFromBaselines(String identifier, Mat image, PcGts page, double scaleDownFactor, int minimumInterlineDistance) {
+        try (StageMetrics.StageTimer timer = StageMetrics.time(StageMetrics.Stage.RECALCULATE_CONTOURS)) {
+            final int textLines = recalculateTextLineContours(identifier, image, page, scaleDownFactor, minimumInterlineDistance);
+            StageMetrics.recordItems(StageMetrics.Stage.RECALCULATE_CONTOURS, textLines);
+            if (textLines > 0) {
+                LOG.debug(identifier + " average textline took: " + TimeUnit.NANOSECONDS.toMillis(timer.stop() / textLines) + " ms");
+            }
+        }
+    }
+
+    // returns the number of text lines that got a new contour
+    private static int recalculateTextLineContours(String identifier, Mat image, PcGts page, double scaleDownFactor, int minimumInterlineDistance) {
         Mat grayImage = null;
 //        Mat colorized = null;
         Mat blurred = null;
@@ -2589,10 +2645,9 @@ public class LayoutProc {
 
         int counter = 1;
         double interlineDistance = LayoutProc.interlineMedian(allLines, minimumInterlineDistance);//94;
+        BaselineIndex baselineIndex = new BaselineIndex(allLines);
         LOG.info(identifier + " interline distance: " + interlineDistance);
 
-        Stopwatch stopwatch = Stopwatch.createStarted();
-
         for (TextRegion textRegion : page.getPage().getTextRegions()) {
             for (TextLine textLine : textRegion.getTextLines()) {
                 double xHeightBasedOnInterline = interlineDistance / 3;
@@ -2600,15 +2655,15 @@ public class LayoutProc {
                     xHeightBasedOnInterline = (MINIMUM_XHEIGHT);
                 }
                 int baselineThickness = (int) (xHeightBasedOnInterline / (2 * scaleDownFactor));
-                long startTime = stopwatch.elapsed(TimeUnit.MILLISECONDS);
                 int xMargin = (int) xHeightBasedOnInterline;
-                List<Point> baseLinePoints = StringConverter.stringToPoint(textLine.getBaseline().getPoints());
+                List<Point> baseLinePoints = textLine.getBaseline().getGeometry().toPoints();
                 if (baseLinePoints.size() <= 1) {
                     continue;
                 }
                 Rect baselineRect = LayoutProc.getBoundingBox(baseLinePoints);
-                TextLine closestAbove = LayoutProc.closestLineAbove(textLine, allLines);
-                double localInterlineDistance = getLocalInterlineDistance(interlineDistance, baselineRect, closestAbove);
+                TextLine closestAbove = baselineIndex.closestLineAbove(textLine);
+                Rect closestAboveRect = closestAbove != null ? baselineIndex.getBaselineBoundingBox(closestAbove) : null;
+                double localInterlineDistance = getLocalInterlineDistance(interlineDistance, baselineRect, closestAboveRect);
 
                 double yStartTop = getYStartTop(baseLinePoints, localInterlineDistance);
                 double yStartBottom = getYStartBottom(blurred, xHeightBasedOnInterline, baseLinePoints);
@@ -2639,7 +2694,7 @@ public class LayoutProc {
                 tmpBinary = OpenCVWrapper.release(tmpBinary);
 
                 if (closestAbove != null) {
-                    for (Point point : StringConverter.stringToPoint(closestAbove.getBaseline().getPoints())) {
+                    for (Point point : closestAbove.getBaseline().getGeometry().toPoints()) {
 
                         int yTarget = (int) point.y - roi.y;
                         if (yTarget > 0
@@ -2742,9 +2797,9 @@ public class LayoutProc {
                     lastPoint = point;
                 }
 
-                TextLine closestBelow = LayoutProc.closestLineBelow(textLine, allLines);
+                TextLine closestBelow = baselineIndex.closestLineBelow(textLine);
                 if (closestBelow != null) {
-                    for (Point point : StringConverter.stringToPoint(closestBelow.getBaseline().getPoints())) {
+                    for (Point point : closestBelow.getBaseline().getGeometry().toPoints()) {
                         int yTarget = (int) point.y - searchArea.y;
                         if (yTarget > 0
                                 && yTarget < cloned2.height()
@@ -2836,7 +2891,6 @@ public class LayoutProc {
             }
         }
         LOG.info(identifier + " textlines: " + (counter));
-        LOG.info(identifier + " average textline took: " + (stopwatch.elapsed(TimeUnit.MILLISECONDS) / counter));
 
 ////            StringTools.writeFile(file.toAbsolutePath().toString() + ".done", "");
 ////            Imgcodecs.imwrite("/tmp/input-colorized.png", colorized);
@@ -2846,7 +2900,8 @@ public class LayoutProc {
         blurred = OpenCVWrapper.release(blurred);
         grayImage = OpenCVWrapper.release(grayImage);
         baselineImage = OpenCVWrapper.release(baselineImage);
-
+        // counter starts at 1
+        return counter - 1;
     }
 
 //    private static RotatedRect getRotatedRect(List<Point> baseLinePoints) {
@@ -3669,7 +3724,7 @@ Gets a text line from an image based on the baseline and contours. Text line is
                     }
                     if (!Strings.isNullOrEmpty(text) && !text.trim().isEmpty()) {
 
-                        List<Point> baselinePoints = StringConverter.expandPointList(StringConverter.stringToPoint(textLine.getBaseline().getPoints()));
+                        List<Point> baselinePoints = StringConverter.expandPointList(textLine.getBaseline().getGeometry().toPoints());
                         if (baselinePoints.isEmpty()) {
                             LOG.error("Textline with id '" + textLine.getId() + "' has no (valid) baseline.");
                             LOG.error("words: " + text);
@@ -3826,6 +3881,82 @@ Gets a text line from an image based on the baseline and contours. Text line is
         return length;
     }
 
+    /**
+     * Extracts the baseline of a single connected component from a labeled matrix.
+     * For every column the centroid of the pixels with the given label is calculated. Every 50th usable column and
+     * the last usable column are returned as baseline points.
+     * The label matrix is copied once into a primitive array and scanned row by row, instead of fetching every
+     * pixel through a separate native call.
+     *
+     * @param baselineMat   the (sub)matrix with labels of the connected components, preferably of type CV_32S
+     * @param label         the label of the component to extract
+     * @param offset        offset of baselineMat within the page
+     * @param minimumHeight the minimum number of pixels in a column for the column to be used
+     * @param identifier    used for logging
+     * @return the baseline points in page coordinates
+     */
+    public static List<Point> extractBaseline(Mat baselineMat, int label, Point offset, int minimumHeight, String identifier) {
+        final int width = baselineMat.width();
+        final int height = baselineMat.height();
+        final int[] labels = new int[width * height];
+        if (labels.length > 0) {
+            if (baselineMat.depth() == CV_32S && baselineMat.channels() == 1) {
+                baselineMat.get(0, 0, labels);
+            } else {
+                Mat converted = new Mat();
+                baselineMat.convertTo(converted, CV_32S);
+                converted.get(0, 0, labels);
+                OpenCVWrapper.release(converted);
+            }
+        }
+
+        final long[] sums = new long[width];
+        final int[] counters = new int[width];
+        final boolean[] gapAfterLabel = new boolean[width];
+        boolean mergedLineDetected = false;
+        for (int j = 0; j < height; j++) {
+            final int rowOffset = j * width;
+            for (int i = 0; i < width; i++) {
+                if (labels[rowOffset + i] == label) {
+                    sums[i] += j;
+                    counters[i]++;
+                    if (gapAfterLabel[i]) {
+                        mergedLineDetected = true;
+                    }
+                } else if (counters[i] > 0) {
+                    gapAfterLabel[i] = true;
+                }
+            }
+        }
+
+        List<Point> baseline = new ArrayList<>();
+        Point point = null;
+        int pixelCounter = -1;
+        for (int i = 0; i < width; i++) {
+            final int counter = counters[i];
+            if (counter < minimumHeight) {
+                continue;
+            }
+            pixelCounter++;
+            double sum = sums[i];
+            if (counter > 1) {
+                sum /= counter;
+            }
+
+            point = new Point(i + offset.x, sum + offset.y);
+            if (pixelCounter % 50 == 0) {
+                baseline.add(point);
+            }
+        }
+        if (pixelCounter % 50 != 0) {
+            baseline.add(point);
+        }
+        if (mergedLineDetected) {
+            LOG.info("mergedLineDetected: " + identifier);
+        }
+        return baseline;
+    }
+
     public static List<Tuple<Mat,Point>> splitBaselines(Mat baselineMat, int label, Point offsetPoint){
         List<Tuple<Mat,Point>> splitBaselines = new ArrayList<>();
         //TODO: split merged text lines
@@ -0,0 +1,127 @@
+import com.google.common.base.Stopwatch;
+import nl.knaw.huc.di.images.imageanalysiscommon.StringConverter;
+import nl.knaw.huc.di.images.layoutanalyzer.Statistics;
+import nl.knaw.huc.di.images.layoutanalyzer.layoutlib.InterlineDistanceEstimator;
+import nl.knaw.huc.di.images.layoutds.models.Page.TextLine;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.opencv.core.Point;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class InterlineDistanceEstimatorTest {
+
+    @Test
+    public void medianIsEqualToBruteForceMedianOnRandomPages() {
+        for (int seed = 0; seed < 200; seed++) {
+            final Random random = new Random(seed);
+            final List<TextLine> textLines = new ArrayList<>();
+            final int numberOfLines = random.nextInt(40);
+            for (int i = 0; i < numberOfLines; i++) {
+                // small coordinate ranges, so there are duplicate points and lines without points
+                final StringBuilder points = new StringBuilder();
+                final int y = random.nextInt(20) * 10;
+                final int numberOfPoints = random.nextInt(6);
+                for (int j = 0; j < numberOfPoints; j++) {
+                    if (j > 0) {
+                        points.append(' ');
+                    }
+                    points.append(random.nextInt(40) * 5).append(',').append(y + random.nextInt(3));
+                }
+                final TextLine textLine = new TextLine();
+                textLine.getBaseline().setPoints(points.toString());
+                textLines.add(textLine);
+            }
+
+            Assert.assertEquals("seed " + seed, bruteForceMedian(textLines), new InterlineDistanceEstimator(textLines).median(), 0);
+        }
+    }
+
+    @Test
+    public void medianIsEqualToBruteForceMedianOnSyntheticPage() {
+        final List<TextLine> textLines = createPage(200, new Random(1));
+
+        Assert.assertEquals(bruteForceMedian(textLines), new InterlineDistanceEstimator(textLines).median(), 0);
+    }
+
+    // prints the times instead of checking them, run with -Dbenchmark=true
+    @Test
+    public void interlineMedianBenchmark() {
+        Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+        for (int numberOfLines : new int[]{50, 200, 800}) {
+            final List<TextLine> textLines = createPage(numberOfLines, new Random(numberOfLines));
+
+            final Stopwatch estimator = Stopwatch.createStarted();
+            final double median = new InterlineDistanceEstimator(textLines).median();
+            estimator.stop();
+
+            // the brute force version takes tens of seconds on 800 lines
+            String bruteForceTime = "skipped";
+            if (numberOfLines <= 200) {
+                final Stopwatch bruteForce = Stopwatch.createStarted();
+                Assert.assertEquals(bruteForceMedian(textLines), median, 0);
+                bruteForceTime = bruteForce.stop().toString();
+            }
+
+            System.out.println("interline median of " + numberOfLines + " lines: " + median + ", estimator: "
+                    + estimator + ", brute force: " + bruteForceTime);
+        }
+    }
+
+    // two columns of lines, 50 pixels apart, with a baseline point every 50 pixels
+    private static List<TextLine> createPage(int numberOfLines, Random random) {
+        final List<TextLine> textLines = new ArrayList<>();
+        final int linesPerColumn = (numberOfLines + 1) / 2;
+        for (int i = 0; i < numberOfLines; i++) {
+            final int y = 100 + (i % linesPerColumn) * 50;
+            final int xStart = (i / linesPerColumn) * 1500 + random.nextInt(100);
+            final StringBuilder points = new StringBuilder();
+            for (int x = xStart; x < xStart + 1200; x += 50) {
+                if (points.length() > 0) {
+                    points.append(' ');
+                }
+                points.append(x).append(',').append(y + random.nextInt(5));
+            }
+            final TextLine textLine = new TextLine();
+            textLine.getBaseline().setPoints(points.toString());
+            textLines.add(textLine);
+        }
+        return textLines;
+    }
+
+    // the original implementation of LayoutProc.interlineMedian
+    private static double bruteForceMedian(List<TextLine> textLines) {
+        ArrayList<Double> distances = new ArrayList<>();
+        for (TextLine textLine : textLines) {
+            List<Point> allPoints = new ArrayList<>();
+            for (TextLine other : textLines) {
+                allPoints.addAll(StringConverter.stringToPoint(other.getBaseline().getPoints()));
+            }
+            ArrayList<Point> points = StringConverter.stringToPoint(textLine.getBaseline().getPoints());
+            allPoints.removeAll(points);
+            for (Point point : points) {
+                Point closest = null;
+                double closestDistance = Double.MAX_VALUE;
+                for (Point other : allPoints) {
+                    if (closest == null) {
+                        closest = other;
+                        continue;
+                    }
+                    double currentDistance = StringConverter.distance(point, other);
+                    if (currentDistance < closestDistance) {
+                        closest = other;
+                        closestDistance = currentDistance;
+                    }
+                }
+                if (closest == null) {
+                    continue;
+                }
+                distances.add(StringConverter.distance(closest, point));
+            }
+        }
+        return new Statistics(distances).median();
+    }
+}
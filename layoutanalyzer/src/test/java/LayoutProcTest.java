@@ -1,6 +1,8 @@
+import com.google.common.collect.Lists;
 import com.google.common.collect.Ordering;
 import nl.knaw.huc.di.images.imageanalysiscommon.StringConverter;
 import nl.knaw.huc.di.images.layoutanalyzer.Tuple;
+import nl.knaw.huc.di.images.layoutanalyzer.layoutlib.BaselineIndex;
 import nl.knaw.huc.di.images.layoutanalyzer.layoutlib.LayoutProc;
 import nl.knaw.huc.di.images.layoutds.models.Page.*;
 import org.apache.commons.lang3.StringUtils;
@@ -16,6 +18,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Random;
 import java.util.stream.Collectors;
 
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -759,5 +762,136 @@ public class LayoutProcTest {
 
     }
 
+    @Test
+    public void baselineIndexFindsTheSameLinesAsLinearSearch() {
+        final Random random = new Random(42);
+        final List<TextLine> textLines = new ArrayList<>();
+        // two columns of lines with some jitter, some lines share the same top
+        for (int column = 0; column < 2; column++) {
+            for (int y = 100; y < 3000; y += 40) {
+                final int xStart = 100 + column * 1500 + random.nextInt(200);
+                final int xStop = xStart + 300 + random.nextInt(1000);
+                final int yStart = y + random.nextInt(5);
+                final TextLine textLine = new TextLine();
+                textLine.getBaseline().setPoints(xStart + "," + yStart + " " + xStop + "," + (yStart + random.nextInt(30)));
+                textLines.add(textLine);
+            }
+        }
+
+        final BaselineIndex baselineIndex = new BaselineIndex(textLines);
+
+        for (TextLine textLine : textLines) {
+            assertThat(baselineIndex.closestLineAbove(textLine), is(sameInstance(LayoutProc.closestLineAbove(textLine, textLines))));
+            assertThat(baselineIndex.closestLineBelow(textLine), is(sameInstance(LayoutProc.closestLineBelow(textLine, textLines))));
+        }
+    }
+
+    @Test
+    public void calcSeamImageIsEqualToPerPixelImplementation() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+        final Random random = new Random(7);
+        for (double scaleDownFactor : new double[]{1, 2, 3}) {
+            for (Size size : new Size[]{new Size(1, 1), new Size(17, 3), new Size(400, 120), new Size(1201, 77)}) {
+                final Mat energy = new Mat(size, CvType.CV_64F);
+                Core.randu(energy, -100, 255);
+                // lines of maximum energy, like the baselines drawn by recalculateTextLineContoursFromBaselines
+                // the seam should not end at the border, findSeam does not support that
+                final int endRow = size.height > 4 ? 2 + random.nextInt((int) size.height - 4) : 0;
+                Imgproc.line(energy, new Point(0, random.nextInt((int) size.height)),
+                        new Point(size.width - 1, endRow), new Scalar(Float.MAX_VALUE), 3);
+
+                final Mat expected = calcSeamImagePerPixel(energy, scaleDownFactor);
+                final Mat actual = LayoutProc.calcSeamImage(energy, scaleDownFactor);
+
+                assertThat(actual.size(), is(expected.size()));
+                final Mat difference = new Mat();
+                Core.compare(expected, actual, difference, Core.CMP_NE);
+                assertThat(Core.countNonZero(difference), is(0));
+
+                if (actual.height() > 4) {
+                    assertThat(LayoutProc.findSeam(actual), is(findSeamPerPixel(expected)));
+                }
+                energy.release();
+                expected.release();
+                actual.release();
+                difference.release();
+            }
+        }
+    }
+
+    // the original implementation of LayoutProc.calcSeamImage
+    private static Mat calcSeamImagePerPixel(Mat energyMat, double scaleDownFactor) {
+        Mat energyMatTmp = new Mat();
+        Imgproc.resize(energyMat, energyMatTmp, new Size(Math.ceil(energyMat.width() / scaleDownFactor), Math.ceil(energyMat.height() / scaleDownFactor)));
+        Mat seamImage = new Mat();
+        energyMatTmp.convertTo(seamImage, CvType.CV_64F);
+        energyMatTmp.release();
+
+        for (int j = 0; j < seamImage.width(); j++) {
+            for (int i = 0; i < seamImage.height(); i++) {
+                double lowest = Float.MAX_VALUE;
+                for (int m = -1; m <= 1; m++) {
+                    int y = i + m;
+                    int x = j - 1;
+                    if (y < 0) {
+                        y = 0;
+                    }
+                    if (y >= seamImage.height()) {
+                        y = seamImage.height() - 1;
+                    }
+
+                    if (x < 0) {
+                        lowest = 0;
+                    } else {
+                        double value = seamImage.get(y, x)[0];
+                        if (value < lowest) {
+                            lowest = value;
+                        }
+                    }
+                }
+                double[] putter = new double[1];
+                putter[0] = lowest + seamImage.get(i, j)[0];
+                seamImage.put(i, j, putter);
+            }
+        }
+        Imgproc.resize(seamImage, seamImage, new Size(energyMat.width(), energyMat.height()));
+        return seamImage;
+    }
+
+    // the original implementation of LayoutProc.findSeam
+    private static List<Point> findSeamPerPixel(Mat seamImage) {
+        List<Point> points = new ArrayList<>();
+        int yStart = 0;
+        int xStart = seamImage.width() - 1;
+        double maxEnergy = -1;
+        for (int i = 0; i < seamImage.rows(); i++) {
+            double energy = seamImage.get(i, xStart)[0];
+            if (energy > maxEnergy) {
+                yStart = i;
+                maxEnergy = energy;
+            }
+        }
+
+        points.add(new Point(xStart, yStart));
+        for (int j = xStart; j > 0; j--) {
+            double first = seamImage.get(yStart - 1, j)[0];
+            double middle = seamImage.get(yStart, j)[0];
+            double last = seamImage.get(yStart + 1, j)[0];
+            if (first > middle && first > last) {
+                yStart--;
+            } else if (last > middle) {
+                yStart++;
+            }
+            if (yStart < 1) {
+                yStart = 1;
+            }
+            if (yStart > seamImage.height() - 2) {
+                yStart = seamImage.height() - 2;
+            }
+            points.add(new Point(j, yStart));
+        }
+
+        return Lists.reverse(points);
+    }
 
 }
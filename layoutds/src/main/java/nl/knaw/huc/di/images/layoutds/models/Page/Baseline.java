@@ -1,10 +1,14 @@
 package nl.knaw.huc.di.images.layoutds.models.Page;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 
 public class Baseline {
     @JacksonXmlProperty(isAttribute = true, localName = "points")
     private String points = "";
+    // parsed on first use, the model is not shared between threads while it is changed
+    @JsonIgnore
+    private PointsGeometry geometry;
 
     public String getPoints() {
         return points;
@@ -12,5 +16,19 @@ public class Baseline {
 
     public void setPoints(String points) {
         this.points = points;
+        this.geometry = null;
+    }
+
+    /**
+     * @return the parsed points, cached until the points are changed
+     */
+    @JsonIgnore
+    public PointsGeometry getGeometry() {
+        PointsGeometry geometry = this.geometry;
+        if (geometry == null) {
+            geometry = PointsGeometry.parse(points);
+            this.geometry = geometry;
+        }
+        return geometry;
     }
 }
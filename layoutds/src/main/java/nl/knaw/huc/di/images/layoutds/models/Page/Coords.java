@@ -1,5 +1,6 @@
 package nl.knaw.huc.di.images.layoutds.models.Page;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 
@@ -7,6 +8,9 @@ import com.fasterxml.jackson.dataformat.xml.annotation.JacksonXmlProperty;
 public class Coords {
     @JacksonXmlProperty(isAttribute = true, localName = "points")
     private String points;
+    // parsed on first use, the model is not shared between threads while it is changed
+    @JsonIgnore
+    private PointsGeometry geometry;
 
     public String getPoints() {
         return points;
@@ -27,7 +31,19 @@ public class Coords {
             }
 
         this.points = points;
+        this.geometry = null;
     }
 
-
+    /**
+     * @return the parsed points, cached until the points are changed
+     */
+    @JsonIgnore
+    public PointsGeometry getGeometry() {
+        PointsGeometry geometry = this.geometry;
+        if (geometry == null) {
+            geometry = PointsGeometry.parse(points);
+            this.geometry = geometry;
+        }
+        return geometry;
+    }
 }
@@ -0,0 +1,115 @@
+package nl.knaw.huc.di.images.layoutds.models.Page;
+
+import com.google.common.base.Strings;
+
+import java.util.ArrayList;
+
+/**
+ * The parsed form of a points attribute ("x1,y1 x2,y2 ..."), so the geometry code does not have to split and parse the
+ * same string over and over. Instances are immutable, {@link Coords} and {@link Baseline} create a new one when their
+ * points change.
+ */
+public final class PointsGeometry {
+    private static final PointsGeometry EMPTY = new PointsGeometry(new double[0], new double[0]);
+
+    private final double[] xs;
+    private final double[] ys;
+    // the bounding box is calculated the same way as LayoutProc.getBoundingBox(List<Point>)
+    private final int minX;
+    private final int minY;
+    private final int maxX;
+    private final int maxY;
+
+    private PointsGeometry(double[] xs, double[] ys) {
+        this.xs = xs;
+        this.ys = ys;
+        int xStart = Integer.MAX_VALUE;
+        int xStop = Integer.MIN_VALUE;
+        int yStart = Integer.MAX_VALUE;
+        int yStop = Integer.MIN_VALUE;
+        for (int i = 0; i < xs.length; i++) {
+            if (xs[i] < xStart) {
+                xStart = (int) xs[i];
+            }
+            if (xs[i] > xStop) {
+                xStop = (int) xs[i];
+            }
+            if (ys[i] < yStart) {
+                yStart = (int) ys[i];
+            }
+            if (ys[i] > yStop) {
+                yStop = (int) ys[i];
+            }
+        }
+        this.minX = xStart;
+        this.minY = yStart;
+        this.maxX = xStop;
+        this.maxY = yStop;
+    }
+
+    /**
+     * Parses the points the same way as StringConverter.stringToPoint(String) does.
+     */
+    public static PointsGeometry parse(String points) {
+        if (Strings.isNullOrEmpty(points)) {
+            return EMPTY;
+        }
+        final String[] splitted = points.split(" ");
+        final double[] xs = new double[splitted.length];
+        final double[] ys = new double[splitted.length];
+        for (int i = 0; i < splitted.length; i++) {
+            final String pointString = splitted[i];
+            final int comma = pointString.indexOf(',');
+            if (comma < 0) {
+                throw new NumberFormatException("Not a point: \"" + pointString + "\"");
+            }
+            final int secondComma = pointString.indexOf(',', comma + 1);
+            xs[i] = Double.parseDouble(pointString.substring(0, comma));
+            ys[i] = Double.parseDouble(secondComma < 0 ? pointString.substring(comma + 1) : pointString.substring(comma + 1, secondComma));
+        }
+        return new PointsGeometry(xs, ys);
+    }
+
+    public int size() {
+        return xs.length;
+    }
+
+    public boolean isEmpty() {
+        return xs.length == 0;
+    }
+
+    public double getX(int index) {
+        return xs[index];
+    }
+
+    public double getY(int index) {
+        return ys[index];
+    }
+
+    public int getMinX() {
+        return minX;
+    }
+
+    public int getMinY() {
+        return minY;
+    }
+
+    public int getMaxX() {
+        return maxX;
+    }
+
+    public int getMaxY() {
+        return maxY;
+    }
+
+    /**
+     * @return a new list with new points, so the caller is free to change them
+     */
+    public ArrayList<org.opencv.core.Point> toPoints() {
+        final ArrayList<org.opencv.core.Point> points = new ArrayList<>(xs.length);
+        for (int i = 0; i < xs.length; i++) {
+            points.add(new org.opencv.core.Point(xs[i], ys[i]));
+        }
+        return points;
+    }
+}
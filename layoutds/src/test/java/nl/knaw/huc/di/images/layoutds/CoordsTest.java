@@ -1,8 +1,14 @@
 package nl.knaw.huc.di.images.layoutds;
 
+import nl.knaw.huc.di.images.layoutds.models.Page.Baseline;
 import nl.knaw.huc.di.images.layoutds.models.Page.Coords;
+import nl.knaw.huc.di.images.layoutds.models.Page.PointsGeometry;
 import org.junit.Test;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
 public class CoordsTest {
     @Test(expected = IllegalArgumentException.class)
     public void setPointsIllegalWords() {
@@ -28,5 +34,32 @@ public class CoordsTest {
         coords.setPoints("12,13 24,54 55,100");
     }
 
-}
+    @Test
+    public void getGeometryParsesThePoints() {
+        Coords coords = new Coords();
+        coords.setPoints("12,13 24,54 55,100");
+
+        PointsGeometry geometry = coords.getGeometry();
 
+        assertThat(geometry.size(), is(3));
+        assertThat(geometry.getX(1), is(24.0));
+        assertThat(geometry.getY(1), is(54.0));
+        assertThat(geometry.getMinX(), is(12));
+        assertThat(geometry.getMinY(), is(13));
+        assertThat(geometry.getMaxX(), is(55));
+        assertThat(geometry.getMaxY(), is(100));
+        assertThat(coords.getGeometry(), is(sameInstance(geometry)));
+    }
+
+    @Test
+    public void setPointsInvalidatesTheGeometry() {
+        Baseline baseline = new Baseline();
+        assertThat(baseline.getGeometry().isEmpty(), is(true));
+
+        baseline.setPoints("1,2 3,4");
+
+        assertThat(baseline.getGeometry().size(), is(2));
+        assertThat(baseline.getGeometry().toPoints().get(1).x, is(3.0));
+        assertThat(baseline.getPoints(), is("1,2 3,4"));
+    }
+}
@@ -10,6 +10,9 @@ import io.dropwizard.forms.MultiPartBundle;
 import io.prometheus.client.CollectorRegistry;
 import io.prometheus.client.dropwizard.DropwizardExports;
 import io.prometheus.client.exporter.MetricsServlet;
+import nl.knaw.huc.di.images.imageanalysiscommon.StageMetrics;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.JobRegistry;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.UploadSpool;
 
 import java.io.File;
 import java.io.IOException;
@@ -37,13 +40,17 @@ public class LoghiWebserviceApplication extends Application<LoghiWebserviceConfi
         final CollectorRegistry collectorRegistry = new CollectorRegistry();
         collectorRegistry.register(new DropwizardExports(metricRegistry));
         environment.admin().addServlet("prometheus", new MetricsServlet(collectorRegistry)).addMapping("/prometheus");
+        StageMetrics.setMetricRegistry(metricRegistry);
 
-        configuration.registerExtractBaseLinesResource(environment, metricRegistry);
-        configuration.registerCutFromImageBasedOnPageXMLNewResource(environment, metricRegistry);
-        configuration.registerLoghiHTRMergePageXMLResource(environment, metricRegistry);
-        configuration.registerRecalculateReadingOrderNewResource(environment, metricRegistry);
-        configuration.registerSplitPageXMLTextLineIntoWordsResource(environment, metricRegistry);
-        configuration.registerDetectLanguageOfPageXmlResource(environment, metricRegistry);
+        configuration.registerPageValidationPolicy(metricRegistry);
+        final JobRegistry jobRegistry = configuration.registerJobsResource(environment, metricRegistry);
+        final UploadSpool uploadSpool = configuration.createUploadSpool(metricRegistry);
+        configuration.registerExtractBaseLinesResource(environment, metricRegistry, jobRegistry, uploadSpool);
+        configuration.registerCutFromImageBasedOnPageXMLNewResource(environment, metricRegistry, jobRegistry, uploadSpool);
+        configuration.registerLoghiHTRMergePageXMLResource(environment, metricRegistry, jobRegistry);
+        configuration.registerRecalculateReadingOrderNewResource(environment, metricRegistry, jobRegistry);
+        configuration.registerSplitPageXMLTextLineIntoWordsResource(environment, metricRegistry, jobRegistry);
+        configuration.registerDetectLanguageOfPageXmlResource(environment, metricRegistry, jobRegistry);
 
         configuration.registerSecurity(environment);
 
@@ -1,5 +1,6 @@
 package nl.knaw.huc.di.images.loghiwebservice;
 
+import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.annotation.JsonProperty;
 //import edu.stanford.nlp.ling.tokensregex.Env;
@@ -9,9 +10,16 @@ import io.dropwizard.core.Configuration;
 import io.dropwizard.core.setup.Environment;
 import nl.knaw.huc.di.images.loghiwebservice.configuration.ExecutorServiceConfig;
 import nl.knaw.huc.di.images.loghiwebservice.configuration.SecurityConfig;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.AdmissionControl;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.JobRegistry;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.UploadSpool;
 import nl.knaw.huc.di.images.loghiwebservice.resources.*;
+import nl.knaw.huc.di.images.pagexmlutils.PageUtils;
+import nl.knaw.huc.di.images.pagexmlutils.PageValidationPolicy;
 
+import java.nio.file.Paths;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 public class LoghiWebserviceConfiguration extends Configuration {
@@ -45,43 +53,86 @@ public class LoghiWebserviceConfiguration extends Configuration {
     @JsonProperty
     private SecurityConfig securityConfig;
 
-    public void registerExtractBaseLinesResource(Environment environment, MetricRegistry metricRegistry) {
+    @JsonProperty
+    private String pageValidationPolicy = "always";
+
+    @JsonProperty
+    private long jobRetentionSeconds = 3600;
+
+    @JsonProperty
+    private String uploadSpoolLocation = System.getProperty("java.io.tmpdir");
+
+    @JsonProperty
+    private long uploadMemoryBudgetMegabytes = 256;
+
+    public void registerExtractBaseLinesResource(Environment environment, MetricRegistry metricRegistry, JobRegistry jobRegistry, UploadSpool uploadSpool) {
         final ExecutorService executorService =
                 extractBaseLinesExecutorServiceConfig.createExecutorService(environment, metricRegistry);
         final Supplier<String> queueUsageStatusSupplier =
                 extractBaseLinesExecutorServiceConfig.createQueueUsageStatusSupplier(metricRegistry);
+        final AdmissionControl admissionControl = extractBaseLinesExecutorServiceConfig.createAdmissionControl(metricRegistry);
         environment.jersey().register(new ExtractBaselinesResource(executorService, uploadLocation, p2palaConfigFile,
-                laypaConfig, queueUsageStatusSupplier));
+                laypaConfig, queueUsageStatusSupplier, jobRegistry, admissionControl, uploadSpool));
     }
 
-    public void registerCutFromImageBasedOnPageXMLNewResource(Environment environment, MetricRegistry metricRegistry) {
+    public void registerCutFromImageBasedOnPageXMLNewResource(Environment environment, MetricRegistry metricRegistry, JobRegistry jobRegistry, UploadSpool uploadSpool) {
         final ExecutorService executorService = cutFromImageBasedOnPageXmlExecutorServiceConfig.createExecutorService(environment, metricRegistry);
         final Supplier<String> queueUsageStatusSupplier = cutFromImageBasedOnPageXmlExecutorServiceConfig.createQueueUsageStatusSupplier(metricRegistry);
-        environment.jersey().register(new CutFromImageBasedOnPageXMLNewResource(executorService, uploadLocation, queueUsageStatusSupplier));
+        final AdmissionControl admissionControl = cutFromImageBasedOnPageXmlExecutorServiceConfig.createAdmissionControl(metricRegistry);
+        environment.jersey().register(new CutFromImageBasedOnPageXMLNewResource(executorService, uploadLocation, queueUsageStatusSupplier, jobRegistry, admissionControl, uploadSpool));
     }
 
-    public void registerLoghiHTRMergePageXMLResource(Environment environment, MetricRegistry metricRegistry) {
+    public void registerLoghiHTRMergePageXMLResource(Environment environment, MetricRegistry metricRegistry, JobRegistry jobRegistry) {
         final ExecutorService executorService = loghiHTRMergePageXMLResourceExecutorServiceConfig.createExecutorService(environment, metricRegistry);
         final Supplier<String> queueUsageStatusSupplier = loghiHTRMergePageXMLResourceExecutorServiceConfig.createQueueUsageStatusSupplier(metricRegistry);
-        environment.jersey().register(new LoghiHTRMergePageXMLResource(uploadLocation, executorService, queueUsageStatusSupplier));
+        final AdmissionControl admissionControl = loghiHTRMergePageXMLResourceExecutorServiceConfig.createAdmissionControl(metricRegistry);
+        environment.jersey().register(new LoghiHTRMergePageXMLResource(uploadLocation, executorService, queueUsageStatusSupplier, jobRegistry, admissionControl));
     }
 
-    public void registerRecalculateReadingOrderNewResource(Environment environment, MetricRegistry metricRegistry) {
+    public void registerRecalculateReadingOrderNewResource(Environment environment, MetricRegistry metricRegistry, JobRegistry jobRegistry) {
         final ExecutorService executorService = recalculateReadingOrderNewResourceExecutorServiceConfig.createExecutorService(environment, metricRegistry);
         final Supplier<String> queueUsageStatusSupplier = recalculateReadingOrderNewResourceExecutorServiceConfig.createQueueUsageStatusSupplier(metricRegistry);
-        environment.jersey().register(new RecalculateReadingOrderNewResource(executorService, uploadLocation, queueUsageStatusSupplier));
+        final AdmissionControl admissionControl = recalculateReadingOrderNewResourceExecutorServiceConfig.createAdmissionControl(metricRegistry);
+        environment.jersey().register(new RecalculateReadingOrderNewResource(executorService, uploadLocation, queueUsageStatusSupplier, jobRegistry, admissionControl));
     }
 
-    public void registerSplitPageXMLTextLineIntoWordsResource(Environment environment, MetricRegistry metricRegistry) {
+    public void registerSplitPageXMLTextLineIntoWordsResource(Environment environment, MetricRegistry metricRegistry, JobRegistry jobRegistry) {
         final ExecutorService executorService = splitPageXMLTextLineIntoWordsResourceExecutorServiceConfig.createExecutorService(environment, metricRegistry);
         final Supplier<String> queueUsageStatusSupplier = splitPageXMLTextLineIntoWordsResourceExecutorServiceConfig.createQueueUsageStatusSupplier(metricRegistry);
-        environment.jersey().register(new SplitPageXMLTextLineIntoWordsResource(executorService, uploadLocation, queueUsageStatusSupplier));
+        final AdmissionControl admissionControl = splitPageXMLTextLineIntoWordsResourceExecutorServiceConfig.createAdmissionControl(metricRegistry);
+        environment.jersey().register(new SplitPageXMLTextLineIntoWordsResource(executorService, uploadLocation, queueUsageStatusSupplier, jobRegistry, admissionControl));
     }
 
-    public void registerDetectLanguageOfPageXmlResource(Environment environment, MetricRegistry metricRegistry) {
+    public void registerDetectLanguageOfPageXmlResource(Environment environment, MetricRegistry metricRegistry, JobRegistry jobRegistry) {
         final ExecutorService executorService = detectLanguageOfPageXmlResourceExecutorService.createExecutorService(environment, metricRegistry);
         final Supplier<String> queueUsageStatusSupplier = detectLanguageOfPageXmlResourceExecutorService.createQueueUsageStatusSupplier(metricRegistry);
-        environment.jersey().register(new DetectLanguageOfPageXmlResource(uploadLocation, executorService, queueUsageStatusSupplier));
+        final AdmissionControl admissionControl = detectLanguageOfPageXmlResourceExecutorService.createAdmissionControl(metricRegistry);
+        environment.jersey().register(new DetectLanguageOfPageXmlResource(uploadLocation, executorService, queueUsageStatusSupplier, jobRegistry, admissionControl));
+    }
+
+    public JobRegistry registerJobsResource(Environment environment, MetricRegistry metricRegistry) {
+        final JobRegistry jobRegistry = new JobRegistry(TimeUnit.SECONDS.toMillis(jobRetentionSeconds));
+        metricRegistry.register("Jobs", (Gauge<Integer>) jobRegistry::size);
+        environment.jersey().register(new JobsResource(jobRegistry));
+        return jobRegistry;
+    }
+
+    public UploadSpool createUploadSpool(MetricRegistry metricRegistry) {
+        final UploadSpool uploadSpool = new UploadSpool(Paths.get(uploadSpoolLocation), uploadMemoryBudgetMegabytes * 1024 * 1024);
+        metricRegistry.register("UploadSpoolBytesInMemory", (Gauge<Long>) uploadSpool::getBytesInMemory);
+        metricRegistry.register("UploadSpoolBytesOnDisk", (Gauge<Long>) uploadSpool::getBytesOnDisk);
+        metricRegistry.register("HeapUsedBytes", (Gauge<Long>) () -> Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory());
+        return uploadSpool;
+    }
+
+    public void registerPageValidationPolicy(MetricRegistry metricRegistry) {
+        final PageValidationPolicy validationPolicy = PageValidationPolicy.parse(pageValidationPolicy);
+        PageUtils.setValidationPolicy(validationPolicy);
+        metricRegistry.register("PageValidationValidatedPages", (Gauge<Long>) validationPolicy::getValidatedPages);
+        metricRegistry.register("PageValidationSkippedPages", (Gauge<Long>) validationPolicy::getSkippedPages);
+        metricRegistry.register("PageValidationInvalidPages", (Gauge<Long>) validationPolicy::getInvalidPages);
+        metricRegistry.register("PageValidationErrors", (Gauge<Long>) validationPolicy::getErrors);
+        metricRegistry.register("PageValidationWarnings", (Gauge<Long>) validationPolicy::getWarnings);
     }
 
     public void registerSecurity(Environment environment) {
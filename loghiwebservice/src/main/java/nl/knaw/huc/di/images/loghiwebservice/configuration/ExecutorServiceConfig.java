@@ -4,10 +4,12 @@ import com.codahale.metrics.Gauge;
 import com.codahale.metrics.MetricRegistry;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import io.dropwizard.core.setup.Environment;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.AdmissionControl;
 
 import javax.validation.constraints.NotEmpty;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 public class ExecutorServiceConfig {
@@ -24,6 +26,9 @@ public class ExecutorServiceConfig {
     @JsonProperty
     private String name;
 
+    @JsonProperty
+    private long reservationSeconds = 60;
+
 
     public ExecutorService createExecutorService(Environment environment, MetricRegistry metricRegistry) {
         final ArrayBlockingQueue<Runnable> workQueue = new ArrayBlockingQueue<>(queueLength, true);
@@ -37,6 +42,12 @@ public class ExecutorServiceConfig {
                 .build();
     }
 
+    public AdmissionControl createAdmissionControl(MetricRegistry metricRegistry) {
+        final Gauge<?> queueSize = metricRegistry.gauge(name + "QueueSize");
+        return new AdmissionControl(maxThreads, queueLength, () -> ((Number) queueSize.getValue()).intValue(),
+                TimeUnit.SECONDS.toMillis(reservationSeconds));
+    }
+
     public Supplier<String> createQueueUsageStatusSupplier(MetricRegistry metricRegistry) {
         return () -> String.format("%s/%d", metricRegistry.gauge(name + "QueueSize").getValue(), queueLength);
     }
@@ -0,0 +1,191 @@
+package nl.knaw.huc.di.images.loghiwebservice.jobs;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.IntSupplier;
+
+/**
+ * Decides whether a resource can take another job, so clients can ask before they upload instead of finding out from
+ * a rejected upload. A client can reserve a place in the queue, an upload with the token of the reservation is
+ * accepted even when the queue has filled up in the meantime.
+ * <p>
+ * The waiting times are estimated from the average time the jobs of the resource took and the number of jobs waiting.
+ */
+public class AdmissionControl {
+    // until a job has finished the service time is a guess
+    private static final double INITIAL_SERVICE_SECONDS = 1;
+    // weight of the last job in the average service time
+    private static final double SERVICE_TIME_WEIGHT = 0.2;
+
+    private final int threads;
+    private final int queueLength;
+    private final IntSupplier queueSize;
+    private final long reservationMillis;
+    // token -> expiry time
+    private final Map<String, Long> reservations = new HashMap<>();
+    // jobs that are admitted, but are not in the queue yet
+    private int admitting;
+    private double averageServiceSeconds = INITIAL_SERVICE_SECONDS;
+
+    public AdmissionControl(int threads, int queueLength, IntSupplier queueSize, long reservationMillis) {
+        this.threads = threads;
+        this.queueLength = queueLength;
+        this.queueSize = queueSize;
+        this.reservationMillis = reservationMillis;
+    }
+
+    /**
+     * Submits the job if there is room in the queue, or if the reservation is valid. The reservation is used up when
+     * the job is accepted, if the submitter rejects the job the client can submit it again with the same reservation.
+     *
+     * @param reservation the token of a reservation, may be null
+     * @param submitter   submits the job it gets, which records its own service time, to the executor service
+     * @throws RejectedExecutionException when there is no room in the queue
+     */
+    public <T> T submit(String reservation, Runnable job, Function<Runnable, T> submitter) {
+        final Long reservationExpiry;
+        synchronized (this) {
+            removeExpiredReservations();
+            // while the job is admitted it takes the place of the reservation
+            reservationExpiry = reservation != null ? reservations.remove(reservation) : null;
+            if (reservationExpiry == null && getAvailable() <= 0) {
+                throw new RejectedExecutionException("Queue is full");
+            }
+            admitting++;
+        }
+        boolean accepted = false;
+        try {
+            final T submitted = submitter.apply(() -> {
+                final long start = System.nanoTime();
+                try {
+                    job.run();
+                } finally {
+                    recordServiceTime((System.nanoTime() - start) / 1e9);
+                }
+            });
+            accepted = true;
+            return submitted;
+        } finally {
+            synchronized (this) {
+                admitting--;
+                if (!accepted && reservationExpiry != null) {
+                    reservations.put(reservation, reservationExpiry);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reserves a place in the queue for {@link #getReservationSeconds()} seconds.
+     *
+     * @return the token of the reservation, empty if the queue is full
+     */
+    public synchronized Optional<String> reserve() {
+        removeExpiredReservations();
+        if (getAvailable() <= 0) {
+            return Optional.empty();
+        }
+        final String token = UUID.randomUUID().toString();
+        reservations.put(token, System.currentTimeMillis() + reservationMillis);
+        return Optional.of(token);
+    }
+
+    public synchronized Capacity getCapacity() {
+        removeExpiredReservations();
+        final int queued = queueSize.getAsInt();
+        return new Capacity(Math.max(0, getAvailable()), queued, reservations.size(), queueLength,
+                estimateSeconds(queued + admitting + reservations.size()), getRetryAfterSeconds());
+    }
+
+    /**
+     * @return the number of seconds until a place in the queue is expected to be free, at least 1
+     */
+    public synchronized long getRetryAfterSeconds() {
+        final int waitingToFree = getOccupied() - queueLength + 1;
+        return Math.max(1, estimateSeconds(Math.max(1, waitingToFree)));
+    }
+
+    public long getReservationSeconds() {
+        return reservationMillis / 1000;
+    }
+
+    synchronized void recordServiceTime(double seconds) {
+        averageServiceSeconds = SERVICE_TIME_WEIGHT * seconds + (1 - SERVICE_TIME_WEIGHT) * averageServiceSeconds;
+    }
+
+    // the seconds it takes the threads to work through the number of jobs
+    private long estimateSeconds(int jobs) {
+        return (long) Math.ceil(averageServiceSeconds * jobs / threads);
+    }
+
+    private int getOccupied() {
+        return queueSize.getAsInt() + admitting + reservations.size();
+    }
+
+    private int getAvailable() {
+        return queueLength - getOccupied();
+    }
+
+    private void removeExpiredReservations() {
+        final long now = System.currentTimeMillis();
+        reservations.values().removeIf(expiry -> expiry < now);
+    }
+
+    public static class Capacity {
+        private final int available;
+        private final int queued;
+        private final int reserved;
+        private final int queueLength;
+        private final long estimatedWaitSeconds;
+        private final long retryAfterSeconds;
+
+        Capacity(int available, int queued, int reserved, int queueLength, long estimatedWaitSeconds,
+                 long retryAfterSeconds) {
+            this.available = available;
+            this.queued = queued;
+            this.reserved = reserved;
+            this.queueLength = queueLength;
+            this.estimatedWaitSeconds = estimatedWaitSeconds;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        @JsonProperty
+        public int getAvailable() {
+            return available;
+        }
+
+        @JsonProperty
+        public int getQueued() {
+            return queued;
+        }
+
+        @JsonProperty
+        public int getReserved() {
+            return reserved;
+        }
+
+        @JsonProperty
+        public int getQueueLength() {
+            return queueLength;
+        }
+
+        /**
+         * @return the estimated number of seconds before a job submitted now starts
+         */
+        @JsonProperty
+        public long getEstimatedWaitSeconds() {
+            return estimatedWaitSeconds;
+        }
+
+        @JsonProperty
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+}
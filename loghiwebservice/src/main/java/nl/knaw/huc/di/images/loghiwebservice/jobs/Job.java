@@ -0,0 +1,211 @@
+package nl.knaw.huc.di.images.loghiwebservice.jobs;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+/**
+ * A minion run scheduled by one of the resources. The state only moves forward:
+ * QUEUED -> RUNNING -> DONE / FAILED, or to CANCELLED before the job is done.
+ */
+public class Job {
+    public enum State {
+        QUEUED,
+        RUNNING,
+        DONE,
+        FAILED,
+        CANCELLED;
+
+        public boolean isFinished() {
+            return this == DONE || this == FAILED || this == CANCELLED;
+        }
+    }
+
+    private final String id;
+    private final String type;
+    private final String identifier;
+    private final String resultLocation;
+    private final Path errorFile;
+    private final long submittedAt;
+    private final CompletableFuture<Job> completion = new CompletableFuture<>();
+    private final CompletableFuture<Job> taskEnd = new CompletableFuture<>();
+    private State state = State.QUEUED;
+    private Long startedAt;
+    private Long finishedAt;
+    private String error;
+    private Future<?> future;
+    private long errorFileModifiedAtStart;
+
+    Job(String id, String type, String identifier, String resultLocation, Path errorFile) {
+        this.id = id;
+        this.type = type;
+        this.identifier = identifier;
+        this.resultLocation = resultLocation;
+        this.errorFile = errorFile;
+        this.submittedAt = System.currentTimeMillis();
+    }
+
+    synchronized void setFuture(Future<?> future) {
+        this.future = future;
+    }
+
+    /**
+     * @return false if the job was cancelled before it started
+     */
+    synchronized boolean start() {
+        if (state != State.QUEUED) {
+            return false;
+        }
+        state = State.RUNNING;
+        startedAt = System.currentTimeMillis();
+        errorFileModifiedAtStart = getErrorFileModified();
+        return true;
+    }
+
+    void finish(Throwable throwable) {
+        synchronized (this) {
+            if (state != State.RUNNING) {
+                return;
+            }
+            finishedAt = System.currentTimeMillis();
+            if (throwable != null) {
+                state = State.FAILED;
+                error = String.valueOf(throwable.getMessage());
+            } else if (getErrorFileModified() != errorFileModifiedAtStart) {
+                // the minions report most of their problems in the error file instead of throwing
+                state = State.FAILED;
+                error = "see " + errorFile;
+            } else {
+                state = State.DONE;
+            }
+        }
+        completion.complete(this);
+    }
+
+    // -1 if there is no error file
+    private long getErrorFileModified() {
+        try {
+            if (errorFile == null || !Files.exists(errorFile)) {
+                return -1;
+            }
+            return Files.getLastModifiedTime(errorFile).toMillis();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * A queued job will not run anymore, a running job is interrupted.
+     *
+     * @return false if the job was already finished
+     */
+    boolean cancel() {
+        final Future<?> futureToCancel;
+        final boolean queued;
+        synchronized (this) {
+            if (state.isFinished()) {
+                return false;
+            }
+            queued = state == State.QUEUED;
+            state = State.CANCELLED;
+            finishedAt = System.currentTimeMillis();
+            futureToCancel = future;
+        }
+        if (futureToCancel != null) {
+            futureToCancel.cancel(true);
+        }
+        completion.complete(this);
+        if (queued) {
+            // the task will not start anymore, a running task ends by itself after the interrupt
+            endTask();
+        }
+        return true;
+    }
+
+    void endTask() {
+        taskEnd.complete(this);
+    }
+
+    /**
+     * Completes when the job is done, failed or cancelled.
+     */
+    @JsonIgnore
+    public CompletableFuture<Job> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * Completes when the task of the job has returned, or when the job is cancelled before its task started. Unlike
+     * the completion this does not happen when a running job is cancelled, so the task can still use its input.
+     */
+    @JsonIgnore
+    public CompletableFuture<Job> getTaskEnd() {
+        return taskEnd;
+    }
+
+    @JsonProperty
+    public String getId() {
+        return id;
+    }
+
+    @JsonProperty
+    public String getType() {
+        return type;
+    }
+
+    @JsonProperty
+    public String getIdentifier() {
+        return identifier;
+    }
+
+    @JsonProperty
+    public String getResultLocation() {
+        return resultLocation;
+    }
+
+    @JsonProperty
+    public synchronized State getState() {
+        return state;
+    }
+
+    @JsonProperty
+    public long getSubmittedAt() {
+        return submittedAt;
+    }
+
+    @JsonProperty
+    public synchronized Long getStartedAt() {
+        return startedAt;
+    }
+
+    @JsonProperty
+    public synchronized Long getFinishedAt() {
+        return finishedAt;
+    }
+
+    @JsonProperty
+    public synchronized Long getQueuedMillis() {
+        if (startedAt != null) {
+            return startedAt - submittedAt;
+        }
+        return finishedAt != null ? finishedAt - submittedAt : null;
+    }
+
+    @JsonProperty
+    public synchronized Long getRunningMillis() {
+        if (startedAt == null || finishedAt == null) {
+            return null;
+        }
+        return finishedAt - startedAt;
+    }
+
+    @JsonProperty
+    public synchronized String getError() {
+        return error;
+    }
+}
@@ -0,0 +1,101 @@
+package nl.knaw.huc.di.images.loghiwebservice.jobs;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Keeps track of the jobs the resources submit to their executor services, so clients can ask for the state of a job
+ * instead of polling the upload location for its output. Finished jobs are forgotten after the retention time.
+ */
+public class JobRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(JobRegistry.class);
+
+    private final ConcurrentHashMap<String, Job> jobs = new ConcurrentHashMap<>();
+    // finished jobs in the order they finished, so expired jobs can be removed from the head
+    private final ConcurrentLinkedQueue<Job> finishedJobs = new ConcurrentLinkedQueue<>();
+    private final long retentionMillis;
+
+    public JobRegistry(long retentionMillis) {
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * @param type           the kind of job, for example the path of the resource
+     * @param identifier     the identifier the client used for the upload
+     * @param resultLocation the file or directory the job writes to
+     * @param errorFile      the file the minion writes its errors to, may be null
+     * @throws RejectedExecutionException when the queue of the executor service is full
+     */
+    public Job submit(String type, String identifier, String resultLocation, Path errorFile,
+                      ExecutorService executorService, Runnable runnable) {
+        removeExpiredJobs();
+        final Job job = new Job(UUID.randomUUID().toString(), type, identifier, resultLocation, errorFile);
+        jobs.put(job.getId(), job);
+        job.getCompletion().thenRun(() -> finishedJobs.add(job));
+        try {
+            final Future<?> future = executorService.submit(() -> run(job, runnable));
+            job.setFuture(future);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+        return job;
+    }
+
+    private static void run(Job job, Runnable runnable) {
+        if (!job.start()) {
+            job.endTask();
+            return;
+        }
+        Throwable failure = null;
+        try {
+            runnable.run();
+        } catch (Throwable throwable) {
+            LOG.error("Job {} for {} failed", job.getId(), job.getIdentifier(), throwable);
+            failure = throwable;
+        } finally {
+            job.finish(failure);
+            job.endTask();
+        }
+    }
+
+    public Optional<Job> get(String id) {
+        return Optional.ofNullable(jobs.get(id));
+    }
+
+    /**
+     * Cancels the job if it is not finished yet, and forgets it.
+     *
+     * @return the job as it was after cancelling
+     */
+    public Optional<Job> cancel(String id) {
+        final Job job = jobs.remove(id);
+        if (job == null) {
+            return Optional.empty();
+        }
+        job.cancel();
+        return Optional.of(job);
+    }
+
+    public int size() {
+        return jobs.size();
+    }
+
+    synchronized void removeExpiredJobs() {
+        final long expiredBefore = System.currentTimeMillis() - retentionMillis;
+        Job job;
+        while ((job = finishedJobs.peek()) != null && job.getFinishedAt() < expiredBefore) {
+            finishedJobs.poll();
+            jobs.remove(job.getId());
+        }
+    }
+}
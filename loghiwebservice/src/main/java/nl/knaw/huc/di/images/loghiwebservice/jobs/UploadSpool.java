@@ -0,0 +1,196 @@
+package nl.knaw.huc.di.images.loghiwebservice.jobs;
+
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds the uploads of queued jobs until the jobs run. Uploads are kept in memory as long as all uploads in memory
+ * together stay within the memory budget, the rest is written to files, so a full queue does not pin the heap.
+ * Images are decoded when the job asks for them, from a memory mapped file for uploads on disk.
+ */
+public class UploadSpool {
+    private static final Logger LOG = LoggerFactory.getLogger(UploadSpool.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path directory;
+    private final long memoryBudgetBytes;
+    private final AtomicLong bytesInMemory = new AtomicLong();
+    private final AtomicLong bytesOnDisk = new AtomicLong();
+
+    /**
+     * @param directory         where the uploads that do not fit in memory are written
+     * @param memoryBudgetBytes the number of bytes all uploads together may keep in memory, 0 writes every upload to a file
+     */
+    public UploadSpool(Path directory, long memoryBudgetBytes) {
+        this.directory = directory;
+        this.memoryBudgetBytes = memoryBudgetBytes;
+    }
+
+    public Upload spool(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        long reservedBytes = 0;
+        Path file = null;
+        OutputStream fileOutputStream = null;
+        try {
+            final byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                if (file == null && reserveMemory(read)) {
+                    memory.write(buffer, 0, read);
+                    reservedBytes += read;
+                    continue;
+                }
+                if (file == null) {
+                    Files.createDirectories(directory);
+                    file = Files.createTempFile(directory, "upload", ".spool");
+                    fileOutputStream = Files.newOutputStream(file);
+                    memory.writeTo(fileOutputStream);
+                    memory = null;
+                    bytesInMemory.addAndGet(-reservedBytes);
+                    reservedBytes = 0;
+                }
+                fileOutputStream.write(buffer, 0, read);
+            }
+        } catch (IOException | RuntimeException e) {
+            bytesInMemory.addAndGet(-reservedBytes);
+            if (fileOutputStream != null) {
+                fileOutputStream.close();
+            }
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+            throw e;
+        }
+        if (file == null) {
+            return new Upload(memory.toByteArray(), null, reservedBytes);
+        }
+        fileOutputStream.close();
+        final long size = Files.size(file);
+        bytesOnDisk.addAndGet(size);
+        return new Upload(null, file, size);
+    }
+
+    private boolean reserveMemory(int bytes) {
+        while (true) {
+            final long current = bytesInMemory.get();
+            if (current + bytes > memoryBudgetBytes) {
+                return false;
+            }
+            if (bytesInMemory.compareAndSet(current, current + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    public static void release(Upload... uploads) {
+        release(Arrays.asList(uploads));
+    }
+
+    public static void release(Collection<Upload> uploads) {
+        for (Upload upload : uploads) {
+            upload.release();
+        }
+    }
+
+    public long getBytesInMemory() {
+        return bytesInMemory.get();
+    }
+
+    public long getBytesOnDisk() {
+        return bytesOnDisk.get();
+    }
+
+    public class Upload {
+        private byte[] bytes;
+        private final Path file;
+        private final long size;
+        private boolean released;
+
+        private Upload(byte[] bytes, Path file, long size) {
+            this.bytes = bytes;
+            this.file = file;
+            this.size = size;
+        }
+
+        public boolean isOnDisk() {
+            return file != null;
+        }
+
+        /**
+         * @param flags the Imgcodecs.IMREAD_* flags
+         */
+        public synchronized Mat decode(int flags) {
+            checkNotReleased();
+            if (file == null) {
+                return Imgcodecs.imdecode(new MatOfByte(bytes), flags);
+            }
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                final Mat encoded = new Mat(1, (int) channel.size(), CvType.CV_8UC1, mapped);
+                final Mat decoded = Imgcodecs.imdecode(encoded, flags);
+                encoded.release();
+                return decoded;
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read spooled upload " + file, e);
+            }
+        }
+
+        public synchronized String asString(Charset charset) {
+            checkNotReleased();
+            if (file == null) {
+                return new String(bytes, charset);
+            }
+            try {
+                return Files.readString(file, charset);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read spooled upload " + file, e);
+            }
+        }
+
+        /**
+         * Frees the memory or deletes the file of the upload. Releasing it again does nothing.
+         */
+        public synchronized void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            if (file == null) {
+                bytes = null;
+                bytesInMemory.addAndGet(-size);
+                return;
+            }
+            bytesOnDisk.addAndGet(-size);
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                LOG.warn("Could not delete spooled upload {}", file, e);
+            }
+        }
+
+        private void checkNotReleased() {
+            if (released) {
+                throw new IllegalStateException("Upload has been released");
+            }
+        }
+    }
+}
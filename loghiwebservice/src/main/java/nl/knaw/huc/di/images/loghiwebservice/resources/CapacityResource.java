@@ -0,0 +1,62 @@
+package nl.knaw.huc.di.images.loghiwebservice.resources;
+
+import nl.knaw.huc.di.images.loghiwebservice.jobs.AdmissionControl;
+
+import javax.annotation.security.PermitAll;
+import javax.ws.rs.GET;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Optional;
+
+/**
+ * The capacity of one of the upload resources, available as "capacity" below the path of the resource. Clients can
+ * check it (HEAD is enough, the numbers are in the headers as well) or reserve a place before they upload.
+ */
+@Produces(MediaType.APPLICATION_JSON)
+public class CapacityResource {
+    public static final String RESERVATION_HEADER = "X-Reservation-Token";
+    private static final String AVAILABLE_HEADER = "X-Capacity-Available";
+
+    private final AdmissionControl admissionControl;
+
+    public CapacityResource(AdmissionControl admissionControl) {
+        this.admissionControl = admissionControl;
+    }
+
+    @PermitAll
+    @GET
+    public Response getCapacity() {
+        final AdmissionControl.Capacity capacity = admissionControl.getCapacity();
+        final Response.ResponseBuilder response = Response.ok(capacity)
+                .header(AVAILABLE_HEADER, capacity.getAvailable());
+        if (capacity.getAvailable() == 0) {
+            response.header("Retry-After", capacity.getRetryAfterSeconds());
+        }
+        return response.build();
+    }
+
+    /**
+     * Reserves a place in the queue. Send the token in the X-Reservation-Token header of the upload.
+     */
+    @PermitAll
+    @POST
+    @Path("reservations")
+    public Response reserve() {
+        final Optional<String> token = admissionControl.reserve();
+        if (token.isEmpty()) {
+            return tooManyRequests(admissionControl);
+        }
+        return Response.ok("{\"token\": \"" + token.get() + "\", \"expiresInSeconds\": "
+                + admissionControl.getReservationSeconds() + "}").build();
+    }
+
+    private static Response tooManyRequests(AdmissionControl admissionControl) {
+        return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                .header("Retry-After", admissionControl.getRetryAfterSeconds())
+                .entity("{\"message\":\"Queue is full\"}")
+                .build();
+    }
+}
@@ -3,21 +3,24 @@ package nl.knaw.huc.di.images.loghiwebservice.resources;
 import com.codahale.metrics.annotation.Timed;
 import nl.knaw.huc.di.images.layoutanalyzer.layoutlib.LayoutProc;
 import nl.knaw.huc.di.images.layoutds.models.Page.PcGts;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.AdmissionControl;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.Job;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.JobRegistry;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.UploadSpool;
 import nl.knaw.huc.di.images.minions.MinionCutFromImageBasedOnPageXMLNew;
 import nl.knaw.huc.di.images.pagexmlutils.PageUtils;
 import nl.knaw.huc.di.images.pipelineutils.ErrorFileWriter;
-import org.apache.commons.io.IOUtils;
 import org.glassfish.jersey.media.multipart.FormDataBodyPart;
 import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
 import org.glassfish.jersey.media.multipart.FormDataMultiPart;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.security.PermitAll;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.core.MediaType;
@@ -26,6 +29,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -44,21 +48,34 @@ public class CutFromImageBasedOnPageXMLNewResource {
     private final Supplier<String> queueUsageStatusSupplier;
     private final StringBuffer minionErrorLog;
     private final ErrorFileWriter errorFileWriter;
+    private final JobRegistry jobRegistry;
+    private final AdmissionControl admissionControl;
+    private final UploadSpool uploadSpool;
+    private final CapacityResource capacityResource;
 
-    public CutFromImageBasedOnPageXMLNewResource(ExecutorService cutFromImageExecutorService, String uploadLocation, Supplier<String> queueUsageStatusSupplier) {
+    public CutFromImageBasedOnPageXMLNewResource(ExecutorService cutFromImageExecutorService, String uploadLocation, Supplier<String> queueUsageStatusSupplier, JobRegistry jobRegistry, AdmissionControl admissionControl, UploadSpool uploadSpool) {
 
         this.cutFromImageExecutorService = cutFromImageExecutorService;
         this.uploadLocation = uploadLocation;
         this.queueUsageStatusSupplier = queueUsageStatusSupplier;
+        this.jobRegistry = jobRegistry;
+        this.admissionControl = admissionControl;
+        this.uploadSpool = uploadSpool;
+        this.capacityResource = new CapacityResource(admissionControl);
         this.minionErrorLog = new StringBuffer();
         errorFileWriter = new ErrorFileWriter(uploadLocation);
     }
 
+    @Path("capacity")
+    public CapacityResource getCapacityResource() {
+        return capacityResource;
+    }
+
     @PermitAll
     @POST
     @Timed
     @Consumes(MediaType.MULTIPART_FORM_DATA)
-    public Response schedule(FormDataMultiPart multiPart) {
+    public Response schedule(FormDataMultiPart multiPart, @HeaderParam(CapacityResource.RESERVATION_HEADER) String reservation) {
         if (minionErrorLog.length() > 0) {
             return Response.serverError().entity("Minion is failing: " + minionErrorLog).build();
         }
@@ -90,68 +107,93 @@ public class CutFromImageBasedOnPageXMLNewResource {
         InputStream maskInputStream = maskUpload.getValueAs(InputStream.class);
         FormDataContentDisposition maskContentDispositionHeader = maskUpload.getFormDataContentDisposition();
         String imageFile = maskContentDispositionHeader.getFileName();
-        final byte[] array;
-        try {
-            array = IOUtils.toByteArray(maskInputStream);
-        } catch (IOException e) {
-            LOG.error("Could not read image for {}", maskUpload.getName(), e);
-            errorFileWriter.write(identifier, e, "Could not read image.");
-            return Response.serverError().entity("{\"message\":\"Could not read image\"}").build();
-        }
-        Supplier<Mat> imageSupplier = () -> Imgcodecs.imdecode(new MatOfByte(array), Imgcodecs.IMREAD_COLOR);
-
-        FormDataBodyPart xmlUpload = multiPart.getField("page");
-        InputStream xmlInputStream = xmlUpload.getValueAs(InputStream.class);
-        FormDataContentDisposition xmlContentDispositionHeader = xmlUpload.getFormDataContentDisposition();
-        String pageFile = xmlContentDispositionHeader.getFileName();
-
-        final String xml_string;
+        // the spooled uploads are released here until the job has taken them over
+        final List<UploadSpool.Upload> spooled = new ArrayList<>();
+        boolean handedOver = false;
         try {
-            xml_string = IOUtils.toString(xmlInputStream, StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            LOG.error("Could not read page xml for image {}", maskUpload.getName(), e);
-            errorFileWriter.write(identifier, e, "Could not read page xml for image.");
-            return Response.serverError().entity("{\"message\":\"Could not read page xml\"}").build();
+            final UploadSpool.Upload image;
+            try {
+                image = uploadSpool.spool(maskInputStream);
+            } catch (IOException e) {
+                LOG.error("Could not read image for {}", maskUpload.getName(), e);
+                errorFileWriter.write(identifier, e, "Could not read image.");
+                return Response.serverError().entity("{\"message\":\"Could not read image\"}").build();
+            }
+            spooled.add(image);
+            Supplier<Mat> imageSupplier = () -> image.decode(Imgcodecs.IMREAD_COLOR);
+
+            FormDataBodyPart xmlUpload = multiPart.getField("page");
+            InputStream xmlInputStream = xmlUpload.getValueAs(InputStream.class);
+            FormDataContentDisposition xmlContentDispositionHeader = xmlUpload.getFormDataContentDisposition();
+            String pageFile = xmlContentDispositionHeader.getFileName();
+
+            final UploadSpool.Upload xml;
+            try {
+                xml = uploadSpool.spool(xmlInputStream);
+            } catch (IOException e) {
+                LOG.error("Could not read page xml for image {}", maskUpload.getName(), e);
+                errorFileWriter.write(identifier, e, "Could not read page xml for image.");
+                return Response.serverError().entity("{\"message\":\"Could not read page xml\"}").build();
+            }
+            spooled.add(xml);
+
+            Supplier<PcGts> pageSupplier = () -> PageUtils.readPageFromString(xml.asString(StandardCharsets.UTF_8));
+            final String outputBase = Paths.get(uploadLocation, identifier).toAbsolutePath().toString();
+            final String outputType = multiPart.getField("output_type").getValue();
+            final int channels = multiPart.getField("channels").getValueAs(Integer.class);
+            final boolean overwriteExistingPage = false;
+
+            final int minWidth = getFieldOrDefaultValue(Integer.class, multiPart, fields, "min_width", 5);
+            final int minHeight = getFieldOrDefaultValue(Integer.class, multiPart, fields, "min_height", 5);
+            final int minWidthToHeight = getFieldOrDefaultValue(Integer.class, multiPart, fields, "min_width_to_height_ratio", 0);
+            final boolean writeTextContents = getFieldOrDefaultValue(Boolean.class, multiPart, fields, "write_text_contents", false);
+            final Integer rescaleHeight = getFieldOrDefaultValue(Integer.class, multiPart, fields, "rescale_height", null);
+            final boolean outputConfFile = getFieldOrDefaultValue(Boolean.class, multiPart, fields, "output_conf_file", false);
+            final boolean outputBoxFile = getFieldOrDefaultValue(Boolean.class, multiPart, fields, "output_box_file", true);
+            final boolean outputTxtFile = getFieldOrDefaultValue(Boolean.class, multiPart, fields, "output_txt_file", true);
+            final boolean recalculateTextLineContoursFromBaselines = getFieldOrDefaultValue(Boolean.class, multiPart, fields, "recalculate_text_line_contours_from_baselines", true);
+            final Integer fixedXHeight = getFieldOrDefaultValue(Integer.class, multiPart, fields, "fixed_x_height", null);
+            final int minimumXHeight = getFieldOrDefaultValue(Integer.class, multiPart, fields, "min_x_height", LayoutProc.MINIMUM_XHEIGHT);
+            final boolean includeTextStyles = getFieldOrDefaultValue(Boolean.class, multiPart, fields, "include_text_styles", false);
+            final int minimumInterlineDistance = 35;
+            final boolean useTags = getFieldOrDefaultValue(Boolean.class, multiPart, fields, "use_tags", false);
+
+            final MinionCutFromImageBasedOnPageXMLNew job = new MinionCutFromImageBasedOnPageXMLNew(
+                    identifier, imageSupplier, pageSupplier, outputBase, imageFile, overwriteExistingPage, minWidth,
+                    minHeight, minWidthToHeight, outputType, channels, writeTextContents, rescaleHeight, outputConfFile,
+                    outputBoxFile, outputTxtFile, recalculateTextLineContoursFromBaselines, fixedXHeight, minimumXHeight,
+                    false, false, false, error -> minionErrorLog.append(error).append("\n"), includeTextStyles, useTags,
+                    false, null,minimumInterlineDistance,
+                    MinionCutFromImageBasedOnPageXMLNew.DEFAULT_PNG_COMPRESSION_LEVEL,
+                    Optional.of(errorFileWriter));
+            // the minion logs its problems instead of throwing them, the job has to fail nonetheless
+            final Runnable task = () -> {
+                job.run();
+                if (job.isFailed()) {
+                    throw new IllegalStateException("Could not cut the text lines of " + identifier);
+                }
+            };
+            final Job submittedJob;
+            try {
+                submittedJob = admissionControl.submit(reservation, task, timedJob -> jobRegistry.submit("cut-from-image-based-on-page-xml-new", identifier, outputBase,
+                        Paths.get(uploadLocation, identifier + ".error"), cutFromImageExecutorService, timedJob));
+            } catch (RejectedExecutionException e) {
+                return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                        .header("Retry-After", admissionControl.getRetryAfterSeconds()).entity("{\"message\":\" cutFromImageExecutorServiceQueue is full\"}").build();
+            }
+
+            submittedJob.getTaskEnd().thenRun(() -> UploadSpool.release(image, xml));
+            handedOver = true;
+
+            String output = "{\"jobId\": \"" + submittedJob.getId() + "\", " +
+                    "\"filesUploaded\": [\"" + imageFile + "\", \"" + pageFile + "\"]," +
+                    "\"queueStatus\": "+ queueUsageStatusSupplier.get() + "}";
+            return Response.ok(output).build();
+        } finally {
+            if (!handedOver) {
+                UploadSpool.release(spooled);
+            }
         }
-
-        Supplier<PcGts> pageSupplier = () -> PageUtils.readPageFromString(xml_string);
-        final String outputBase = Paths.get(uploadLocation, identifier).toAbsolutePath().toString();
-        final String outputType = multiPart.getField("output_type").getValue();
-        final int channels = multiPart.getField("channels").getValueAs(Integer.class);
-        final boolean overwriteExistingPage = false;
-
-        final int minWidth = getFieldOrDefaultValue(Integer.class, multiPart, fields, "min_width", 5);
-        final int minHeight = getFieldOrDefaultValue(Integer.class, multiPart, fields, "min_height", 5);
-        final int minWidthToHeight = getFieldOrDefaultValue(Integer.class, multiPart, fields, "min_width_to_height_ratio", 0);
-        final boolean writeTextContents = getFieldOrDefaultValue(Boolean.class, multiPart, fields, "write_text_contents", false);
-        final Integer rescaleHeight = getFieldOrDefaultValue(Integer.class, multiPart, fields, "rescale_height", null);
-        final boolean outputConfFile = getFieldOrDefaultValue(Boolean.class, multiPart, fields, "output_conf_file", false);
-        final boolean outputBoxFile = getFieldOrDefaultValue(Boolean.class, multiPart, fields, "output_box_file", true);
-        final boolean outputTxtFile = getFieldOrDefaultValue(Boolean.class, multiPart, fields, "output_txt_file", true);
-        final boolean recalculateTextLineContoursFromBaselines = getFieldOrDefaultValue(Boolean.class, multiPart, fields, "recalculate_text_line_contours_from_baselines", true);
-        final Integer fixedXHeight = getFieldOrDefaultValue(Integer.class, multiPart, fields, "fixed_x_height", null);
-        final int minimumXHeight = getFieldOrDefaultValue(Integer.class, multiPart, fields, "min_x_height", LayoutProc.MINIMUM_XHEIGHT);
-        final boolean includeTextStyles = getFieldOrDefaultValue(Boolean.class, multiPart, fields, "include_text_styles", false);
-        final int minimumInterlineDistance = 35;
-        final boolean useTags = getFieldOrDefaultValue(Boolean.class, multiPart, fields, "use_tags", false);
-
-        final MinionCutFromImageBasedOnPageXMLNew job = new MinionCutFromImageBasedOnPageXMLNew(
-                identifier, imageSupplier, pageSupplier, outputBase, imageFile, overwriteExistingPage, minWidth,
-                minHeight, minWidthToHeight, outputType, channels, writeTextContents, rescaleHeight, outputConfFile,
-                outputBoxFile, outputTxtFile, recalculateTextLineContoursFromBaselines, fixedXHeight, minimumXHeight,
-                false, false, false, error -> minionErrorLog.append(error).append("\n"), includeTextStyles, useTags,
-                false, null,minimumInterlineDistance,
-                MinionCutFromImageBasedOnPageXMLNew.DEFAULT_PNG_COMPRESSION_LEVEL,
-                Optional.empty());
-        try {
-            cutFromImageExecutorService.execute(job);
-        } catch (RejectedExecutionException e) {
-            return Response.status(Response.Status.TOO_MANY_REQUESTS).entity("{\"message\":\" cutFromImageExecutorServiceQueue is full\"}").build();
-        }
-
-        String output = "{\"filesUploaded\": [\"" + imageFile + "\", \"" + pageFile + "\"]," +
-                "\"queueStatus\": "+ queueUsageStatusSupplier.get() + "}";
-        return Response.ok(output).build();
     }
 
     private Response missingFieldResponse(String output_type) {
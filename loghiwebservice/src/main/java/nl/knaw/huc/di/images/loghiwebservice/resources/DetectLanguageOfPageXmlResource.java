@@ -1,6 +1,9 @@
 package nl.knaw.huc.di.images.loghiwebservice.resources;
 
 import nl.knaw.huc.di.images.layoutds.models.Page.PcGts;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.AdmissionControl;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.Job;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.JobRegistry;
 import nl.knaw.huc.di.images.minions.MinionDetectLanguageOfPageXml;
 import nl.knaw.huc.di.images.pagexmlutils.PageUtils;
 import nl.knaw.huc.di.images.pipelineutils.ErrorFileWriter;
@@ -15,6 +18,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.security.PermitAll;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.core.MediaType;
@@ -42,20 +46,31 @@ public class DetectLanguageOfPageXmlResource {
     private final Supplier<String> queueUsageStatusSupplier;
     private final ErrorFileWriter errorFileWriter;
     private final StringBuilder errorLog;
+    private final JobRegistry jobRegistry;
+    private final AdmissionControl admissionControl;
+    private final CapacityResource capacityResource;
 
-    public DetectLanguageOfPageXmlResource(String uploadLocation, ExecutorService executorService, Supplier<String> queueUsageStatusSupplier) {
+    public DetectLanguageOfPageXmlResource(String uploadLocation, ExecutorService executorService, Supplier<String> queueUsageStatusSupplier, JobRegistry jobRegistry, AdmissionControl admissionControl) {
 
         this.uploadLocation = uploadLocation;
         this.executorService = executorService;
         this.queueUsageStatusSupplier = queueUsageStatusSupplier;
+        this.jobRegistry = jobRegistry;
+        this.admissionControl = admissionControl;
+        this.capacityResource = new CapacityResource(admissionControl);
         this.errorLog = new StringBuilder();
         errorFileWriter = new ErrorFileWriter(uploadLocation);
     }
 
+    @Path("capacity")
+    public CapacityResource getCapacityResource() {
+        return capacityResource;
+    }
+
     @PermitAll
     @POST
     @Consumes(MediaType.MULTIPART_FORM_DATA)
-    public Response schedule(FormDataMultiPart form) {
+    public Response schedule(FormDataMultiPart form, @HeaderParam(CapacityResource.RESERVATION_HEADER) String reservation) {
         final Map<String, List<FormDataBodyPart>> fields = form.getFields();
 
         if (!fields.containsKey("identifier")) {
@@ -138,13 +153,18 @@ public class DetectLanguageOfPageXmlResource {
         };
 
         final MinionDetectLanguageOfPageXml job = new MinionDetectLanguageOfPageXml(identifier, pageSupplier, pageSaver, model);
+        final Job submittedJob;
         try {
-            executorService.execute(job);
+            submittedJob = admissionControl.submit(reservation, job, timedJob -> jobRegistry.submit("detect-language-of-page-xml", identifier,
+                    Paths.get(uploadLocation, identifier, pageFile).toAbsolutePath().toString(),
+                    Paths.get(uploadLocation, identifier + ".error"), executorService, timedJob));
         } catch (RejectedExecutionException e) {
-            return Response.status(Response.Status.TOO_MANY_REQUESTS).entity("{\"message\":\"LoghiHTRMergePageXMLResource queue is full\"}").build();
+            return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                    .header("Retry-After", admissionControl.getRetryAfterSeconds()).entity("{\"message\":\"LoghiHTRMergePageXMLResource queue is full\"}").build();
         }
 
-        return Response.ok("{\"queueStatus\": "+ queueUsageStatusSupplier.get() + "}").build();
+        return Response.ok("{\"jobId\": \"" + submittedJob.getId() + "\", " +
+                "\"queueStatus\": "+ queueUsageStatusSupplier.get() + "}").build();
     }
 
     private Response missingFieldResponse(String field) {
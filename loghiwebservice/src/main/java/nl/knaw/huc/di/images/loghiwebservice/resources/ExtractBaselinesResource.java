@@ -4,22 +4,25 @@ import com.codahale.metrics.annotation.Timed;
 import nl.knaw.huc.di.images.layoutds.models.LaypaConfig;
 import nl.knaw.huc.di.images.layoutds.models.P2PaLAConfig;
 import nl.knaw.huc.di.images.layoutds.models.Page.PcGts;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.AdmissionControl;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.Job;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.JobRegistry;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.UploadSpool;
 import nl.knaw.huc.di.images.minions.MinionExtractBaselines;
 import nl.knaw.huc.di.images.pagexmlutils.PageUtils;
 import nl.knaw.huc.di.images.pipelineutils.ErrorFileWriter;
-import org.apache.commons.io.IOUtils;
 import org.glassfish.jersey.media.multipart.FormDataBodyPart;
 import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
 import org.glassfish.jersey.media.multipart.FormDataMultiPart;
 import org.json.simple.parser.ParseException;
 import org.opencv.core.Mat;
-import org.opencv.core.MatOfByte;
 import org.opencv.imgcodecs.Imgcodecs;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.security.PermitAll;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
@@ -48,26 +51,39 @@ public class ExtractBaselinesResource {
     private final String laypaConfigFile;
     private final Supplier<String> queueUsageStatusSupplier;
     private final ErrorFileWriter errorFileWriter;
+    private final JobRegistry jobRegistry;
+    private final AdmissionControl admissionControl;
+    private final UploadSpool uploadSpool;
+    private final CapacityResource capacityResource;
 
     private final int margin = 50;
     private final ExecutorService executorService;
 
-    public ExtractBaselinesResource(ExecutorService executorService, String serverUploadLocationFolder, String p2palaConfigFile, String laypaConfigFile, Supplier<String> queueUsageStatusSupplier) {
+    public ExtractBaselinesResource(ExecutorService executorService, String serverUploadLocationFolder, String p2palaConfigFile, String laypaConfigFile, Supplier<String> queueUsageStatusSupplier, JobRegistry jobRegistry, AdmissionControl admissionControl, UploadSpool uploadSpool) {
         this.p2palaConfigFile = p2palaConfigFile;
         this.laypaConfigFile = laypaConfigFile;
         this.queueUsageStatusSupplier = queueUsageStatusSupplier;
         this.serverUploadLocationFolder = serverUploadLocationFolder;
         this.executorService = executorService;
+        this.jobRegistry = jobRegistry;
+        this.admissionControl = admissionControl;
+        this.uploadSpool = uploadSpool;
+        this.capacityResource = new CapacityResource(admissionControl);
         this.minionErrorLog = new StringBuffer();
         errorFileWriter = new ErrorFileWriter(serverUploadLocationFolder);
     }
 
 
+    @Path("capacity")
+    public CapacityResource getCapacityResource() {
+        return capacityResource;
+    }
+
     @PermitAll
     @POST
     @Timed
     @Consumes(MediaType.MULTIPART_FORM_DATA)
-    public Response uploadFile(FormDataMultiPart multiPart) {
+    public Response uploadFile(FormDataMultiPart multiPart, @HeaderParam(CapacityResource.RESERVATION_HEADER) String reservation) {
         if (minionErrorLog.length() > 0) {
             return Response.serverError().entity("Minion is failing: " + minionErrorLog).build();
         }
@@ -114,96 +130,115 @@ public class ExtractBaselinesResource {
         FormDataContentDisposition maskContentDispositionHeader = maskUpload.getFormDataContentDisposition();
         String maskFile = maskContentDispositionHeader.getFileName();
 
-        final byte[] imageArray;
-        try {
-            imageArray = IOUtils.toByteArray(imageInputStream);
-        } catch (IOException e) {
-            return Response.serverError().entity("{\"message\":\"Could not read image\"}").build();
-        }
-
-        final byte[] maskArray;
+        // the spooled uploads are released here until the job has taken them over
+        final List<UploadSpool.Upload> spooled = new ArrayList<>();
+        boolean handedOver = false;
         try {
-            maskArray = IOUtils.toByteArray(maskInputStream);
-        } catch (IOException e) {
-            return Response.serverError().entity("{\"message\":\"Could not read mask\"}").build();
-        }
-        Supplier<Mat> imageSupplier = () -> Imgcodecs.imdecode(new MatOfByte(imageArray), Imgcodecs.IMREAD_COLOR);
-
-        Supplier<Mat> baseLineImageSupplier = () -> Imgcodecs.imdecode(new MatOfByte(maskArray), Imgcodecs.IMREAD_GRAYSCALE);
-
-
-        FormDataBodyPart xmlUpload = multiPart.getField("xml");
-        InputStream xmlInputStream = xmlUpload.getValueAs(InputStream.class);
-        FormDataContentDisposition xmlContentDispositionHeader = xmlUpload.getFormDataContentDisposition();
-        String xmlFile = xmlContentDispositionHeader.getFileName();
-
-        final String xml_string;
-        final String identifier = multiPart.getField("identifier").getValue();
-        try {
-            xml_string = IOUtils.toString(xmlInputStream, StandardCharsets.UTF_8);
-        } catch (IOException e) {
-            errorFileWriter.write(identifier, e, "Could not read page xml");
-            return Response.serverError().entity("{\"message\":\"Could not read page xml\"}").build();
-        }
+            final UploadSpool.Upload image;
+            try {
+                image = uploadSpool.spool(imageInputStream);
+            } catch (IOException e) {
+                return Response.serverError().entity("{\"message\":\"Could not read image\"}").build();
+            }
+            spooled.add(image);
 
-        Supplier<PcGts> pageSupplier = () -> PageUtils.readPageFromString(xml_string);
+            final UploadSpool.Upload mask;
+            try {
+                mask = uploadSpool.spool(maskInputStream);
+            } catch (IOException e) {
+                return Response.serverError().entity("{\"message\":\"Could not read mask\"}").build();
+            }
+            spooled.add(mask);
+            Supplier<Mat> imageSupplier = () -> image.decode(Imgcodecs.IMREAD_COLOR);
 
-        int threshold = 32;
-        final String outputFile = Paths.get(serverUploadLocationFolder, identifier, xmlFile).toAbsolutePath().toString();
-        final boolean invertImage = fields.containsKey("invertImage") && multiPart.getField("invertImage").getValue().equals("true");
-        final boolean addLaypaMetadata = fields.containsKey("addLaypaMetadata") && multiPart.getField("addLaypaMetadata").getValue().equals("true");
-        final boolean splitBaselines = fields.containsKey("splitBaselines") && multiPart.getField("splitBaselines").getValue().equals("true");
-        LaypaConfig laypaConfig = null;
+            Supplier<Mat> baseLineImageSupplier = () -> mask.decode(Imgcodecs.IMREAD_GRAYSCALE);
 
-        final List<String> whiteList;
-        if (fields.containsKey("config_white_list")) {
-            whiteList = fields.get("config_white_list").stream().map(FormDataBodyPart::getValue).collect(Collectors.toList());
-        } else {
-            whiteList = new ArrayList<>();
-        }
 
+            FormDataBodyPart xmlUpload = multiPart.getField("xml");
+            InputStream xmlInputStream = xmlUpload.getValueAs(InputStream.class);
+            FormDataContentDisposition xmlContentDispositionHeader = xmlUpload.getFormDataContentDisposition();
+            String xmlFile = xmlContentDispositionHeader.getFileName();
 
-        P2PaLAConfig p2palaconfig = null;
-        if (invertImage) {
+            final UploadSpool.Upload xml;
+            final String identifier = multiPart.getField("identifier").getValue();
             try {
-                if (fields.containsKey("p2pala_config")) {
-                    final InputStream p2palaConfigInputStream = multiPart.getField("p2pala_config").getValueAs(InputStream.class);
-                    p2palaconfig = MinionExtractBaselines.readP2PaLAConfigFile(p2palaConfigInputStream, whiteList);
-
-                } else {
-                    p2palaconfig = MinionExtractBaselines.readP2PaLAConfigFile(p2palaConfigFile, whiteList);
-                }
-            } catch (IOException | ParseException e) {
-                LOGGER.error("Could not read p2palaConfig");
+                xml = uploadSpool.spool(xmlInputStream);
+            } catch (IOException e) {
+                errorFileWriter.write(identifier, e, "Could not read page xml");
+                return Response.serverError().entity("{\"message\":\"Could not read page xml\"}").build();
             }
-        } else {
-            if (addLaypaMetadata) {
+            spooled.add(xml);
+
+            Supplier<PcGts> pageSupplier = () -> PageUtils.readPageFromString(xml.asString(StandardCharsets.UTF_8));
+
+            int threshold = 32;
+            final String outputFile = Paths.get(serverUploadLocationFolder, identifier, xmlFile).toAbsolutePath().toString();
+            final boolean invertImage = fields.containsKey("invertImage") && multiPart.getField("invertImage").getValue().equals("true");
+            final boolean addLaypaMetadata = fields.containsKey("addLaypaMetadata") && multiPart.getField("addLaypaMetadata").getValue().equals("true");
+            final boolean splitBaselines = fields.containsKey("splitBaselines") && multiPart.getField("splitBaselines").getValue().equals("true");
+            LaypaConfig laypaConfig = null;
+
+            final List<String> whiteList;
+            if (fields.containsKey("config_white_list")) {
+                whiteList = fields.get("config_white_list").stream().map(FormDataBodyPart::getValue).collect(Collectors.toList());
+            } else {
+                whiteList = new ArrayList<>();
+            }
+
+
+            P2PaLAConfig p2palaconfig = null;
+            if (invertImage) {
                 try {
-                    if (fields.containsKey("laypa_config")) {
-                        final InputStream laypaConfigInputStream = multiPart.getField("laypa_config").getValueAs(InputStream.class);
-                        laypaConfig = MinionExtractBaselines.readLaypaConfigFile(laypaConfigInputStream, whiteList);
+                    if (fields.containsKey("p2pala_config")) {
+                        final InputStream p2palaConfigInputStream = multiPart.getField("p2pala_config").getValueAs(InputStream.class);
+                        p2palaconfig = MinionExtractBaselines.readP2PaLAConfigFile(p2palaConfigInputStream, whiteList);
+
                     } else {
-                        laypaConfig = MinionExtractBaselines.readLaypaConfigFile(laypaConfigFile, whiteList);
+                        p2palaconfig = MinionExtractBaselines.readP2PaLAConfigFile(p2palaConfigFile, whiteList);
                     }
                 } catch (IOException | ParseException e) {
-                    LOGGER.error("Could not read laypaConfigFile");
+                    LOGGER.error("Could not read p2palaConfig");
+                }
+            } else {
+                if (addLaypaMetadata) {
+                    try {
+                        if (fields.containsKey("laypa_config")) {
+                            final InputStream laypaConfigInputStream = multiPart.getField("laypa_config").getValueAs(InputStream.class);
+                            laypaConfig = MinionExtractBaselines.readLaypaConfigFile(laypaConfigInputStream, whiteList);
+                        } else {
+                            laypaConfig = MinionExtractBaselines.readLaypaConfigFile(laypaConfigFile, whiteList);
+                        }
+                    } catch (IOException | ParseException e) {
+                        LOGGER.error("Could not read laypaConfigFile");
+                    }
                 }
             }
-        }
-        Runnable job = new MinionExtractBaselines(identifier, pageSupplier, imageSupplier, outputFile,
-                true, p2palaconfig, laypaConfig,  baseLineImageSupplier, margin, invertImage,
-                error -> minionErrorLog.append(error).append("\n"),
-                threshold, reorderRegionsList, namespace, recalculateTextLineContoursFromBaselines,
-                Optional.of(errorFileWriter), splitBaselines);
+            Runnable job = new MinionExtractBaselines(identifier, pageSupplier, imageSupplier, outputFile,
+                    true, p2palaconfig, laypaConfig,  baseLineImageSupplier, margin, invertImage,
+                    error -> minionErrorLog.append(error).append("\n"),
+                    threshold, reorderRegionsList, namespace, recalculateTextLineContoursFromBaselines,
+                    Optional.of(errorFileWriter), splitBaselines);
 
-        try {
-            executorService.execute(job);
-        } catch (RejectedExecutionException e) {
-            return Response.status(Response.Status.TOO_MANY_REQUESTS).entity("{\"message\":\"Queue is full\"}").build();
-        }
+            final Job submittedJob;
+            try {
+                submittedJob = admissionControl.submit(reservation, job, timedJob -> jobRegistry.submit("extract-baselines", identifier, outputFile,
+                        Paths.get(serverUploadLocationFolder, identifier + ".error"), executorService, timedJob));
+            } catch (RejectedExecutionException e) {
+                return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                        .header("Retry-After", admissionControl.getRetryAfterSeconds()).entity("{\"message\":\"Queue is full\"}").build();
+            }
+
+            submittedJob.getTaskEnd().thenRun(() -> UploadSpool.release(image, mask, xml));
+            handedOver = true;
 
-        String output = "{\"filesUploaded\": [\"" + maskFile + "\", \"" + xmlFile + "\"]," +
-                "\"queueStatus\": "+ queueUsageStatusSupplier.get() + "}";
-        return Response.ok(output).build();
+            String output = "{\"jobId\": \"" + submittedJob.getId() + "\", " +
+                    "\"filesUploaded\": [\"" + maskFile + "\", \"" + xmlFile + "\"]," +
+                    "\"queueStatus\": "+ queueUsageStatusSupplier.get() + "}";
+            return Response.ok(output).build();
+        } finally {
+            if (!handedOver) {
+                UploadSpool.release(spooled);
+            }
+        }
     }
 }
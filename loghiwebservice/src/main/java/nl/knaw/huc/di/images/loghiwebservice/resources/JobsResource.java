@@ -0,0 +1,73 @@
+package nl.knaw.huc.di.images.loghiwebservice.resources;
+
+import nl.knaw.huc.di.images.loghiwebservice.jobs.Job;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.JobRegistry;
+
+import javax.annotation.security.PermitAll;
+import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+@Path("jobs")
+@Produces(MediaType.APPLICATION_JSON)
+public class JobsResource {
+    public static final int MAX_WAIT_SECONDS = 60;
+    private final JobRegistry jobRegistry;
+
+    public JobsResource(JobRegistry jobRegistry) {
+        this.jobRegistry = jobRegistry;
+    }
+
+    /**
+     * Returns the job. With wait the response is held back until the job is finished or the wait (at most 60 seconds)
+     * is over, so clients can wait for a job without polling.
+     */
+    @PermitAll
+    @GET
+    @Path("{id}")
+    public void getJob(@PathParam("id") String id, @QueryParam("wait") @DefaultValue("0") int waitSeconds,
+                       @Suspended AsyncResponse asyncResponse) {
+        final Optional<Job> optionalJob = jobRegistry.get(id);
+        if (optionalJob.isEmpty()) {
+            asyncResponse.resume(jobNotFoundResponse(id));
+            return;
+        }
+
+        final Job job = optionalJob.get();
+        if (waitSeconds <= 0 || job.getState().isFinished()) {
+            asyncResponse.resume(Response.ok(job).build());
+            return;
+        }
+
+        asyncResponse.setTimeout(Math.min(waitSeconds, MAX_WAIT_SECONDS), TimeUnit.SECONDS);
+        asyncResponse.setTimeoutHandler(response -> response.resume(Response.ok(job).build()));
+        job.getCompletion().thenAccept(finishedJob -> asyncResponse.resume(Response.ok(finishedJob).build()));
+    }
+
+    /**
+     * Cancels the job if it has not finished yet and removes it. A running job is interrupted, but may still write
+     * (part of) its results.
+     */
+    @PermitAll
+    @DELETE
+    @Path("{id}")
+    public Response cancelJob(@PathParam("id") String id) {
+        return jobRegistry.cancel(id)
+                .map(job -> Response.ok(job).build())
+                .orElseGet(() -> jobNotFoundResponse(id));
+    }
+
+    private static Response jobNotFoundResponse(String id) {
+        return Response.status(Response.Status.NOT_FOUND).entity("{\"message\":\"unknown job " + id + "\"}").build();
+    }
+}
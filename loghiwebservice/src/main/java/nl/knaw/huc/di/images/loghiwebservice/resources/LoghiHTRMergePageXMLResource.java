@@ -3,6 +3,9 @@ package nl.knaw.huc.di.images.loghiwebservice.resources;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import nl.knaw.huc.di.images.layoutds.models.HTRConfig;
 import nl.knaw.huc.di.images.layoutds.models.Page.PcGts;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.AdmissionControl;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.Job;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.JobRegistry;
 import nl.knaw.huc.di.images.minions.MinionLoghiHTRMergePageXML;
 import nl.knaw.huc.di.images.pagexmlutils.PageUtils;
 import nl.knaw.huc.di.images.pipelineutils.ErrorFileWriter;
@@ -30,6 +33,7 @@ import java.util.function.Supplier;
 import javax.ws.rs.Path;
 import javax.ws.rs.POST;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 
@@ -44,20 +48,31 @@ public class LoghiHTRMergePageXMLResource {
     private final Supplier<String> queueUsageStatusSupplier;
     private final StringBuilder errorLog;
     private final ErrorFileWriter errorFileWriter;
+    private final JobRegistry jobRegistry;
+    private final AdmissionControl admissionControl;
+    private final CapacityResource capacityResource;
 
-    public LoghiHTRMergePageXMLResource(String uploadLocation, ExecutorService executorService, Supplier<String> queueUsageStatusSupplier) {
+    public LoghiHTRMergePageXMLResource(String uploadLocation, ExecutorService executorService, Supplier<String> queueUsageStatusSupplier, JobRegistry jobRegistry, AdmissionControl admissionControl) {
 
         this.uploadLocation = uploadLocation;
         this.executorService = executorService;
         this.queueUsageStatusSupplier = queueUsageStatusSupplier;
+        this.jobRegistry = jobRegistry;
+        this.admissionControl = admissionControl;
+        this.capacityResource = new CapacityResource(admissionControl);
         errorLog = new StringBuilder();
         errorFileWriter = new ErrorFileWriter(uploadLocation);
     }
 
+    @Path("capacity")
+    public CapacityResource getCapacityResource() {
+        return capacityResource;
+    }
+
     @PermitAll
     @POST
     @Consumes(MediaType.MULTIPART_FORM_DATA)
-    public Response schedule(FormDataMultiPart multiPart) {
+    public Response schedule(FormDataMultiPart multiPart, @HeaderParam(CapacityResource.RESERVATION_HEADER) String reservation) {
         if (errorLog.length() > 0) {
             return Response.serverError().entity("Minion is failing: " + errorLog).build();
         }
@@ -149,14 +164,19 @@ public class LoghiHTRMergePageXMLResource {
         Runnable job = new MinionLoghiHTRMergePageXML(identifier, pageSupplier, listOfConfigs, fileTextLineMap, fileToConfigIndexMap,
                 confidenceMap, pageSaver, pageFile, comment, "", Optional.of(errorFileWriter));
 
+        final Job submittedJob;
         try {
-            executorService.execute(job);
+            submittedJob = admissionControl.submit(reservation, job, timedJob -> jobRegistry.submit("loghi-htr-merge-page-xml", identifier,
+                    Paths.get(uploadLocation, identifier, pageFile + ".xml").toAbsolutePath().toString(),
+                    Paths.get(uploadLocation, identifier + ".error"), executorService, timedJob));
         } catch (RejectedExecutionException e) {
             return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                    .header("Retry-After", admissionControl.getRetryAfterSeconds())
                     .entity("{\"message\":\"LoghiHTRMergePageXMLResource.java queue is full\"}").build();
         }
 
-        return Response.ok("{\"queueStatus\": " + queueUsageStatusSupplier.get() + "}").build();
+        return Response.ok("{\"jobId\": \"" + submittedJob.getId() + "\", " +
+                "\"queueStatus\": " + queueUsageStatusSupplier.get() + "}").build();
     }
 
     private void processResultsFile(String resultsFile,
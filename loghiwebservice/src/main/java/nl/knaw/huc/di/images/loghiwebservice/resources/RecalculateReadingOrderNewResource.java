@@ -1,6 +1,9 @@
 package nl.knaw.huc.di.images.loghiwebservice.resources;
 
 import nl.knaw.huc.di.images.layoutds.models.Page.PcGts;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.AdmissionControl;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.Job;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.JobRegistry;
 import nl.knaw.huc.di.images.minions.MinionRecalculateReadingOrderNew;
 import nl.knaw.huc.di.images.pagexmlutils.PageUtils;
 import org.apache.commons.io.FilenameUtils;
@@ -13,6 +16,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.annotation.security.PermitAll;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.core.MediaType;
@@ -39,21 +43,32 @@ public class RecalculateReadingOrderNewResource {
     private final Supplier<String> queueUsageStatusSupplier;
     private final StringBuilder errorLog;
     private final ErrorFileWriter errorFileWriter;
+    private final JobRegistry jobRegistry;
+    private final AdmissionControl admissionControl;
+    private final CapacityResource capacityResource;
 
-    public RecalculateReadingOrderNewResource(ExecutorService recalculateReadingOrderNewResourceExecutorService, String uploadLocation, Supplier<String> queueUsageStatusSupplier) {
+    public RecalculateReadingOrderNewResource(ExecutorService recalculateReadingOrderNewResourceExecutorService, String uploadLocation, Supplier<String> queueUsageStatusSupplier, JobRegistry jobRegistry, AdmissionControl admissionControl) {
 
         this.recalculateReadingOrderNewResourceExecutorService = recalculateReadingOrderNewResourceExecutorService;
         this.uploadLocation = uploadLocation;
         this.queueUsageStatusSupplier = queueUsageStatusSupplier;
+        this.jobRegistry = jobRegistry;
+        this.admissionControl = admissionControl;
+        this.capacityResource = new CapacityResource(admissionControl);
         errorLog = new StringBuilder();
         errorFileWriter = new ErrorFileWriter(uploadLocation);
         // TODO implement errorFileWriter usage
     }
 
+    @Path("capacity")
+    public CapacityResource getCapacityResource() {
+        return capacityResource;
+    }
+
     @PermitAll
     @POST
     @Consumes(MediaType.MULTIPART_FORM_DATA)
-    public Response schedule(FormDataMultiPart form) {
+    public Response schedule(FormDataMultiPart form, @HeaderParam(CapacityResource.RESERVATION_HEADER) String reservation) {
         if (errorLog.length() > 0) {
             return Response.serverError().entity("Minion is failing: " + errorLog).build();
         }
@@ -113,22 +128,27 @@ public class RecalculateReadingOrderNewResource {
             }
         };
 
-        final PcGts page = PageUtils.readPageFromString(xmlString);
+        final Supplier<PcGts> pageSupplier = () -> PageUtils.readPageFromString(xmlString);
 
         java.nio.file.Path errorlocation = Paths.get(uploadLocation, identifier, FilenameUtils.removeExtension(pageFile) +".error");
         final double interlineClusteringMultiplier =  fields.contains("interline_clustering_multiplier") ? form.getField("interline_clustering_multiplier").getValueAs(Double.class) :  1.5;
         final double dubiousSizeWidthMultiplier = fields.contains("dubious_size_width_multiplier") ? form.getField("dubious_size_width_multiplier").getValueAs(Double.class): 0.05;
         final Double dubiousSizeWidth = fields.contains("dubious_size_width") ? form.getField("dubious_size_width").getValueAs(Double.class): null;
-        final MinionRecalculateReadingOrderNew job = new MinionRecalculateReadingOrderNew(identifier, page, pageSaver,
+        final MinionRecalculateReadingOrderNew job = new MinionRecalculateReadingOrderNew(identifier, pageSupplier, pageSaver,
                 false, borderMargin,false, interlineClusteringMultiplier,
                 dubiousSizeWidthMultiplier, dubiousSizeWidth, null, Optional.of(errorFileWriter));
+        final Job submittedJob;
         try {
-            recalculateReadingOrderNewResourceExecutorService.execute(job);
+            submittedJob = admissionControl.submit(reservation, job, timedJob -> jobRegistry.submit("recalculate-reading-order-new", identifier,
+                    Paths.get(uploadLocation, identifier, pageFile).toAbsolutePath().toString(),
+                    Paths.get(uploadLocation, identifier + ".error"), recalculateReadingOrderNewResourceExecutorService, timedJob));
         } catch (RejectedExecutionException e) {
-            return Response.status(Response.Status.TOO_MANY_REQUESTS).entity("{\"message\":\"RecalculateReadingOrderNewResource queue is full\"}").build();
+            return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                    .header("Retry-After", admissionControl.getRetryAfterSeconds()).entity("{\"message\":\"RecalculateReadingOrderNewResource queue is full\"}").build();
         }
 
-        return Response.ok("{\"queueStatus\": "+ queueUsageStatusSupplier.get() + "}").build();
+        return Response.ok("{\"jobId\": \"" + submittedJob.getId() + "\", " +
+                "\"queueStatus\": "+ queueUsageStatusSupplier.get() + "}").build();
     }
 
     private Response missingFieldResponse(String field) {
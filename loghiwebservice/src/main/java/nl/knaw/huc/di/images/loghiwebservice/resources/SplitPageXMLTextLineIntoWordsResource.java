@@ -2,6 +2,9 @@ package nl.knaw.huc.di.images.loghiwebservice.resources;
 
 import com.codahale.metrics.annotation.Timed;
 import nl.knaw.huc.di.images.layoutds.models.Page.PcGts;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.AdmissionControl;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.Job;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.JobRegistry;
 import nl.knaw.huc.di.images.minions.MinionExtractBaselines;
 import nl.knaw.huc.di.images.minions.MinionSplitPageXMLTextLineIntoWords;
 import nl.knaw.huc.di.images.pagexmlutils.PageUtils;
@@ -13,6 +16,7 @@ import org.glassfish.jersey.media.multipart.FormDataMultiPart;
 
 import javax.annotation.security.PermitAll;
 import javax.ws.rs.Consumes;
+import javax.ws.rs.HeaderParam;
 import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.core.MediaType;
@@ -37,22 +41,33 @@ public class SplitPageXMLTextLineIntoWordsResource {
     private ExecutorService executorService;
     private final Supplier<String> queueUsageStatusSupplier;
     private final StringBuffer minionErrorLog;
+    private final JobRegistry jobRegistry;
+    private final AdmissionControl admissionControl;
+    private final CapacityResource capacityResource;
 
 
-    public SplitPageXMLTextLineIntoWordsResource(ExecutorService executorService, String serverUploadLocationFolder, Supplier<String> queueUsageStatusSupplier) {
+    public SplitPageXMLTextLineIntoWordsResource(ExecutorService executorService, String serverUploadLocationFolder, Supplier<String> queueUsageStatusSupplier, JobRegistry jobRegistry, AdmissionControl admissionControl) {
         this.serverUploadLocationFolder = serverUploadLocationFolder;
         this.executorService = executorService;
         this.queueUsageStatusSupplier = queueUsageStatusSupplier;
+        this.jobRegistry = jobRegistry;
+        this.admissionControl = admissionControl;
+        this.capacityResource = new CapacityResource(admissionControl);
         this.minionErrorLog = new StringBuffer();
         AtomicLong counter = new AtomicLong();
         errorFileWriter = new ErrorFileWriter(serverUploadLocationFolder);
     }
 
+    @Path("capacity")
+    public CapacityResource getCapacityResource() {
+        return capacityResource;
+    }
+
     @PermitAll
     @POST
     @Timed
     @Consumes(MediaType.MULTIPART_FORM_DATA)
-    public Response uploadFile(FormDataMultiPart multiPart) {
+    public Response uploadFile(FormDataMultiPart multiPart, @HeaderParam(CapacityResource.RESERVATION_HEADER) String reservation) {
         if (minionErrorLog.length() > 0) {
             return Response.serverError().entity("Minion is failing: " + minionErrorLog).build();
         }
@@ -97,13 +112,17 @@ public class SplitPageXMLTextLineIntoWordsResource {
         Runnable job = new MinionSplitPageXMLTextLineIntoWords(identifier, pageSupplier, outputFile,
                 error -> minionErrorLog.append(error).append("\n"), namespace, Optional.of(errorFileWriter));
 
+        final Job submittedJob;
         try {
-            executorService.execute(job);
+            submittedJob = admissionControl.submit(reservation, job, timedJob -> jobRegistry.submit("split-page-xml-text-line-into-words", identifier, outputFile,
+                    Paths.get(serverUploadLocationFolder, identifier + ".error"), executorService, timedJob));
         } catch (RejectedExecutionException e) {
-            return Response.status(Response.Status.TOO_MANY_REQUESTS).entity("{\"message\":\"Queue is full\"}").build();
+            return Response.status(Response.Status.TOO_MANY_REQUESTS)
+                    .header("Retry-After", admissionControl.getRetryAfterSeconds()).entity("{\"message\":\"Queue is full\"}").build();
         }
 
         String output = "Files uploaded : " + xmlFile;
-        return Response.ok("{\"queueStatus\": "+ queueUsageStatusSupplier.get() + "}").build();
+        return Response.ok("{\"jobId\": \"" + submittedJob.getId() + "\", " +
+                "\"queueStatus\": "+ queueUsageStatusSupplier.get() + "}").build();
     }
 }
@@ -0,0 +1,119 @@
+package nl.knaw.huc.di.images.loghiwebservice.jobs;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AdmissionControlTest {
+    private final AtomicInteger queueSize = new AtomicInteger();
+
+    @Test
+    void rejectsJobsWhenTheQueueIsFull() {
+        final AdmissionControl admissionControl = new AdmissionControl(1, 2, queueSize::get, TimeUnit.MINUTES.toMillis(1));
+        queueSize.set(1);
+        assertThat(admissionControl.getCapacity().getAvailable(), is(1));
+        assertThat(admissionControl.submit(null, () -> {
+        }, job -> "submitted"), is("submitted"));
+
+        queueSize.set(2);
+        assertThat(admissionControl.getCapacity().getAvailable(), is(0));
+        assertThrows(RejectedExecutionException.class, () -> admissionControl.submit(null, () -> {
+        }, job -> "submitted"));
+    }
+
+    @Test
+    void reservationKeepsAPlaceInTheQueue() {
+        final AdmissionControl admissionControl = new AdmissionControl(1, 2, queueSize::get, TimeUnit.MINUTES.toMillis(1));
+        queueSize.set(1);
+        final Optional<String> reservation = admissionControl.reserve();
+        assertThat(reservation.isPresent(), is(true));
+        assertThat(admissionControl.reserve().isPresent(), is(false));
+
+        // the last place is reserved
+        assertThrows(RejectedExecutionException.class, () -> admissionControl.submit(null, () -> {
+        }, job -> "submitted"));
+        assertThat(admissionControl.submit(reservation.get(), () -> {
+        }, job -> "submitted"), is("submitted"));
+
+        queueSize.set(2);
+
+        // a reservation is used only once
+        assertThrows(RejectedExecutionException.class, () -> admissionControl.submit(reservation.get(), () -> {
+        }, job -> "submitted"));
+    }
+
+    @Test
+    void reservationIsKeptWhenTheJobIsRejected() {
+        final AdmissionControl admissionControl = new AdmissionControl(1, 1, queueSize::get, TimeUnit.MINUTES.toMillis(1));
+        final Optional<String> reservation = admissionControl.reserve();
+        assertThat(reservation.isPresent(), is(true));
+
+        assertThrows(RejectedExecutionException.class, () -> admissionControl.submit(reservation.get(), () -> {
+        }, job -> {
+            throw new RejectedExecutionException("executor is full");
+        }));
+
+        assertThat(admissionControl.getCapacity().getReserved(), is(1));
+        assertThat(admissionControl.submit(reservation.get(), () -> {
+        }, job -> "submitted"), is("submitted"));
+        assertThat(admissionControl.getCapacity().getReserved(), is(0));
+    }
+
+    @Test
+    void expiredReservationsFreeTheirPlace() throws Exception {
+        final AdmissionControl admissionControl = new AdmissionControl(1, 1, queueSize::get, 1);
+        final Optional<String> reservation = admissionControl.reserve();
+        assertThat(reservation.isPresent(), is(true));
+        Thread.sleep(20);
+
+        assertThat(admissionControl.getCapacity().getAvailable(), is(1));
+        assertThat(admissionControl.reserve().isPresent(), is(true));
+    }
+
+    @Test
+    void retryAfterFollowsTheServiceTimeAndTheQueue() {
+        final AdmissionControl admissionControl = new AdmissionControl(2, 4, queueSize::get, TimeUnit.MINUTES.toMillis(1));
+        for (int i = 0; i < 50; i++) {
+            admissionControl.recordServiceTime(10);
+        }
+        queueSize.set(4);
+        // one of the two threads has to finish a job of about 10 seconds
+        assertThat(admissionControl.getRetryAfterSeconds(), is(5L));
+        assertThat(admissionControl.getCapacity().getEstimatedWaitSeconds(), is(20L));
+
+        queueSize.set(0);
+        assertThat(admissionControl.reserve().isPresent(), is(true));
+        assertThat(admissionControl.getRetryAfterSeconds(), is(5L));
+        assertThat(admissionControl.getCapacity().getReserved(), is(1));
+    }
+
+    @Test
+    void submittedJobsRecordTheirServiceTime() {
+        final AdmissionControl admissionControl = new AdmissionControl(1, 10, queueSize::get, TimeUnit.MINUTES.toMillis(1));
+        for (int i = 0; i < 50; i++) {
+            admissionControl.recordServiceTime(100);
+        }
+        queueSize.set(10);
+        final long before = admissionControl.getRetryAfterSeconds();
+
+        queueSize.set(0);
+        for (int i = 0; i < 50; i++) {
+            admissionControl.submit(null, () -> {
+            }, job -> {
+                job.run();
+                return null;
+            });
+        }
+        queueSize.set(10);
+
+        assertThat(before, is(100L));
+        assertThat(admissionControl.getRetryAfterSeconds(), is(1L));
+    }
+}
@@ -0,0 +1,150 @@
+package nl.knaw.huc.di.images.loghiwebservice.jobs;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class JobRegistryTest {
+    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    @TempDir
+    Path uploadLocation;
+
+    @AfterEach
+    void shutdown() {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    void jobGoesFromQueuedToDone() throws Exception {
+        final JobRegistry jobRegistry = new JobRegistry(TimeUnit.HOURS.toMillis(1));
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final Job first = jobRegistry.submit("test", "first", "result", null, executorService, () -> await(blocker));
+        final Job second = jobRegistry.submit("test", "second", "result", null, executorService, () -> {
+        });
+
+        assertThat(second.getState(), is(Job.State.QUEUED));
+        blocker.countDown();
+
+        assertThat(second.getCompletion().get(10, TimeUnit.SECONDS).getState(), is(Job.State.DONE));
+        assertThat(first.getState(), is(Job.State.DONE));
+        assertThat(second.getStartedAt(), notNullValue());
+        assertThat(second.getRunningMillis(), notNullValue());
+        assertThat(jobRegistry.get(second.getId()).isPresent(), is(true));
+    }
+
+    @Test
+    void jobThatThrowsFails() throws Exception {
+        final JobRegistry jobRegistry = new JobRegistry(TimeUnit.HOURS.toMillis(1));
+        final Job job = jobRegistry.submit("test", "failing", "result", null, executorService, () -> {
+            throw new IllegalStateException("broken");
+        });
+
+        assertThat(job.getCompletion().get(10, TimeUnit.SECONDS).getState(), is(Job.State.FAILED));
+        assertThat(job.getError(), is("broken"));
+    }
+
+    @Test
+    void jobThatWritesAnErrorFileFails() throws Exception {
+        final JobRegistry jobRegistry = new JobRegistry(TimeUnit.HOURS.toMillis(1));
+        final Path errorFile = uploadLocation.resolve("identifier.error");
+        final Job job = jobRegistry.submit("test", "identifier", "result", errorFile, executorService,
+                () -> write(errorFile));
+
+        assertThat(job.getCompletion().get(10, TimeUnit.SECONDS).getState(), is(Job.State.FAILED));
+    }
+
+    @Test
+    void cancelledJobDoesNotRun() throws Exception {
+        final JobRegistry jobRegistry = new JobRegistry(TimeUnit.HOURS.toMillis(1));
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final CountDownLatch ran = new CountDownLatch(1);
+        jobRegistry.submit("test", "blocking", "result", null, executorService, () -> await(blocker));
+        final Job job = jobRegistry.submit("test", "cancelled", "result", null, executorService, ran::countDown);
+
+        assertThat(jobRegistry.cancel(job.getId()).map(Job::getState).orElse(null), is(Job.State.CANCELLED));
+        blocker.countDown();
+
+        assertThat(ran.await(200, TimeUnit.MILLISECONDS), is(false));
+        assertThat(jobRegistry.get(job.getId()).isPresent(), is(false));
+    }
+
+    @Test
+    void taskOfACancelledJobEndsWhenItReturns() throws Exception {
+        final JobRegistry jobRegistry = new JobRegistry(TimeUnit.HOURS.toMillis(1));
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final Job job = jobRegistry.submit("test", "running", "result", null, executorService, () -> {
+            started.countDown();
+            // keeps using its input after the interrupt
+            awaitUninterruptibly(blocker);
+        });
+        final Job queued = jobRegistry.submit("test", "queued", "result", null, executorService, () -> {
+        });
+        assertThat(started.await(10, TimeUnit.SECONDS), is(true));
+
+        jobRegistry.cancel(job.getId());
+        jobRegistry.cancel(queued.getId());
+
+        assertThat(job.getCompletion().isDone(), is(true));
+        assertThat(job.getTaskEnd().isDone(), is(false));
+        assertThat(queued.getTaskEnd().isDone(), is(true));
+        blocker.countDown();
+        assertThat(job.getTaskEnd().get(10, TimeUnit.SECONDS).getState(), is(Job.State.CANCELLED));
+    }
+
+    @Test
+    void finishedJobsAreRemovedAfterTheRetentionTime() throws Exception {
+        final JobRegistry jobRegistry = new JobRegistry(0);
+        final Job job = jobRegistry.submit("test", "identifier", "result", null, executorService, () -> {
+        });
+        job.getCompletion().get(10, TimeUnit.SECONDS);
+        // the job is added to the finished jobs right after its completion
+        Thread.sleep(50);
+
+        jobRegistry.removeExpiredJobs();
+
+        assertThat(jobRegistry.get(job.getId()).isPresent(), is(false));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (latch.getCount() > 0) {
+            try {
+                latch.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void write(Path file) {
+        try {
+            Files.writeString(file, "error");
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package nl.knaw.huc.di.images.loghiwebservice.jobs;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.MatOfByte;
+import org.opencv.core.Scalar;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UploadSpoolTest {
+    @TempDir
+    Path directory;
+
+    @BeforeAll
+    static void loadOpenCv() {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    @Test
+    void keepsUploadsInMemoryWithinTheBudget() throws IOException {
+        final UploadSpool uploadSpool = new UploadSpool(directory, 10);
+        final UploadSpool.Upload first = uploadSpool.spool(stream("123456"));
+        final UploadSpool.Upload second = uploadSpool.spool(stream("abcdef"));
+
+        assertThat(first.isOnDisk(), is(false));
+        assertThat(second.isOnDisk(), is(true));
+        assertThat(uploadSpool.getBytesInMemory(), is(6L));
+        assertThat(uploadSpool.getBytesOnDisk(), is(6L));
+        assertThat(first.asString(StandardCharsets.UTF_8), is("123456"));
+        assertThat(second.asString(StandardCharsets.UTF_8), is("abcdef"));
+        assertThat(countFiles(), is(1L));
+
+        first.release();
+        second.release();
+
+        assertThat(uploadSpool.getBytesInMemory(), is(0L));
+        assertThat(uploadSpool.getBytesOnDisk(), is(0L));
+        assertThat(countFiles(), is(0L));
+    }
+
+    @Test
+    void releasingTwiceFreesTheBudgetOnce() throws IOException {
+        final UploadSpool uploadSpool = new UploadSpool(directory, 10);
+        final UploadSpool.Upload upload = uploadSpool.spool(stream("123456"));
+        uploadSpool.spool(stream("abc"));
+
+        upload.release();
+        upload.release();
+
+        assertThat(uploadSpool.getBytesInMemory(), is(3L));
+        assertThrows(IllegalStateException.class, () -> upload.asString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void largeUploadsAreWrittenToDisk() throws IOException {
+        final UploadSpool uploadSpool = new UploadSpool(directory, 100 * 1024);
+        final String content = "x".repeat(300 * 1024);
+        final UploadSpool.Upload upload = uploadSpool.spool(stream(content));
+
+        assertThat(upload.isOnDisk(), is(true));
+        assertThat(uploadSpool.getBytesInMemory(), is(0L));
+        assertThat(uploadSpool.getBytesOnDisk(), is((long) content.length()));
+        assertThat(upload.asString(StandardCharsets.UTF_8), is(content));
+    }
+
+    @Test
+    void decodesUploadsInMemoryAndOnDisk() throws IOException {
+        final Mat image = new Mat(40, 60, CvType.CV_8UC3, new Scalar(10, 20, 30));
+        final MatOfByte png = new MatOfByte();
+        Imgcodecs.imencode(".png", image, png);
+        final byte[] bytes = png.toArray();
+
+        final UploadSpool.Upload inMemory = new UploadSpool(directory, bytes.length).spool(new ByteArrayInputStream(bytes));
+        final UploadSpool.Upload onDisk = new UploadSpool(directory, 0).spool(new ByteArrayInputStream(bytes));
+        assertThat(inMemory.isOnDisk(), is(false));
+        assertThat(onDisk.isOnDisk(), is(true));
+
+        for (UploadSpool.Upload upload : new UploadSpool.Upload[]{inMemory, onDisk}) {
+            final Mat decoded = upload.decode(Imgcodecs.IMREAD_COLOR);
+            assertThat(decoded.size(), is(image.size()));
+            assertThat(decoded.get(20, 30), is(image.get(20, 30)));
+            final Mat gray = upload.decode(Imgcodecs.IMREAD_GRAYSCALE);
+            assertThat(gray.channels(), is(1));
+        }
+    }
+
+    private static ByteArrayInputStream stream(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private long countFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
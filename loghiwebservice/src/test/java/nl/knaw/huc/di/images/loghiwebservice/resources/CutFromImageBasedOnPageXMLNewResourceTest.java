@@ -0,0 +1,60 @@
+package nl.knaw.huc.di.images.loghiwebservice.resources;
+
+import nl.knaw.huc.di.images.loghiwebservice.jobs.AdmissionControl;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.JobRegistry;
+import nl.knaw.huc.di.images.loghiwebservice.jobs.UploadSpool;
+import org.glassfish.jersey.media.multipart.FormDataBodyPart;
+import org.glassfish.jersey.media.multipart.FormDataContentDisposition;
+import org.glassfish.jersey.media.multipart.FormDataMultiPart;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CutFromImageBasedOnPageXMLNewResourceTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void uploadsAreReleasedWhenTheRequestFailsBeforeTheJobIsSubmitted() {
+        final ExecutorService executorService = Executors.newSingleThreadExecutor();
+        final UploadSpool uploadSpool = new UploadSpool(directory.resolve("spool"), 1024 * 1024);
+        final CutFromImageBasedOnPageXMLNewResource resource = new CutFromImageBasedOnPageXMLNewResource(
+                executorService, directory.toString(), () -> "{}", new JobRegistry(60_000),
+                new AdmissionControl(1, 1, () -> 0, 60_000), uploadSpool);
+        final FormDataMultiPart multiPart = new FormDataMultiPart()
+                .field("identifier", "page")
+                .field("output_type", "png")
+                .field("channels", "three");
+        multiPart.bodyPart(upload("image", "page.png", "image"));
+        multiPart.bodyPart(upload("page", "page.xml", "<PcGts/>"));
+
+        assertThrows(RuntimeException.class, () -> resource.schedule(multiPart, null));
+
+        assertThat(uploadSpool.getBytesInMemory(), is(0L));
+        assertThat(uploadSpool.getBytesOnDisk(), is(0L));
+        executorService.shutdownNow();
+    }
+
+    // a body part as it is received, outside of a request the entity is not converted
+    private static FormDataBodyPart upload(String name, String fileName, String content) {
+        final InputStream inputStream = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+        return new FormDataBodyPart(FormDataContentDisposition.name(name).fileName(fileName).build(),
+                inputStream, MediaType.APPLICATION_OCTET_STREAM_TYPE) {
+            @Override
+            public <T> T getValueAs(Class<T> clazz) {
+                return clazz.cast(inputStream);
+            }
+        };
+    }
+}
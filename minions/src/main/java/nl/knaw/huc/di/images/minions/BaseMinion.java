@@ -3,8 +3,12 @@ package nl.knaw.huc.di.images.minions;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Charsets;
 import jakarta.ws.rs.core.UriBuilder;
+import nl.knaw.huc.di.images.imageanalysiscommon.StageMetrics;
 import nl.knaw.huc.di.images.layoutds.models.DocumentImage;
 import nl.knaw.huc.di.images.layoutds.models.OCRJob;
+import nl.knaw.huc.di.images.pagexmlutils.PageUtils;
+import nl.knaw.huc.di.images.pagexmlutils.PageValidationPolicy;
+import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 import org.apache.http.Header;
@@ -20,6 +24,11 @@ import java.io.InputStreamReader;
 import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 
 public class BaseMinion {
@@ -128,6 +137,55 @@ public class BaseMinion {
         return apiKey;
     }
 
+    public static void addPageValidationOption(Options options) {
+        options.addOption("page_validation", true, "validation of the written PageXML: always (default), never, " +
+                "on_error_only or sample:N to validate one in N pages");
+    }
+
+    public static void setPageValidationPolicy(CommandLine commandLine) {
+        if (commandLine.hasOption("page_validation")) {
+            PageUtils.setValidationPolicy(PageValidationPolicy.parse(commandLine.getOptionValue("page_validation")));
+        }
+    }
+
+    public static void addFsyncOption(Options options) {
+        options.addOption("fsync", false, "flush every written PageXML to disk before it replaces the old one, " +
+                "so it survives a crash of the machine (default false)");
+    }
+
+    public static void setFsync(CommandLine commandLine) {
+        PageUtils.setFsync(commandLine.hasOption("fsync"));
+    }
+
+    public static void addMetricsReportOption(Options options) {
+        options.addOption("metrics_report", true, "print the time spent per stage when done: table or json");
+    }
+
+    public static void printMetricsReport(CommandLine commandLine) {
+        if (commandLine.hasOption("metrics_report")) {
+            StageMetrics.printReport(commandLine.getOptionValue("metrics_report"), System.out);
+        }
+    }
+
+    /**
+     * A fixed thread pool that makes the submitting thread wait while queueSize tasks are waiting, so a main that
+     * submits a task per file does not fill the heap with tasks that have not started yet.
+     */
+    public static ExecutorService newBoundedExecutor(int threads, int queueSize) {
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueSize),
+                (runnable, executor) -> {
+                    if (executor.isShutdown()) {
+                        throw new RejectedExecutionException("Executor is shut down");
+                    }
+                    try {
+                        executor.getQueue().put(runnable);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for the queue", e);
+                    }
+                });
+    }
+
     public static void printHelp(Options options, String callName) {
         final HelpFormatter helpFormatter = new HelpFormatter();
 
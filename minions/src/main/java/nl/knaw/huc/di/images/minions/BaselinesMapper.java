@@ -6,6 +6,7 @@ import nl.knaw.huc.di.images.layoutanalyzer.layoutlib.LayoutProc;
 import nl.knaw.huc.di.images.layoutds.models.Page.Baseline;
 import nl.knaw.huc.di.images.layoutds.models.Page.Coords;
 import nl.knaw.huc.di.images.layoutds.models.Page.PcGts;
+import nl.knaw.huc.di.images.layoutds.models.Page.PointsGeometry;
 import nl.knaw.huc.di.images.layoutds.models.Page.TextLine;
 import nl.knaw.huc.di.images.pagexmlutils.PageUtils;
 import org.opencv.core.*;
@@ -30,45 +31,59 @@ public class BaselinesMapper {
         System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
     }
 
+    /**
+     * Maps the ids of the new lines to the ids of the old lines. A new line and an old line match when the intersection
+     * over union of their rasterized baselines at {@link #SCALE} is more than {@link #MIN_LIMIT_ACCEPT}. Only lines
+     * that match exactly one line, that matches only them, are mapped.
+     * <p>
+     * Every baseline is rasterized once into a mask the size of its bounding box. Only the pairs whose masks overlap
+     * are compared, and only on the overlapping part, as the intersection of the other pairs is empty.
+     */
     public static Map<String, String> mapNewLinesToOldLines(List<TextLine> newTextLines, List<TextLine> oldTextLines, Size size) {
         final Stopwatch started = Stopwatch.createStarted();
 
         final HashMap<String, List<String>> possibleNewOldMappings = new HashMap<>();
         final HashMap<String, List<String>> possibleOldNewMappings = new HashMap<>();
-        final double scaledWidth = size.width * SCALE;
-        final double scaledHeight = size.height * SCALE;
-        final Size scaledSize = new Size(scaledWidth, scaledHeight);
+        // the same size as Mat.zeros(new Size(size.width * SCALE, size.height * SCALE), ...)
+        final Rect scaledPage = new Rect(0, 0, (int) (size.width * SCALE), (int) (size.height * SCALE));
 
-        for (TextLine newTextLine : newTextLines) {
-            Mat newLineImage = Mat.zeros(scaledSize, CvType.CV_8UC1); // Make sure initialize with zeroes, weird things happen with initialized with new Mat()
-            writeBaseLineToMat(newLineImage, newTextLine.getBaseline(), SCALE);
-
-            for (TextLine oldTextLine : oldTextLines) {
-                Mat oldLineImage = Mat.zeros(scaledSize, CvType.CV_8UC1); // Make sure initialize with zeroes, weird things happen with initialized with new Mat()
-                writeBaseLineToMat(oldLineImage, oldTextLine.getBaseline(), SCALE);
-
-                final double intersectOverUnion = LayoutProc.intersectOverUnion(newLineImage, oldLineImage);
+        final List<LineMask> oldLineMasks = new ArrayList<>();
+        for (TextLine oldTextLine : oldTextLines) {
+            final LineMask oldLineMask = LineMask.create(oldTextLine, scaledPage, SCALE);
+            if (oldLineMask != null) {
+                oldLineMasks.add(oldLineMask);
+            }
+        }
+        // sweep over the old lines sorted on their left side
+        oldLineMasks.sort(Comparator.comparingInt(lineMask -> lineMask.rect.x));
+        final int[] oldLefts = oldLineMasks.stream().mapToInt(lineMask -> lineMask.rect.x).toArray();
 
+        for (TextLine newTextLine : newTextLines) {
+            final LineMask newLineMask = LineMask.create(newTextLine, scaledPage, SCALE);
+            if (newLineMask == null) {
+                continue;
+            }
+            final int stop = firstLeftAtOrAfter(oldLefts, newLineMask.rect.x + newLineMask.rect.width);
+            for (int i = 0; i < stop; i++) {
+                final LineMask oldLineMask = oldLineMasks.get(i);
+                final double intersectOverUnion = newLineMask.intersectOverUnion(oldLineMask);
 
                 if (intersectOverUnion > MIN_LIMIT_ACCEPT) {
                     final String newTextLineId = newTextLine.getId();
                     if (!possibleNewOldMappings.containsKey(newTextLineId)) {
                         possibleNewOldMappings.put(newTextLineId, new ArrayList<>());
                     }
-                    final String oldTextLineId = oldTextLine.getId();
+                    final String oldTextLineId = oldLineMask.textLine.getId();
                     if (!possibleOldNewMappings.containsKey(oldTextLineId)) {
                         possibleOldNewMappings.put(oldTextLineId, new ArrayList<>());
                     }
                     possibleNewOldMappings.get(newTextLineId).add(oldTextLineId);
                     possibleOldNewMappings.get(oldTextLineId).add(newTextLineId);
                 }
-
-                oldLineImage.release();
-
-
             }
-            newLineImage.release();
+            newLineMask.release();
         }
+        oldLineMasks.forEach(LineMask::release);
 
         final Map<String, String> idMapping = possibleNewOldMappings.entrySet().stream()
                 .filter(entry -> entry.getValue().size() == 1)
@@ -76,27 +91,119 @@ public class BaselinesMapper {
                 .filter(entry -> possibleOldNewMappings.get(entry.getValue()).size() == 1)
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
 
-        LOG.info("Mapping lines took: " + started.stop());
+        LOG.debug("Mapping lines took: " + started.stop());
 
         return idMapping;
     }
 
+    private static int firstLeftAtOrAfter(int[] sortedLefts, int x) {
+        int low = 0;
+        int high = sortedLefts.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (sortedLefts[middle] < x) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
 
-    private static void writeBaseLineToMat(Mat image, Baseline baseline, float scale) {
-        Point beginPoint = null;
-        Point endPoint = null;
-        Scalar color = new Scalar(255);
-        int thickness = Math.max((int) (10 * scale), 1);
-        for (Point point : StringConverter.stringToPoint(baseline.getPoints())) {
-            endPoint = new Point(point.x * scale, point.y * scale);
-            if (beginPoint != null && endPoint != null) {
-                Imgproc.line(image, beginPoint, endPoint, color, thickness);
+    /**
+     * The rasterized baseline of a text line, only the part of the scaled page that contains the baseline.
+     */
+    private static final class LineMask {
+        private final TextLine textLine;
+        // the part of the scaled page the mask covers
+        private final Rect rect;
+        private final Mat mask;
+        private final int pixels;
+
+        private LineMask(TextLine textLine, Rect rect, Mat mask, int pixels) {
+            this.textLine = textLine;
+            this.rect = rect;
+            this.mask = mask;
+            this.pixels = pixels;
+        }
+
+        /**
+         * @return the mask of the baseline, or null if the baseline has no pixels on the page
+         */
+        static LineMask create(TextLine textLine, Rect scaledPage, float scale) {
+            final PointsGeometry geometry = textLine.getBaseline().getGeometry();
+            if (geometry.size() < 2) {
+                return null;
+            }
+            // a margin that is wider than the line, so nothing is clipped while drawing
+            final int margin = getThickness(scale) + 2;
+            final int left = (int) Math.floor(geometry.getMinX() * scale) - margin;
+            final int top = (int) Math.floor(geometry.getMinY() * scale) - margin;
+            final int right = (int) Math.ceil((geometry.getMaxX() + 1) * scale) + margin;
+            final int bottom = (int) Math.ceil((geometry.getMaxY() + 1) * scale) + margin;
+            final Mat lineImage = Mat.zeros(bottom - top, right - left, CvType.CV_8UC1);
+            writeBaseLineToMat(lineImage, geometry, scale, left, top);
+
+            // the lines drawn on the whole page are clipped at the page borders
+            final Rect onPage = intersection(new Rect(left, top, right - left, bottom - top), scaledPage);
+            if (onPage == null) {
+                lineImage.release();
+                return null;
+            }
+            final Mat mask = lineImage.submat(new Rect(onPage.x - left, onPage.y - top, onPage.width, onPage.height)).clone();
+            lineImage.release();
+            final int pixels = Core.countNonZero(mask);
+            if (pixels == 0) {
+                mask.release();
+                return null;
+            }
+            return new LineMask(textLine, onPage, mask, pixels);
+        }
+
+        double intersectOverUnion(LineMask other) {
+            final Rect overlap = intersection(rect, other.rect);
+            if (overlap == null) {
+                return 0;
             }
+            final Mat intersect = new Mat();
+            Core.bitwise_and(mask.submat(new Rect(overlap.x - rect.x, overlap.y - rect.y, overlap.width, overlap.height)),
+                    other.mask.submat(new Rect(overlap.x - other.rect.x, overlap.y - other.rect.y, overlap.width, overlap.height)),
+                    intersect);
+            final double countIntersect = Core.countNonZero(intersect);
+            intersect.release();
+            return countIntersect / (pixels + other.pixels - countIntersect);
+        }
 
-            beginPoint = endPoint;
+        void release() {
+            mask.release();
+        }
 
+        private static Rect intersection(Rect first, Rect second) {
+            final int left = Math.max(first.x, second.x);
+            final int top = Math.max(first.y, second.y);
+            final int right = Math.min(first.x + first.width, second.x + second.width);
+            final int bottom = Math.min(first.y + first.height, second.y + second.height);
+            if (left >= right || top >= bottom) {
+                return null;
+            }
+            return new Rect(left, top, right - left, bottom - top);
         }
+    }
+
+    private static int getThickness(float scale) {
+        return Math.max((int) (10 * scale), 1);
+    }
 
+    // draws the baseline on an image of which the top left corner is at (offsetX, offsetY) of the scaled page
+    private static void writeBaseLineToMat(Mat image, PointsGeometry geometry, float scale, int offsetX, int offsetY) {
+        Scalar color = new Scalar(255);
+        int thickness = getThickness(scale);
+        for (int i = 1; i < geometry.size(); i++) {
+            // truncate on the page, like drawing on the whole page does, before moving to the image
+            final Point beginPoint = new Point((int) (geometry.getX(i - 1) * scale) - offsetX, (int) (geometry.getY(i - 1) * scale) - offsetY);
+            final Point endPoint = new Point((int) (geometry.getX(i) * scale) - offsetX, (int) (geometry.getY(i) * scale) - offsetY);
+            Imgproc.line(image, beginPoint, endPoint, color, thickness);
+        }
     }
 
     private static List<TextLine> extractBaselines(boolean cleanup, int minimumHeight, int minimumWidth, int numLabels, Mat stats, Mat labeled, String identifier) {
@@ -108,7 +215,7 @@ public class BaselinesMapper {
         for (TextLine textLine : allTextLines) {
             int minX = Integer.MAX_VALUE;
             int maxX = Integer.MIN_VALUE;
-            for (Point point : StringConverter.stringToPoint(textLine.getBaseline().getPoints())) {
+            for (Point point : textLine.getBaseline().getGeometry().toPoints()) {
                 if (point.x < minX) {
                     minX = (int) point.x;
                 }
@@ -135,7 +242,7 @@ public class BaselinesMapper {
                     (int) stats.get(i, Imgproc.CC_STAT_WIDTH)[0],
                     (int) stats.get(i, Imgproc.CC_STAT_HEIGHT)[0]);
             Mat submat = labeled.submat(rect);
-            List<Point> baselinePoints = extractBaseline(submat, i, new Point(rect.x, rect.y), minimumHeight, identifier);
+            List<Point> baselinePoints = LayoutProc.extractBaseline(submat, i, new Point(rect.x, rect.y), minimumHeight, identifier);
             if (baselinePoints.size() < 2) {
                 continue;
             }
@@ -156,49 +263,4 @@ public class BaselinesMapper {
         }
         return textLines;
     }
-
-    private static List<Point> extractBaseline(Mat baselineMat, int label, Point offset, int minimumHeight, String imageFile) {
-        List<Point> baseline = new ArrayList<>();
-        Point point = null;
-        int pixelCounter = -1;
-        boolean mergedLineDetected = false;
-        for (int i = 0; i < baselineMat.width(); i++) {
-            boolean mergedLineDetectedStep1 = false;
-            double sum = 0;
-            int counter = 0;
-            for (int j = 0; j < baselineMat.height(); j++) {
-                int pixelValue = (int) baselineMat.get(j, i)[0];
-                if (pixelValue == label) {
-                    sum += j;
-                    counter++;
-                    if (mergedLineDetectedStep1) {
-                        mergedLineDetected = true;
-                    }
-                } else {
-                    if (counter > 0) {
-                        mergedLineDetectedStep1 = true;
-                    }
-                }
-            }
-            if (counter < minimumHeight) {
-                continue;
-            }
-            pixelCounter++;
-            if (counter > 1) {
-                sum /= counter;
-            }
-
-            point = new Point(i + offset.x, sum + offset.y);
-            if (pixelCounter % 50 == 0) {
-                baseline.add(point);
-            }
-        }
-        if (pixelCounter % 50 != 0) {
-            baseline.add(point);
-        }
-        if (mergedLineDetected) {
-            System.out.println("lines detected for: " + imageFile);
-        }
-        return baseline;
-    }
 }
\ No newline at end of file
@@ -134,7 +134,7 @@ public class MergeBaseLines {
         Point endPoint = null;
         Scalar color = new Scalar(255);
         int thickness = 10;
-        for (Point point : StringConverter.stringToPoint(baseline.getPoints())) {
+        for (Point point : baseline.getGeometry().toPoints()) {
             endPoint = point;
             if (beginPoint != null && endPoint != null) {
                 Imgproc.line(image, beginPoint, endPoint, color, thickness);
@@ -155,7 +155,7 @@ public class MergeBaseLines {
         for (TextLine textLine : allTextLines) {
             int minX = Integer.MAX_VALUE;
             int maxX = Integer.MIN_VALUE;
-            for (Point point : StringConverter.stringToPoint(textLine.getBaseline().getPoints())) {
+            for (Point point : textLine.getBaseline().getGeometry().toPoints()) {
                 if (point.x < minX) {
                     minX = (int) point.x;
                 }
@@ -182,7 +182,7 @@ public class MergeBaseLines {
                     (int) stats.get(i, Imgproc.CC_STAT_WIDTH)[0],
                     (int) stats.get(i, Imgproc.CC_STAT_HEIGHT)[0]);
             Mat submat = labeled.submat(rect);
-            List<Point> baselinePoints = extractBaseline(submat, i, new Point(rect.x, rect.y), minimumHeight, identifier);
+            List<Point> baselinePoints = LayoutProc.extractBaseline(submat, i, new Point(rect.x, rect.y), minimumHeight, identifier);
             if (baselinePoints.size() < 2) {
                 continue;
             }
@@ -203,50 +203,4 @@ public class MergeBaseLines {
         }
         return textLines;
     }
-
-    private static List<Point> extractBaseline(Mat baselineMat, int label, Point offset, int minimumHeight, String imageFile) {
-        List<Point> baseline = new ArrayList<>();
-        int i;
-        Point point = null;
-        int pixelCounter = -1;
-        boolean mergedLineDetected = false;
-        for (i = 0; i < baselineMat.width(); i++) {
-            boolean mergedLineDetectedStep1 = false;
-            double sum = 0;
-            int counter = 0;
-            for (int j = 0; j < baselineMat.height(); j++) {
-                int pixelValue = (int) baselineMat.get(j, i)[0];
-                if (pixelValue == label) {
-                    sum += j;
-                    counter++;
-                    if (mergedLineDetectedStep1) {
-                        mergedLineDetected = true;
-                    }
-                } else {
-                    if (counter > 0) {
-                        mergedLineDetectedStep1 = true;
-                    }
-                }
-            }
-            if (counter < minimumHeight) {
-                continue;
-            }
-            pixelCounter++;
-            if (counter > 1) {
-                sum /= counter;
-            }
-
-            point = new Point(i + offset.x, sum + offset.y);
-            if (pixelCounter % 50 == 0) {
-                baseline.add(point);
-            }
-        }
-        if (pixelCounter % 50 != 0) {
-            baseline.add(point);
-        }
-        if (mergedLineDetected) {
-            System.out.println("lines detected for: " + imageFile);
-        }
-        return baseline;
-    }
 }
\ No newline at end of file
@@ -1,7 +1,6 @@
 package nl.knaw.huc.di.images.minions;
 
 import com.google.common.base.Strings;
-import nl.knaw.huc.di.images.imageanalysiscommon.StringConverter;
 import nl.knaw.huc.di.images.layoutanalyzer.layoutlib.LayoutProc;
 import nl.knaw.huc.di.images.layoutds.HibernateHelper;
 import nl.knaw.huc.di.images.layoutds.models.Page.PcGts;
@@ -73,7 +72,7 @@ public class MinionConvertToPdf {
                     if (page != null) {
                         for (TextRegion textRegion : page.getPage().getTextRegions()) {
                             for (TextLine textLine : textRegion.getTextLines()) {
-                                ArrayList<Point> points = StringConverter.stringToPoint(textLine.getBaseline().getPoints());
+                                ArrayList<Point> points = textLine.getBaseline().getGeometry().toPoints();
 
                                 Point start = points.get(0);
                                 pdPageContentStream.beginText();
@@ -84,7 +83,7 @@ public class MinionConvertToPdf {
                                 }
 
 //                                calculate font size
-                                List<Point> baselinePoints = StringConverter.stringToPoint(textLine.getBaseline().getPoints());
+                                List<Point> baselinePoints = textLine.getBaseline().getGeometry().toPoints();
                                 double distance = LayoutProc.getDistance(baselinePoints.get(0), baselinePoints.get(baselinePoints.size() - 1));
 
                                 TextEquiv textEquiv = textLine.getTextEquiv();
@@ -2,7 +2,7 @@ package nl.knaw.huc.di.images.minions;
 
 import com.google.common.base.Stopwatch;
 import com.google.common.base.Strings;
-import nl.knaw.huc.di.images.imageanalysiscommon.StringConverter;
+import nl.knaw.huc.di.images.imageanalysiscommon.StageMetrics;
 import nl.knaw.huc.di.images.layoutanalyzer.layoutlib.BinaryLineStrip;
 import nl.knaw.huc.di.images.layoutanalyzer.layoutlib.LayoutProc;
 import nl.knaw.huc.di.images.layoutanalyzer.layoutlib.OpenCVWrapper;
@@ -12,7 +12,9 @@ import nl.knaw.huc.di.images.layoutds.models.Page.TextRegion;
 import nl.knaw.huc.di.images.layoutds.models.Page.TextStyle;
 import nl.knaw.huc.di.images.pagexmlutils.GroundTruthTextLineFormatter;
 import nl.knaw.huc.di.images.pagexmlutils.PageUtils;
+import nl.knaw.huc.di.images.pipelineutils.CheckpointManifest;
 import nl.knaw.huc.di.images.pipelineutils.ErrorFileWriter;
+import nl.knaw.huc.di.images.pipelineutils.TarShardWriter;
 import nl.knaw.huc.di.images.stringtools.StringTools;
 import org.apache.commons.cli.*;
 import org.apache.commons.io.FilenameUtils;
@@ -25,16 +27,24 @@ import org.slf4j.LoggerFactory;
 import javax.xml.transform.TransformerException;
 import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 
 import static org.opencv.imgcodecs.Imgcodecs.IMWRITE_PNG_COMPRESSION;
+import static org.opencv.imgcodecs.Imgcodecs.IMWRITE_PNG_STRATEGY;
 
 
 /*
@@ -45,6 +55,10 @@ public class MinionCutFromImageBasedOnPageXMLNew extends BaseMinion implements R
     public static final int DEFAULT_MINIMUM_INTERLINE_DISTANCE = 35;
     public static final int DEFAULT_PNG_COMPRESSION_LEVEL = 1;
     final static double SHRINK_FACTOR = 4;
+    static final String DEFAULT_SHARD_PREFIX = "snippets";
+    static final String MANIFEST_STAGE = "cut";
+    // raise when the snippets change, so a run with -manifest cuts the images that are done again
+    static final int MANIFEST_STAGE_VERSION = 1;
 
     static {
         System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
@@ -83,6 +97,14 @@ public class MinionCutFromImageBasedOnPageXMLNew extends BaseMinion implements R
     private final int minimumInterlineDistance;
     private final int pngCompressionLevel;
     private final Optional<ErrorFileWriter> errorFileWriter;
+    private TarShardWriter shardWriter;
+    private ForkJoinPool linePool;
+    private CheckpointManifest manifest;
+    // the number and size of the files written for the page, the manifest records them instead of a checksum
+    private final LongAdder writtenFiles = new LongAdder();
+    private final LongAdder writtenBytes = new LongAdder();
+    private volatile boolean failed;
+    private Integer pngStrategy;
 
     public MinionCutFromImageBasedOnPageXMLNew(String identifier, Supplier<Mat> imageSupplier,
                                                Supplier<PcGts> pageSupplier, String outputBase,
@@ -153,7 +175,38 @@ public class MinionCutFromImageBasedOnPageXMLNew extends BaseMinion implements R
         this.errorFileWriter = errorFileWriter;
     }
 
-    private static Options getOptions() {
+    /**
+     * Writes the snippets and their text files to the shards of the shard writer instead of to a directory per image.
+     * The done file writer runs when the shard with the snippets of the image is finished.
+     */
+    void setShardWriter(TarShardWriter shardWriter) {
+        this.shardWriter = shardWriter;
+    }
+
+    /**
+     * Divides the text lines of a page over the threads of the pool, so the lines of a large page do not keep one
+     * thread busy while the others are done. The pool can be shared by the minions of all pages.
+     */
+    void setLinePool(ForkJoinPool linePool) {
+        this.linePool = linePool;
+    }
+
+    /**
+     * Records in the manifest that the page is done, with the number and size of its files, or that it failed. The
+     * done file writer is not used then.
+     */
+    void setManifest(CheckpointManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    /**
+     * @param pngStrategy one of the Imgcodecs.IMWRITE_PNG_STRATEGY_* values, null for the default of OpenCV
+     */
+    void setPngStrategy(Integer pngStrategy) {
+        this.pngStrategy = pngStrategy;
+    }
+
+    static Options getOptions() {
         Options options = new Options();
 // -input_path /media/rutger/DIFOR1/data/republicready/385578/3116_1586_2/ -outputbase /media/rutger/DIFOR1/data/republicready/snippets/ -output_type png -channels 4 -write_text_contents
         options.addOption(Option.builder("input_path").required(true).hasArg(true)
@@ -175,6 +228,16 @@ public class MinionCutFromImageBasedOnPageXMLNew extends BaseMinion implements R
         options.addOption("no_page_update", false, "do not update existing page");
         options.addOption("write_done", true, "write done files for images that are processed (default true)");
         options.addOption("ignore_done", false, "ignore done files and (re)process all images");
+        options.addOption("line_threads", true, "number of threads that cut the text lines of the pages (default 1, " +
+                "the thread of the page cuts its lines)");
+        options.addOption("png_strategy", true, "zlib strategy of the png encoder: 0 default, 1 filtered, " +
+                "2 huffman only, 3 rle, 4 fixed");
+        options.addOption("shard_size", true, "write the snippets to tar shards of at most this many megabytes " +
+                "in outputbase instead of to a directory per image");
+        options.addOption("shard_prefix", true, "name of the shards, default " + DEFAULT_SHARD_PREFIX + ". Processes " +
+                "that write to the same outputbase need a prefix of their own");
+        options.addOption("manifest", false, "keep track of the processed images in a manifest in outputbase " +
+                "instead of done files");
         options.addOption("copy_font_file", false, "Move the font file if it exists");
         options.addOption("help", false, "prints this help dialog");
         options.addOption("include_text_styles", false, "include text styles in output as special characters");
@@ -182,29 +245,34 @@ public class MinionCutFromImageBasedOnPageXMLNew extends BaseMinion implements R
         options.addOption("no_text_line_contour_recalculation", false, "recalculate textline contours based on the baseline");
         options.addOption("skip_unclear", false, "skip lines containing 'unclear' tag. In general set this when training, but not for inferencing");
         options.addOption("use_2013_namespace", "set PageXML namespace to 2013, to avoid causing problems with Transkribus");
+        BaseMinion.addPageValidationOption(options);
         options.addOption("minimum_confidence", true, "minimum confidence for a textline to be included in the output. Default null, meaning include all textlines");
         options.addOption("minimum_interlinedistance", true, "Minimum interlinedistance, default 35");
         options.addOption("output_confidence_file", false, "output confidence files");
         options.addOption("png_compressionlevel", false, "output confidence files");
+        BaseMinion.addMetricsReportOption(options);
 
         return options;
     }
 
 
     String tmpdir=null;
-    private void atomicImwrite(String path, Mat mat){
-        atomicImwrite(path, mat, new MatOfInt());
+    private long atomicImwrite(String path, Mat mat){
+        return atomicImwrite(path, mat, new MatOfInt());
     }
-    private void atomicImwrite(String path, Mat mat, MatOfInt parametersMatOfInt){
+    // returns the size of the written file
+    private long atomicImwrite(String path, Mat mat, MatOfInt parametersMatOfInt){
         if (tmpdir==null){
             tmpdir = System.getProperty("java.io.tmpdir");
             new File(tmpdir).mkdirs();
         }
         String filename = new File(path).getName();
         String source = tmpdir + '/' + filename;
-        Imgcodecs.imwrite(source, mat, parametersMatOfInt);
-        try {
+        try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.WRITE)) {
+            Imgcodecs.imwrite(source, mat, parametersMatOfInt);
+            final long size = Files.size(Paths.get(source));
             Files.move(Paths.get(source), Paths.get(path));
+            return size;
         } catch (IOException e) {
             LOG.error("could not move file to "+path);
             throw new RuntimeException(e);
@@ -214,27 +282,7 @@ public class MinionCutFromImageBasedOnPageXMLNew extends BaseMinion implements R
     public static void main(String[] args) throws Exception {
         int numthreads = 1;
         Path inputPath = Paths.get("/media/rutger/DIFOR1/data/1.05.14/83/");
-        String outputBase = "/tmp/output/imagesnippets/";
-        boolean overwriteExistingPage = true;
-        int minHeight = 5;
-        int minWidth = 5;
-        int minWidthToHeight = 0;
-        Integer rescaleHeight = null;
-        String outputType = "png";
-        int channels = 4;
-        boolean writeTextContents = false;
-        boolean outputConfFile = false;
-        boolean outputBoxFile = true;
-        boolean outputTxtFile = true;
-        boolean diforNames;
-        boolean recalculateTextLineContoursFromBaselines;
-        boolean writeDoneFiles = true;
-        boolean ignoreDoneFiles;
         boolean copyFontFile = false;
-        boolean includeTextStyles = false;
-        boolean useTags = false;
-        boolean skipUnclear = false;
-        Double minimumConfidence = 0.0;
         Options options = getOptions();
         CommandLineParser parser = new DefaultParser();
         CommandLine commandLine;
@@ -253,37 +301,10 @@ public class MinionCutFromImageBasedOnPageXMLNew extends BaseMinion implements R
         if (commandLine.hasOption("input_path")) {
             inputPath = Paths.get(commandLine.getOptionValue("input_path"));
         }
-        if (commandLine.hasOption("outputbase")) {
-            outputBase = commandLine.getOptionValue("outputbase");
-        }
-        if (commandLine.hasOption("output_type")) {
-            outputType = commandLine.getOptionValue("output_type");
-        }
-        if (commandLine.hasOption("channels")) {
-            channels = Integer.parseInt(commandLine.getOptionValue("channels"));
-        }
-        if (commandLine.hasOption("write_text_contents")) {
-            writeTextContents = true;
-        }
-        Integer fixedXHeight = null;
-        if (commandLine.hasOption("xheight")) {
-            fixedXHeight = Integer.parseInt(commandLine.getOptionValue("xheight"));
-        }
-        int minimumXHeight = LayoutProc.MINIMUM_XHEIGHT;
-        if (commandLine.hasOption("minimum_xheight")) {
-            minimumXHeight = Integer.parseInt(commandLine.getOptionValue("minimum_xheight"));
-        }
 
         if (commandLine.hasOption("threads")) {
             numthreads = Integer.parseInt(commandLine.getOptionValue("threads"));
         }
-        if (commandLine.hasOption("rescaleheight")) {
-            rescaleHeight = Integer.parseInt(commandLine.getOptionValue("rescaleheight"));
-        }
-
-        if (commandLine.hasOption("min_width")) {
-            minWidth = Integer.parseInt(commandLine.getOptionValue("min_width"));
-        }
 
         final Path pagePath;
         if (commandLine.hasOption("page_path")) {
@@ -292,58 +313,20 @@ public class MinionCutFromImageBasedOnPageXMLNew extends BaseMinion implements R
             pagePath = inputPath.resolve("page");
         }
 
-        if (commandLine.hasOption("no_page_update")) {
-            overwriteExistingPage = false;
-        }
-
-        if (commandLine.hasOption("write_done")) {
-             writeDoneFiles = "true".equals(commandLine.getOptionValue("write_done"));
-        }
-
         if (commandLine.hasOption("copy_font_file")) {
             copyFontFile = true;
         }
 
-        if (commandLine.hasOption("include_text_styles")) {
-            includeTextStyles = true;
-        }
-
-        if (commandLine.hasOption("use_tags")) {
-            useTags = true;
-            // Provide warning if include_text_styles is not true since it requires the text styles for conversion
-            if (!includeTextStyles){
-                LOG.warn("-use_tags is used without -include_text_styles, this will yield plain text. " +
-                        "Please pass -include_text_styles as well to ensure html-tag results.");
-            }
-        }
-
-        if (commandLine.hasOption("skip_unclear")) {
-            skipUnclear = true;
-        }
-        if (commandLine.hasOption("minimum_confidence")) {
-            minimumConfidence = Double.parseDouble(commandLine.getOptionValue("minimum_confidence"));
-        }
-
-        int minimumInterlineDistance = DEFAULT_MINIMUM_INTERLINE_DISTANCE;
-        if (commandLine.hasOption("minimum_interlinedistance")) {
-            minimumInterlineDistance = Integer.parseInt(commandLine.getOptionValue("minimum_interlinedistance"));
-        }
-
-        int pngCompressionLevel = DEFAULT_PNG_COMPRESSION_LEVEL;
-        if (commandLine.hasOption("png_compressionlevel")) {
-            pngCompressionLevel = Integer.parseInt(commandLine.getOptionValue("png_compressionlevel"));
-        }
-
-
-
-        ignoreDoneFiles = commandLine.hasOption("ignore_done");
-
-        diforNames = commandLine.hasOption("difor_names");
-
-        recalculateTextLineContoursFromBaselines = !commandLine.hasOption("no_text_line_contour_recalculation");
-
-        outputConfFile = commandLine.hasOption("output_confidence_file");
+        final Settings settings = Settings.fromCommandLine(commandLine);
+        final String outputBase = settings.outputBase;
+        final CheckpointManifest manifest = commandLine.hasOption("manifest")
+                ? CheckpointManifest.open(Paths.get(outputBase))
+                : null;
+        final boolean skipDone = manifest != null && !commandLine.hasOption("ignore_done");
+        final TarShardWriter shardWriter = settings.openShardWriter();
+        final ForkJoinPool linePool = settings.createLinePool();
         String namespace = commandLine.hasOption("use_2013_namespace") ? PageUtils.NAMESPACE2013: PageUtils.NAMESPACE2019;
+        BaseMinion.setPageValidationPolicy(commandLine);
 
 
         ExecutorService executor = Executors.newFixedThreadPool(numthreads);
@@ -397,6 +380,11 @@ public class MinionCutFromImageBasedOnPageXMLNew extends BaseMinion implements R
                 }
             };
 
+            if (skipDone && manifest.isDone(identifier, MANIFEST_STAGE, MANIFEST_STAGE_VERSION)) {
+                LOG.debug("{} is done", identifier);
+                continue;
+            }
+
             Runnable doneFileWriter = () -> {
                 try {
                     StringTools.writeFile(imageFile + ".done", "");
@@ -418,19 +406,220 @@ public class MinionCutFromImageBasedOnPageXMLNew extends BaseMinion implements R
                 Files.copy(copyInputFile.toPath(), copyOutputFile.toPath(), StandardCopyOption.REPLACE_EXISTING) ;
             }
 
-            Runnable worker = new MinionCutFromImageBasedOnPageXMLNew(identifier, imageSupplier, pageSupplier,
-                    outputBase, imageFile.getFileName().toString(), overwriteExistingPage,
-                    minWidth, minHeight, minWidthToHeight, outputType, channels, writeTextContents, rescaleHeight,
-                    outputConfFile, outputBoxFile, outputTxtFile, recalculateTextLineContoursFromBaselines,
-                    fixedXHeight, minimumXHeight, diforNames, writeDoneFiles, ignoreDoneFiles, error -> {}, pageSaver,
-                    doneFileWriter, includeTextStyles, useTags, skipUnclear, minimumConfidence,
-                    minimumInterlineDistance, pngCompressionLevel, Optional.empty());
+            MinionCutFromImageBasedOnPageXMLNew worker = settings.create(identifier, imageSupplier, pageSupplier,
+                    imageFile.getFileName().toString(), pageSaver, doneFileWriter);
+            worker.setShardWriter(shardWriter);
+            worker.setLinePool(linePool);
+            worker.setManifest(manifest);
+            if (manifest != null) {
+                manifest.started(identifier, MANIFEST_STAGE, MANIFEST_STAGE_VERSION);
+            }
             executor.execute(worker);
         }
 
 
         executor.shutdown();
-        executor.awaitTermination(60L, TimeUnit.MINUTES);
+        // the pages that are still running write to the shards and the manifest, they are closed when all are done
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        if (linePool != null) {
+            linePool.shutdown();
+        }
+        // finishing the last shard records its images in the manifest
+        if (shardWriter != null) {
+            shardWriter.close();
+        }
+        if (manifest != null) {
+            manifest.close();
+        }
+        BaseMinion.printMetricsReport(commandLine);
+    }
+
+    /**
+     * The options of main that decide how the text lines of a page are cut, so other runners of this minion, like
+     * MinionPipeline, take the same options.
+     */
+    static class Settings {
+        private final String outputBase;
+        private final boolean overwriteExistingPage;
+        private final int minWidth;
+        private final int minHeight;
+        private final int minWidthToHeight;
+        private final String outputType;
+        private final int channels;
+        private final boolean writeTextContents;
+        private final Integer rescaleHeight;
+        private final boolean outputConfFile;
+        private final boolean outputBoxFile;
+        private final boolean outputTxtFile;
+        private final boolean recalculateTextLineContoursFromBaselines;
+        private final Integer fixedXHeight;
+        private final int minimumXHeight;
+        private final boolean diforNames;
+        private final boolean writeDoneFiles;
+        private final boolean ignoreDoneFiles;
+        private final boolean includeTextStyles;
+        private final boolean useTags;
+        private final boolean skipUnclear;
+        private final Double minimumConfidence;
+        private final int minimumInterlineDistance;
+        private final int pngCompressionLevel;
+        private final Integer shardSizeMegabytes;
+        private final String shardPrefix;
+        private final int lineThreads;
+        private final Integer pngStrategy;
+
+        private Settings(String outputBase, boolean overwriteExistingPage, int minWidth, int minHeight,
+                         int minWidthToHeight, String outputType, int channels, boolean writeTextContents,
+                         Integer rescaleHeight, boolean outputConfFile, boolean outputBoxFile, boolean outputTxtFile,
+                         boolean recalculateTextLineContoursFromBaselines, Integer fixedXHeight, int minimumXHeight,
+                         boolean diforNames, boolean writeDoneFiles, boolean ignoreDoneFiles,
+                         boolean includeTextStyles, boolean useTags, boolean skipUnclear, Double minimumConfidence,
+                         int minimumInterlineDistance, int pngCompressionLevel, Integer shardSizeMegabytes,
+                         String shardPrefix, int lineThreads, Integer pngStrategy) {
+            this.outputBase = outputBase;
+            this.overwriteExistingPage = overwriteExistingPage;
+            this.minWidth = minWidth;
+            this.minHeight = minHeight;
+            this.minWidthToHeight = minWidthToHeight;
+            this.outputType = outputType;
+            this.channels = channels;
+            this.writeTextContents = writeTextContents;
+            this.rescaleHeight = rescaleHeight;
+            this.outputConfFile = outputConfFile;
+            this.outputBoxFile = outputBoxFile;
+            this.outputTxtFile = outputTxtFile;
+            this.recalculateTextLineContoursFromBaselines = recalculateTextLineContoursFromBaselines;
+            this.fixedXHeight = fixedXHeight;
+            this.minimumXHeight = minimumXHeight;
+            this.diforNames = diforNames;
+            this.writeDoneFiles = writeDoneFiles;
+            this.ignoreDoneFiles = ignoreDoneFiles;
+            this.includeTextStyles = includeTextStyles;
+            this.useTags = useTags;
+            this.skipUnclear = skipUnclear;
+            this.minimumConfidence = minimumConfidence;
+            this.minimumInterlineDistance = minimumInterlineDistance;
+            this.pngCompressionLevel = pngCompressionLevel;
+            this.shardSizeMegabytes = shardSizeMegabytes;
+            this.shardPrefix = shardPrefix;
+            this.lineThreads = lineThreads;
+            this.pngStrategy = pngStrategy;
+        }
+
+        static Settings fromCommandLine(CommandLine commandLine) {
+            String outputBase = "/tmp/output/imagesnippets/";
+            if (commandLine.hasOption("outputbase")) {
+                outputBase = commandLine.getOptionValue("outputbase");
+            }
+            String outputType = "png";
+            if (commandLine.hasOption("output_type")) {
+                outputType = commandLine.getOptionValue("output_type");
+            }
+            int channels = 4;
+            if (commandLine.hasOption("channels")) {
+                channels = Integer.parseInt(commandLine.getOptionValue("channels"));
+            }
+            Integer fixedXHeight = null;
+            if (commandLine.hasOption("xheight")) {
+                fixedXHeight = Integer.parseInt(commandLine.getOptionValue("xheight"));
+            }
+            int minimumXHeight = LayoutProc.MINIMUM_XHEIGHT;
+            if (commandLine.hasOption("minimum_xheight")) {
+                minimumXHeight = Integer.parseInt(commandLine.getOptionValue("minimum_xheight"));
+            }
+            Integer rescaleHeight = null;
+            if (commandLine.hasOption("rescaleheight")) {
+                rescaleHeight = Integer.parseInt(commandLine.getOptionValue("rescaleheight"));
+            }
+            int minWidth = 5;
+            if (commandLine.hasOption("min_width")) {
+                minWidth = Integer.parseInt(commandLine.getOptionValue("min_width"));
+            }
+            boolean writeDoneFiles = true;
+            if (commandLine.hasOption("write_done")) {
+                writeDoneFiles = "true".equals(commandLine.getOptionValue("write_done"));
+            }
+            // main skips the images in the manifest, the done file writer records the image in the manifest
+            final boolean ignoreDoneFiles = commandLine.hasOption("ignore_done") || commandLine.hasOption("manifest");
+            if (commandLine.hasOption("manifest")) {
+                writeDoneFiles = true;
+            }
+            final boolean includeTextStyles = commandLine.hasOption("include_text_styles");
+            final boolean useTags = commandLine.hasOption("use_tags");
+            // Provide warning if include_text_styles is not true since it requires the text styles for conversion
+            if (useTags && !includeTextStyles) {
+                LOG.warn("-use_tags is used without -include_text_styles, this will yield plain text. " +
+                        "Please pass -include_text_styles as well to ensure html-tag results.");
+            }
+            Double minimumConfidence = 0.0;
+            if (commandLine.hasOption("minimum_confidence")) {
+                minimumConfidence = Double.parseDouble(commandLine.getOptionValue("minimum_confidence"));
+            }
+            int minimumInterlineDistance = DEFAULT_MINIMUM_INTERLINE_DISTANCE;
+            if (commandLine.hasOption("minimum_interlinedistance")) {
+                minimumInterlineDistance = Integer.parseInt(commandLine.getOptionValue("minimum_interlinedistance"));
+            }
+            int pngCompressionLevel = DEFAULT_PNG_COMPRESSION_LEVEL;
+            if (commandLine.hasOption("png_compressionlevel")) {
+                pngCompressionLevel = Integer.parseInt(commandLine.getOptionValue("png_compressionlevel"));
+            }
+            int lineThreads = 1;
+            if (commandLine.hasOption("line_threads")) {
+                lineThreads = Integer.parseInt(commandLine.getOptionValue("line_threads"));
+                if (lineThreads < 1) {
+                    throw new IllegalArgumentException("line_threads must be at least 1, not " + lineThreads);
+                }
+            }
+            Integer pngStrategy = null;
+            if (commandLine.hasOption("png_strategy")) {
+                pngStrategy = Integer.parseInt(commandLine.getOptionValue("png_strategy"));
+            }
+            Integer shardSizeMegabytes = null;
+            if (commandLine.hasOption("shard_size")) {
+                shardSizeMegabytes = Integer.parseInt(commandLine.getOptionValue("shard_size"));
+            }
+            final String shardPrefix = commandLine.getOptionValue("shard_prefix", DEFAULT_SHARD_PREFIX);
+
+            return new Settings(outputBase, !commandLine.hasOption("no_page_update"), minWidth, 5, 0, outputType,
+                    channels, commandLine.hasOption("write_text_contents"), rescaleHeight,
+                    commandLine.hasOption("output_confidence_file"), true, true,
+                    !commandLine.hasOption("no_text_line_contour_recalculation"), fixedXHeight, minimumXHeight,
+                    commandLine.hasOption("difor_names"), writeDoneFiles, ignoreDoneFiles,
+                    includeTextStyles, useTags, commandLine.hasOption("skip_unclear"), minimumConfidence,
+                    minimumInterlineDistance, pngCompressionLevel, shardSizeMegabytes, shardPrefix, lineThreads,
+                    pngStrategy);
+        }
+
+        /**
+         * @return the pool for the text lines, null if every page cuts its own lines
+         */
+        ForkJoinPool createLinePool() {
+            return lineThreads > 1 ? new ForkJoinPool(lineThreads) : null;
+        }
+
+        /**
+         * @return a writer for the shards in outputbase, null if the snippets are written to a directory per image
+         */
+        TarShardWriter openShardWriter() throws IOException {
+            if (shardSizeMegabytes == null) {
+                return null;
+            }
+            return new TarShardWriter(Paths.get(outputBase), shardPrefix, shardSizeMegabytes * 1024L * 1024L);
+        }
+
+        MinionCutFromImageBasedOnPageXMLNew create(String identifier, Supplier<Mat> imageSupplier,
+                                                   Supplier<PcGts> pageSupplier, String imageFileName,
+                                                   Consumer<PcGts> pageSaver, Runnable doneFileWriter) {
+            final MinionCutFromImageBasedOnPageXMLNew minion = new MinionCutFromImageBasedOnPageXMLNew(identifier,
+                    imageSupplier, pageSupplier, outputBase,
+                    imageFileName, overwriteExistingPage, minWidth, minHeight, minWidthToHeight, outputType, channels,
+                    writeTextContents, rescaleHeight, outputConfFile, outputBoxFile, outputTxtFile,
+                    recalculateTextLineContoursFromBaselines, fixedXHeight, minimumXHeight, diforNames, writeDoneFiles,
+                    ignoreDoneFiles, error -> {}, pageSaver, doneFileWriter, includeTextStyles, useTags, skipUnclear,
+                    minimumConfidence, minimumInterlineDistance, pngCompressionLevel, Optional.empty());
+            minion.setPngStrategy(pngStrategy);
+            return minion;
+        }
     }
 
     private static boolean hasImageExtension(Path file){
@@ -448,7 +637,9 @@ public class MinionCutFromImageBasedOnPageXMLNew extends BaseMinion implements R
 
         Mat image;
         LOG.debug(identifier + " processing...");
-        image = imageSupplier.get();
+        try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.DECODE)) {
+            image = imageSupplier.get();
+        }
         if (!new File(outputBase).exists()) {
             if (!new File(outputBase).mkdir()){
                 LOG.error(identifier+" could not create outputdir: " + outputBase);
@@ -457,165 +648,315 @@ public class MinionCutFromImageBasedOnPageXMLNew extends BaseMinion implements R
 
         if (image.size().width == 0 || image.size().height == 0) {
             LOG.error(identifier + " broken image");
+            recordFailed();
             Files.createDirectory(Paths.get(balancedOutputBase + "/" + fileNameWithoutExtension));
             errorFileWriter.ifPresent(errorWriter -> errorWriter.writeToFile(balancedOutputBase + "/" + fileNameWithoutExtension + "/processing.error", "broken image"));
             return;
         }
 
-        File balancedOutputBaseTmp = Files.createTempDirectory(balancedOutputBase.toPath().getParent(), "." + balancedOutputBase.toPath().getFileName()).toFile();
+        final List<TarShardWriter.Entry> shardEntries = shardWriter != null ? new ArrayList<>() : null;
+        final File balancedOutputBaseTmp = shardWriter != null ? null : Files.createTempDirectory(balancedOutputBase.toPath().getParent(), "." + balancedOutputBase.toPath().getFileName()).toFile();
 
         PcGts page = this.pageSupplier.get();
         if (page==null){
             LOG.error(identifier + " Page is null");
+            recordFailed();
             errorFileWriter.ifPresent(errorWriter -> errorWriter.writeToFile(balancedOutputBase + "/" + fileNameWithoutExtension + "/processing.error", identifier + " Page is null"));
             return;
         }
 
-        final Stopwatch recalc = Stopwatch.createStarted();
         // resize image
 
         if (recalculateTextLineContoursFromBaselines) {
             LayoutProc.recalculateTextLineContoursFromBaselines(imageSupplier.toString(), image, page, SHRINK_FACTOR, minimumInterlineDistance);
         }
-        LOG.debug(identifier + "recalc: " + recalc.stop());
 
+        final List<TextLine> textLines = new ArrayList<>();
         for (TextRegion textRegion : page.getPage().getTextRegions()) {
-            for (TextLine textLine : textRegion.getTextLines()) {
-                if (this.skipUnclear && textLine.getCustom()!=null && textLine.getCustom().contains("unclear")){
-                    continue;
-                }
+            textLines.addAll(textRegion.getTextLines());
+        }
+        final int snippets = cutTextLines(textLines, image, balancedOutputBaseTmp, shardEntries, fileNameWithoutExtension);
 
-                if (minimumConfidence != null){
-                    if (textLine.getTextEquiv()!=null && textLine.getTextEquiv().getConf() != null
-                            && Double.parseDouble(textLine.getTextEquiv().getConf()) < minimumConfidence) {
-                        continue;
-                    }
-                }
 
-                List<Point> contourPoints = StringConverter.stringToPoint(textLine.getCoords().getPoints());
-                if (contourPoints.size() == 0) {
-                    //TODO: this should not abort the flow
-                    continue;
-                }
-                List<Point> baseLinePoints = StringConverter.stringToPoint(textLine.getBaseline().getPoints());
-                Integer xHeight = null;
-                TextStyle textStyle = textLine.getTextStyle();
-                if (textStyle != null) {
-                    xHeight = textStyle.getxHeight();
-                }
+        // the page is saved before the shard writer can record it as done
+        if (overwriteExistingPage) {
+            pageSaver.accept(page);
+        }
+
+        if (shardWriter != null) {
+            shardWriter.write(shardEntries, this.writeDoneFiles ? getDoneWriter() : () -> {});
+        } else {
+            if (balancedOutputBase.exists()) {
+                deleteFolderRecursively(balancedOutputBase);
+            }
+
+            Files.move(balancedOutputBaseTmp.toPath(), balancedOutputBase.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        StageMetrics.recordItems(StageMetrics.Stage.CUT, snippets);
+        image = OpenCVWrapper.release(image);
+        LOG.debug(identifier + " single image took: " + stopwatch.elapsed(TimeUnit.MILLISECONDS));
+
+        if (this.writeDoneFiles && shardWriter == null) {
+            getDoneWriter().run();
+        }
+    }
+
+    private Runnable getDoneWriter() {
+        if (manifest == null) {
+            return doneFileWriter;
+        }
+        return () -> manifest.done(identifier, MANIFEST_STAGE, MANIFEST_STAGE_VERSION,
+                writtenFiles.sum() + " files " + writtenBytes.sum() + " bytes");
+    }
+
+    /**
+     * @return true if the page could not be cut, the problem is logged instead of thrown
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    private void recordFailed() {
+        failed = true;
+        if (manifest != null) {
+            manifest.failed(identifier, MANIFEST_STAGE, MANIFEST_STAGE_VERSION);
+        }
+    }
 
-                if (fixedXHeight != null) {
-                    xHeight = fixedXHeight;
+    /**
+     * Cuts the text lines one by one, or divides them over the threads of the line pool. With the line pool the shard
+     * entries of the lines are added in the order of the lines, as without it.
+     *
+     * @return the number of snippets written
+     */
+    private int cutTextLines(List<TextLine> textLines, Mat image, File outputDirectory,
+                             List<TarShardWriter.Entry> shardEntries, String fileNameWithoutExtension) throws IOException {
+        final MatOfInt writeParameters = getWriteParameters();
+        try {
+            if (linePool == null || textLines.size() < 2) {
+                int snippets = 0;
+                for (TextLine textLine : textLines) {
+                    snippets += cutTextLine(textLine, image, outputDirectory, shardEntries, fileNameWithoutExtension,
+                            writeParameters);
                 }
-                if (xHeight == null || xHeight < minimumXHeight) {
-                    xHeight = minimumXHeight;
+                return snippets;
+            }
+
+            final List<Callable<Integer>> tasks = new ArrayList<>();
+            final List<List<TarShardWriter.Entry>> lineShardEntries = new ArrayList<>();
+            for (TextLine textLine : textLines) {
+                final List<TarShardWriter.Entry> lineEntries = shardEntries != null ? new ArrayList<>() : null;
+                lineShardEntries.add(lineEntries);
+                tasks.add(() -> cutTextLine(textLine, image, outputDirectory, lineEntries, fileNameWithoutExtension,
+                        writeParameters));
+            }
+            int snippets = 0;
+            for (Future<Integer> future : linePool.invokeAll(tasks)) {
+                snippets += getSnippets(future);
+            }
+            if (shardEntries != null) {
+                lineShardEntries.forEach(shardEntries::addAll);
+            }
+            return snippets;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(identifier + " was interrupted while cutting text lines");
+        } finally {
+            writeParameters.release();
+        }
+    }
+
+    private static int getSnippets(Future<Integer> future) throws IOException, InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    // from documentation opencv
+    // For PNG, it can be the compression level from 0 to 9. A higher value means a smaller size and longer compression time. If specified, strategy is changed to IMWRITE_PNG_STRATEGY_DEFAULT (Z_DEFAULT_STRATEGY). Default value is 1 (best speed setting).
+    // so the strategy has to come after the compression level
+    private MatOfInt getWriteParameters() {
+        final MatOfInt parametersMatOfInt = new MatOfInt();
+        if (this.outputType.equals("png") && !this.useDiforNames) {
+            final List<Integer> parameters = new ArrayList<>();
+            parameters.add(IMWRITE_PNG_COMPRESSION);
+            parameters.add(this.pngCompressionLevel);
+            if (this.pngStrategy != null) {
+                parameters.add(IMWRITE_PNG_STRATEGY);
+                parameters.add(this.pngStrategy);
+            }
+            parametersMatOfInt.fromList(parameters);
+        }
+        return parametersMatOfInt;
+    }
+
+    // cuts the snippet of the text line and writes it with its text files, returns the number of snippets written
+    private int cutTextLine(TextLine textLine, Mat image, File outputDirectory, List<TarShardWriter.Entry> shardEntries,
+                            String fileNameWithoutExtension, MatOfInt writeParameters) throws IOException {
+        if (this.skipUnclear && textLine.getCustom()!=null && textLine.getCustom().contains("unclear")){
+            return 0;
+        }
+
+        if (minimumConfidence != null){
+            if (textLine.getTextEquiv()!=null && textLine.getTextEquiv().getConf() != null
+                    && Double.parseDouble(textLine.getTextEquiv().getConf()) < minimumConfidence) {
+                return 0;
+            }
+        }
+
+        List<Point> contourPoints = textLine.getCoords().getGeometry().toPoints();
+        if (contourPoints.size() == 0) {
+            //TODO: this should not abort the flow
+            return 0;
+        }
+        List<Point> baseLinePoints = textLine.getBaseline().getGeometry().toPoints();
+        Integer xHeight = null;
+        TextStyle textStyle = textLine.getTextStyle();
+        if (textStyle != null) {
+            xHeight = textStyle.getxHeight();
+        }
+
+        if (fixedXHeight != null) {
+            xHeight = fixedXHeight;
+        }
+        if (xHeight == null || xHeight < minimumXHeight) {
+            xHeight = minimumXHeight;
+        }
+        // TODO: determine xheight by histogram
+        // TODO: determin xheight by CoCo (printed/printlike only)
+        // TODO determine xheight by moving entire baseline up and counting binary pixels
+        // TODO: determine xheight by smearing
+        boolean includeMask = this.channels == 4;
+        String lineStripId = identifier + "-" + textLine.getId();
+        final BinaryLineStrip binaryLineStrip;
+        try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.CUT)) {
+            binaryLineStrip = LayoutProc.getBinaryLineStrip(imageSupplier.toString(), image, contourPoints,
+                    baseLinePoints, xHeight, includeMask, minWidth, lineStripId, 4, 3, 2);
+        }
+        Mat lineStrip = null;
+        try {
+            if (binaryLineStrip != null && binaryLineStrip.getLineStrip() != null) {
+                lineStrip = binaryLineStrip.getLineStrip();
+                xHeight = binaryLineStrip.getxHeight();
+                if (textLine.getTextStyle() == null) {
+                    textLine.setTextStyle(new TextStyle());
                 }
-                // TODO: determine xheight by histogram
-                // TODO: determin xheight by CoCo (printed/printlike only)
-                // TODO determine xheight by moving entire baseline up and counting binary pixels
-                // TODO: determine xheight by smearing
-                boolean includeMask = this.channels == 4;
-                String lineStripId = identifier + "-" + textLine.getId();
-                BinaryLineStrip binaryLineStrip = LayoutProc.getBinaryLineStrip(imageSupplier.toString(), image, contourPoints,
-                        baseLinePoints, xHeight, includeMask, minWidth, lineStripId, 4, 3, 2);
-                Mat lineStrip = null;
-                if (binaryLineStrip != null && binaryLineStrip.getLineStrip() != null) {
-                    lineStrip = binaryLineStrip.getLineStrip();
-                    xHeight = binaryLineStrip.getxHeight();
-                    if (textLine.getTextStyle() == null) {
-                        textLine.setTextStyle(new TextStyle());
-                    }
-                    textLine.getTextStyle().setxHeight(xHeight);
-                    if (lineStrip.width() >= minWidth
-                            && lineStrip.height() > minHeight
-                            && (lineStrip.width() / lineStrip.height()) >= minWidthToHeight) {
+                textLine.getTextStyle().setxHeight(xHeight);
+                if (lineStrip.width() >= minWidth
+                        && lineStrip.height() > minHeight
+                        && (lineStrip.width() / lineStrip.height()) >= minWidthToHeight) {
 //                            String randomUUIDString = inputXmlFilePath.getFileName().toString() + "-" + textRegion.getId()+"-"+textLine.getId();
-                        if (rescaleHeight != null) {
-                            Mat binaryLineStripNew = new Mat();
-                            double targetHeight = rescaleHeight;
-                            double heightScale = targetHeight / (double) (lineStrip.height());
-                            double newWidth = heightScale * lineStrip.width();
-                            if (newWidth < 32) {
-                                newWidth = 32;
-                            }
-                            Imgproc.resize(lineStrip, binaryLineStripNew, new Size(newWidth, targetHeight));
-                            lineStrip = OpenCVWrapper.release(lineStrip);
-                            lineStrip = binaryLineStripNew;
+                    if (rescaleHeight != null) {
+                        Mat binaryLineStripNew = new Mat();
+                        double targetHeight = rescaleHeight;
+                        double heightScale = targetHeight / (double) (lineStrip.height());
+                        double newWidth = heightScale * lineStrip.width();
+                        if (newWidth < 32) {
+                            newWidth = 32;
+                        }
+                        Imgproc.resize(lineStrip, binaryLineStripNew, new Size(newWidth, targetHeight));
+                        lineStrip = OpenCVWrapper.release(lineStrip);
+                        lineStrip = binaryLineStripNew;
+                    }
+                    if (writeTextContents) {
+                        String textValue = GroundTruthTextLineFormatter.getFormattedTextLineStringRepresentation(textLine, includeTextStyles, useTags);
+                        if (Strings.isNullOrEmpty(textValue)) {
+                            LOG.warn(identifier + " empty line " + textLine.getId());
+                            return 0;
                         }
-                        if (writeTextContents) {
-                            String textValue = GroundTruthTextLineFormatter.getFormattedTextLineStringRepresentation(textLine, includeTextStyles, useTags);
-                            if (Strings.isNullOrEmpty(textValue)) {
-                                LOG.warn(identifier + " empty line " + textLine.getId());
-                                continue;
-                            }
 
-                            if (lineStrip.width() > minWidth
-                                    && lineStrip.height() > minHeight
-                                    && (lineStrip.width() / lineStrip.height()) >= minWidthToHeight) {
-                                if (outputTxtFile) {
-                                    StringTools.writeFile(new File(balancedOutputBaseTmp, lineStripId + ".txt").getAbsolutePath(), textValue);
-                                }
-                                if (outputConfFile) {
-                                    String confValue = "1";
-                                    if (textLine.getTextEquiv() != null && textLine.getTextEquiv().getConf() != null) {
-                                        confValue = textLine.getTextEquiv().getConf();
-                                    }
-                                    StringTools.writeFile(new File(balancedOutputBaseTmp, lineStripId + ".conf").getAbsolutePath(), confValue);
-                                }
-                                if (outputBoxFile) {
-                                    String boxValue = LayoutProc.convertToBoxFile(lineStrip.height(), lineStrip.width(), StringTools.makeNew(textValue));
-                                    StringTools.writeFile(new File(balancedOutputBaseTmp, lineStripId + ".box").getAbsolutePath(), boxValue);
-                                }
+                        if (lineStrip.width() > minWidth
+                                && lineStrip.height() > minHeight
+                                && (lineStrip.width() / lineStrip.height()) >= minWidthToHeight) {
+                            if (outputTxtFile) {
+                                writeText(outputDirectory, shardEntries, lineStripId + ".txt", textValue);
                             }
-                        }
-                        if (this.useDiforNames) {
-                            final String filename = new File(balancedOutputBaseTmp, "textline_" + fileNameWithoutExtension + "_" + textLine.getId() + "." + this.outputType).getAbsolutePath();
-                            LOG.debug(identifier + " save snippet: " + filename);
-                            atomicImwrite(filename, lineStrip);
-                        } else {
-                            final String absolutePath = new File(balancedOutputBaseTmp, lineStripId + "." + this.outputType).getAbsolutePath();
-                            try {
-                                //TODO: add param to enable this code. It adds compression to the png files
-// from documentation opencv
-// For PNG, it can be the compression level from 0 to 9. A higher value means a smaller size and longer compression time. If specified, strategy is changed to IMWRITE_PNG_STRATEGY_DEFAULT (Z_DEFAULT_STRATEGY). Default value is 1 (best speed setting).
-                                if (this.outputType.equals("png")) {
-                                    ArrayList<Integer> parameters = new ArrayList<>();
-                                    parameters.add(IMWRITE_PNG_COMPRESSION);
-                                    parameters.add(this.pngCompressionLevel);
-                                    MatOfInt parametersMatOfInt = new MatOfInt();
-                                    parametersMatOfInt.fromList(parameters);
-                                    atomicImwrite(absolutePath, lineStrip, parametersMatOfInt);
-                                } else {
-                                    atomicImwrite(absolutePath, lineStrip);
+                            if (outputConfFile) {
+                                String confValue = "1";
+                                if (textLine.getTextEquiv() != null && textLine.getTextEquiv().getConf() != null) {
+                                    confValue = textLine.getTextEquiv().getConf();
                                 }
-                            } catch (Exception e) {
-                                errorLog.accept("Cannout write "+ absolutePath);
-                                throw e;
+                                writeText(outputDirectory, shardEntries, lineStripId + ".conf", confValue);
+                            }
+                            if (outputBoxFile) {
+                                String boxValue = LayoutProc.convertToBoxFile(lineStrip.height(), lineStrip.width(), StringTools.makeNew(textValue));
+                                writeText(outputDirectory, shardEntries, lineStripId + ".box", boxValue);
                             }
                         }
                     }
+                    if (this.useDiforNames) {
+                        final String filename = "textline_" + fileNameWithoutExtension + "_" + textLine.getId() + "." + this.outputType;
+                        LOG.debug(identifier + " save snippet: " + filename);
+                        writeImage(outputDirectory, shardEntries, filename, lineStrip, writeParameters);
+                    } else {
+                        final String snippetFileName = lineStripId + "." + this.outputType;
+                        try {
+                            writeImage(outputDirectory, shardEntries, snippetFileName, lineStrip, writeParameters);
+                        } catch (Exception e) {
+                            errorLog.accept("Cannout write "+ snippetFileName);
+                            throw e;
+                        }
+                    }
+                    return 1;
                 }
-                lineStrip = OpenCVWrapper.release(lineStrip);
             }
+            return 0;
+        } finally {
+            OpenCVWrapper.release(lineStrip);
         }
+    }
 
-
-        if (balancedOutputBase.exists()) {
-            deleteFolderRecursively (balancedOutputBase);
+    private void writeText(File directory, List<TarShardWriter.Entry> shardEntries, String fileName,
+                           String contents) throws IOException {
+        final byte[] bytes = contents.getBytes(StandardCharsets.UTF_8);
+        if (shardEntries != null) {
+            shardEntries.add(new TarShardWriter.Entry(getShardEntryName(fileName), bytes));
+        } else {
+            StringTools.writeFile(new File(directory, fileName).getAbsolutePath(), contents);
         }
+        countWritten(bytes.length);
+    }
 
-        Files.move(balancedOutputBaseTmp.toPath(), balancedOutputBase.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
-
-        if (overwriteExistingPage) {
-            pageSaver.accept(page);
+    private void writeImage(File directory, List<TarShardWriter.Entry> shardEntries, String fileName, Mat mat,
+                            MatOfInt parametersMatOfInt) {
+        if (shardEntries == null) {
+            countWritten(atomicImwrite(new File(directory, fileName).getAbsolutePath(), mat, parametersMatOfInt));
+            return;
         }
+        // not pooled: the Java binding of imencode copies the encoded bytes into a newly allocated Mat on every call,
+        // so a reused MatOfByte would not save an allocation, only keep native memory alive
+        final MatOfByte encoded = new MatOfByte();
+        try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.WRITE)) {
+            Imgcodecs.imencode("." + this.outputType, mat, encoded, parametersMatOfInt);
+            final byte[] bytes = encoded.toArray();
+            shardEntries.add(new TarShardWriter.Entry(getShardEntryName(fileName), bytes));
+            countWritten(bytes.length);
+        } finally {
+            encoded.release();
+        }
+    }
 
-        image = OpenCVWrapper.release(image);
-        LOG.debug(identifier + " single image took: " + stopwatch.elapsed(TimeUnit.MILLISECONDS));
+    private void countWritten(long bytes) {
+        writtenFiles.increment();
+        writtenBytes.add(bytes);
+    }
 
-        if (this.writeDoneFiles) {
-            this.doneFileWriter.run();
-        }
+    // the same path as in the output directory, the snippets of an image are in a directory named after it
+    private String getShardEntryName(String fileName) {
+        return FilenameUtils.removeExtension(imageFileName) + "/" + fileName;
     }
 
     private void deleteFolderRecursively(File balancedOutputBaseTmp) throws IOException {
@@ -647,12 +988,18 @@ public class MinionCutFromImageBasedOnPageXMLNew extends BaseMinion implements R
     public void run() {
         try {
             if (this.ignoreDoneFiles || !Files.exists(Paths.get(this.identifier + ".done"))) {
-                this.runFile(this.imageSupplier);
+                try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.CUT_PAGE)) {
+                    this.runFile(this.imageSupplier);
+                }
             }
         } catch (IOException e) {
             LOG.error("Could not process image {}", this.imageFileName, e);
             errorFileWriter.ifPresent(errorWriter -> errorWriter.write(identifier, e, "Image could not be processed"));
             e.printStackTrace();
+            recordFailed();
+        } catch (RuntimeException e) {
+            recordFailed();
+            throw e;
         }
     }
 }
@@ -74,6 +74,7 @@ public class MinionDetectLanguageOfPageXml implements Runnable {
         );
         options.addOption("help", false, "prints this help dialog");
         options.addOption("use_2013_namespace", "set PageXML namespace to 2013, to avoid causing problems with Transkribus");
+        BaseMinion.addPageValidationOption(options);
 
         return options;
     }
@@ -108,6 +109,7 @@ public class MinionDetectLanguageOfPageXml implements Runnable {
             model = trainModelWithDefaultData();
         }
         String namespace = commandLine.hasOption("use_2013_namespace") ? PageUtils.NAMESPACE2013: PageUtils.NAMESPACE2019;
+        BaseMinion.setPageValidationPolicy(commandLine);
 
 
         ExecutorService executor = Executors.newFixedThreadPool(NUM_THREADS);
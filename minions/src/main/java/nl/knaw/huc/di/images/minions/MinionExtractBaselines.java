@@ -2,6 +2,7 @@ package nl.knaw.huc.di.images.minions;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import nl.knaw.huc.di.images.imageanalysiscommon.StageMetrics;
 import nl.knaw.huc.di.images.imageanalysiscommon.StringConverter;
 import nl.knaw.huc.di.images.layoutanalyzer.Statistics;
 import nl.knaw.huc.di.images.layoutanalyzer.Tuple;
@@ -11,6 +12,7 @@ import nl.knaw.huc.di.images.layoutds.models.LaypaConfig;
 import nl.knaw.huc.di.images.layoutds.models.P2PaLAConfig;
 import nl.knaw.huc.di.images.layoutds.models.Page.*;
 import nl.knaw.huc.di.images.pagexmlutils.PageUtils;
+import nl.knaw.huc.di.images.pagexmlutils.TextLineAttacher;
 import nl.knaw.huc.di.images.pipelineutils.ErrorFileWriter;
 import org.apache.commons.cli.*;
 import org.apache.commons.io.FilenameUtils;
@@ -108,52 +110,6 @@ public class MinionExtractBaselines implements Runnable, AutoCloseable {
         this.splitBaselines = splitBaselines;
     }
 
-    private static List<Point> extractBaseline(Mat baselineMat, int label, Point offset, int minimumHeight, String xmlFile) {
-        List<Point> baseline = new ArrayList<>();
-        int i;
-        Point point = null;
-        int pixelCounter = -1;
-        boolean mergedLineDetected = false;
-        for (i = 0; i < baselineMat.width(); i++) {
-            boolean mergedLineDetectedStep1 = false;
-            double sum = 0;
-            int counter = 0;
-            for (int j = 0; j < baselineMat.height(); j++) {
-                int pixelValue = (int) baselineMat.get(j, i)[0];
-                if (pixelValue == label) {
-                    sum += j;
-                    counter++;
-                    if (mergedLineDetectedStep1) {
-                        mergedLineDetected = true;
-                    }
-                } else {
-                    if (counter > 0) {
-                        mergedLineDetectedStep1 = true;
-                    }
-                }
-            }
-            if (counter < minimumHeight) {
-                continue;
-            }
-            pixelCounter++;
-            if (counter > 1) {
-                sum /= counter;
-            }
-
-            point = new Point(i + offset.x, sum + offset.y);
-            if (pixelCounter % 50 == 0) {
-                baseline.add(point);
-            }
-        }
-        if (pixelCounter % 50 != 0) {
-            baseline.add(point);
-        }
-        if (mergedLineDetected) {
-            LOG.info("mergedLineDetected: " + xmlFile);
-        }
-        return baseline;
-    }
-
     public static List<TextLine> extractBaselines(boolean cleanup, int minimumHeight, int minimumWidth, int numLabels,
                                                   Mat stats, Mat labeled, String identifier, boolean splitBaselines) {
         List<TextLine> allTextLines = extractBaselines(numLabels, stats, labeled, identifier, minimumHeight, splitBaselines);
@@ -164,7 +120,7 @@ public class MinionExtractBaselines implements Runnable, AutoCloseable {
         for (TextLine textLine : allTextLines) {
             int minX = Integer.MAX_VALUE;
             int maxX = Integer.MIN_VALUE;
-            for (Point point : StringConverter.stringToPoint(textLine.getBaseline().getPoints())) {
+            for (Point point : textLine.getBaseline().getGeometry().toPoints()) {
                 if (point.x < minX) {
                     minX = (int) point.x;
                 }
@@ -209,14 +165,12 @@ public class MinionExtractBaselines implements Runnable, AutoCloseable {
                 }
             }
 
+            final List<Float> percentages = new ArrayList<>();
             for (float percentage = 0.51f; percentage >= 0.01f; percentage -= 0.05) {
-                if (newTextLines.isEmpty()) {
-                    break;
-                }
-                for (TextRegion textRegion : page.getPage().getTextRegions()) {
-                    newTextLines = PageUtils.attachTextLines(textRegion, newTextLines, percentage, 0);
-                }
+                percentages.add(percentage);
             }
+            newTextLines = new TextLineAttacher(page.getPage().getTextRegions())
+                    .attachTextLines(newTextLines, percentages, 0);
         } else {
             page.getPage().setTextRegions(new ArrayList<>());
             if (newTextLines.size() > 0) {
@@ -283,7 +237,7 @@ public class MinionExtractBaselines implements Runnable, AutoCloseable {
                 }
                 Mat submat = tuple.getX();
                 Point offsetPoint = tuple.getY();
-                List<Point> baselinePoints = extractBaseline(submat, labelNumber, offsetPoint, minimumHeight, identifier);
+                List<Point> baselinePoints = LayoutProc.extractBaseline(submat, labelNumber, offsetPoint, minimumHeight, identifier);
                 if (baselinePoints.size() < 2) {
                     continue;
                 }
@@ -349,6 +303,9 @@ public class MinionExtractBaselines implements Runnable, AutoCloseable {
                 .build();
         options.addOption(whiteListOption);
         options.addOption("use_2013_namespace", "set PageXML namespace to 2013, to avoid causing problems with Transkribus");
+        BaseMinion.addPageValidationOption(options);
+        BaseMinion.addFsyncOption(options);
+        BaseMinion.addMetricsReportOption(options);
         options.addOption("recalculate_textline_contours_from_baselines", "recalculate textline contours from baselines (default false)");
         options.addOption("minimum_interlinedistance", true, "minimum interline distance (default 35)");
         options.addOption("split_baselines", "experimental: split horizontal baselines that are connected vertically(default false)");
@@ -364,16 +321,10 @@ public class MinionExtractBaselines implements Runnable, AutoCloseable {
     public static void main(String[] args) throws Exception {
         int numthreads = 4;
         int maxCount = -1;
-        int margin = 50;
-        List<String> regionOrderList = new ArrayList<>();
         String inputPathImage = "/scratch/output/";
         String inputPathPng = "/scratch/output/";
         String inputPathPageXml = "/data/prizepapersall/page/";
         String outputPathPageXml = "/data/prizepapersall/page/";
-        boolean asSingleRegion = false;
-        String p2palaConfig = null;
-        String laypaConfig = null;
-        int threshold = 32;
 
         final Options options = getOptions();
         CommandLineParser commandLineParser = new DefaultParser();
@@ -399,61 +350,20 @@ public class MinionExtractBaselines implements Runnable, AutoCloseable {
         if (commandLine.hasOption("threads")) {
             numthreads = Integer.parseInt(commandLine.getOptionValue("threads"));
         }
-        if (commandLine.hasOption("threshold")) {
-            threshold = Integer.parseInt(commandLine.getOptionValue("threshold"));
-        }
-        if (commandLine.hasOption("p2palaconfig")) {
-            p2palaConfig = commandLine.getOptionValue("p2palaconfig");
-        }
-        if (commandLine.hasOption("laypaconfig")) {
-            laypaConfig = commandLine.getOptionValue("laypaconfig");
-        }
 
-        if (commandLine.hasOption("as_single_region")) {
-            asSingleRegion = true;
-        }
-        if (commandLine.hasOption("margin")) {
-            margin = Integer.parseInt(commandLine.getOptionValue("margin"));
-        }
-        boolean invertImage = commandLine.hasOption("invert_image");
+        BaseMinion.setPageValidationPolicy(commandLine);
+        BaseMinion.setFsync(commandLine);
+        final Settings settings = Settings.fromCommandLine(commandLine);
 
-        if (commandLine.hasOption("margin")) {
-            margin = Integer.parseInt(commandLine.getOptionValue("margin"));
-        }
-
-        if (commandLine.hasOption("region_order_list")) {
-            regionOrderList.addAll(Arrays.asList(commandLine.getOptionValue("region_order_list").trim().split(",")));
-            regionOrderList.add(null);// default add all regions without type
-        }
-
-        String namespace = commandLine.hasOption("use_2013_namespace") ? PageUtils.NAMESPACE2013: PageUtils.NAMESPACE2019;
-        boolean recalculateTextLineContoursFromBaselines = commandLine.hasOption("recalculate_textline_contours_from_baselines");
-
-        if (recalculateTextLineContoursFromBaselines && Strings.isNullOrEmpty(inputPathImage)){
+        if (settings.recalculatesTextLineContours() && Strings.isNullOrEmpty(inputPathImage)){
             throw new IllegalArgumentException("input_path_image is required when recalculate_textline_contours_from_baselines is set");
         }
 
-        int minimumInterlineDistance = MinionCutFromImageBasedOnPageXMLNew.DEFAULT_MINIMUM_INTERLINE_DISTANCE;
-        if (commandLine.hasOption("minimum_interlinedistance")) {
-            minimumInterlineDistance = Integer.parseInt(commandLine.getOptionValue("minimum_interlinedistance"));
-        }
-
-        boolean splitBaselines = commandLine.hasOption("split_baselines");
-
         DirectoryStream<Path> fileStream = Files.newDirectoryStream(Paths.get(inputPathPng));
         List<Path> files = new ArrayList<>();
         fileStream.forEach(files::add);
         files.sort(Comparator.comparing(Path::toString));
 
-        final List<String> whiteList;
-        if (commandLine.hasOption("config_white_list")) {
-            whiteList = Arrays.asList(commandLine.getOptionValues("config_white_list"));
-        } else {
-            whiteList = Lists.newArrayList();
-        }
-        final P2PaLAConfig p2PaLAConfigContents = p2palaConfig != null ? readP2PaLAConfigFile(p2palaConfig, whiteList) : null;
-        final LaypaConfig laypaConfigContents = laypaConfig != null ? readLaypaConfigFile(laypaConfig, whiteList) : null;
-
 
         ExecutorService executor = Executors.newFixedThreadPool(numthreads);
         for (Path file : files) {
@@ -484,10 +394,8 @@ public class MinionExtractBaselines implements Runnable, AutoCloseable {
 
                     Supplier<Mat> baselineImageSupplier = () -> Imgcodecs.imread(baselineImageFile, Imgcodecs.IMREAD_GRAYSCALE);
                     Supplier<Mat> imageSupplier = () -> Imgcodecs.imread(finalImageFile, Imgcodecs.IMREAD_COLOR);
-                    Runnable worker = new MinionExtractBaselines(baselineImageFile, pageSupplier, imageSupplier,
-                            outputFile, asSingleRegion, p2PaLAConfigContents, laypaConfigContents,
-                            baselineImageSupplier, margin, invertImage, threshold, regionOrderList, namespace,
-                            recalculateTextLineContoursFromBaselines, Optional.empty(), splitBaselines);
+                    Runnable worker = settings.create(baselineImageFile, pageSupplier, imageSupplier,
+                            baselineImageSupplier, outputFile);
 
                     executor.execute(worker);//calling execute method of ExecutorService
                 }
@@ -498,6 +406,7 @@ public class MinionExtractBaselines implements Runnable, AutoCloseable {
         }
 
         LOG.info("Finished all threads");
+        BaseMinion.printMetricsReport(commandLine);
     }
 
     private void extractAndMergeBaseLines(Supplier<PcGts> pageSupplier, Supplier<Mat> imageSupplier, String outputFile,
@@ -505,36 +414,79 @@ public class MinionExtractBaselines implements Runnable, AutoCloseable {
                                           String namespace, boolean recalculateTextLineContoursFromBaselines,
                                           boolean splitBaselines)
             throws IOException, org.json.simple.parser.ParseException, TransformerException {
+        final PcGts page = extractBaseLines(pageSupplier, imageSupplier, margin, p2PaLAConfig, laypaConfig, threshold,
+                recalculateTextLineContoursFromBaselines, splitBaselines);
+
+        try {
+            final Path outputFilePath = Paths.get(outputFile);
+            final Path parent = outputFilePath.getParent();
+            if (!Files.exists(parent)) {
+                Files.createDirectories(parent);
+            }
+            PageUtils.writePageToFileAtomic(page, namespace, outputFilePath);
+        } catch (IOException ex) {
+            errorLog.accept("Could not write '" + outputFile + "'");
+            throw ex;
+        } catch (TransformerException ex) {
+            errorLog.accept("Could not transform page to 2013 version: "+ ex.getMessage());
+            throw ex;
+        }
+    }
+
+    /**
+     * Extracts the baselines of the page and adds them to the page, without writing it.
+     */
+    PcGts extractBaseLines() throws IOException, org.json.simple.parser.ParseException {
+        return extractBaseLines(this.pageSupplier, this.imageSupplier, margin, this.p2palaconfig, this.laypaConfig,
+                this.threshold, this.recalculateTextLineContoursFromBaselines, this.splitBaselines);
+    }
+
+    private PcGts extractBaseLines(Supplier<PcGts> pageSupplier, Supplier<Mat> imageSupplier, int margin,
+                                   P2PaLAConfig p2PaLAConfig, LaypaConfig laypaConfig, int threshold,
+                                   boolean recalculateTextLineContoursFromBaselines, boolean splitBaselines)
+            throws IOException, org.json.simple.parser.ParseException {
         boolean cleanup = true;
         int minimumWidth = 15;
         int minimumHeight = 3;
-        Mat baseLineMat = this.baselineImageSupplier.get();
-        Mat thresHoldedBaselines = new Mat();
-        if (this.invertImage) {
-            Imgproc.threshold(baseLineMat, thresHoldedBaselines, threshold, 255, Imgproc.THRESH_BINARY_INV);
-        } else {
-            Imgproc.threshold(baseLineMat, thresHoldedBaselines, threshold, 255, Imgproc.THRESH_BINARY);
+        Mat baseLineMat;
+        try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.DECODE)) {
+            baseLineMat = this.baselineImageSupplier.get();
         }
-        baseLineMat = OpenCVWrapper.release(baseLineMat);
-        Mat stats = new Mat();
-        Mat centroids = new Mat();
-        Mat labeled = new Mat();
-        int numLabels = Imgproc.connectedComponentsWithStats(thresHoldedBaselines, labeled, stats, centroids, 8, CvType.CV_32S);
-        centroids = OpenCVWrapper.release(centroids);
-        LOG.info("FOUND LABELS:" + numLabels);
-
         PcGts page = pageSupplier.get();
-        if (page == null) {
-            page = PageUtils.createFromImage(thresHoldedBaselines, identifier);
+        final List<TextLine> textLines;
+        try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.EXTRACT)) {
+            Mat thresHoldedBaselines = new Mat();
+            if (this.invertImage) {
+                Imgproc.threshold(baseLineMat, thresHoldedBaselines, threshold, 255, Imgproc.THRESH_BINARY_INV);
+            } else {
+                Imgproc.threshold(baseLineMat, thresHoldedBaselines, threshold, 255, Imgproc.THRESH_BINARY);
+            }
+            baseLineMat = OpenCVWrapper.release(baseLineMat);
+            Mat stats = new Mat();
+            Mat centroids = new Mat();
+            Mat labeled = new Mat();
+            int numLabels = Imgproc.connectedComponentsWithStats(thresHoldedBaselines, labeled, stats, centroids, 8, CvType.CV_32S);
+            centroids = OpenCVWrapper.release(centroids);
+            LOG.info("FOUND LABELS:" + numLabels);
+
+            if (page == null) {
+                page = PageUtils.createFromImage(thresHoldedBaselines, identifier);
+            }
+            thresHoldedBaselines = OpenCVWrapper.release(thresHoldedBaselines);
+            textLines = extractBaselines(cleanup, minimumHeight, minimumWidth, numLabels, stats, labeled,
+                    this.identifier, splitBaselines);
+            labeled = OpenCVWrapper.release(labeled);
+            stats = OpenCVWrapper.release(stats);
         }
-        thresHoldedBaselines = OpenCVWrapper.release(thresHoldedBaselines);
-        List<TextLine> textLines = extractBaselines(cleanup, minimumHeight, minimumWidth, numLabels, stats, labeled,
-                this.identifier, splitBaselines);
-        labeled = OpenCVWrapper.release(labeled);
-        stats = OpenCVWrapper.release(stats);
+        StageMetrics.recordItems(StageMetrics.Stage.EXTRACT, textLines.size());
 
-        mergeTextLines(page, textLines, this.asSingleRegion, this.identifier,
-                false, margin, true);
+        // counted before merging, merging as a single region empties the list
+        final int linesToAttach = textLines.size();
+        try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.ATTACH)) {
+            mergeTextLines(page, textLines, this.asSingleRegion, this.identifier,
+                    false, margin, true);
+        }
+        StageMetrics.recordItems(StageMetrics.Stage.ATTACH, linesToAttach);
         if (this.reorderRegionsList.size() > 0) {
             LayoutProc.reorderRegions(page, this.reorderRegionsList);
         }
@@ -549,24 +501,13 @@ public class MinionExtractBaselines implements Runnable, AutoCloseable {
         }
 
         if (recalculateTextLineContoursFromBaselines) {
-            LayoutProc.recalculateTextLineContoursFromBaselines(identifier, imageSupplier.get(), page, MinionCutFromImageBasedOnPageXMLNew.SHRINK_FACTOR, MinionCutFromImageBasedOnPageXMLNew.DEFAULT_MINIMUM_INTERLINE_DISTANCE);
-        }
-
-
-        try {
-            final Path outputFilePath = Paths.get(outputFile);
-            final Path parent = outputFilePath.getParent();
-            if (!Files.exists(parent)) {
-                Files.createDirectories(parent);
+            final Mat image;
+            try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.DECODE)) {
+                image = imageSupplier.get();
             }
-            PageUtils.writePageToFileAtomic(page, namespace, outputFilePath);
-        } catch (IOException ex) {
-            errorLog.accept("Could not write '" + outputFile + "'");
-            throw ex;
-        } catch (TransformerException ex) {
-            errorLog.accept("Could not transform page to 2013 version: "+ ex.getMessage());
-            throw ex;
+            LayoutProc.recalculateTextLineContoursFromBaselines(identifier, image, page, MinionCutFromImageBasedOnPageXMLNew.SHRINK_FACTOR, MinionCutFromImageBasedOnPageXMLNew.DEFAULT_MINIMUM_INTERLINE_DISTANCE);
         }
+        return page;
     }
 
     public static P2PaLAConfig readP2PaLAConfigFile(String configFile, List<String> whiteList) throws IOException, org.json.simple.parser.ParseException {
@@ -757,4 +698,81 @@ public class MinionExtractBaselines implements Runnable, AutoCloseable {
     public void close() throws Exception {
     }
 
+    /**
+     * The options of main that decide how the baselines of a page are extracted, so other runners of this minion, like
+     * MinionPipeline, take the same options.
+     */
+    static class Settings {
+        private final boolean asSingleRegion;
+        private final P2PaLAConfig p2PaLAConfig;
+        private final LaypaConfig laypaConfig;
+        private final int margin;
+        private final boolean invertImage;
+        private final int threshold;
+        private final List<String> regionOrderList;
+        private final String namespace;
+        private final boolean recalculateTextLineContoursFromBaselines;
+        private final boolean splitBaselines;
+
+        private Settings(boolean asSingleRegion, P2PaLAConfig p2PaLAConfig, LaypaConfig laypaConfig, int margin,
+                         boolean invertImage, int threshold, List<String> regionOrderList, String namespace,
+                         boolean recalculateTextLineContoursFromBaselines, boolean splitBaselines) {
+            this.asSingleRegion = asSingleRegion;
+            this.p2PaLAConfig = p2PaLAConfig;
+            this.laypaConfig = laypaConfig;
+            this.margin = margin;
+            this.invertImage = invertImage;
+            this.threshold = threshold;
+            this.regionOrderList = regionOrderList;
+            this.namespace = namespace;
+            this.recalculateTextLineContoursFromBaselines = recalculateTextLineContoursFromBaselines;
+            this.splitBaselines = splitBaselines;
+        }
+
+        static Settings fromCommandLine(CommandLine commandLine) throws IOException, org.json.simple.parser.ParseException {
+            int threshold = 32;
+            if (commandLine.hasOption("threshold")) {
+                threshold = Integer.parseInt(commandLine.getOptionValue("threshold"));
+            }
+            int margin = 50;
+            if (commandLine.hasOption("margin")) {
+                margin = Integer.parseInt(commandLine.getOptionValue("margin"));
+            }
+            final List<String> regionOrderList = new ArrayList<>();
+            if (commandLine.hasOption("region_order_list")) {
+                regionOrderList.addAll(Arrays.asList(commandLine.getOptionValue("region_order_list").trim().split(",")));
+                regionOrderList.add(null);// default add all regions without type
+            }
+
+            final List<String> whiteList;
+            if (commandLine.hasOption("config_white_list")) {
+                whiteList = Arrays.asList(commandLine.getOptionValues("config_white_list"));
+            } else {
+                whiteList = Lists.newArrayList();
+            }
+            final String p2palaConfig = commandLine.getOptionValue("p2palaconfig");
+            final String laypaConfig = commandLine.getOptionValue("laypaconfig");
+            final P2PaLAConfig p2PaLAConfigContents = p2palaConfig != null ? readP2PaLAConfigFile(p2palaConfig, whiteList) : null;
+            final LaypaConfig laypaConfigContents = laypaConfig != null ? readLaypaConfigFile(laypaConfig, whiteList) : null;
+
+            final String namespace = commandLine.hasOption("use_2013_namespace") ? PageUtils.NAMESPACE2013 : PageUtils.NAMESPACE2019;
+
+            return new Settings(commandLine.hasOption("as_single_region"), p2PaLAConfigContents, laypaConfigContents,
+                    margin, commandLine.hasOption("invert_image"), threshold, regionOrderList, namespace,
+                    commandLine.hasOption("recalculate_textline_contours_from_baselines"),
+                    commandLine.hasOption("split_baselines"));
+        }
+
+        boolean recalculatesTextLineContours() {
+            return recalculateTextLineContoursFromBaselines;
+        }
+
+        MinionExtractBaselines create(String identifier, Supplier<PcGts> pageSupplier, Supplier<Mat> imageSupplier,
+                                      Supplier<Mat> baselineImageSupplier, String outputFile) {
+            return new MinionExtractBaselines(identifier, pageSupplier, imageSupplier, outputFile, asSingleRegion,
+                    p2PaLAConfig, laypaConfig, baselineImageSupplier, margin, invertImage, threshold, regionOrderList,
+                    namespace, recalculateTextLineContoursFromBaselines, Optional.empty(), splitBaselines);
+        }
+    }
+
 }
\ No newline at end of file
@@ -401,8 +401,8 @@ public class MinionExtractBaselinesStartEndNew implements Runnable, AutoCloseabl
             for (int j = i + 1; j < newTextLines.size(); j++) {
                 TextLine firstLine = newTextLines.get(i);
                 TextLine secondLine = newTextLines.get(j);
-                ArrayList<Point> firstPoints = StringConverter.stringToPoint(firstLine.getBaseline().getPoints());
-                ArrayList<Point> secondPoints = StringConverter.stringToPoint(secondLine.getBaseline().getPoints());
+                ArrayList<Point> firstPoints = firstLine.getBaseline().getGeometry().toPoints();
+                ArrayList<Point> secondPoints = secondLine.getBaseline().getGeometry().toPoints();
 
                 Point firstLastPoints = firstPoints.get(firstPoints.size() - 1);
                 Point secondLastPoints = secondPoints.get(secondPoints.size() - 1);
@@ -503,6 +503,7 @@ public class MinionExtractBaselinesStartEndNew implements Runnable, AutoCloseabl
 
         options.addOption("region_order", true, "comma separated list of regions");
         options.addOption("use_2013_namespace", "set PageXML namespace to 2013, to avoid causing problems with Transkribus");
+        BaseMinion.addPageValidationOption(options);
 
         return options;
     }
@@ -586,6 +587,7 @@ public class MinionExtractBaselinesStartEndNew implements Runnable, AutoCloseabl
             regionOrder.addAll(Arrays.asList(commandLine.getOptionValue("region_order").split(",")));
         }
         String namespace = commandLine.hasOption("use_2013_namespace") ? PageUtils.NAMESPACE2013: PageUtils.NAMESPACE2019;
+        BaseMinion.setPageValidationPolicy(commandLine);
 
         System.out.println("as_single_region: " + asSingleRegion);
 
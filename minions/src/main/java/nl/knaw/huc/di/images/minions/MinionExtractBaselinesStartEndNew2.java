@@ -509,8 +509,8 @@ public class MinionExtractBaselinesStartEndNew2 implements Runnable, AutoCloseab
             for (int j = i + 1; j < newTextLines.size(); j++) {
                 TextLine firstLine = newTextLines.get(i);
                 TextLine secondLine = newTextLines.get(j);
-                ArrayList<Point> firstPoints = StringConverter.stringToPoint(firstLine.getBaseline().getPoints());
-                ArrayList<Point> secondPoints = StringConverter.stringToPoint(secondLine.getBaseline().getPoints());
+                ArrayList<Point> firstPoints = firstLine.getBaseline().getGeometry().toPoints();
+                ArrayList<Point> secondPoints = secondLine.getBaseline().getGeometry().toPoints();
 
                 Point firstLastPoints = firstPoints.get(firstPoints.size() - 1);
                 Point secondLastPoints = secondPoints.get(secondPoints.size() - 1);
@@ -671,6 +671,7 @@ public class MinionExtractBaselinesStartEndNew2 implements Runnable, AutoCloseab
         options.addOption("shortest_edge", true, "The shortest edge resize parameter (default: -1)");
         options.addOption("max_size", true, "The max size resize parameter");
         options.addOption("use_2013_namespace", "set PageXML namespace to 2013, to avoid causing problems with Transkribus");
+        BaseMinion.addPageValidationOption(options);
 
         return options;
     }
@@ -751,6 +752,7 @@ public class MinionExtractBaselinesStartEndNew2 implements Runnable, AutoCloseab
         }
         System.out.println("as_single_region: " + asSingleRegion);
         String namespace = commandLine.hasOption("use_2013_namespace") ? PageUtils.NAMESPACE2013: PageUtils.NAMESPACE2019;
+        BaseMinion.setPageValidationPolicy(commandLine);
 
         DirectoryStream<Path> fileStream = Files.newDirectoryStream(Paths.get(inputPathPng));
         List<Path> files = new ArrayList<>();
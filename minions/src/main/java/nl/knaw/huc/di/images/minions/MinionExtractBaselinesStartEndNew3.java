@@ -8,6 +8,7 @@ import nl.knaw.huc.di.images.layoutanalyzer.layoutlib.LayoutProc;
 import nl.knaw.huc.di.images.layoutds.models.BaselineExtractionType;
 import nl.knaw.huc.di.images.layoutds.models.Page.*;
 import nl.knaw.huc.di.images.pagexmlutils.PageUtils;
+import nl.knaw.huc.di.images.pagexmlutils.TextLineAttacher;
 import nl.knaw.huc.di.images.stringtools.StringTools;
 import org.apache.commons.cli.*;
 import org.apache.commons.io.FilenameUtils;
@@ -270,14 +271,14 @@ public class MinionExtractBaselinesStartEndNew3 implements Runnable, AutoCloseab
         while (foundLineToConnect && mergeTextLinesWithoutEndToTextLinesWithoutStart) {
             foundLineToConnect = false;
             for (TextLine textlineWithoutEnd : newTextLinesWithoutEnd) {
-                ArrayList<Point> points = StringConverter.stringToPoint(textlineWithoutEnd.getBaseline().getPoints());
+                ArrayList<Point> points = textlineWithoutEnd.getBaseline().getGeometry().toPoints();
                 Point last = points.get(points.size() - 1);
 
                 for (TextLine textlineWithoutStart : newTextLinesWithoutStart) {
                     if (newTextLinesWithoutStartToRemove.contains(textlineWithoutStart)) {
                         continue;
                     }
-                    points = StringConverter.stringToPoint(textlineWithoutStart.getBaseline().getPoints());
+                    points = textlineWithoutStart.getBaseline().getGeometry().toPoints();
                     Point first = points.get(0);
                     if (LayoutProc.getDistance(last, first) < 25) {
                         mergeBaselines(textlineWithoutEnd, textlineWithoutStart);
@@ -291,14 +292,14 @@ public class MinionExtractBaselinesStartEndNew3 implements Runnable, AutoCloseab
                 }
             }
             for (TextLine textlineWithoutEnd : newTextLinesWithoutEnd) {
-                ArrayList<Point> points = StringConverter.stringToPoint(textlineWithoutEnd.getBaseline().getPoints());
+                ArrayList<Point> points = textlineWithoutEnd.getBaseline().getGeometry().toPoints();
                 Point last = points.get(points.size() - 1);
 
                 for (TextLine textlineWithoutStartAndEnd : newTextLinesWithoutStartAndEnd) {
                     if (newTextLinesWithoutStartAndEndToRemove.contains(textlineWithoutStartAndEnd)) {
                         continue;
                     }
-                    points = StringConverter.stringToPoint(textlineWithoutStartAndEnd.getBaseline().getPoints());
+                    points = textlineWithoutStartAndEnd.getBaseline().getGeometry().toPoints();
                     Point first = points.get(0);
                     if (LayoutProc.getDistance(last, first) < 50) {
                         mergeBaselines(textlineWithoutEnd, textlineWithoutStartAndEnd);
@@ -310,7 +311,7 @@ public class MinionExtractBaselinesStartEndNew3 implements Runnable, AutoCloseab
 //                        newMergedTextLines.add(textlineWithoutEnd);
                         mergedBaselines++;
                         foundLineToConnect = true;
-                        points = StringConverter.stringToPoint(textlineWithoutEnd.getBaseline().getPoints());
+                        points = textlineWithoutEnd.getBaseline().getGeometry().toPoints();
                         last = points.get(points.size() - 1);
                     }
                 }
@@ -353,7 +354,7 @@ public class MinionExtractBaselinesStartEndNew3 implements Runnable, AutoCloseab
     private List<TextLine> removeSmallLines(List<TextLine> newTextLines, int minimumLength) {
         ArrayList<TextLine> textLines = new ArrayList<>();
         for (TextLine textLine : newTextLines) {
-            if (LayoutProc.getLength(StringConverter.stringToPoint(textLine.getBaseline().getPoints())) < minimumLength) {
+            if (LayoutProc.getLength(textLine.getBaseline().getGeometry().toPoints()) < minimumLength) {
                 continue;
             }
             textLines.add(textLine);
@@ -362,8 +363,8 @@ public class MinionExtractBaselinesStartEndNew3 implements Runnable, AutoCloseab
     }
 
     private void mergeBaselines(TextLine baseTextLine, TextLine textLineToAppend) {
-        List<Point> baseline = StringConverter.stringToPoint(baseTextLine.getBaseline().getPoints());
-        List<Point> pointsToAdd = StringConverter.stringToPoint(textLineToAppend.getBaseline().getPoints());
+        List<Point> baseline = baseTextLine.getBaseline().getGeometry().toPoints();
+        List<Point> pointsToAdd = textLineToAppend.getBaseline().getGeometry().toPoints();
         baseline.addAll(pointsToAdd);
         if (baseline.size() > 2) {
             baseline = StringConverter.simplifyPolygon(baseline, 5);
@@ -471,15 +472,14 @@ public class MinionExtractBaselinesStartEndNew3 implements Runnable, AutoCloseab
             }
         }
         if (!asSingleRegion && page.getPage().getTextRegions().size() > 0) {
-            for (TextRegion textRegion : page.getPage().getTextRegions()) {
-                if (clearExistingLines) {
+            if (clearExistingLines) {
+                for (TextRegion textRegion : page.getPage().getTextRegions()) {
                     textRegion.setTextLines(new ArrayList<>());
                 }
-                newTextLines = PageUtils.attachTextLines(textRegion, newTextLines, 0.51f, 0);
-            }
-            for (TextRegion textRegion : page.getPage().getTextRegions()) {
-                newTextLines = PageUtils.attachTextLines(textRegion, newTextLines, 0.01f, margin);
             }
+            final TextLineAttacher textLineAttacher = new TextLineAttacher(page.getPage().getTextRegions());
+            newTextLines = textLineAttacher.attachTextLines(newTextLines, Collections.singletonList(0.51f), 0);
+            newTextLines = textLineAttacher.attachTextLines(newTextLines, Collections.singletonList(0.01f), margin);
         } else {
             page.getPage().setTextRegions(new ArrayList<>());
 
@@ -632,6 +632,7 @@ public class MinionExtractBaselinesStartEndNew3 implements Runnable, AutoCloseab
         options.addOption("threads", true, "threads to use");
         options.addOption("help", false, "prints this help dialog");
         options.addOption("use_2013_namespace", "set PageXML namespace to 2013, to avoid causing problems with Transkribus");
+        BaseMinion.addPageValidationOption(options);
 
 
         return options;
@@ -667,6 +668,7 @@ public class MinionExtractBaselinesStartEndNew3 implements Runnable, AutoCloseab
             return;
         }
         String namespace = commandLine.hasOption("use_2013_namespace") ? PageUtils.NAMESPACE2013: PageUtils.NAMESPACE2019;
+        BaseMinion.setPageValidationPolicy(commandLine);
 
         String inputPathPng = "/scratch/randomprint/results/prod/page/";
         String inputPathPageXml = null;
@@ -174,6 +174,7 @@ public class MinionGeneratePageImages {
         options.addOption(BLUR_SIGMAX, true, "Blur sigma X(default: 25");
         options.addOption(CHARACTERS, true, "allowed characters: use --characters \"\" for allowing everything" );
         options.addOption("use_2013_namespace", "set PageXML namespace to 2013, to avoid causing problems with Transkribus");
+        BaseMinion.addPageValidationOption(options);
 
         return options;
     }
@@ -246,6 +247,7 @@ public class MinionGeneratePageImages {
         blurSigmaX = getIntValue(commandLine, blurSigmaX, BLUR_SIGMAX);
         allowedCharacters = commandLine.getOptionValue(CHARACTERS,allowedCharacters);
         String namespace = commandLine.hasOption("use_2013_namespace") ? PageUtils.NAMESPACE2013: PageUtils.NAMESPACE2019;
+        BaseMinion.setPageValidationPolicy(commandLine);
 
         String fileFormat ="synthetic%010d";
         int counter = 0;
@@ -10,6 +10,7 @@ import nl.knaw.huc.di.images.pagexmlutils.StyledString;
 import nl.knaw.huc.di.images.pipelineutils.ErrorFileWriter;
 import nl.knaw.huc.di.images.stringtools.StringTools;
 import org.apache.commons.cli.*;
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
 import org.elasticsearch.common.Strings;
 import org.json.simple.JSONObject;
@@ -19,6 +20,7 @@ import org.slf4j.LoggerFactory;
 
 import javax.xml.transform.TransformerException;
 import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
@@ -28,13 +30,20 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
 
 public class MinionLoghiHTRMergePageXML extends BaseMinion implements Runnable {
     private static final Logger LOG = LoggerFactory.getLogger(MinionLoghiHTRMergePageXML.class);
+    // the results file is read again for every this many partitions, so a large number of partitions does not run out
+    // of file handles
+    static final int MAX_OPEN_PARTITION_WRITERS = 64;
+    private static final Pattern HTML_STYLE_TAG_PATTERN = Pattern.compile("<u>|</u>|<s>|</s>|<sub>|</sub>|<sup>|</sup>");
     private final Map<String, String> fileTextLineMap;
     private final Map<String, String> batchMetadataMap;
     private final Consumer<PcGts> pageSaver;
@@ -86,38 +95,39 @@ public class MinionLoghiHTRMergePageXML extends BaseMinion implements Runnable {
 
         for (TextRegion textRegion : page.getPage().getTextRegions()) {
             for (TextLine textLine : textRegion.getTextLines()) {
-                String text = fileTextLineMap.get(pageFileName + "-" + textLine.getId());
+                final String key = pageFileName + "-" + textLine.getId();
+                String text = fileTextLineMap.get(key);
                 // If text is empty just continue
                 if (text == null) {
                     continue;
                 }
 
                 // If HTML style tags are included revert it back to the unicode equivalents
-                // Pattern to match any of the specific HTML tags
-                String regex = "<u>|</u>|<s>|</s>|<sub>|</sub>|<sup>|</sup>";
-                Pattern pattern = Pattern.compile(regex);
-                if (pattern.matcher(text).find()){
+                if (text.indexOf('<') >= 0 && HTML_STYLE_TAG_PATTERN.matcher(text).find()) {
                     // Found Transformer style input string with HTML tags
                     text = StyledString.applyMarkersWithNestedTags(text);
                 }
 
                 // Init TextLineCustom
                 TextLineCustom textLineCustom = new TextLineCustom();
-                final StyledString styledString = StyledString.fromStringWithStyleCharacters(text);
-                styledString.getStyles().forEach(style -> textLineCustom.addCustomTextStyle(style.getStyles(), style.getOffset(), style.getLength()));
 
-                // Init cleanText
-                String cleanText = styledString.getCleanText();
+                // Init cleanText, most lines have no styles and are clean already
+                String cleanText = text;
+                if (StyledString.containsStyleCharacters(text)) {
+                    final StyledString styledString = StyledString.fromStringWithStyleCharacters(text);
+                    styledString.getStyles().forEach(style -> textLineCustom.addCustomTextStyle(style.getStyles(), style.getOffset(), style.getLength()));
+                    cleanText = styledString.getCleanText();
+                }
 
                 // Get confidence score for text line
-                Double confidence = confidenceMap.get(pageFileName + "-" + textLine.getId());
+                Double confidence = confidenceMap.get(key);
 
                 // Set TextEquiv elements and confidence score
                 textLine.setTextEquiv(new TextEquiv(confidence, unicodeToAsciiTranslitirator.toAscii(cleanText), cleanText));
                 textLine.setWords(new ArrayList<>());
 
                 // Get batch_metadata for line ID
-                String batchMetadata = batchMetadataMap.get(pageFileName + "-" + textLine.getId());
+                String batchMetadata = batchMetadataMap.get(key);
 
                 // Set custom userAttribute
                 // Either create simple UserAttribute(name, value) or detailed UserAttribute(name, description, type, value)
@@ -215,8 +225,15 @@ public class MinionLoghiHTRMergePageXML extends BaseMinion implements Runnable {
         options.addOption("help", false, "prints this help dialog");
 
         options.addOption("threads", true, "number of threads to use, default 4");
+        options.addOption("partitions", true, "split the results file on disk by page into this number of " +
+                "partitions and merge one partition at a time, so only the results of one partition are in memory. " +
+                "Use this for results files that do not fit in memory, default: keep all results in memory");
+        options.addOption("tmp_dir", true, "directory for the partitions of the results file, default: input_path. " +
+                "Avoid a tmpfs, the partitions together are as large as the results file");
         options.addOption("comment", true, "custom comments");
         options.addOption("use_2013_namespace", "set PageXML namespace to 2013, to avoid causing problems with Transkribus");
+        BaseMinion.addPageValidationOption(options);
+        BaseMinion.addMetricsReportOption(options);
         final Option whiteListOption = Option.builder("config_white_list").hasArgs()
                 .desc("a list with properties that should be added to the PageXML")
                 .build();
@@ -289,7 +306,7 @@ public class MinionLoghiHTRMergePageXML extends BaseMinion implements Runnable {
         }
     }
 
-    private static void fillDictionary(String resultsFile,
+    static void fillDictionary(String resultsFile,
                                        Map<String, String> fileTextLineMap,
                                        Map<String, String> batchMetadataMap,
                                        Map<String, Double> confidenceMap) throws IOException {
@@ -306,11 +323,80 @@ public class MinionLoghiHTRMergePageXML extends BaseMinion implements Runnable {
         }
     }
 
+    /**
+     * Splits the results file into a file per partition. A result line is written to the partition of every page its
+     * filename ("&lt;page&gt;-&lt;line id&gt;") can belong to, so a partition contains all the results the pages in it
+     * can look up. The lines keep their order, so filling the dictionaries with a partition gives the same values for
+     * its pages as filling them with the whole results file.
+     *
+     * <p>
+     * At most maxOpenWriters partition files are open at the same time, the results file is read once for every
+     * maxOpenWriters partitions.
+     *
+     * @return the partition files, the partition of a page is {@link #getPartition(String, int)}
+     */
+    static List<Path> partitionResults(String resultsFile, Set<String> pageFileNames, int partitions,
+                                       Path directory, int maxOpenWriters) throws IOException {
+        final List<Path> partitionFiles = new ArrayList<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            partitionFiles.add(directory.resolve("results-" + partition + ".txt"));
+        }
+        for (int first = 0; first < partitions; first += maxOpenWriters) {
+            writePartitions(resultsFile, pageFileNames, partitions, partitionFiles, first,
+                    Math.min(first + maxOpenWriters, partitions));
+        }
+        return partitionFiles;
+    }
+
+    // writes the partitions from first up to end
+    private static void writePartitions(String resultsFile, Set<String> pageFileNames, int partitions,
+                                        List<Path> partitionFiles, int first, int end) throws IOException {
+        final List<BufferedWriter> writers = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new FileReader(resultsFile, StandardCharsets.UTF_8))) {
+            for (int partition = first; partition < end; partition++) {
+                writers.add(Files.newBufferedWriter(partitionFiles.get(partition), StandardCharsets.UTF_8));
+            }
+            final BitSet linePartitions = new BitSet(partitions);
+            String line;
+            while ((line = br.readLine()) != null) {
+                final int tabCount = countTabs(line);
+                if (tabCount != 2 && tabCount != 3) {
+                    throw new IllegalArgumentException("Input line does not match expected formats.");
+                }
+                final String filename = getFilename(line.split("\t")[0]);
+                linePartitions.clear();
+                for (int index = filename.indexOf('-'); index >= 0; index = filename.indexOf('-', index + 1)) {
+                    final String pageFileName = filename.substring(0, index);
+                    if (pageFileNames.contains(pageFileName)) {
+                        linePartitions.set(getPartition(pageFileName, partitions));
+                    }
+                }
+                for (int partition = linePartitions.nextSetBit(first); partition >= 0 && partition < end; partition = linePartitions.nextSetBit(partition + 1)) {
+                    final BufferedWriter writer = writers.get(partition - first);
+                    writer.write(line);
+                    writer.newLine();
+                }
+            }
+        } finally {
+            for (BufferedWriter writer : writers) {
+                writer.close();
+            }
+        }
+    }
+
+    static int getPartition(String pageFileName, int partitions) {
+        return Math.floorMod(pageFileName.hashCode(), partitions);
+    }
+
+    private static String getFilename(String path) {
+        return path.split("/")[path.split("/").length - 1].replace(".png", "").trim();
+    }
+
     public static ResultLine getResultLine(String line) {
         int tabCount = countTabs(line);
 
         String[] splitted = line.split("\t");
-        String filename = splitted[0].split("/")[splitted[0].split("/").length - 1].replace(".png", "").trim();
+        String filename = getFilename(splitted[0]);
         double confidence;
         String metadata = "[]"; //set base value for metadata
         StringBuilder text = new StringBuilder();
@@ -422,6 +508,7 @@ public class MinionLoghiHTRMergePageXML extends BaseMinion implements Runnable {
             return;
         }
         String namespace = commandLine.hasOption("use_2013_namespace") ? PageUtils.NAMESPACE2013 : PageUtils.NAMESPACE2019;
+        BaseMinion.setPageValidationPolicy(commandLine);
 
         inputPath = Paths.get(commandLine.getOptionValue("input_path"));
         resultsFile = commandLine.getOptionValue("results_file");
@@ -449,16 +536,15 @@ public class MinionLoghiHTRMergePageXML extends BaseMinion implements Runnable {
             configWhiteList = Lists.newArrayList("batch_size");
         }
 
+        final Integer partitions = getPartitions(commandLine);
+
+        final Path tmpDir = commandLine.hasOption("tmp_dir") ? Paths.get(commandLine.getOptionValue("tmp_dir")) : inputPath;
+
         ExecutorService executor = Executors.newFixedThreadPool(numthreads);
 
         HTRConfig htrModelConfig = readHTRConfigFile(htrModelConfigFile, configWhiteList);
         HTRConfig htrCodeConfig = readHTRConfigFile(htrCodeConfigFile, configWhiteList);
 
-        final HashMap<String, String> fileTextLineMap = new HashMap<>();
-        final HashMap<String, String> metadataMap = new HashMap<>();
-        final HashMap<String, Double> confidenceMap = new HashMap<>();
-
-        fillDictionary(resultsFile, fileTextLineMap, metadataMap, confidenceMap);
         if (!Files.exists(inputPath)) {
             LOG.error("input path does not exist: " + inputPath.toAbsolutePath());
             System.exit(1);
@@ -467,40 +553,111 @@ public class MinionLoghiHTRMergePageXML extends BaseMinion implements Runnable {
         List<Path> files = new ArrayList<>();
         fileStream.forEach(files::add);
         files.sort(Comparator.comparing(Path::toString));
+        files.removeIf(file -> !file.toString().endsWith(".xml"));
+
+        if (partitions == null) {
+            final HashMap<String, String> fileTextLineMap = new HashMap<>();
+            final HashMap<String, String> metadataMap = new HashMap<>();
+            final HashMap<String, Double> confidenceMap = new HashMap<>();
 
+            fillDictionary(resultsFile, fileTextLineMap, metadataMap, confidenceMap);
+            for (Path file : files) {
+                executor.execute(createWorker(file, namespace, htrModelConfig, fileTextLineMap, metadataMap,
+                        confidenceMap, comment, htrCodeConfig.getGithash()));
+            }
+        } else {
+            mergePartitioned(executor, files, resultsFile, partitions, tmpDir, namespace, htrModelConfig, comment,
+                    htrCodeConfig.getGithash());
+        }
+
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        BaseMinion.printMetricsReport(commandLine);
+    }
+
+    // null if the results are kept in memory
+    static Integer getPartitions(CommandLine commandLine) {
+        if (!commandLine.hasOption("partitions")) {
+            return null;
+        }
+        final int partitions = Integer.parseInt(commandLine.getOptionValue("partitions"));
+        if (partitions < 1) {
+            throw new IllegalArgumentException("partitions must be at least 1, not " + partitions);
+        }
+        return partitions;
+    }
+
+    private static void mergePartitioned(ExecutorService executor, List<Path> files, String resultsFile, int partitions,
+                                         Path tmpDir, String namespace, HTRConfig htrModelConfig, String comment,
+                                         String gitHash) throws IOException, InterruptedException {
+        final Set<String> pageFileNames = new HashSet<>();
         for (Path file : files) {
-            if (file.toString().endsWith(".xml")) {
-                Consumer<PcGts> pageSaver = page -> {
-                    try {
-                        String pageXmlString = PageUtils.convertAndValidate(page, namespace);
-                        StringTools.writeFile(file.toAbsolutePath().toString(), pageXmlString);
-                    } catch (IOException e) {
-                        LOG.error("Could not save page: {}", file.toAbsolutePath());
-                    } catch (TransformerException e) {
-                        LOG.error("Could not transform page to 2013 version", e);
+            pageFileNames.add(getPageFileName(file));
+        }
+        Files.createDirectories(tmpDir);
+        final Path directory = Files.createTempDirectory(tmpDir, ".htr-results");
+        try {
+            final List<Path> partitionFiles = partitionResults(resultsFile, pageFileNames, partitions, directory,
+                    MAX_OPEN_PARTITION_WRITERS);
+            for (int partition = 0; partition < partitions; partition++) {
+                final HashMap<String, String> fileTextLineMap = new HashMap<>();
+                final HashMap<String, String> metadataMap = new HashMap<>();
+                final HashMap<String, Double> confidenceMap = new HashMap<>();
+                fillDictionary(partitionFiles.get(partition).toString(), fileTextLineMap, metadataMap, confidenceMap);
+                Files.delete(partitionFiles.get(partition));
+
+                final List<Future<?>> futures = new ArrayList<>();
+                for (Path file : files) {
+                    if (getPartition(getPageFileName(file), partitions) == partition) {
+                        futures.add(executor.submit(createWorker(file, namespace, htrModelConfig, fileTextLineMap,
+                                metadataMap, confidenceMap, comment, gitHash)));
                     }
-                };
-
-                final String pageFileName = FilenameUtils.removeExtension(file.getFileName().toString());
-                Supplier<PcGts> pageSupplier = () -> {
+                }
+                // finish the partition before the results of the next one are loaded
+                for (Future<?> future : futures) {
                     try {
-                        return PageUtils.readPageFromFile(file);
-                    } catch (IOException e) {
-                        LOG.error("Could not load page: {}", file.toAbsolutePath());
-                        return null;
+                        future.get();
+                    } catch (ExecutionException e) {
+                        LOG.error("Could not merge page", e.getCause());
                     }
-                };
-
-                Runnable worker = new MinionLoghiHTRMergePageXML(pageFileName, pageSupplier, htrModelConfig, fileTextLineMap, metadataMap,
-                        confidenceMap, pageSaver, pageFileName, comment, htrCodeConfig.getGithash(), Optional.empty());
-                executor.execute(worker);
+                }
+                LOG.info("merged partition {} of {}", partition + 1, partitions);
             }
+        } finally {
+            FileUtils.deleteDirectory(directory.toFile());
         }
+    }
 
+    private static String getPageFileName(Path file) {
+        return FilenameUtils.removeExtension(file.getFileName().toString());
+    }
 
-        executor.shutdown();
-        while (!executor.isTerminated()) {
-        }
+    private static Runnable createWorker(Path file, String namespace, HTRConfig htrModelConfig,
+                                         Map<String, String> fileTextLineMap, Map<String, String> metadataMap,
+                                         Map<String, Double> confidenceMap, String comment, String gitHash) {
+        Consumer<PcGts> pageSaver = page -> {
+            try {
+                String pageXmlString = PageUtils.convertAndValidate(page, namespace);
+                StringTools.writeFile(file.toAbsolutePath().toString(), pageXmlString);
+            } catch (IOException e) {
+                LOG.error("Could not save page: {}", file.toAbsolutePath());
+            } catch (TransformerException e) {
+                LOG.error("Could not transform page to 2013 version", e);
+            }
+        };
+
+        final String pageFileName = getPageFileName(file);
+        Supplier<PcGts> pageSupplier = () -> {
+            try {
+                return PageUtils.readPageFromFile(file);
+            } catch (IOException e) {
+                LOG.error("Could not load page: {}", file.toAbsolutePath());
+                return null;
+            }
+        };
+
+        return new MinionLoghiHTRMergePageXML(pageFileName, pageSupplier, htrModelConfig, fileTextLineMap, metadataMap,
+                confidenceMap, pageSaver, pageFileName, comment, gitHash, Optional.empty());
     }
 
     @Override
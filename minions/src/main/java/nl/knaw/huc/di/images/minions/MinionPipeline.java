@@ -0,0 +1,313 @@
+package nl.knaw.huc.di.images.minions;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import nl.knaw.huc.di.images.layoutanalyzer.layoutlib.OpenCVWrapper;
+import nl.knaw.huc.di.images.layoutds.models.HTRConfig;
+import nl.knaw.huc.di.images.layoutds.models.Page.PcGts;
+import nl.knaw.huc.di.images.pagexmlutils.PageUtils;
+import nl.knaw.huc.di.images.pipelineutils.ImageCache;
+import org.apache.commons.cli.*;
+import org.apache.commons.io.FilenameUtils;
+import org.opencv.core.Mat;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.xml.transform.TransformerException;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Runs MinionExtractBaselines, MinionCutFromImageBasedOnPageXMLNew and, when the HTR results are already there,
+ * MinionLoghiHTRMergePageXML for a page in one go. The page is read once and the image is decoded once, the stages
+ * hand the page to each other in memory instead of writing and reading the PageXML between them. The stages of a page
+ * share its decoded image through an {@link ImageCache} of at most -image_cache_mb megabytes, the image is removed
+ * from the cache when the page is done.
+ * <p>
+ * The stages take the same options as the separate minions. The page is written to output_path_page when all stages
+ * are done, -checkpoints writes it after the stages that are listed as well.
+ */
+public class MinionPipeline implements Runnable {
+    private static final Logger LOG = LoggerFactory.getLogger(MinionPipeline.class);
+    static final String CHECKPOINT_EXTRACT = "extract";
+    static final String CHECKPOINT_CUT = "cut";
+    private static final int DEFAULT_IMAGE_CACHE_MEGABYTES = 512;
+    // options of the separate minions that do not apply to the pipeline, the pipeline finds the files itself
+    private static final Set<String> EXCLUDED_OPTIONS = Set.of("input_path", "page_path", "copy_font_file",
+            "no_page_update", "write_done", "ignore_done", "manifest", "shard_size", "shard_prefix", "line_threads",
+            "partitions", "tmp_dir");
+
+    private final String identifier;
+    private final Path pageFile;
+    private final Path baselineImageFile;
+    private final Path imagePath;
+    private final Path outputFile;
+    private final String namespace;
+    private final MinionExtractBaselines.Settings extractSettings;
+    private final MinionCutFromImageBasedOnPageXMLNew.Settings cutSettings;
+    private final Optional<MergeSettings> mergeSettings;
+    private final Set<String> checkpoints;
+    private final ImageCache imageCache;
+
+    public MinionPipeline(String identifier, Path pageFile, Path baselineImageFile, Path imagePath, Path outputFile,
+                          String namespace, MinionExtractBaselines.Settings extractSettings,
+                          MinionCutFromImageBasedOnPageXMLNew.Settings cutSettings,
+                          Optional<MergeSettings> mergeSettings, Set<String> checkpoints, ImageCache imageCache) {
+        this.identifier = identifier;
+        this.pageFile = pageFile;
+        this.baselineImageFile = baselineImageFile;
+        this.imagePath = imagePath;
+        this.outputFile = outputFile;
+        this.namespace = namespace;
+        this.extractSettings = extractSettings;
+        this.cutSettings = cutSettings;
+        this.mergeSettings = mergeSettings;
+        this.checkpoints = checkpoints;
+        this.imageCache = imageCache;
+    }
+
+    static Options getOptions() {
+        final Options options = new Options();
+        final List<Options> stageOptions = Lists.newArrayList(MinionExtractBaselines.getOptions(),
+                MinionCutFromImageBasedOnPageXMLNew.getOptions(), MinionLoghiHTRMergePageXML.getOptions());
+        for (Options stage : stageOptions) {
+            for (Option option : stage.getOptions()) {
+                if (EXCLUDED_OPTIONS.contains(option.getOpt()) || options.hasOption(option.getOpt())) {
+                    continue;
+                }
+                option.setRequired(false);
+                options.addOption(option);
+            }
+        }
+        for (String required : List.of("input_path_image", "input_path_png", "input_path_page", "output_path_page",
+                "outputbase")) {
+            options.getOption(required).setRequired(true);
+        }
+        options.addOption("checkpoints", true, "comma separated stages after which the page is written as well: "
+                + CHECKPOINT_EXTRACT + ", " + CHECKPOINT_CUT);
+        options.addOption("image_cache_mb", true, "megabytes of decoded images of the running pages (default "
+                + DEFAULT_IMAGE_CACHE_MEGABYTES + ")");
+        return options;
+    }
+
+    static Set<String> getCheckpoints(CommandLine commandLine) {
+        final Set<String> checkpoints = new HashSet<>();
+        if (commandLine.hasOption("checkpoints")) {
+            checkpoints.addAll(Splitter.on(',').trimResults().omitEmptyStrings()
+                    .splitToList(commandLine.getOptionValue("checkpoints")));
+        }
+        for (String checkpoint : checkpoints) {
+            if (!CHECKPOINT_EXTRACT.equals(checkpoint) && !CHECKPOINT_CUT.equals(checkpoint)) {
+                throw new IllegalArgumentException("unknown checkpoint " + checkpoint + ", use "
+                        + CHECKPOINT_EXTRACT + " or " + CHECKPOINT_CUT);
+            }
+        }
+        return checkpoints;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int numthreads = 4;
+        final Options options = getOptions();
+        final CommandLineParser parser = new DefaultParser();
+        final CommandLine commandLine;
+        try {
+            commandLine = parser.parse(options, args);
+        } catch (ParseException ex) {
+            printHelp(options);
+            return;
+        }
+
+        if (commandLine.hasOption("help")) {
+            printHelp(options);
+            return;
+        }
+
+        final Path inputPathImage = Paths.get(commandLine.getOptionValue("input_path_image"));
+        final Path inputPathPng = Paths.get(commandLine.getOptionValue("input_path_png"));
+        final Path inputPathPage = Paths.get(commandLine.getOptionValue("input_path_page"));
+        final Path outputPathPage = Paths.get(commandLine.getOptionValue("output_path_page"));
+        if (commandLine.hasOption("threads")) {
+            numthreads = Integer.parseInt(commandLine.getOptionValue("threads"));
+        }
+        final Set<String> checkpoints = getCheckpoints(commandLine);
+        final long imageCacheMegabytes = commandLine.hasOption("image_cache_mb")
+                ? Long.parseLong(commandLine.getOptionValue("image_cache_mb"))
+                : DEFAULT_IMAGE_CACHE_MEGABYTES;
+        final ImageCache imageCache = new ImageCache(imageCacheMegabytes * 1024 * 1024);
+        final String namespace = commandLine.hasOption("use_2013_namespace") ? PageUtils.NAMESPACE2013 : PageUtils.NAMESPACE2019;
+        BaseMinion.setPageValidationPolicy(commandLine);
+        BaseMinion.setFsync(commandLine);
+
+        final MinionExtractBaselines.Settings extractSettings = MinionExtractBaselines.Settings.fromCommandLine(commandLine);
+        final MinionCutFromImageBasedOnPageXMLNew.Settings cutSettings = MinionCutFromImageBasedOnPageXMLNew.Settings.fromCommandLine(commandLine);
+        final Optional<MergeSettings> mergeSettings = commandLine.hasOption("results_file")
+                ? Optional.of(MergeSettings.fromCommandLine(commandLine))
+                : Optional.empty();
+        if (mergeSettings.isEmpty()) {
+            LOG.info("no -results_file, the pages are written after cutting the text lines");
+        }
+
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> fileStream = Files.newDirectoryStream(inputPathPng)) {
+            fileStream.forEach(files::add);
+        }
+        files.sort(Comparator.comparing(Path::toString));
+
+        final ExecutorService executor = BaseMinion.newBoundedExecutor(numthreads, numthreads * 2);
+        for (Path file : files) {
+            if (!file.getFileName().toString().endsWith(".png")) {
+                continue;
+            }
+            final String identifier = FilenameUtils.removeExtension(file.getFileName().toString());
+            executor.execute(new MinionPipeline(identifier, inputPathPage.resolve(identifier + ".xml"), file,
+                    inputPathImage, outputPathPage.resolve(identifier + ".xml"), namespace, extractSettings,
+                    cutSettings, mergeSettings, checkpoints, imageCache));
+        }
+        executor.shutdown();
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        imageCache.clear();
+        BaseMinion.printMetricsReport(commandLine);
+    }
+
+    private static void printHelp(Options options) {
+        BaseMinion.printHelp(options, "java " + MinionPipeline.class.getName());
+    }
+
+    @Override
+    public void run() {
+        final List<Mat> views = new ArrayList<>();
+        Path imageFile = null;
+        try {
+            final PcGts input = PageUtils.readPageFromFile(pageFile);
+            if (input == null) {
+                LOG.error("{} could not read page {}", identifier, pageFile);
+                return;
+            }
+            imageFile = findImageFile(input);
+            // the baselines are mapped on a raster of the size of the page, a page without it gets it from the header
+            if (!hasSize(input.getPage().getImageWidth()) || !hasSize(input.getPage().getImageHeight())) {
+                final Size size = ImageCache.readSize(imageFile);
+                input.getPage().setImageWidth((int) size.width);
+                input.getPage().setImageHeight((int) size.height);
+            }
+            // extract and cut share the decoded image, neither writes to it
+            final Path pageImageFile = imageFile;
+            final Supplier<Mat> imageSupplier = () -> view(views, pageImageFile, Imgcodecs.IMREAD_COLOR);
+            final Supplier<Mat> baselineImageSupplier = () ->
+                    Imgcodecs.imread(baselineImageFile.toAbsolutePath().toString(), Imgcodecs.IMREAD_GRAYSCALE);
+
+            final PcGts page = extractSettings.create(baselineImageFile.toAbsolutePath().toString(), () -> input,
+                    imageSupplier, baselineImageSupplier, outputFile.toAbsolutePath().toString()).extractBaseLines();
+            if (checkpoints.contains(CHECKPOINT_EXTRACT)) {
+                writePage(page);
+            }
+
+            // the cutter hands the page to the page saver when it has cut all text lines
+            final boolean[] cut = new boolean[1];
+            cutSettings.create(identifier, imageSupplier, () -> page, imageFile.getFileName().toString(),
+                    cutPage -> cut[0] = true, () -> {
+                    }).run();
+            if (!cut[0]) {
+                LOG.error("{} could not cut the text lines, the page is not written", identifier);
+                return;
+            }
+            if (mergeSettings.isEmpty()) {
+                writePage(page);
+                return;
+            }
+            if (checkpoints.contains(CHECKPOINT_CUT)) {
+                writePage(page);
+            }
+
+            final MergeSettings merge = mergeSettings.get();
+            new MinionLoghiHTRMergePageXML(identifier, () -> page, merge.htrModelConfig, merge.fileTextLineMap,
+                    merge.metadataMap, merge.confidenceMap, this::writePage, identifier, merge.comment,
+                    merge.gitHash, Optional.empty()).run();
+        } catch (IOException | org.json.simple.parser.ParseException e) {
+            LOG.error("{} could not be processed", identifier, e);
+        } finally {
+            for (Mat view : views) {
+                OpenCVWrapper.release(view);
+            }
+            // no other page uses the image
+            if (imageFile != null) {
+                imageCache.invalidate(imageFile);
+            }
+        }
+    }
+
+    private static boolean hasSize(Integer size) {
+        return size != null && size > 0;
+    }
+
+    private Mat view(List<Mat> views, Path imageFile, int flags) {
+        final Mat view = imageCache.get(imageFile, flags);
+        views.add(view);
+        return view;
+    }
+
+    // the image named in the page, or the jpg with the name of the page if there is no such image
+    private Path findImageFile(PcGts page) {
+        final String imageFilename = page.getPage().getImageFilename();
+        if (imageFilename != null && Files.exists(imagePath.resolve(imageFilename))) {
+            return imagePath.resolve(imageFilename);
+        }
+        return imagePath.resolve(identifier + ".jpg");
+    }
+
+    private void writePage(PcGts page) {
+        try {
+            PageUtils.writePageToFileAtomic(page, namespace, outputFile);
+        } catch (IOException e) {
+            LOG.error("Could not save page: {}", outputFile.toAbsolutePath(), e);
+        } catch (TransformerException e) {
+            LOG.error("Could not transform page to 2013 version", e);
+        }
+    }
+
+    /**
+     * The HTR results and configuration MinionLoghiHTRMergePageXML merges into the pages, loaded once for all pages.
+     */
+    static class MergeSettings {
+        private final HTRConfig htrModelConfig;
+        private final String gitHash;
+        private final String comment;
+        private final Map<String, String> fileTextLineMap = new HashMap<>();
+        private final Map<String, String> metadataMap = new HashMap<>();
+        private final Map<String, Double> confidenceMap = new HashMap<>();
+
+        private MergeSettings(HTRConfig htrModelConfig, String gitHash, String comment) {
+            this.htrModelConfig = htrModelConfig;
+            this.gitHash = gitHash;
+            this.comment = comment;
+        }
+
+        static MergeSettings fromCommandLine(CommandLine commandLine) throws IOException,
+                org.json.simple.parser.ParseException {
+            final List<String> configWhiteList;
+            if (commandLine.hasOption("config_white_list")) {
+                configWhiteList = Arrays.asList(commandLine.getOptionValues("config_white_list"));
+            } else {
+                configWhiteList = Lists.newArrayList("batch_size");
+            }
+            final HTRConfig htrModelConfig = MinionLoghiHTRMergePageXML.readHTRConfigFile(
+                    commandLine.getOptionValue("config_file"), configWhiteList);
+            final HTRConfig htrCodeConfig = MinionLoghiHTRMergePageXML.readHTRConfigFile(
+                    commandLine.getOptionValue("htr_code_config_file"), configWhiteList);
+            final MergeSettings settings = new MergeSettings(htrModelConfig, htrCodeConfig.getGithash(),
+                    commandLine.getOptionValue("comment"));
+            MinionLoghiHTRMergePageXML.fillDictionary(commandLine.getOptionValue("results_file"),
+                    settings.fileTextLineMap, settings.metadataMap, settings.confidenceMap);
+            return settings;
+        }
+    }
+}
@@ -126,6 +126,7 @@ public class MinionPyLaiaMergePageXML extends BaseMinion implements Runnable {
 
         options.addOption("help", false, "prints this help dialog");
         options.addOption("use_2013_namespace", "set PageXML namespace to 2013, to avoid causing problems with Transkribus");
+        BaseMinion.addPageValidationOption(options);
 
 //        options.addOption("overwrite_existing_page", true, "true / false, default true");
 
@@ -154,6 +155,7 @@ public class MinionPyLaiaMergePageXML extends BaseMinion implements Runnable {
             return;
         }
         String namespace = commandLine.hasOption("use_2013_namespace") ? PageUtils.NAMESPACE2013: PageUtils.NAMESPACE2019;
+        BaseMinion.setPageValidationPolicy(commandLine);
 
         inputPath = Paths.get(commandLine.getOptionValue("input_path"));
         resultsFile = commandLine.getOptionValue("results_file");
@@ -7,7 +7,6 @@ import nl.knaw.huc.di.images.layoutanalyzer.layoutlib.LayoutProc;
 import nl.knaw.huc.di.images.layoutds.models.Page.*;
 import nl.knaw.huc.di.images.pagexmlutils.PageUtils;
 import nl.knaw.huc.di.images.pipelineutils.ErrorFileWriter;
-import nl.knaw.huc.di.images.stringtools.StringTools;
 import org.apache.commons.cli.*;
 import org.opencv.core.Point;
 import org.opencv.core.Rect;
@@ -22,9 +21,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 
 public class MinionRecalculateReadingOrderNew implements Runnable, AutoCloseable {
@@ -33,7 +32,7 @@ public class MinionRecalculateReadingOrderNew implements Runnable, AutoCloseable
 
     private final double interlineClusteringMultiplier;
     private final String identifier;
-    private final PcGts page;
+    private final Supplier<PcGts> pageSupplier;
     private final Consumer<PcGts> pageSaver;
     private final boolean cleanBorders;
     private final int borderMargin;
@@ -49,8 +48,21 @@ public class MinionRecalculateReadingOrderNew implements Runnable, AutoCloseable
                                             double interlineClusteringMultiplier, double dubiousSizeWidthMultiplier,
                                             Double dubiousSizeWidth, List<String> readingOrderList,
                                             Optional<ErrorFileWriter> errorFileWriter) {
+        this(identifier, () -> page, pageSaver, cleanBorders, borderMargin, asSingleRegion,
+                interlineClusteringMultiplier, dubiousSizeWidthMultiplier, dubiousSizeWidth, readingOrderList,
+                errorFileWriter);
+    }
+
+    /**
+     * @param pageSupplier loads the page when the minion runs, so pages waiting in the queue are not kept in memory
+     */
+    public MinionRecalculateReadingOrderNew(String identifier, Supplier<PcGts> pageSupplier, Consumer<PcGts> pageSaver,
+                                            boolean cleanBorders, int borderMargin, boolean asSingleRegion,
+                                            double interlineClusteringMultiplier, double dubiousSizeWidthMultiplier,
+                                            Double dubiousSizeWidth, List<String> readingOrderList,
+                                            Optional<ErrorFileWriter> errorFileWriter) {
         this.identifier = identifier;
-        this.page = page;
+        this.pageSupplier = pageSupplier;
         this.pageSaver = pageSaver;
         this.cleanBorders = cleanBorders;
         this.borderMargin = borderMargin;
@@ -82,6 +94,7 @@ public class MinionRecalculateReadingOrderNew implements Runnable, AutoCloseable
         options.addOption("interline_clustering_multiplier", true,  "helps to calculate the maximum cluster distance between two lines, default 1.5");
         options.addOption("reading_order_list", true, "reading_order_list");
         options.addOption("use_2013_namespace", "set PageXML namespace to 2013, to avoid causing problems with Transkribus");
+        BaseMinion.addPageValidationOption(options);
 
         return options;
     }
@@ -92,7 +105,7 @@ public class MinionRecalculateReadingOrderNew implements Runnable, AutoCloseable
         helpFormatter.printHelp(callName, options, true);
     }
 
-    public static void main(String[] args) throws IOException, ParseException {
+    public static void main(String[] args) throws IOException, ParseException, InterruptedException {
         Options options = getOptions();
         CommandLineParser parser = new DefaultParser();
         CommandLine commandLine;
@@ -150,8 +163,10 @@ public class MinionRecalculateReadingOrderNew implements Runnable, AutoCloseable
         }
 
         String namespace = commandLine.hasOption("use_2013_namespace") ? PageUtils.NAMESPACE2013: PageUtils.NAMESPACE2019;
+        BaseMinion.setPageValidationPolicy(commandLine);
 
-        ExecutorService executor = Executors.newFixedThreadPool(numthreads);
+        // at most two pages per thread wait in the queue, the pages are read by the workers
+        ExecutorService executor = BaseMinion.newBoundedExecutor(numthreads, numthreads * 2);
         DirectoryStream<Path> fileStream = Files.newDirectoryStream(Paths.get(inputDir));
         List<Path> files = new ArrayList<>();
         fileStream.forEach(files::add);
@@ -164,8 +179,14 @@ public class MinionRecalculateReadingOrderNew implements Runnable, AutoCloseable
             if (file.getFileName().toString().endsWith(".xml")) {
                 LOG.info(file.toAbsolutePath().toString());
                 final String pageFile = file.toAbsolutePath().toString();
-                String pcGtsString = StringTools.loadStringFromFile(pageFile);
-                PcGts page = PageUtils.readPageFromString(pcGtsString);
+                final Supplier<PcGts> pageSupplier = () -> {
+                    try {
+                        return PageUtils.readPageFromFile(file);
+                    } catch (IOException e) {
+                        LOG.error("Cannot read page: " + pageFile, e);
+                        return null;
+                    }
+                };
 
                 Consumer<PcGts> pageSaver = newPage -> {
                     try {
@@ -179,16 +200,14 @@ public class MinionRecalculateReadingOrderNew implements Runnable, AutoCloseable
 
 
 
-                Runnable worker = new MinionRecalculateReadingOrderNew(pageFile, page, pageSaver, cleanBorders,
+                Runnable worker = new MinionRecalculateReadingOrderNew(pageFile, pageSupplier, pageSaver, cleanBorders,
                         borderMargin, asSingleRegion, interlineClusteringMultiplier, dubiousSizeWidthMultiplier,
                         dubiousSizeWidth, readingOrderList, Optional.empty());
                 executor.execute(worker);
             }
         }
         executor.shutdown();
-        while (!executor.isTerminated()) {
-
-        }
+        executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
     }
 
     @Override
@@ -216,83 +235,10 @@ public class MinionRecalculateReadingOrderNew implements Runnable, AutoCloseable
             cleanBorders(page, borderMargin, allLines, dubiousSizeWidth, linesToRemove);
         }
 
-        List<TextLine> removedLines = new ArrayList<>();
-        for (TextLine textLine : allLines) {
-            if (removedLines.contains(textLine)) {
-                continue;
-            }
-            List<TextLine> cluster = new ArrayList<>();
-            cluster.add(textLine);
-            Rect regionPoints = LayoutProc.getBoundingBoxTextLines(cluster);
-            removedLines.add(textLine);
-            List<TextLine> checkedTextLines = new ArrayList<>();
-
-            boolean newLinesAdded = true;
-            while (newLinesAdded) {
-                newLinesAdded = false;
-                ArrayList<TextLine> toCheck = new ArrayList<>(cluster);
-                toCheck.removeAll(checkedTextLines);
-                for (TextLine mainTextLine : toCheck) {
-                    checkedTextLines.add(mainTextLine);
-//                    System.out.println("new mainTextLine: " + stopwatch.elapsed(TimeUnit.MILLISECONDS));
-                    List<Point> mainPoints = StringConverter.stringToPoint(mainTextLine.getBaseline().getPoints());
-//                    double mainTextLineOrientation = LayoutProc.getMainAngle(mainPoints);
-                    Point mainTextLineStart = mainPoints.get(0);
-                    Point mainTextLineEnd = mainPoints.get(mainPoints.size() - 1);
-
-                    for (TextLine subTextLine : allLines) {
-                        if (removedLines.contains(subTextLine)) {
-                            continue;
-                        }
-//                        double subTextLineOrientation = LayoutProc.getMainAngle(StringConverter.stringToPoint(subTextLine.getBaseline().getPoints()));
-//                if subTextLine same orientation
-//                if (LayoutProc.distance())
-//                && closeby
-//                        System.out.println("new subtextline: " + stopwatch.elapsed(TimeUnit.MILLISECONDS));
-                        List<Point> subPoints = StringConverter.stringToPoint(subTextLine.getBaseline().getPoints());
-                        Point subTextLineStart = subPoints.get(0);
-                        Point subTextLineEnd = subPoints.get(subPoints.size() - 1);
-                        Rect textLineRect = LayoutProc.getBoundingBox(subPoints);
-                        // if textline inside region already
-                        if (regionPoints.x< textLineRect.x &&
-                                regionPoints.x + regionPoints.width > textLineRect.x + textLineRect.width &&
-                                regionPoints.y< textLineRect.y &&
-                                regionPoints.y + regionPoints.height > textLineRect.y + textLineRect.height){
-                            cluster.add(subTextLine);
-                            regionPoints = LayoutProc.growCluster(regionPoints, subTextLine);
-
-                            removedLines.add(subTextLine);
-                            newLinesAdded = true;
-                            continue;
-                        }
-                        //add to cluster if starts are close together
-                        double maxDistance = interlinemedian * interlineClusteringMultiplier;
-                        if (StringConverter.distance(mainTextLineStart, subTextLineStart) < maxDistance) {
-                            cluster.add(subTextLine);
-                            regionPoints = LayoutProc.growCluster(regionPoints, subTextLine);
-                            removedLines.add(subTextLine);
-                            newLinesAdded = true;
-                        } else {
-                            //add to cluster if centers are vertically close together
-                            double horizontalSubPointX = ((subTextLineStart.x + subTextLineEnd.x) / 2);
-                            double averageSubPointY = ((subTextLineStart.y + subTextLineEnd.y) / 2);
-                            double mainTextLineY = ((mainTextLineStart.y + mainTextLineEnd.y) / 2);
-                            if (horizontalSubPointX > mainTextLineStart.x && horizontalSubPointX < mainTextLineEnd.x) {
-                                // and y-distance is less than interlineClusteringMultiplier * interline
-                                if (Math.abs(averageSubPointY - mainTextLineY) < maxDistance) {
-                                    cluster.add(subTextLine);
-                                    regionPoints = LayoutProc.growCluster(regionPoints, subTextLine);
-                                    removedLines.add(subTextLine);
-                                    newLinesAdded = true;
-                                }
-                            }
-                        }
-                    }
-                    if (newLinesAdded) {
-                        break;
-                    }
-                }
-            }
+        double maxDistance = interlinemedian * interlineClusteringMultiplier;
+        for (TextLineClusterer.Cluster textLineCluster : new TextLineClusterer(allLines, maxDistance).cluster()) {
+            List<TextLine> cluster = textLineCluster.getTextLines();
+            Rect regionPoints = textLineCluster.getRegion();
 
             TextRegion textRegion = new TextRegion();
             textRegion.setId(UUID.randomUUID().toString());
@@ -304,8 +250,8 @@ public class MinionRecalculateReadingOrderNew implements Runnable, AutoCloseable
             Rect finalRegionPoints = regionPoints;
             cluster.sort(Comparator.comparing(textLine1 ->
                     StringConverter.distance(new Point(finalRegionPoints.x, finalRegionPoints.y),
-                            new Point(finalRegionPoints.x + (StringConverter.stringToPoint(textLine1.getBaseline().getPoints()).get(0).x - finalRegionPoints.x) / 10,
-                                    StringConverter.stringToPoint(textLine1.getBaseline().getPoints()).get(0).y))));
+                            new Point(finalRegionPoints.x + (textLine1.getBaseline().getGeometry().getX(0) - finalRegionPoints.x) / 10,
+                                    textLine1.getBaseline().getGeometry().getY(0)))));
             int counter = 0;
             for (TextLine textLine1 : cluster) {
                 String oldCustom = getOldCustom(textLine1);
@@ -351,7 +297,7 @@ public class MinionRecalculateReadingOrderNew implements Runnable, AutoCloseable
 
     private static void cleanBorders(PcGts page, int borderMargin, List<TextLine> allLines, double dubiousSizeWidth, List<TextLine> linesToRemove) {
         for (TextLine textLine : allLines) {
-            List<Point> points = StringConverter.stringToPoint(textLine.getBaseline().getPoints());
+            List<Point> points = textLine.getBaseline().getGeometry().toPoints();
             Point textLineStart = points.get(0);
             Point textLineEnd = points.get(points.size() - 1);
             if (Math.abs(textLineEnd.x - page.getPage().getImageWidth()) < borderMargin) {
@@ -385,6 +331,12 @@ public class MinionRecalculateReadingOrderNew implements Runnable, AutoCloseable
     @Override
     public void run() {
         try {
+            PcGts page = pageSupplier.get();
+            if (page == null) {
+                LOG.error("Could not load page {}", identifier);
+                errorFileWriter.ifPresent(errorWriter -> errorWriter.write(identifier, "Could not load page"));
+                return;
+            }
             PcGts newPage = runPage(identifier, page, cleanBorders, borderMargin, asSingleRegion, readingOrderList);
             pageSaver.accept(newPage);
         } catch (Exception e) {
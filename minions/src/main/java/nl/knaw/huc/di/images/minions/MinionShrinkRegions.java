@@ -63,6 +63,7 @@ public class MinionShrinkRegions extends BaseMinion implements Runnable {
                 .desc("input folder that contains the images and page-folder that has to be updated").build());
         options.addOption("help", false, "prints this help dialog");
         options.addOption("use_2013_namespace", "set PageXML namespace to 2013, to avoid causing problems with Transkribus");
+        BaseMinion.addPageValidationOption(options);
 
         return options;
     }
@@ -84,6 +85,7 @@ public class MinionShrinkRegions extends BaseMinion implements Runnable {
             return;
         }
         String namespace = commandLine.hasOption("use_2013_namespace") ? PageUtils.NAMESPACE2013: PageUtils.NAMESPACE2019;
+        BaseMinion.setPageValidationPolicy(commandLine);
 
         path = commandLine.getOptionValue("input");
 
@@ -72,6 +72,7 @@ public class MinionShrinkTextLines extends BaseMinion implements Runnable {
                 .desc("input folder that contains the images and page-folder that has to be updated").build());
         options.addOption("help", false, "prints this help dialog");
         options.addOption("use_2013_namespace", "set PageXML namespace to 2013, to avoid causing problems with Transkribus");
+        BaseMinion.addPageValidationOption(options);
 
         return options;
     }
@@ -97,6 +98,7 @@ public class MinionShrinkTextLines extends BaseMinion implements Runnable {
 
         path = commandLine.getOptionValue("input");
         String namespace = commandLine.hasOption("use_2013_namespace") ? PageUtils.NAMESPACE2013: PageUtils.NAMESPACE2019;
+        BaseMinion.setPageValidationPolicy(commandLine);
 
         shrinkTextLines(Paths.get(path), namespace);
     }
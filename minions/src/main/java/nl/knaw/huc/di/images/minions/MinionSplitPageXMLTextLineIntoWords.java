@@ -55,6 +55,8 @@ public class MinionSplitPageXMLTextLineIntoWords implements Runnable, AutoClosea
         );
         options.addOption("help", false, "prints this help dialog");
         options.addOption("use_2013_namespace", "set PageXML namespace to 2013, to avoid causing problems with Transkribus");
+        BaseMinion.addPageValidationOption(options);
+        BaseMinion.addFsyncOption(options);
 
         return options;
     }
@@ -88,6 +90,8 @@ public class MinionSplitPageXMLTextLineIntoWords implements Runnable, AutoClosea
         input = commandLine.getOptionValue("input_path");
 
         String namespace = commandLine.hasOption("use_2013_namespace") ? PageUtils.NAMESPACE2013: PageUtils.NAMESPACE2019;
+        BaseMinion.setPageValidationPolicy(commandLine);
+        BaseMinion.setFsync(commandLine);
 
         Path inputPath = Paths.get(input);
         DirectoryStream<Path> fileStream = Files.newDirectoryStream(inputPath);
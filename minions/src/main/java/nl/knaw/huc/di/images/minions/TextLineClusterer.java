@@ -0,0 +1,278 @@
+package nl.knaw.huc.di.images.minions;
+
+import nl.knaw.huc.di.images.layoutanalyzer.layoutlib.LayoutProc;
+import nl.knaw.huc.di.images.layoutds.models.Page.PointsGeometry;
+import nl.knaw.huc.di.images.layoutds.models.Page.TextLine;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups the text lines of a page into the regions of MinionRecalculateReadingOrderNew. A line joins the cluster of a
+ * line when:
+ * <ul>
+ *     <li>its baseline lies inside the bounding box of the cluster</li>
+ *     <li>the distance between the starts of the baselines is less than maxDistance</li>
+ *     <li>the horizontal center of its baseline lies within the other baseline and the vertical centers are less than
+ *     maxDistance apart</li>
+ * </ul>
+ * The lines are visited in the same order as the original brute force loop, so the clusters are the same, but the
+ * candidates are looked up in grids over the baseline starts, centers and bounding boxes.
+ */
+final class TextLineClusterer {
+    private static final double MINIMUM_CELL_SIZE = 32;
+
+    static final class Cluster {
+        private final List<TextLine> textLines = new ArrayList<>();
+        private Rect region;
+
+        List<TextLine> getTextLines() {
+            return textLines;
+        }
+
+        Rect getRegion() {
+            return region;
+        }
+    }
+
+    private final List<TextLine> textLines;
+    private final double maxDistance;
+    private final double[] startX;
+    private final double[] startY;
+    private final double[] endX;
+    private final double[] endY;
+    private final double[] centerX;
+    private final double[] centerY;
+    private final int[] minX;
+    private final int[] minY;
+    private final int[] maxX;
+    private final int[] maxY;
+    private final boolean[] clustered;
+    private final Grid starts;
+    private final Grid centers;
+    private final Grid boxes;
+
+    TextLineClusterer(List<TextLine> textLines, double maxDistance) {
+        this.textLines = textLines;
+        this.maxDistance = maxDistance;
+        final int size = textLines.size();
+        startX = new double[size];
+        startY = new double[size];
+        endX = new double[size];
+        endY = new double[size];
+        centerX = new double[size];
+        centerY = new double[size];
+        minX = new int[size];
+        minY = new int[size];
+        maxX = new int[size];
+        maxY = new int[size];
+        clustered = new boolean[size];
+        final double cellSize = maxDistance > MINIMUM_CELL_SIZE ? maxDistance : MINIMUM_CELL_SIZE;
+        starts = new Grid(cellSize);
+        centers = new Grid(cellSize);
+        boxes = new Grid(cellSize);
+        for (int i = 0; i < size; i++) {
+            final PointsGeometry geometry = textLines.get(i).getBaseline().getGeometry();
+            final int last = geometry.size() - 1;
+            startX[i] = geometry.getX(0);
+            startY[i] = geometry.getY(0);
+            endX[i] = geometry.getX(last);
+            endY[i] = geometry.getY(last);
+            centerX[i] = (startX[i] + endX[i]) / 2;
+            centerY[i] = (startY[i] + endY[i]) / 2;
+            minX[i] = geometry.getMinX();
+            minY[i] = geometry.getMinY();
+            maxX[i] = geometry.getMaxX();
+            maxY[i] = geometry.getMaxY();
+            starts.add(startX[i], startY[i], i);
+            centers.add(centerX[i], centerY[i], i);
+            boxes.add(minX[i], minY[i], i);
+        }
+    }
+
+    List<Cluster> cluster() {
+        final List<Cluster> clusters = new ArrayList<>();
+        for (int seed = 0; seed < textLines.size(); seed++) {
+            if (clustered[seed]) {
+                continue;
+            }
+            final Cluster cluster = new Cluster();
+            final List<Integer> members = new ArrayList<>();
+            members.add(seed);
+            clustered[seed] = true;
+            cluster.textLines.add(textLines.get(seed));
+            cluster.region = LayoutProc.getBoundingBoxTextLines(Collections.singletonList(textLines.get(seed)));
+
+            // every member is compared once with the other lines, in the order they joined the cluster
+            for (int member = 0; member < members.size(); member++) {
+                addLinesCloseTo(members.get(member), cluster, members);
+            }
+            clusters.add(cluster);
+        }
+        return clusters;
+    }
+
+    private void addLinesCloseTo(int main, Cluster cluster, List<Integer> members) {
+        final int[] closeLines = findCloseLines(main);
+        int closeIndex = 0;
+        int[] linesInRegion = findLinesInRegion(cluster.region);
+        int inRegionIndex = 0;
+        int position = 0;
+        while (true) {
+            while (closeIndex < closeLines.length && (closeLines[closeIndex] < position || clustered[closeLines[closeIndex]])) {
+                closeIndex++;
+            }
+            while (inRegionIndex < linesInRegion.length && (linesInRegion[inRegionIndex] < position || clustered[linesInRegion[inRegionIndex]])) {
+                inRegionIndex++;
+            }
+            final int next;
+            if (closeIndex < closeLines.length && inRegionIndex < linesInRegion.length) {
+                next = Math.min(closeLines[closeIndex], linesInRegion[inRegionIndex]);
+            } else if (closeIndex < closeLines.length) {
+                next = closeLines[closeIndex];
+            } else if (inRegionIndex < linesInRegion.length) {
+                next = linesInRegion[inRegionIndex];
+            } else {
+                return;
+            }
+
+            clustered[next] = true;
+            members.add(next);
+            cluster.textLines.add(textLines.get(next));
+            final Rect grown = LayoutProc.growCluster(cluster.region, textLines.get(next));
+            if (!grown.equals(cluster.region)) {
+                cluster.region = grown;
+                linesInRegion = findLinesInRegion(grown);
+                inRegionIndex = 0;
+            }
+            position = next + 1;
+        }
+    }
+
+    /**
+     * @return the sorted indices of the lines that start close to the start of main, or that have their center close
+     * above or below main
+     */
+    private int[] findCloseLines(int main) {
+        if (!(maxDistance > 0)) {
+            return new int[0];
+        }
+        final IntList result = new IntList();
+        starts.forEach(startX[main] - maxDistance, startY[main] - maxDistance,
+                startX[main] + maxDistance, startY[main] + maxDistance, index -> {
+                    if (!clustered[index] && distance(startX[main], startY[main], startX[index], startY[index]) < maxDistance) {
+                        result.add(index);
+                    }
+                });
+        final double mainY = (startY[main] + endY[main]) / 2;
+        if (startX[main] < endX[main]) {
+            centers.forEach(startX[main], mainY - maxDistance, endX[main], mainY + maxDistance, index -> {
+                if (!clustered[index]
+                        && centerX[index] > startX[main] && centerX[index] < endX[main]
+                        && Math.abs(centerY[index] - mainY) < maxDistance) {
+                    result.add(index);
+                }
+            });
+        }
+        return result.toSortedDistinctArray();
+    }
+
+    /**
+     * @return the sorted indices of the lines that have their baseline inside the region
+     */
+    private int[] findLinesInRegion(Rect region) {
+        final IntList result = new IntList();
+        final Grid.IndexConsumer consumer = index -> {
+            if (!clustered[index]
+                    && region.x < minX[index] && region.x + region.width > maxX[index]
+                    && region.y < minY[index] && region.y + region.height > maxY[index]) {
+                result.add(index);
+            }
+        };
+        if (boxes.countCells(region.x, region.y, region.x + region.width, region.y + region.height) > textLines.size()) {
+            for (int index = 0; index < textLines.size(); index++) {
+                consumer.accept(index);
+            }
+        } else {
+            boxes.forEach(region.x, region.y, region.x + region.width, region.y + region.height, consumer);
+        }
+        return result.toSortedDistinctArray();
+    }
+
+    // the same calculation as StringConverter.distance, so the results are the same
+    private static double distance(double x1, double y1, double x2, double y2) {
+        return Math.sqrt(Math.pow((x1 - x2), 2.0) + Math.pow((y1 - y2), 2.0));
+    }
+
+    private static final class Grid {
+        interface IndexConsumer {
+            void accept(int index);
+        }
+
+        private final double cellSize;
+        private final Map<Long, IntList> cells = new HashMap<>();
+
+        private Grid(double cellSize) {
+            this.cellSize = cellSize;
+        }
+
+        private long cell(double coordinate) {
+            return (long) Math.floor(coordinate / cellSize);
+        }
+
+        private static long key(long cellX, long cellY) {
+            return (cellX << 32) ^ (cellY & 0xffffffffL);
+        }
+
+        void add(double x, double y, int index) {
+            cells.computeIfAbsent(key(cell(x), cell(y)), key -> new IntList()).add(index);
+        }
+
+        long countCells(double fromX, double fromY, double toX, double toY) {
+            return (cell(toX) - cell(fromX) + 1) * (cell(toY) - cell(fromY) + 1);
+        }
+
+        void forEach(double fromX, double fromY, double toX, double toY, IndexConsumer consumer) {
+            for (long cellX = cell(fromX); cellX <= cell(toX); cellX++) {
+                for (long cellY = cell(fromY); cellY <= cell(toY); cellY++) {
+                    final IntList indices = cells.get(key(cellX, cellY));
+                    if (indices == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < indices.size; i++) {
+                        consumer.accept(indices.values[i]);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        int[] toSortedDistinctArray() {
+            final int[] sorted = Arrays.copyOf(values, size);
+            Arrays.sort(sorted);
+            int distinct = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (distinct == 0 || sorted[i] != sorted[distinct - 1]) {
+                    sorted[distinct++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, distinct);
+        }
+    }
+}
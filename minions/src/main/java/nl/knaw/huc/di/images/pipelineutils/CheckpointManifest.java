@@ -0,0 +1,279 @@
+package nl.knaw.huc.di.images.pipelineutils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.zip.CRC32C;
+
+/**
+ * Keeps track of the pages the stages of a run have handled, in a manifest in the output directory, so a restarted
+ * run can skip the pages that are done without looking for a marker file per page.
+ * <p>
+ * The manifest is a journal that every change is appended to and an index with the state of every page. When the
+ * journal has grown as large as the index, the index is rewritten with the journal in it and the journal starts
+ * over. Opening the manifest reads the index and the journal once, from start to end. Every line carries a checksum,
+ * a line that was not written completely because the run crashed is ignored, the page is handled again.
+ * <p>
+ * A manifest can be used by the threads of one process, processes should use a directory of their own.
+ */
+public class CheckpointManifest implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(CheckpointManifest.class);
+    static final String INDEX_FILE = ".manifest.index";
+    static final String JOURNAL_FILE = ".manifest.journal";
+    private static final int MINIMUM_COMPACTION_RECORDS = 10_000;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    public enum State {
+        STARTED,
+        DONE,
+        FAILED
+    }
+
+    private final Path directory;
+    // stage + page -> entry
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private Writer journal;
+    private int journalRecords;
+
+    private CheckpointManifest(Path directory) {
+        this.directory = directory;
+    }
+
+    public static CheckpointManifest open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        final CheckpointManifest manifest = new CheckpointManifest(directory);
+        manifest.read(directory.resolve(INDEX_FILE));
+        manifest.journalRecords = manifest.read(directory.resolve(JOURNAL_FILE));
+        endIncompleteLine(directory.resolve(JOURNAL_FILE));
+        manifest.journal = Files.newBufferedWriter(directory.resolve(JOURNAL_FILE), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return manifest;
+    }
+
+    // so the first line appended after a crash is not glued to the line the crash cut off
+    private static void endIncompleteLine(Path journal) throws IOException {
+        if (Files.notExists(journal)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final long size = channel.size();
+            if (size == 0) {
+                return;
+            }
+            final ByteBuffer last = ByteBuffer.allocate(1);
+            channel.read(last, size - 1);
+            if (last.get(0) != '\n') {
+                channel.write(ByteBuffer.wrap(new byte[]{'\n'}), size);
+            }
+        }
+    }
+
+    /**
+     * @return true if the stage finished the page with the same version of the stage
+     */
+    public synchronized boolean isDone(String page, String stage, int stageVersion) {
+        final Entry entry = entries.get(key(page, stage));
+        return entry != null && entry.state == State.DONE && entry.stageVersion == stageVersion;
+    }
+
+    public synchronized Optional<Entry> get(String page, String stage) {
+        return Optional.ofNullable(entries.get(key(page, stage)));
+    }
+
+    public void started(String page, String stage, int stageVersion) {
+        record(new Entry(page, stage, stageVersion, State.STARTED, ""));
+    }
+
+    /**
+     * @param checksum a checksum or summary of the output of the page, to tell the output of one run from another
+     */
+    public void done(String page, String stage, int stageVersion, String checksum) {
+        record(new Entry(page, stage, stageVersion, State.DONE, checksum));
+    }
+
+    public void failed(String page, String stage, int stageVersion) {
+        record(new Entry(page, stage, stageVersion, State.FAILED, ""));
+    }
+
+    private synchronized void record(Entry entry) {
+        if (journal == null) {
+            throw new IllegalStateException("Manifest is closed");
+        }
+        entries.put(key(entry.page, entry.stage), entry);
+        try {
+            journal.write(entry.toLine());
+            // a crash of the process does not lose the line, a crash of the machine can, the page is handled again
+            journal.flush();
+            journalRecords++;
+            if (journalRecords >= Math.max(MINIMUM_COMPACTION_RECORDS, entries.size())) {
+                compact();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write manifest in " + directory, e);
+        }
+    }
+
+    /**
+     * Writes all entries to the index and empties the journal. A crash halfway leaves the old index or the new one,
+     * next to a journal that has nothing the index does not know about.
+     */
+    private void compact() throws IOException {
+        final Path index = directory.resolve(INDEX_FILE);
+        final Path newIndex = Files.createTempFile(directory, INDEX_FILE, ".tmp");
+        try (FileChannel channel = FileChannel.open(newIndex, StandardOpenOption.WRITE)) {
+            final BufferedWriter writer = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8), BUFFER_SIZE);
+            for (Entry entry : entries.values()) {
+                writer.write(entry.toLine());
+            }
+            writer.flush();
+            channel.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(newIndex);
+            throw e;
+        }
+        Files.move(newIndex, index, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        journal.close();
+        journal = Files.newBufferedWriter(directory.resolve(JOURNAL_FILE), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        journalRecords = 0;
+        LOG.debug("compacted manifest in {}, {} entries", directory, entries.size());
+    }
+
+    // returns the number of lines read
+    private int read(Path file) throws IOException {
+        int lines = 0;
+        // not Files.newBufferedReader, a line cut off halfway a character would make it throw
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(Files.newInputStream(file),
+                StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final Entry entry = Entry.parse(line);
+                if (entry == null) {
+                    LOG.warn("ignoring incomplete line {} of {}", lines + 1, file);
+                    continue;
+                }
+                entries.put(key(entry.page, entry.stage), entry);
+                lines++;
+            }
+        } catch (NoSuchFileException e) {
+            // a new manifest
+        }
+        return lines;
+    }
+
+    /**
+     * Compacts the manifest and closes it.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (journal == null) {
+            return;
+        }
+        try {
+            if (journalRecords > 0) {
+                compact();
+            }
+        } finally {
+            journal.close();
+            journal = null;
+        }
+    }
+
+    private static String key(String page, String stage) {
+        return stage + '\t' + page;
+    }
+
+    public static class Entry {
+        private final String page;
+        private final String stage;
+        private final int stageVersion;
+        private final State state;
+        private final String checksum;
+
+        Entry(String page, String stage, int stageVersion, State state, String checksum) {
+            if (hasSeparator(page) || hasSeparator(stage) || hasSeparator(checksum)) {
+                throw new IllegalArgumentException("Tabs and line breaks are not allowed in the manifest: " + page);
+            }
+            this.page = page;
+            this.stage = stage;
+            this.stageVersion = stageVersion;
+            this.state = state;
+            this.checksum = checksum;
+        }
+
+        private static boolean hasSeparator(String value) {
+            return value.indexOf('\t') >= 0 || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        }
+
+        public String getPage() {
+            return page;
+        }
+
+        public String getStage() {
+            return stage;
+        }
+
+        public int getStageVersion() {
+            return stageVersion;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public String getChecksum() {
+            return checksum;
+        }
+
+        // page, stage, stage version, state, checksum and the checksum of the line
+        private String toLine() {
+            final String fields = page + '\t' + stage + '\t' + stageVersion + '\t' + state + '\t' + checksum;
+            return fields + '\t' + lineChecksum(fields) + '\n';
+        }
+
+        private static Entry parse(String line) {
+            final int last = line.lastIndexOf('\t');
+            if (last < 0) {
+                return null;
+            }
+            final String fields = line.substring(0, last);
+            if (!lineChecksum(fields).equals(line.substring(last + 1))) {
+                return null;
+            }
+            final String[] values = fields.split("\t", -1);
+            if (values.length != 5) {
+                return null;
+            }
+            try {
+                return new Entry(values[0], values[1], Integer.parseInt(values[2]), State.valueOf(values[3]), values[4]);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        private static String lineChecksum(String fields) {
+            final CRC32C crc = new CRC32C();
+            crc.update(fields.getBytes(StandardCharsets.UTF_8));
+            return Long.toHexString(crc.getValue());
+        }
+    }
+}
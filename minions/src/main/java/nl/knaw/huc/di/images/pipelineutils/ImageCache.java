@@ -0,0 +1,306 @@
+package nl.knaw.huc.di.images.pipelineutils;
+
+import com.drew.imaging.ImageMetadataReader;
+import com.drew.imaging.ImageProcessingException;
+import com.drew.metadata.MetadataException;
+import com.drew.metadata.exif.ExifIFD0Directory;
+import org.opencv.core.Mat;
+import org.opencv.core.Range;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Decodes the images of the pages once for the stages that need them. The decoded images are kept in a least recently
+ * used cache of a maximum size, keyed by the file, its modification time and the way it was decoded, so a file that
+ * is replaced is decoded again.
+ * <p>
+ * The stages get a view of the cached image, a Mat that shares the pixels of the cached one. A stage may release its
+ * view, but must not write to it: the other stages see the same pixels. Stages that change the image work on a copy.
+ * <p>
+ * A stage that only needs the size of an image reads it from the header with {@link #readSize(Path)}, a stage that
+ * works on a downscaled image asks for a reduced decode with {@link #getReduced(Path, boolean, int)}, which decodes
+ * a JPEG at a half, quarter or eighth of its size at a fraction of the cost.
+ * <p>
+ * An image that no stage will ask for again is removed with {@link #invalidate(Path)}, so the cache does not hold on
+ * to it until it is pushed out by other images.
+ */
+public class ImageCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ImageCache.class);
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, CachedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    /**
+     * @param maxBytes the number of bytes the decoded images together may take, 0 caches nothing
+     */
+    public ImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param flags the Imgcodecs.IMREAD_* flags
+     * @return a view of the decoded image, empty if the file could not be decoded, as Imgcodecs.imread
+     */
+    public Mat get(Path file, int flags) {
+        final Key key = new Key(file, flags);
+        final CachedImage cachedImage;
+        synchronized (this) {
+            cachedImage = images.computeIfAbsent(key, CachedImage::new);
+        }
+        // other files are decoded at the same time, the stages that want this file wait for the first one to decode it
+        final Mat view;
+        final boolean decoded;
+        synchronized (cachedImage) {
+            decoded = cachedImage.image == null;
+            if (decoded) {
+                cachedImage.image = Imgcodecs.imread(key.file.toString(), key.flags);
+            }
+            view = cachedImage.view();
+        }
+        if (decoded) {
+            synchronized (this) {
+                admit(cachedImage);
+            }
+        }
+        return view;
+    }
+
+    /**
+     * @param color  decode the colors or only the gray values
+     * @param factor 1, 2, 4 or 8, the image is decoded at 1 / factor of its width and height
+     */
+    public Mat getReduced(Path file, boolean color, int factor) {
+        return get(file, getReducedFlags(color, factor));
+    }
+
+    static int getReducedFlags(boolean color, int factor) {
+        switch (factor) {
+            case 1:
+                return color ? Imgcodecs.IMREAD_COLOR : Imgcodecs.IMREAD_GRAYSCALE;
+            case 2:
+                return color ? Imgcodecs.IMREAD_REDUCED_COLOR_2 : Imgcodecs.IMREAD_REDUCED_GRAYSCALE_2;
+            case 4:
+                return color ? Imgcodecs.IMREAD_REDUCED_COLOR_4 : Imgcodecs.IMREAD_REDUCED_GRAYSCALE_4;
+            case 8:
+                return color ? Imgcodecs.IMREAD_REDUCED_COLOR_8 : Imgcodecs.IMREAD_REDUCED_GRAYSCALE_8;
+            default:
+                throw new IllegalArgumentException("Images can be reduced by a factor of 2, 4 or 8, not " + factor);
+        }
+    }
+
+    // keeps the image if it fits and removes the least recently used images until everything fits
+    private void admit(CachedImage cachedImage) {
+        final long imageBytes = cachedImage.getBytes();
+        if (images.get(cachedImage.key) != cachedImage) {
+            // removed while it was decoded
+            release(cachedImage);
+            return;
+        }
+        if (imageBytes == 0 || imageBytes > maxBytes) {
+            // empty images are not worth keeping, an image larger than the cache would push out all others
+            images.remove(cachedImage.key);
+            release(cachedImage);
+            return;
+        }
+        cachedImage.counted = true;
+        bytes += imageBytes;
+        final Iterator<CachedImage> leastRecentlyUsed = images.values().iterator();
+        while (bytes > maxBytes && leastRecentlyUsed.hasNext()) {
+            final CachedImage eldest = leastRecentlyUsed.next();
+            if (!eldest.counted) {
+                // still decoding, it is admitted when it is done
+                continue;
+            }
+            leastRecentlyUsed.remove();
+            release(eldest);
+        }
+    }
+
+    private void release(CachedImage cachedImage) {
+        uncount(cachedImage);
+        releasePixels(cachedImage);
+    }
+
+    // only called with the lock of the cache
+    private void uncount(CachedImage cachedImage) {
+        if (cachedImage.counted) {
+            bytes -= cachedImage.getBytes();
+            cachedImage.counted = false;
+        }
+    }
+
+    // the views the stages hold keep the pixels until they are released as well
+    private static void releasePixels(CachedImage cachedImage) {
+        synchronized (cachedImage) {
+            if (cachedImage.image != null) {
+                cachedImage.image.release();
+                // a stage that waited for the image while it was removed decodes it again
+                cachedImage.image = null;
+            }
+        }
+    }
+
+    /**
+     * Releases the cached images of the file, decoded with any flags. The views the stages hold stay valid.
+     */
+    public void invalidate(Path file) {
+        final Path normalized = file.toAbsolutePath().normalize();
+        final List<CachedImage> removed = new ArrayList<>();
+        synchronized (this) {
+            final Iterator<CachedImage> cachedImages = images.values().iterator();
+            while (cachedImages.hasNext()) {
+                final CachedImage cachedImage = cachedImages.next();
+                if (cachedImage.key.file.equals(normalized)) {
+                    cachedImages.remove();
+                    uncount(cachedImage);
+                    removed.add(cachedImage);
+                }
+            }
+        }
+        releaseAll(removed);
+    }
+
+    // an image that is still decoding is waited for without the lock of the cache, so other lookups go on
+    private static void releaseAll(List<CachedImage> removed) {
+        for (CachedImage cachedImage : removed) {
+            releasePixels(cachedImage);
+        }
+    }
+
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return images.size();
+    }
+
+    /**
+     * Releases all cached images.
+     */
+    public void clear() {
+        final List<CachedImage> removed;
+        synchronized (this) {
+            removed = new ArrayList<>(images.values());
+            removed.forEach(this::uncount);
+            images.clear();
+        }
+        releaseAll(removed);
+    }
+
+    /**
+     * Reads the width and height of the image from the header of the file, without decoding it. The size is the size
+     * Imgcodecs.imread returns, with the EXIF orientation applied. Formats ImageIO cannot read are decoded.
+     */
+    public static Size readSize(Path file) throws IOException {
+        Size size = null;
+        try (ImageInputStream inputStream = ImageIO.createImageInputStream(file.toFile())) {
+            final Iterator<ImageReader> readers = inputStream != null ? ImageIO.getImageReaders(inputStream) : null;
+            if (readers != null && readers.hasNext()) {
+                final ImageReader reader = readers.next();
+                try {
+                    reader.setInput(inputStream, true, true);
+                    size = new Size(reader.getWidth(0), reader.getHeight(0));
+                } finally {
+                    reader.dispose();
+                }
+            }
+        }
+        if (size == null) {
+            LOG.debug("no reader for the header of {}, decoding it", file);
+            final Mat image = Imgcodecs.imread(file.toAbsolutePath().toString(), Imgcodecs.IMREAD_UNCHANGED);
+            size = image.size();
+            image.release();
+            return size;
+        }
+        return isRotated(file) ? new Size(size.height, size.width) : size;
+    }
+
+    // EXIF orientations 5 to 8 turn the image a quarter, imread swaps the width and height
+    private static boolean isRotated(Path file) {
+        try {
+            final ExifIFD0Directory exif = ImageMetadataReader.readMetadata(file.toFile())
+                    .getFirstDirectoryOfType(ExifIFD0Directory.class);
+            return exif != null && exif.containsTag(ExifIFD0Directory.TAG_ORIENTATION)
+                    && exif.getInt(ExifIFD0Directory.TAG_ORIENTATION) >= 5;
+        } catch (ImageProcessingException | MetadataException | IOException e) {
+            LOG.debug("could not read the orientation of {}", file, e);
+            return false;
+        }
+    }
+
+    private static class Key {
+        private final Path file;
+        private final long lastModified;
+        private final int flags;
+
+        private Key(Path file, int flags) {
+            this.file = file.toAbsolutePath().normalize();
+            this.lastModified = getLastModified(this.file);
+            this.flags = flags;
+        }
+
+        // a file that cannot be read decodes to an empty image, which is not cached
+        private static long getLastModified(Path file) {
+            try {
+                return Files.getLastModifiedTime(file).toMillis();
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            final Key key = (Key) other;
+            return lastModified == key.lastModified && flags == key.flags && file.equals(key.file);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(file, lastModified, flags);
+        }
+    }
+
+    private static class CachedImage {
+        private final Key key;
+        private Mat image;
+        // whether the bytes of the image are counted in the bytes of the cache
+        private boolean counted;
+
+        private CachedImage(Key key) {
+            this.key = key;
+        }
+
+        private Mat view() {
+            if (image.empty()) {
+                return new Mat();
+            }
+            return image.submat(Range.all(), Range.all());
+        }
+
+        private long getBytes() {
+            return image.empty() ? 0 : image.total() * image.elemSize();
+        }
+    }
+}
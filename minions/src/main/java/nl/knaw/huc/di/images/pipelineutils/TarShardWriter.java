@@ -0,0 +1,247 @@
+package nl.knaw.huc.di.images.pipelineutils;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Writes files to tar shards of a maximum size instead of to a directory, so a corpus of millions of small files
+ * becomes a few thousand archives. The files of a page are written next to each other and never split over two
+ * shards, files with the same name up to the extension (a snippet and its .txt, .box and .conf) stay together, as
+ * WebDataset expects.
+ * <p>
+ * A shard is written as a hidden temporary file and gets its name, prefix-000000.tar, when it is full or when the
+ * writer is closed. The index of the shard, prefix-000000.idx, has a line with the name, the offset of the data and
+ * the size for every file and is in place before the shard is. A shard that was not finished because the run crashed
+ * is removed when a writer with the same prefix is created, the callbacks of its pages have not run.
+ * <p>
+ * A writer can be used by the threads of one process. It locks its prefix in the directory with a hidden lock file,
+ * so a second writer with the same prefix, in this process or another, is refused instead of removing the unfinished
+ * shard of the first and reusing its numbers. Processes that write to the same directory use a prefix of their own.
+ */
+public class TarShardWriter implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(TarShardWriter.class);
+    // write every tar record directly, so the position in the file is known after every file
+    private static final int BLOCK_SIZE = 512;
+
+    private final Path directory;
+    private final String prefix;
+    private final long maxShardBytes;
+    private final FileChannel lockChannel;
+    private final List<String> indexLines = new ArrayList<>();
+    private final List<Runnable> onCommit = new ArrayList<>();
+    private int shardNumber;
+    private FileChannel channel;
+    private TarArchiveOutputStream tar;
+    private boolean closed;
+
+    public TarShardWriter(Path directory, String prefix, long maxShardBytes) throws IOException {
+        this.directory = directory;
+        this.prefix = prefix;
+        this.maxShardBytes = maxShardBytes;
+        Files.createDirectories(directory);
+        this.lockChannel = lock();
+        try {
+            this.shardNumber = findNextShardNumber();
+        } catch (IOException e) {
+            lockChannel.close();
+            throw e;
+        }
+    }
+
+    // the lock is released when the channel is closed, also when the process ends without closing the writer
+    private FileChannel lock() throws IOException {
+        final FileChannel channel = FileChannel.open(directory.resolve("." + prefix + ".lock"),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock lock = null;
+        try {
+            lock = channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // locked by another writer in this process
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        if (lock == null) {
+            channel.close();
+            throw new IOException("Shards with prefix " + prefix + " are already written in " + directory
+                    + ", use another prefix");
+        }
+        return channel;
+    }
+
+    // removes the unfinished shards and returns the number after the last finished one
+    private int findNextShardNumber() throws IOException {
+        final Pattern shardPattern = Pattern.compile(Pattern.quote(prefix) + "-(\\d+)\\.tar");
+        // only the unfinished shards and indexes of this prefix, not of a prefix that starts with it
+        final Pattern unfinishedPattern = Pattern.compile("\\." + Pattern.quote(prefix) + "-\\d+\\.(tar|idx)\\.tmp");
+        int next = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                final String fileName = file.getFileName().toString();
+                final Matcher matcher = shardPattern.matcher(fileName);
+                if (matcher.matches()) {
+                    next = Math.max(next, Integer.parseInt(matcher.group(1)) + 1);
+                } else if (unfinishedPattern.matcher(fileName).matches()) {
+                    LOG.warn("removing unfinished shard {}", file);
+                    Files.delete(file);
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Writes the files of a page to the current shard, or to a new one if the current one would grow beyond the
+     * maximum size. A page larger than the maximum size gets a shard of its own.
+     *
+     * @param onCommit runs when the shard with the page is finished, for example to record that the page is done
+     * @throws IOException when a file of the page could not be written. The shard is then discarded, with the pages
+     *                     that were written to it before, their callbacks do not run. The next page starts a new shard.
+     */
+    public synchronized void write(List<Entry> entries, Runnable onCommit) throws IOException {
+        if (closed) {
+            throw new IllegalStateException("Shard writer is closed");
+        }
+        long pageBytes = 0;
+        for (Entry entry : entries) {
+            pageBytes += 2L * BLOCK_SIZE + entry.data.length;
+        }
+        if (tar != null && tar.getBytesWritten() > 0 && tar.getBytesWritten() + pageBytes > maxShardBytes) {
+            commit();
+        }
+        if (tar == null) {
+            startShard();
+        }
+        try {
+            for (Entry entry : entries) {
+                final TarArchiveEntry tarEntry = new TarArchiveEntry(entry.name);
+                tarEntry.setSize(entry.data.length);
+                tar.putArchiveEntry(tarEntry);
+                final long offset = tar.getBytesWritten();
+                tar.write(entry.data);
+                tar.closeArchiveEntry();
+                indexLines.add(entry.name + '\t' + offset + '\t' + entry.data.length);
+            }
+        } catch (IOException | RuntimeException e) {
+            discardShard();
+            throw e;
+        }
+        this.onCommit.add(onCommit);
+    }
+
+    // a partly written page would corrupt the shard for the pages after it, the tar stream cannot be rolled back
+    private void discardShard() {
+        LOG.warn("discarding shard {} after a failed write, {} earlier pages in it are not committed",
+                getTemporaryFile(), onCommit.size());
+        final FileChannel failedChannel = channel;
+        tar = null;
+        channel = null;
+        indexLines.clear();
+        onCommit.clear();
+        try {
+            failedChannel.close();
+            Files.deleteIfExists(getTemporaryFile());
+        } catch (IOException e) {
+            // the next writer with this prefix removes it
+            LOG.error("could not remove shard {}", getTemporaryFile(), e);
+            shardNumber++;
+        }
+    }
+
+    private void startShard() throws IOException {
+        channel = FileChannel.open(getTemporaryFile(), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        tar = new TarArchiveOutputStream(Channels.newOutputStream(channel), BLOCK_SIZE, StandardCharsets.UTF_8.name());
+        tar.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+        tar.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+    }
+
+    private void commit() throws IOException {
+        tar.finish();
+        channel.force(true);
+        tar.close();
+        tar = null;
+        channel = null;
+
+        final Path index = getShardFile(".idx");
+        final Path temporaryIndex = directory.resolve("." + index.getFileName() + ".tmp");
+        try (BufferedWriter writer = Files.newBufferedWriter(temporaryIndex, StandardCharsets.UTF_8)) {
+            for (String line : indexLines) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        Files.move(temporaryIndex, index, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        Files.move(getTemporaryFile(), getShardFile(".tar"), StandardCopyOption.ATOMIC_MOVE);
+        LOG.debug("finished shard {} with {} files", getShardFile(".tar"), indexLines.size());
+
+        indexLines.clear();
+        shardNumber++;
+        for (Runnable runnable : onCommit) {
+            runnable.run();
+        }
+        onCommit.clear();
+    }
+
+    private Path getShardFile(String extension) {
+        return directory.resolve(String.format(Locale.ROOT, "%s-%06d%s", prefix, shardNumber, extension));
+    }
+
+    private Path getTemporaryFile() {
+        return directory.resolve("." + getShardFile(".tar").getFileName() + ".tmp");
+    }
+
+    /**
+     * Finishes the current shard.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (tar != null) {
+                commit();
+            }
+        } finally {
+            lockChannel.close();
+        }
+    }
+
+    public static class Entry {
+        private final String name;
+        private final byte[] data;
+
+        /**
+         * @param name the path of the file in the shard
+         */
+        public Entry(String name, byte[] data) {
+            this.name = name;
+            this.data = data;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
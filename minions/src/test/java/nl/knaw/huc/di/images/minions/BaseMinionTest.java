@@ -0,0 +1,44 @@
+package nl.knaw.huc.di.images.minions;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class BaseMinionTest {
+
+    @Test
+    public void boundedExecutorMakesTheSubmitterWaitWhenTheQueueIsFull() throws Exception {
+        final ExecutorService executor = BaseMinion.newBoundedExecutor(1, 1);
+        final CountDownLatch blocker = new CountDownLatch(1);
+        final AtomicInteger done = new AtomicInteger();
+        final Runnable task = () -> {
+            try {
+                blocker.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.incrementAndGet();
+        };
+        // one task running, one task waiting in the queue
+        executor.execute(task);
+        executor.execute(task);
+
+        final Thread submitter = new Thread(() -> executor.execute(task));
+        submitter.start();
+        submitter.join(200);
+        assertThat(submitter.isAlive(), is(true));
+
+        blocker.countDown();
+        submitter.join(10_000);
+        executor.shutdown();
+
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+        assertThat(done.get(), is(3));
+    }
+}
@@ -1,14 +1,24 @@
 package nl.knaw.huc.di.images.minions;
 
 
+import nl.knaw.huc.di.images.imageanalysiscommon.StringConverter;
+import nl.knaw.huc.di.images.layoutanalyzer.layoutlib.LayoutProc;
 import nl.knaw.huc.di.images.layoutds.models.Page.Baseline;
 import nl.knaw.huc.di.images.layoutds.models.Page.TextLine;
 import org.junit.jupiter.api.Test;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
 import org.opencv.core.Size;
+import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.*;
@@ -83,8 +93,100 @@ class BaselinesMapperTest {
 
         assertThat(newLinesToOldLinesMap.entrySet(), is(empty()));
     }
+    @Test
+    public void mappingIsTheSameAsWithWholePageImages() {
+        final Random random = new Random(7);
+        for (int page = 0; page < 5; page++) {
+            final Size size = new Size(1500 + random.nextInt(1000), 2000 + random.nextInt(1000));
+            final List<TextLine> oldLines = createLines(random, "old", 60, size);
+            final List<TextLine> newLines = moveLines(random, oldLines, size);
+
+            final Map<String, String> expected = mapWithWholePageImages(newLines, oldLines, size);
+            assertThat(expected.isEmpty(), is(false));
+            assertThat("page " + page, BaselinesMapper.mapNewLinesToOldLines(newLines, oldLines, size), is(expected));
+        }
+    }
 
+    // lines in columns, some partly outside the page and some with fractional coordinates
+    private List<TextLine> createLines(Random random, String prefix, int count, Size size) {
+        final List<TextLine> textLines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final double x = random.nextInt((int) size.width + 100) - 50 + (random.nextBoolean() ? 0.5 : 0);
+            final double y = random.nextInt((int) size.height + 100) - 50 + random.nextDouble();
+            final int length = 20 + random.nextInt(800);
+            textLines.add(createTextLineWithIdAndBaselineCoords(prefix + i,
+                    x + "," + y + " " + (x + length / 2.0) + "," + (y + random.nextInt(7) - 3) + " " + (x + length) + "," + (y + random.nextInt(21) - 10)));
+        }
+        return textLines;
+    }
 
+    // moves, shortens or replaces the lines, so some new lines match an old line and some do not
+    private List<TextLine> moveLines(Random random, List<TextLine> oldLines, Size size) {
+        final List<TextLine> newLines = new ArrayList<>();
+        for (int i = 0; i < oldLines.size(); i++) {
+            final String points = oldLines.get(i).getBaseline().getPoints();
+            switch (random.nextInt(4)) {
+                case 0:
+                    newLines.add(createTextLineWithIdAndBaselineCoords("new" + i, points));
+                    break;
+                case 1:
+                    final int dx = random.nextInt(41) - 20;
+                    final int dy = random.nextInt(9) - 4;
+                    final StringBuilder moved = new StringBuilder();
+                    for (String point : points.split(" ")) {
+                        final String[] xy = point.split(",");
+                        moved.append(Double.parseDouble(xy[0]) + dx).append(',').append(Double.parseDouble(xy[1]) + dy).append(' ');
+                    }
+                    newLines.add(createTextLineWithIdAndBaselineCoords("new" + i, moved.toString().trim()));
+                    break;
+                case 2:
+                    final String[] splitted = points.split(" ");
+                    newLines.add(createTextLineWithIdAndBaselineCoords("new" + i, splitted[0] + " " + splitted[1]));
+                    break;
+                default:
+                    newLines.addAll(createLines(random, "new" + i + "-", 1, size));
+            }
+        }
+        return newLines;
+    }
+
+    // the mapping as it was done before the lines were rasterized into masks of their own
+    private static Map<String, String> mapWithWholePageImages(List<TextLine> newTextLines, List<TextLine> oldTextLines, Size size) {
+        final Map<String, List<String>> possibleNewOldMappings = new HashMap<>();
+        final Map<String, List<String>> possibleOldNewMappings = new HashMap<>();
+        final Size scaledSize = new Size(size.width * BaselinesMapper.SCALE, size.height * BaselinesMapper.SCALE);
+        for (TextLine newTextLine : newTextLines) {
+            final Mat newLineImage = Mat.zeros(scaledSize, CvType.CV_8UC1);
+            writeBaseLineToMat(newLineImage, newTextLine.getBaseline(), BaselinesMapper.SCALE);
+            for (TextLine oldTextLine : oldTextLines) {
+                final Mat oldLineImage = Mat.zeros(scaledSize, CvType.CV_8UC1);
+                writeBaseLineToMat(oldLineImage, oldTextLine.getBaseline(), BaselinesMapper.SCALE);
+                if (LayoutProc.intersectOverUnion(newLineImage, oldLineImage) > BaselinesMapper.MIN_LIMIT_ACCEPT) {
+                    possibleNewOldMappings.computeIfAbsent(newTextLine.getId(), key -> new ArrayList<>()).add(oldTextLine.getId());
+                    possibleOldNewMappings.computeIfAbsent(oldTextLine.getId(), key -> new ArrayList<>()).add(newTextLine.getId());
+                }
+                oldLineImage.release();
+            }
+            newLineImage.release();
+        }
+        return possibleNewOldMappings.entrySet().stream()
+                .filter(entry -> entry.getValue().size() == 1)
+                .map(entry -> Map.entry(entry.getKey(), entry.getValue().get(0)))
+                .filter(entry -> possibleOldNewMappings.get(entry.getValue()).size() == 1)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+
+    private static void writeBaseLineToMat(Mat image, Baseline baseline, float scale) {
+        Point beginPoint = null;
+        final int thickness = Math.max((int) (10 * scale), 1);
+        for (Point point : StringConverter.stringToPoint(baseline.getPoints())) {
+            final Point endPoint = new Point(point.x * scale, point.y * scale);
+            if (beginPoint != null) {
+                Imgproc.line(image, beginPoint, endPoint, new Scalar(255), thickness);
+            }
+            beginPoint = endPoint;
+        }
+    }
 
     private TextLine createTextLineWithIdAndBaselineCoords(String id, String points) {
         final TextLine textLine = new TextLine();
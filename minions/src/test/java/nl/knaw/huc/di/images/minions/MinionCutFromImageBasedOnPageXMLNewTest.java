@@ -1,11 +1,42 @@
 package nl.knaw.huc.di.images.minions;
 
 
+import nl.knaw.huc.di.images.layoutds.models.Page.*;
+import nl.knaw.huc.di.images.pipelineutils.CheckpointManifest;
+import nl.knaw.huc.di.images.pipelineutils.TarShardWriter;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
 import org.junit.Assert;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opencv.core.Core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class MinionCutFromImageBasedOnPageXMLNewTest {
 
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    @TempDir
+    Path directory;
+
 //    @Test
 //    public void hasImageExtensionTest() {
 //        boolean result = MinionCutFromImageBasedOnPageXMLNew.hasImageExtension("test.jpg");
@@ -13,4 +44,103 @@ class MinionCutFromImageBasedOnPageXMLNewTest {
 //        result = MinionCutFromImageBasedOnPageXMLNew.hasImageExtension("/test/test.xml");
 //        Assert.assertEquals(false, result);
 //    }
-}
\ No newline at end of file
+
+    @Test
+    void linePoolWritesTheSameSnippetsInTheSameOrder() throws Exception {
+        final Map<String, byte[]> oneByOne = cutToShard(directory.resolve("sequential"), null);
+        final ForkJoinPool linePool = new ForkJoinPool(4);
+        final Map<String, byte[]> parallel;
+        try {
+            parallel = cutToShard(directory.resolve("parallel"), linePool);
+        } finally {
+            linePool.shutdown();
+        }
+
+        assertThat(oneByOne.size(), is(SyntheticPage.LINES));
+        assertThat(new ArrayList<>(parallel.keySet()), is(new ArrayList<>(oneByOne.keySet())));
+        for (Map.Entry<String, byte[]> snippet : oneByOne.entrySet()) {
+            Assert.assertArrayEquals(snippet.getKey(), snippet.getValue(), parallel.get(snippet.getKey()));
+        }
+    }
+
+    @Test
+    void manifestRecordsTheWrittenFilesOfADonePageAndAFailedPage() throws Exception {
+        final Path outputBase = Files.createDirectories(directory.resolve("output"));
+        try (CheckpointManifest manifest = CheckpointManifest.open(outputBase)) {
+            final MinionCutFromImageBasedOnPageXMLNew done = createMinion("page", outputBase,
+                    SyntheticPage::createPage);
+            done.setManifest(manifest);
+            done.run();
+            final MinionCutFromImageBasedOnPageXMLNew failed = createMinion("broken", outputBase, () -> {
+                throw new IllegalStateException("unreadable page");
+            });
+            failed.setManifest(manifest);
+            assertThrows(IllegalStateException.class, failed::run);
+
+            final long bytes;
+            try (Stream<Path> files = Files.list(outputBase.resolve("page"))) {
+                bytes = files.mapToLong(file -> file.toFile().length()).sum();
+            }
+            final String stage = MinionCutFromImageBasedOnPageXMLNew.MANIFEST_STAGE;
+            final CheckpointManifest.Entry doneEntry = manifest.get("page", stage).orElseThrow();
+            assertThat(doneEntry.getState(), is(CheckpointManifest.State.DONE));
+            assertThat(doneEntry.getChecksum(), is("8 files " + bytes + " bytes"));
+            assertThat(manifest.get("broken", stage).orElseThrow().getState(), is(CheckpointManifest.State.FAILED));
+        }
+    }
+
+    @Test
+    void pageThatIsMissingFailsWithoutThrowing() throws Exception {
+        final Path outputBase = Files.createDirectories(directory.resolve("output"));
+        final MinionCutFromImageBasedOnPageXMLNew done = createMinion("page", outputBase,
+                SyntheticPage::createPage);
+        final MinionCutFromImageBasedOnPageXMLNew missing = createMinion("missing", outputBase, () -> null);
+
+        done.run();
+        missing.run();
+
+        assertThat(done.isFailed(), is(false));
+        assertThat(missing.isFailed(), is(true));
+    }
+
+    @Test
+    void lineThreadsBelowOneAreRejected() throws Exception {
+        final CommandLine commandLine = new DefaultParser().parse(MinionCutFromImageBasedOnPageXMLNew.getOptions(),
+                new String[]{"-input_path", "in", "-outputbase", "out", "-line_threads", "0"});
+
+        assertThrows(IllegalArgumentException.class,
+                () -> MinionCutFromImageBasedOnPageXMLNew.Settings.fromCommandLine(commandLine));
+    }
+
+    private static Map<String, byte[]> cutToShard(Path outputBase, ForkJoinPool linePool) throws IOException {
+        Files.createDirectories(outputBase);
+        final MinionCutFromImageBasedOnPageXMLNew minion = createMinion("page", outputBase,
+                SyntheticPage::createPage);
+        try (TarShardWriter shardWriter = new TarShardWriter(outputBase, "snippets", 1024 * 1024)) {
+            minion.setShardWriter(shardWriter);
+            minion.setLinePool(linePool);
+            minion.run();
+        }
+
+        final Map<String, byte[]> snippets = new LinkedHashMap<>();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(Files.newInputStream(outputBase.resolve("snippets-000000.tar")))) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                snippets.put(entry.getName(), tar.readAllBytes());
+            }
+        }
+        return snippets;
+    }
+
+    private static MinionCutFromImageBasedOnPageXMLNew createMinion(String identifier, Path outputBase,
+                                                                    Supplier<PcGts> pageSupplier) {
+        return new MinionCutFromImageBasedOnPageXMLNew(identifier,
+                SyntheticPage::createImage, pageSupplier,
+                outputBase.toString(), identifier + ".png", false, 5, 5, 0, "png", 3, false, null, false, false, false,
+                false, null, 10, false, true, true, error -> {
+        }, page -> {
+        }, () -> {
+        }, false, false, false, null, 35, MinionCutFromImageBasedOnPageXMLNew.DEFAULT_PNG_COMPRESSION_LEVEL,
+                Optional.empty());
+    }
+}
@@ -1,16 +1,27 @@
 package nl.knaw.huc.di.images.minions;
 
+import com.google.common.base.Stopwatch;
+import nl.knaw.huc.di.images.layoutanalyzer.layoutlib.LayoutProc;
 import nl.knaw.huc.di.images.layoutds.models.Page.*;
 import org.apache.poi.ss.formula.functions.T;
 import org.junit.Assert;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.opencv.core.*;
+import org.opencv.core.Point;
+import org.opencv.imgproc.Imgproc;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 
 class MinionExtractBaselinesTest {
 
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
     @Test
     public void mergeTextLinesTest() {
         PcGts page = new PcGts();
@@ -82,4 +93,113 @@ class MinionExtractBaselinesTest {
         Assert.assertEquals(page.getPage().getTextRegions().size(), 2);
     }
 
-}
\ No newline at end of file
+    @Test
+    public void extractBaselineIsEqualToPerPixelExtraction() {
+        final Mat labeled = new Mat();
+        final Mat stats = new Mat();
+        final int numLabels = createLabeledBaselines(labeled, stats);
+
+        for (int label = 1; label < numLabels; label++) {
+            final Rect rect = getRect(stats, label);
+            final Mat submat = labeled.submat(rect);
+            final Point offset = new Point(rect.x, rect.y);
+
+            final List<Point> expected = extractBaselinePerPixel(submat, label, offset, 3);
+            final List<Point> actual = LayoutProc.extractBaseline(submat, label, offset, 3, "test");
+
+            Assert.assertEquals(expected, actual);
+        }
+        labeled.release();
+        stats.release();
+    }
+
+    // prints the times instead of checking them, run with -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    public void extractBaselineBenchmark() {
+        final Mat labeled = new Mat();
+        final Mat stats = new Mat();
+        final int numLabels = createLabeledBaselines(labeled, stats);
+
+        final Stopwatch perPixel = Stopwatch.createStarted();
+        for (int label = 1; label < numLabels; label++) {
+            final Rect rect = getRect(stats, label);
+            extractBaselinePerPixel(labeled.submat(rect), label, new Point(rect.x, rect.y), 3);
+        }
+        perPixel.stop();
+
+        final Stopwatch bulk = Stopwatch.createStarted();
+        for (int label = 1; label < numLabels; label++) {
+            final Rect rect = getRect(stats, label);
+            LayoutProc.extractBaseline(labeled.submat(rect), label, new Point(rect.x, rect.y), 3, "test");
+        }
+        bulk.stop();
+
+        System.out.println("extractBaseline for " + (numLabels - 1) + " lines, per pixel: " + perPixel
+                + ", bulk copy: " + bulk + ", speedup: "
+                + ((double) perPixel.elapsed(TimeUnit.MICROSECONDS) / Math.max(1, bulk.elapsed(TimeUnit.MICROSECONDS))));
+        labeled.release();
+        stats.release();
+    }
+
+    private static int createLabeledBaselines(Mat labeled, Mat stats) {
+        final Mat baselines = Mat.zeros(new Size(4000, 3000), CvType.CV_8UC1);
+        for (int y = 50; y < 2900; y += 35) {
+            final int thickness = 3 + (y % 4);
+            Imgproc.line(baselines, new Point(100 + (y % 200), y), new Point(3800 - (y % 300), y + (y % 40) - 20),
+                    new Scalar(255), thickness);
+        }
+        // a vertically connected pair of lines to trigger the merged line detection
+        Imgproc.line(baselines, new Point(200, 2950), new Point(1200, 2950), new Scalar(255), 3);
+        Imgproc.line(baselines, new Point(200, 2960), new Point(1200, 2960), new Scalar(255), 3);
+        Imgproc.line(baselines, new Point(1200, 2950), new Point(1200, 2960), new Scalar(255), 3);
+
+        final Mat centroids = new Mat();
+        final int numLabels = Imgproc.connectedComponentsWithStats(baselines, labeled, stats, centroids, 8, CvType.CV_32S);
+        centroids.release();
+        baselines.release();
+        return numLabels;
+    }
+
+    private static Rect getRect(Mat stats, int label) {
+        return new Rect((int) stats.get(label, Imgproc.CC_STAT_LEFT)[0],
+                (int) stats.get(label, Imgproc.CC_STAT_TOP)[0],
+                (int) stats.get(label, Imgproc.CC_STAT_WIDTH)[0],
+                (int) stats.get(label, Imgproc.CC_STAT_HEIGHT)[0]);
+    }
+
+    // reference implementation, reading the pixels one by one
+    private static List<Point> extractBaselinePerPixel(Mat baselineMat, int label, Point offset, int minimumHeight) {
+        List<Point> baseline = new ArrayList<>();
+        Point point = null;
+        int pixelCounter = -1;
+        for (int i = 0; i < baselineMat.width(); i++) {
+            double sum = 0;
+            int counter = 0;
+            for (int j = 0; j < baselineMat.height(); j++) {
+                int pixelValue = (int) baselineMat.get(j, i)[0];
+                if (pixelValue == label) {
+                    sum += j;
+                    counter++;
+                }
+            }
+            if (counter < minimumHeight) {
+                continue;
+            }
+            pixelCounter++;
+            if (counter > 1) {
+                sum /= counter;
+            }
+
+            point = new Point(i + offset.x, sum + offset.y);
+            if (pixelCounter % 50 == 0) {
+                baseline.add(point);
+            }
+        }
+        if (pixelCounter % 50 != 0) {
+            baseline.add(point);
+        }
+        return baseline;
+    }
+
+}
@@ -1,15 +1,39 @@
 package nl.knaw.huc.di.images.minions;
 
+import com.google.common.base.Stopwatch;
+import nl.knaw.huc.di.images.layoutds.models.HTRConfig;
+import nl.knaw.huc.di.images.layoutds.models.Page.Page;
+import nl.knaw.huc.di.images.layoutds.models.Page.PcGts;
 import nl.knaw.huc.di.images.layoutds.models.Page.TextEquiv;
 import nl.knaw.huc.di.images.layoutds.models.Page.TextLine;
 import nl.knaw.huc.di.images.layoutds.models.Page.TextLineCustom;
+import nl.knaw.huc.di.images.layoutds.models.Page.TextRegion;
 import nl.knaw.huc.di.images.pagexmlutils.GroundTruthTextLineFormatter;
 import nl.knaw.huc.di.images.pagexmlutils.StyledString;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import static nl.knaw.huc.di.images.pagexmlutils.StyledString.fromStringWithStyleCharacters;
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class MinionLoghiHTRMergePageXMLTest {
 
@@ -215,4 +239,142 @@ class MinionLoghiHTRMergePageXMLTest {
         styledString.getStyles().forEach(style -> textLineCustom.addCustomTextStyle(style.getStyles(), style.getOffset(), style.getLength()));
         assertThat(textLineCustom.toString(),is("textStyle {offset:10; length:7;underlined:true;strikethrough:true;}"));
     }
+
+    @Test
+    public void partitionedResultsGiveTheSameValuesAsAllResults(@TempDir Path directory) throws Exception {
+        final Set<String> pageFileNames = new HashSet<>(Arrays.asList("page-1", "page-1-a", "page-2", "other"));
+        final List<String> lines = Arrays.asList(
+                "/data/page-1-line_1.png\t0.9\tfirst line",
+                "/data/page-1-a-line_1.png\t0.8\thyphenated page",
+                "/data/page-2-line_1.png\t{'model': 'x'}\t0.7\tline with metadata",
+                "/data/page-1-line_1.png\t0.6\tlast result wins",
+                "/data/unknown-line_1.png\t0.5\tno page",
+                "/data/other-line_1.png\t0.4\t"
+        );
+        final Path resultsFile = directory.resolve("results.txt");
+        Files.write(resultsFile, lines, StandardCharsets.UTF_8);
+
+        final Map<String, String> allText = new HashMap<>();
+        final Map<String, String> allMetadata = new HashMap<>();
+        final Map<String, Double> allConfidence = new HashMap<>();
+        MinionLoghiHTRMergePageXML.fillDictionary(resultsFile.toString(), allText, allMetadata, allConfidence);
+
+        final int partitions = 3;
+        final List<Path> partitionFiles = MinionLoghiHTRMergePageXML.partitionResults(resultsFile.toString(),
+                pageFileNames, partitions, Files.createDirectories(directory.resolve("all")),
+                MinionLoghiHTRMergePageXML.MAX_OPEN_PARTITION_WRITERS);
+        assertThat(partitionFiles.size(), is(partitions));
+        // with fewer open writers than partitions, the partitions are written in more passes
+        final List<Path> partitionFilesInPasses = MinionLoghiHTRMergePageXML.partitionResults(resultsFile.toString(),
+                pageFileNames, partitions, Files.createDirectories(directory.resolve("passes")), 2);
+        for (int partition = 0; partition < partitions; partition++) {
+            assertThat(Files.readAllLines(partitionFilesInPasses.get(partition)),
+                    is(Files.readAllLines(partitionFiles.get(partition))));
+        }
+
+        for (String pageFileName : pageFileNames) {
+            final Path partitionFile = partitionFiles.get(MinionLoghiHTRMergePageXML.getPartition(pageFileName, partitions));
+            final Map<String, String> text = new HashMap<>();
+            final Map<String, String> metadata = new HashMap<>();
+            final Map<String, Double> confidence = new HashMap<>();
+            MinionLoghiHTRMergePageXML.fillDictionary(partitionFile.toString(), text, metadata, confidence);
+
+            final String key = pageFileName + "-line_1";
+            assertThat(text.get(key), is(allText.get(key)));
+            assertThat(metadata.get(key), is(allMetadata.get(key)));
+            assertThat(confidence.get(key), is(allConfidence.get(key)));
+        }
+        assertThat(allText.get("page-1-line_1"), is("last result wins"));
+
+        // results of pages that are not merged are not written to any partition
+        for (Path partitionFile : partitionFiles) {
+            final Map<String, String> text = new HashMap<>();
+            MinionLoghiHTRMergePageXML.fillDictionary(partitionFile.toString(), text, new HashMap<>(), new HashMap<>());
+            assertThat(text.get("unknown-line_1"), is(nullValue()));
+        }
+    }
+
+    @Test
+    public void partitionsBelowOneAreRejected() throws Exception {
+        final CommandLine commandLine = new DefaultParser().parse(MinionLoghiHTRMergePageXML.getOptions(),
+                new String[]{"-input_path", "page", "-results_file", "results.txt", "-partitions", "0"});
+
+        assertThrows(IllegalArgumentException.class, () -> MinionLoghiHTRMergePageXML.getPartitions(commandLine));
+    }
+
+    @Test
+    public void mergedLinesAreTheSameAsWithFullStyleParsing() {
+        final String[] texts = {"Dit is een test", "I am <s>strikethrough</s> text", "a <u>b</u> <sup>c</sup> d",
+                "Dit is een " + StyledString.UNDERLINECHAR + "t" + StyledString.UNDERLINECHAR + "e", "x < y", ""};
+        final Map<String, String> text = new HashMap<>();
+        final Map<String, Double> confidence = new HashMap<>();
+        final PcGts page = createPage(texts.length);
+        for (int i = 0; i < texts.length; i++) {
+            text.put("page-line_" + i, texts[i]);
+            confidence.put("page-line_" + i, 0.5);
+        }
+
+        merge(page, text, confidence);
+
+        final List<TextLine> textLines = page.getPage().getTextRegions().get(0).getTextLines();
+        for (int i = 0; i < texts.length; i++) {
+            final TextLine expected = mergeWithFullStyleParsing(texts[i]);
+            assertThat(textLines.get(i).getTextEquiv().getUnicode(), is(expected.getTextEquiv().getUnicode()));
+            assertThat(textLines.get(i).getCustom(), is(expected.getCustom()));
+        }
+    }
+
+    // prints the times instead of checking them, run with -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    public void mergeBenchmark() {
+        final int lines = 20000;
+        final Map<String, String> text = new HashMap<>();
+        final Map<String, Double> confidence = new HashMap<>();
+        for (int i = 0; i < lines; i++) {
+            text.put("page-line_" + i, i % 10 == 0 ? "een <u>onderstreepte</u> regel " + i : "een gewone regel tekst " + i);
+            confidence.put("page-line_" + i, 0.9);
+        }
+        for (int run = 0; run < 3; run++) {
+            final PcGts page = createPage(lines);
+            final Stopwatch stopwatch = Stopwatch.createStarted();
+            merge(page, text, confidence);
+            stopwatch.stop();
+            System.out.println("merged " + lines + " lines in " + stopwatch + ", "
+                    + (lines * 1000L / Math.max(1, stopwatch.elapsed(TimeUnit.MILLISECONDS))) + " lines per second");
+        }
+    }
+
+    private static PcGts createPage(int lines) {
+        final PcGts page = new PcGts();
+        page.setPage(new Page());
+        final TextRegion textRegion = new TextRegion();
+        for (int i = 0; i < lines; i++) {
+            final TextLine textLine = new TextLine();
+            textLine.setId("line_" + i);
+            textRegion.getTextLines().add(textLine);
+        }
+        page.getPage().getTextRegions().add(textRegion);
+        return page;
+    }
+
+    private static void merge(PcGts page, Map<String, String> text, Map<String, Double> confidence) {
+        new MinionLoghiHTRMergePageXML("page", () -> page, new HTRConfig(), text, new HashMap<>(), confidence,
+                savedPage -> {
+                }, "page", null, null, Optional.empty()).run();
+    }
+
+    // the merge of a line as it was done before unstyled lines skipped the style parsing
+    private static TextLine mergeWithFullStyleParsing(String text) {
+        if (Pattern.compile("<u>|</u>|<s>|</s>|<sub>|</sub>|<sup>|</sup>").matcher(text).find()) {
+            text = StyledString.applyMarkersWithNestedTags(text);
+        }
+        final TextLineCustom textLineCustom = new TextLineCustom();
+        final StyledString styledString = fromStringWithStyleCharacters(text);
+        styledString.getStyles().forEach(style -> textLineCustom.addCustomTextStyle(style.getStyles(), style.getOffset(), style.getLength()));
+        final TextLine textLine = new TextLine();
+        textLine.setTextEquiv(new TextEquiv(0.5, styledString.getCleanText(), styledString.getCleanText()));
+        textLine.setCustom(textLineCustom.toString());
+        return textLine;
+    }
 }
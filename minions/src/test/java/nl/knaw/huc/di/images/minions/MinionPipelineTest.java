@@ -0,0 +1,181 @@
+package nl.knaw.huc.di.images.minions;
+
+import nl.knaw.huc.di.images.layoutds.models.Page.*;
+import nl.knaw.huc.di.images.pagexmlutils.PageUtils;
+import nl.knaw.huc.di.images.pipelineutils.ImageCache;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.DefaultParser;
+import org.apache.commons.cli.Options;
+import org.junit.Assert;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opencv.core.Core;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class MinionPipelineTest {
+
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void optionsAreTheOptionsOfTheStages() {
+        final Options options = MinionPipeline.getOptions();
+
+        assertThat(options.hasOption("split_baselines"), is(true));
+        assertThat(options.hasOption("png_compressionlevel"), is(true));
+        assertThat(options.hasOption("checkpoints"), is(true));
+        assertThat(options.hasOption("fsync"), is(true));
+        assertThat(options.getOption("results_file").isRequired(), is(false));
+        assertThat(options.getOption("outputbase").isRequired(), is(true));
+        assertThat(options.getOption("input_path_image").isRequired(), is(true));
+        // the pipeline finds the files itself
+        assertThat(options.hasOption("input_path"), is(false));
+        assertThat(options.hasOption("no_page_update"), is(false));
+    }
+
+    @Test
+    void unknownCheckpointsAreRejected() throws Exception {
+        final CommandLine known = parse(directory, directory, directory, directory, "-checkpoints", "extract, cut");
+        final CommandLine unknown = parse(directory, directory, directory, directory, "-checkpoints", "extract,merge");
+
+        assertThat(MinionPipeline.getCheckpoints(known), is(Set.of(MinionPipeline.CHECKPOINT_EXTRACT,
+                MinionPipeline.CHECKPOINT_CUT)));
+        assertThrows(IllegalArgumentException.class, () -> MinionPipeline.getCheckpoints(unknown));
+    }
+
+    @Test
+    void pipelineWritesTheSamePageAndSnippetsAsTheSeparateMinions() throws Exception {
+        final Path images = Files.createDirectories(directory.resolve("images"));
+        final Path baselines = Files.createDirectories(directory.resolve("png"));
+        final Path pages = Files.createDirectories(directory.resolve("page"));
+        final Path imageFile = images.resolve("page.png");
+        final Path baselineImageFile = baselines.resolve("page.png");
+        final Path pageFile = pages.resolve("page.xml");
+        SyntheticPage.write(imageFile, SyntheticPage.createImage());
+        SyntheticPage.write(baselineImageFile, SyntheticPage.createBaselineImage());
+        PageUtils.writePageToFile(SyntheticPage.createPage(), PageUtils.NAMESPACE2019, pageFile);
+
+        // extract, cut and the page in memory
+        final CommandLine pipelineCommandLine = parse(images, baselines, pages, directory.resolve("pipeline"));
+        final Path pipelinePage = Files.createDirectories(directory.resolve("pipeline-page")).resolve("page.xml");
+        final ImageCache imageCache = new ImageCache(1024 * 1024 * 1024);
+        new MinionPipeline("page", pageFile, baselineImageFile, images, pipelinePage, PageUtils.NAMESPACE2019,
+                MinionExtractBaselines.Settings.fromCommandLine(pipelineCommandLine),
+                MinionCutFromImageBasedOnPageXMLNew.Settings.fromCommandLine(pipelineCommandLine), Optional.empty(),
+                Set.of(), imageCache).run();
+        assertThat(imageCache.size(), is(0));
+
+        // the separate minions, the cutter reads the page the extractor wrote and writes it back
+        final CommandLine separateCommandLine = parse(images, baselines, pages, directory.resolve("separate"));
+        final Path separatePage = directory.resolve("separate-page").resolve("page.xml");
+        MinionExtractBaselines.Settings.fromCommandLine(separateCommandLine).create(baselineImageFile.toString(),
+                () -> readPage(pageFile), () -> Imgcodecs.imread(imageFile.toString(), Imgcodecs.IMREAD_COLOR),
+                () -> Imgcodecs.imread(baselineImageFile.toString(), Imgcodecs.IMREAD_GRAYSCALE),
+                separatePage.toString()).run();
+        MinionCutFromImageBasedOnPageXMLNew.Settings.fromCommandLine(separateCommandLine).create("page",
+                () -> Imgcodecs.imread(imageFile.toString(), Imgcodecs.IMREAD_COLOR), () -> readPage(separatePage),
+                "page.png", page -> {
+                    try {
+                        PageUtils.writePageToFile(page, PageUtils.NAMESPACE2019, separatePage);
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }, () -> {
+                }).run();
+
+        assertThat(describeTextLines(readPage(pipelinePage)), is(describeTextLines(readPage(separatePage))));
+        assertThat(describeTextLines(readPage(pipelinePage)).size(), is(SyntheticPage.LINES));
+        final Map<String, byte[]> pipelineSnippets = readSnippets(directory.resolve("pipeline").resolve("page"));
+        final Map<String, byte[]> separateSnippets = readSnippets(directory.resolve("separate").resolve("page"));
+        assertThat(pipelineSnippets.size(), is(SyntheticPage.LINES));
+        assertThat(pipelineSnippets.keySet(), is(separateSnippets.keySet()));
+        for (Map.Entry<String, byte[]> snippet : pipelineSnippets.entrySet()) {
+            Assert.assertArrayEquals(snippet.getKey(), separateSnippets.get(snippet.getKey()), snippet.getValue());
+        }
+    }
+
+    @Test
+    void pageWithoutItsSizeGetsItFromTheImageHeader() throws Exception {
+        final Path images = Files.createDirectories(directory.resolve("images"));
+        final Path baselines = Files.createDirectories(directory.resolve("png"));
+        final Path pages = Files.createDirectories(directory.resolve("page"));
+        final Path baselineImageFile = baselines.resolve("page.png");
+        final Path pageFile = pages.resolve("page.xml");
+        SyntheticPage.write(images.resolve("page.png"), SyntheticPage.createImage());
+        SyntheticPage.write(baselineImageFile, SyntheticPage.createBaselineImage());
+        final PcGts input = SyntheticPage.createPage();
+        input.getPage().setImageWidth(null);
+        input.getPage().setImageHeight(null);
+        PageUtils.writePageToFile(input, PageUtils.NAMESPACE2019, pageFile);
+
+        final CommandLine commandLine = parse(images, baselines, pages, directory.resolve("snippets"));
+        final Path outputPage = directory.resolve("output.xml");
+        new MinionPipeline("page", pageFile, baselineImageFile, images, outputPage, PageUtils.NAMESPACE2019,
+                MinionExtractBaselines.Settings.fromCommandLine(commandLine),
+                MinionCutFromImageBasedOnPageXMLNew.Settings.fromCommandLine(commandLine), Optional.empty(),
+                Set.of(), new ImageCache(1024 * 1024 * 1024)).run();
+
+        final PcGts page = readPage(outputPage);
+        assertThat(page.getPage().getImageWidth(), is(SyntheticPage.WIDTH));
+        assertThat(page.getPage().getImageHeight(), is(SyntheticPage.HEIGHT));
+        assertThat(describeTextLines(page).size(), is(SyntheticPage.LINES));
+    }
+
+    private static CommandLine parse(Path images, Path baselines, Path pages, Path outputBase, String... extraArgs)
+            throws Exception {
+        final List<String> args = new ArrayList<>(List.of(
+                "-input_path_image", images.toString(), "-input_path_png", baselines.toString(),
+                "-input_path_page", pages.toString(), "-output_path_page", pages.toString(),
+                "-outputbase", outputBase.toString(), "-output_type", "png", "-channels", "3"));
+        args.addAll(List.of(extraArgs));
+        return new DefaultParser().parse(MinionPipeline.getOptions(), args.toArray(new String[0]));
+    }
+
+    private static PcGts readPage(Path pageFile) {
+        try {
+            return PageUtils.readPageFromFile(pageFile);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // the id, contour and baseline of the text lines, the metadata has the time the page was written
+    private static List<String> describeTextLines(PcGts page) {
+        final List<String> textLines = new ArrayList<>();
+        for (TextRegion textRegion : page.getPage().getTextRegions()) {
+            for (TextLine textLine : textRegion.getTextLines()) {
+                textLines.add(textRegion.getId() + " " + textLine.getId() + " " + textLine.getCoords().getPoints()
+                        + " " + textLine.getBaseline().getPoints());
+            }
+        }
+        return textLines;
+    }
+
+    private static Map<String, byte[]> readSnippets(Path snippetDirectory) throws Exception {
+        final Map<String, byte[]> snippets = new TreeMap<>();
+        try (Stream<Path> files = Files.list(snippetDirectory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                snippets.put(file.getFileName().toString(), Files.readAllBytes(file));
+            }
+        }
+        return snippets;
+    }
+}
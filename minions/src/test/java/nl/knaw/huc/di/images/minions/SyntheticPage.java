@@ -0,0 +1,88 @@
+package nl.knaw.huc.di.images.minions;
+
+import nl.knaw.huc.di.images.layoutds.models.Page.*;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Point;
+import org.opencv.core.Scalar;
+import org.opencv.imgcodecs.Imgcodecs;
+import org.opencv.imgproc.Imgproc;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A page of 600x400 with eight lines of blocks for text, the baselines the layout analysis finds on it and the PageXML
+ * of an earlier run. The OpenCV library has to be loaded by the test.
+ */
+final class SyntheticPage {
+    static final int WIDTH = 600;
+    static final int HEIGHT = 400;
+    static final int LINES = 8;
+
+    private SyntheticPage() {
+    }
+
+    private static int getBaselineY(int line) {
+        return 40 + line * 45;
+    }
+
+    static Mat createImage() {
+        final Mat image = new Mat(HEIGHT, WIDTH, CvType.CV_8UC3, new Scalar(255, 255, 255));
+        for (int line = 0; line < LINES; line++) {
+            final int y = getBaselineY(line);
+            for (int x = 40; x < 560; x += 23) {
+                Imgproc.rectangle(image, new Point(x, y - 15 - (x % 7)), new Point(x + 12, y), new Scalar(20, 20, 20), -1);
+            }
+        }
+        return image;
+    }
+
+    // the baselines as the layout analysis writes them
+    static Mat createBaselineImage() {
+        final Mat image = new Mat(HEIGHT, WIDTH, CvType.CV_8UC1, new Scalar(0));
+        for (int line = 0; line < LINES; line++) {
+            final int y = getBaselineY(line);
+            Imgproc.line(image, new Point(35, y), new Point(565, y), new Scalar(255), 3);
+        }
+        return image;
+    }
+
+    static void write(Path file, Mat image) {
+        Imgcodecs.imwrite(file.toString(), image);
+        image.release();
+    }
+
+    // the lines of an earlier run, in one region that covers the page
+    static PcGts createPage() {
+        final PcGts page = new PcGts();
+        page.setPage(new Page());
+        page.getPage().setImageWidth(WIDTH);
+        page.getPage().setImageHeight(HEIGHT);
+        page.getPage().setImageFilename("page.png");
+        final List<TextLine> textLines = new ArrayList<>();
+        for (int line = 0; line < LINES; line++) {
+            final int y = getBaselineY(line);
+            final TextLine textLine = new TextLine();
+            textLine.setId("line" + line);
+            final Coords coords = new Coords();
+            coords.setPoints("30," + (y - 30) + " 570," + (y - 30) + " 570," + (y + 8) + " 30," + (y + 8));
+            textLine.setCoords(coords);
+            final Baseline baseline = new Baseline();
+            baseline.setPoints("35," + y + " 565," + y);
+            textLine.setBaseline(baseline);
+            textLines.add(textLine);
+        }
+        final TextRegion textRegion = new TextRegion();
+        textRegion.setId("region");
+        final Coords coords = new Coords();
+        coords.setPoints("0,0 " + (WIDTH - 1) + ",0 " + (WIDTH - 1) + "," + (HEIGHT - 1) + " 0," + (HEIGHT - 1));
+        textRegion.setCoords(coords);
+        textRegion.setTextLines(textLines);
+        final List<TextRegion> textRegions = new ArrayList<>();
+        textRegions.add(textRegion);
+        page.getPage().setTextRegions(textRegions);
+        return page;
+    }
+}
@@ -0,0 +1,195 @@
+package nl.knaw.huc.di.images.minions;
+
+import com.google.common.base.Stopwatch;
+import nl.knaw.huc.di.images.imageanalysiscommon.StringConverter;
+import nl.knaw.huc.di.images.layoutanalyzer.layoutlib.LayoutProc;
+import nl.knaw.huc.di.images.layoutds.models.Page.Coords;
+import nl.knaw.huc.di.images.layoutds.models.Page.TextLine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.opencv.core.Point;
+import org.opencv.core.Rect;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class TextLineClustererTest {
+
+    @Test
+    public void clustersAreTheSameAsTheBruteForceClusters() {
+        final Random random = new Random(42);
+        for (int page = 0; page < 50; page++) {
+            final List<TextLine> textLines = createPage(random, 20 + random.nextInt(300));
+            final double maxDistance = LayoutProc.interlineMedian(textLines, 10) * (0.5 + random.nextDouble() * 2);
+
+            final List<List<TextLine>> expected = clusterBruteForce(textLines, maxDistance);
+            final List<List<TextLine>> actual = new ArrayList<>();
+            for (TextLineClusterer.Cluster cluster : new TextLineClusterer(textLines, maxDistance).cluster()) {
+                actual.add(cluster.getTextLines());
+            }
+
+            assertThat("page " + page, actual, is(expected));
+        }
+    }
+
+    @Test
+    public void linesInOneColumnFormOneCluster() {
+        final List<TextLine> textLines = new ArrayList<>();
+        for (int y = 100; y < 1000; y += 50) {
+            textLines.add(createTextLine(100, y, 900, y));
+        }
+        for (int y = 100; y < 1000; y += 50) {
+            textLines.add(createTextLine(2000, y, 2800, y));
+        }
+
+        final List<TextLineClusterer.Cluster> clusters = new TextLineClusterer(textLines, 75).cluster();
+
+        assertThat(clusters.size(), is(2));
+        assertThat(clusters.get(0).getTextLines(), is(textLines.subList(0, 18)));
+    }
+
+    // prints the times instead of checking them, run with -Dbenchmark=true
+    @Test
+    @EnabledIfSystemProperty(named = "benchmark", matches = "true")
+    public void clusterBenchmark() {
+        final Random random = new Random(1);
+        for (int lines : new int[]{100, 500, 2000}) {
+            final List<TextLine> textLines = createPage(random, lines);
+            final double maxDistance = LayoutProc.interlineMedian(textLines, 10) * 1.5;
+
+            final Stopwatch bruteForce = Stopwatch.createStarted();
+            clusterBruteForce(textLines, maxDistance);
+            bruteForce.stop();
+
+            final Stopwatch indexed = Stopwatch.createStarted();
+            new TextLineClusterer(textLines, maxDistance).cluster();
+            indexed.stop();
+
+            System.out.println("clustering " + lines + " lines, brute force: " + bruteForce + ", indexed: " + indexed
+                    + ", speedup: " + ((double) bruteForce.elapsed(TimeUnit.MICROSECONDS) / Math.max(1, indexed.elapsed(TimeUnit.MICROSECONDS))));
+        }
+    }
+
+    // columns of lines with some noise, on a page that grows with the number of lines
+    private static List<TextLine> createPage(Random random, int lines) {
+        final List<TextLine> textLines = new ArrayList<>();
+        final int columns = 1 + lines / 60;
+        final int columnWidth = 800;
+        final int linesPerColumn = (lines + columns - 1) / columns;
+        for (int i = 0; i < lines; i++) {
+            final int column = i % columns;
+            final int row = i / columns;
+            final int xStart = 100 + column * (columnWidth + 150) + random.nextInt(60);
+            final int y = 100 + row * 45 + random.nextInt(10);
+            if (random.nextInt(20) == 0) {
+                // noise: short lines, lines in the margin and lines running from right to left
+                final int x = random.nextInt(columns * (columnWidth + 150));
+                final int noiseY = random.nextInt(100 + linesPerColumn * 45);
+                if (random.nextBoolean()) {
+                    textLines.add(createTextLine(x + 40, noiseY, x, noiseY + random.nextInt(20)));
+                } else {
+                    textLines.add(createTextLine(x, noiseY, x + random.nextInt(200), noiseY + random.nextInt(40)));
+                }
+            } else {
+                final int xEnd = xStart + columnWidth - random.nextInt(400);
+                textLines.add(createTextLine(xStart, y, xEnd, y + random.nextInt(8) - 4));
+            }
+        }
+        // the original reading order is not sorted
+        Collections.shuffle(textLines, random);
+        return textLines;
+    }
+
+    private static TextLine createTextLine(int xStart, int yStart, int xEnd, int yEnd) {
+        final TextLine textLine = new TextLine();
+        final int middleX = (xStart + xEnd) / 2;
+        final int middleY = (yStart + yEnd) / 2 + 2;
+        textLine.getBaseline().setPoints(xStart + "," + yStart + " " + middleX + "," + middleY + " " + xEnd + "," + yEnd);
+        final Coords coords = new Coords();
+        final int left = Math.min(xStart, xEnd);
+        final int right = Math.max(xStart, xEnd);
+        final int top = Math.max(0, Math.min(yStart, yEnd) - 30);
+        final int bottom = Math.max(yStart, yEnd) + 8;
+        coords.setPoints(left + "," + top + " " + right + "," + top + " " + right + "," + bottom + " " + left + "," + bottom);
+        textLine.setCoords(coords);
+        return textLine;
+    }
+
+    // the clustering as MinionRecalculateReadingOrderNew did it before the clustering was indexed
+    private static List<List<TextLine>> clusterBruteForce(List<TextLine> allLines, double maxDistance) {
+        final List<List<TextLine>> clusters = new ArrayList<>();
+        List<TextLine> removedLines = new ArrayList<>();
+        for (TextLine textLine : allLines) {
+            if (removedLines.contains(textLine)) {
+                continue;
+            }
+            List<TextLine> cluster = new ArrayList<>();
+            cluster.add(textLine);
+            Rect regionPoints = LayoutProc.getBoundingBoxTextLines(cluster);
+            removedLines.add(textLine);
+            List<TextLine> checkedTextLines = new ArrayList<>();
+
+            boolean newLinesAdded = true;
+            while (newLinesAdded) {
+                newLinesAdded = false;
+                ArrayList<TextLine> toCheck = new ArrayList<>(cluster);
+                toCheck.removeAll(checkedTextLines);
+                for (TextLine mainTextLine : toCheck) {
+                    checkedTextLines.add(mainTextLine);
+                    List<Point> mainPoints = StringConverter.stringToPoint(mainTextLine.getBaseline().getPoints());
+                    Point mainTextLineStart = mainPoints.get(0);
+                    Point mainTextLineEnd = mainPoints.get(mainPoints.size() - 1);
+
+                    for (TextLine subTextLine : allLines) {
+                        if (removedLines.contains(subTextLine)) {
+                            continue;
+                        }
+                        List<Point> subPoints = StringConverter.stringToPoint(subTextLine.getBaseline().getPoints());
+                        Point subTextLineStart = subPoints.get(0);
+                        Point subTextLineEnd = subPoints.get(subPoints.size() - 1);
+                        Rect textLineRect = LayoutProc.getBoundingBox(subPoints);
+                        if (regionPoints.x < textLineRect.x &&
+                                regionPoints.x + regionPoints.width > textLineRect.x + textLineRect.width &&
+                                regionPoints.y < textLineRect.y &&
+                                regionPoints.y + regionPoints.height > textLineRect.y + textLineRect.height) {
+                            cluster.add(subTextLine);
+                            regionPoints = LayoutProc.growCluster(regionPoints, subTextLine);
+                            removedLines.add(subTextLine);
+                            newLinesAdded = true;
+                            continue;
+                        }
+                        if (StringConverter.distance(mainTextLineStart, subTextLineStart) < maxDistance) {
+                            cluster.add(subTextLine);
+                            regionPoints = LayoutProc.growCluster(regionPoints, subTextLine);
+                            removedLines.add(subTextLine);
+                            newLinesAdded = true;
+                        } else {
+                            double horizontalSubPointX = ((subTextLineStart.x + subTextLineEnd.x) / 2);
+                            double averageSubPointY = ((subTextLineStart.y + subTextLineEnd.y) / 2);
+                            double mainTextLineY = ((mainTextLineStart.y + mainTextLineEnd.y) / 2);
+                            if (horizontalSubPointX > mainTextLineStart.x && horizontalSubPointX < mainTextLineEnd.x) {
+                                if (Math.abs(averageSubPointY - mainTextLineY) < maxDistance) {
+                                    cluster.add(subTextLine);
+                                    regionPoints = LayoutProc.growCluster(regionPoints, subTextLine);
+                                    removedLines.add(subTextLine);
+                                    newLinesAdded = true;
+                                }
+                            }
+                        }
+                    }
+                    if (newLinesAdded) {
+                        break;
+                    }
+                }
+            }
+            clusters.add(cluster);
+        }
+        return clusters;
+    }
+}
@@ -0,0 +1,57 @@
+package nl.knaw.huc.di.images.pipelineutils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class CheckpointManifestTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void reopenedManifestKnowsThePagesThatAreDone() throws Exception {
+        try (CheckpointManifest manifest = CheckpointManifest.open(directory)) {
+            manifest.started("page1", "cut", 1);
+            manifest.done("page1", "cut", 1, "abc");
+            manifest.started("page2", "cut", 1);
+        }
+
+        try (CheckpointManifest manifest = CheckpointManifest.open(directory)) {
+            assertThat(manifest.isDone("page1", "cut", 1), is(true));
+            assertThat(manifest.get("page1", "cut").get().getChecksum(), is("abc"));
+            assertThat(manifest.isDone("page2", "cut", 1), is(false));
+            assertThat(manifest.get("page2", "cut").get().getState(), is(CheckpointManifest.State.STARTED));
+            // another stage, or another version of the stage, has not done the page
+            assertThat(manifest.isDone("page1", "extract", 1), is(false));
+            assertThat(manifest.isDone("page1", "cut", 2), is(false));
+        }
+        // closing compacts the journal into the index
+        assertThat(Files.size(directory.resolve(CheckpointManifest.JOURNAL_FILE)), is(0L));
+    }
+
+    @Test
+    void lineCutOffByACrashIsIgnored() throws Exception {
+        final CheckpointManifest crashed = CheckpointManifest.open(directory);
+        crashed.done("page1", "cut", 1, "abc");
+        crashed.done("page2", "cut", 1, "def");
+        // the process dies halfway writing the line of page2
+        final Path journal = directory.resolve(CheckpointManifest.JOURNAL_FILE);
+        final byte[] lines = Files.readAllBytes(journal);
+        Files.write(journal, Arrays.copyOf(lines, lines.length - 4));
+
+        try (CheckpointManifest manifest = CheckpointManifest.open(directory)) {
+            assertThat(manifest.isDone("page1", "cut", 1), is(true));
+            assertThat(manifest.isDone("page2", "cut", 1), is(false));
+            manifest.done("page3", "cut", 1, "ghi");
+        }
+        try (CheckpointManifest manifest = CheckpointManifest.open(directory)) {
+            assertThat(manifest.isDone("page3", "cut", 1), is(true));
+        }
+    }
+}
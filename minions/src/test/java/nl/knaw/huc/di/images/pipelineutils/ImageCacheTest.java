@@ -0,0 +1,122 @@
+package nl.knaw.huc.di.images.pipelineutils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.opencv.core.Core;
+import org.opencv.core.CvType;
+import org.opencv.core.Mat;
+import org.opencv.core.Scalar;
+import org.opencv.core.Size;
+import org.opencv.imgcodecs.Imgcodecs;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+class ImageCacheTest {
+
+    static {
+        System.loadLibrary(Core.NATIVE_LIBRARY_NAME);
+    }
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void imageIsDecodedOnceAndSharedByTheViews() {
+        final Path file = writeImage("page.png", 200, 100, 80);
+        final ImageCache imageCache = new ImageCache(1024 * 1024);
+
+        final Mat first = imageCache.get(file, Imgcodecs.IMREAD_COLOR);
+        final Mat second = imageCache.get(file, Imgcodecs.IMREAD_COLOR);
+
+        assertThat(first.dataAddr(), is(second.dataAddr()));
+        assertThat(imageCache.size(), is(1));
+        assertThat(imageCache.getBytes(), is(200L * 100 * 3));
+        // releasing a view leaves the cached image alone
+        first.release();
+        assertThat(second.get(50, 100)[0], is(80.0));
+        second.release();
+        imageCache.clear();
+    }
+
+    @Test
+    void leastRecentlyUsedImageIsRemovedAndItsViewsStayValid() {
+        final Path first = writeImage("first.png", 200, 100, 10);
+        final Path second = writeImage("second.png", 200, 100, 20);
+        final ImageCache imageCache = new ImageCache(200 * 100 * 3);
+
+        final Mat firstView = imageCache.get(first, Imgcodecs.IMREAD_COLOR);
+        final Mat secondView = imageCache.get(second, Imgcodecs.IMREAD_COLOR);
+
+        assertThat(imageCache.size(), is(1));
+        assertThat(imageCache.getBytes(), is(200L * 100 * 3));
+        assertThat(firstView.get(50, 100)[0], is(10.0));
+        assertThat(imageCache.get(second, Imgcodecs.IMREAD_COLOR).dataAddr(), is(secondView.dataAddr()));
+        imageCache.clear();
+    }
+
+    @Test
+    void replacedFileIsDecodedAgain() throws Exception {
+        final Path file = writeImage("page.png", 200, 100, 10);
+        final ImageCache imageCache = new ImageCache(1024 * 1024);
+        assertThat(imageCache.get(file, Imgcodecs.IMREAD_GRAYSCALE).get(50, 100)[0], is(10.0));
+
+        writeImage("page.png", 200, 100, 20);
+        Files.setLastModifiedTime(file, FileTime.fromMillis(Files.getLastModifiedTime(file).toMillis() + 2000));
+
+        assertThat(imageCache.get(file, Imgcodecs.IMREAD_GRAYSCALE).get(50, 100)[0], is(20.0));
+        imageCache.clear();
+    }
+
+    @Test
+    void reducedDecodeAndSizeFromTheHeader() throws Exception {
+        final Path file = writeImage("page.jpg", 400, 200, 128);
+        final ImageCache imageCache = new ImageCache(1024 * 1024);
+
+        final Mat reduced = imageCache.getReduced(file, false, 4);
+
+        assertThat(reduced.size(), is(new Size(100, 50)));
+        assertThat(reduced.channels(), is(1));
+        assertThat(ImageCache.readSize(file), is(new Size(400, 200)));
+        assertThat(ImageCache.readSize(writeImage("page.png", 300, 150, 128)), is(new Size(300, 150)));
+        imageCache.clear();
+    }
+
+    @Test
+    void invalidateRemovesEveryDecodeOfTheFileAndItsViewsStayValid() {
+        final Path file = writeImage("page.png", 200, 100, 10);
+        final Path other = writeImage("other.png", 200, 100, 20);
+        final ImageCache imageCache = new ImageCache(1024 * 1024);
+        final Mat color = imageCache.get(file, Imgcodecs.IMREAD_COLOR);
+        imageCache.get(file, Imgcodecs.IMREAD_GRAYSCALE);
+        imageCache.get(other, Imgcodecs.IMREAD_COLOR);
+
+        imageCache.invalidate(file);
+
+        assertThat(imageCache.size(), is(1));
+        assertThat(imageCache.getBytes(), is(200L * 100 * 3));
+        assertThat(color.get(50, 100)[0], is(10.0));
+        color.release();
+        imageCache.clear();
+    }
+
+    @Test
+    void missingFileGivesAnEmptyImageThatIsNotCached() {
+        final ImageCache imageCache = new ImageCache(1024 * 1024);
+
+        assertThat(imageCache.get(directory.resolve("missing.png"), Imgcodecs.IMREAD_COLOR).empty(), is(true));
+        assertThat(imageCache.size(), is(0));
+    }
+
+    private Path writeImage(String name, int width, int height, int gray) {
+        final Path file = directory.resolve(name);
+        final Mat image = new Mat(height, width, CvType.CV_8UC3, new Scalar(gray, gray, gray));
+        Imgcodecs.imwrite(file.toString(), image);
+        image.release();
+        return file;
+    }
+}
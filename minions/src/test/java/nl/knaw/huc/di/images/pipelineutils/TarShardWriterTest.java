@@ -0,0 +1,147 @@
+package nl.knaw.huc.di.images.pipelineutils;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class TarShardWriterTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void pagesRollOverToANewShard() throws Exception {
+        final List<String> committed = new ArrayList<>();
+        try (TarShardWriter writer = new TarShardWriter(directory, "snippets", 4096)) {
+            writer.write(page("page1", 1000), () -> committed.add("page1"));
+            assertThat(Files.exists(directory.resolve("snippets-000000.tar")), is(false));
+            writer.write(page("page2", 1000), () -> committed.add("page2"));
+            // the page does not fit in the first shard
+            assertThat(Files.exists(directory.resolve("snippets-000000.tar")), is(true));
+            assertThat(committed, is(List.of("page1")));
+        }
+        assertThat(committed, is(List.of("page1", "page2")));
+
+        assertThat(readNames(directory.resolve("snippets-000000.tar")), is(List.of("page1/page1-line1.png", "page1/page1-line1.txt")));
+        assertThat(readNames(directory.resolve("snippets-000001.tar")), is(List.of("page2/page2-line1.png", "page2/page2-line1.txt")));
+    }
+
+    @Test
+    void indexHasTheOffsetAndSizeOfEveryFile() throws Exception {
+        try (TarShardWriter writer = new TarShardWriter(directory, "snippets", 1024 * 1024)) {
+            writer.write(page("page1", 700), () -> {
+            });
+        }
+
+        final List<String> index = Files.readAllLines(directory.resolve("snippets-000000.idx"));
+        assertThat(index.size(), is(2));
+        final String[] text = index.get(1).split("\t");
+        assertThat(text[0], is("page1/page1-line1.txt"));
+        try (RandomAccessFile shard = new RandomAccessFile(directory.resolve("snippets-000000.tar").toFile(), "r")) {
+            final byte[] contents = new byte[Integer.parseInt(text[2])];
+            shard.seek(Long.parseLong(text[1]));
+            shard.readFully(contents);
+            assertThat(new String(contents, StandardCharsets.UTF_8), is("text of page1"));
+        }
+    }
+
+    @Test
+    void unfinishedShardIsRemovedAndNumberingContinues() throws Exception {
+        try (TarShardWriter writer = new TarShardWriter(directory, "snippets", 1024 * 1024)) {
+            writer.write(page("page1", 10), () -> {
+            });
+        }
+        // a run that crashed while it wrote the second shard, its lock went with the process
+        Files.write(directory.resolve(".snippets-000001.tar.tmp"), new byte[1024]);
+
+        try (TarShardWriter writer = new TarShardWriter(directory, "snippets", 1024 * 1024)) {
+            assertThat(Files.exists(directory.resolve(".snippets-000001.tar.tmp")), is(false));
+            writer.write(page("page2", 10), () -> {
+            });
+        }
+        assertThat(readNames(directory.resolve("snippets-000001.tar")), is(List.of("page2/page2-line1.png", "page2/page2-line1.txt")));
+    }
+
+    @Test
+    void secondWriterWithTheSamePrefixIsRefusedAndOtherPrefixesAreLeftAlone() throws Exception {
+        try (TarShardWriter writer = new TarShardWriter(directory, "snippets", 1024 * 1024)) {
+            writer.write(page("page1", 10), () -> {
+            });
+
+            assertThrows(IOException.class, () -> new TarShardWriter(directory, "snippets", 1024 * 1024));
+            try (TarShardWriter other = new TarShardWriter(directory, "snippets-other", 1024 * 1024)) {
+                other.write(page("page2", 10), () -> {
+                });
+            }
+            assertThat(Files.exists(directory.resolve(".snippets-000000.tar.tmp")), is(true));
+        }
+        assertThat(readNames(directory.resolve("snippets-000000.tar")), is(List.of("page1/page1-line1.png", "page1/page1-line1.txt")));
+        assertThat(readNames(directory.resolve("snippets-other-000000.tar")), is(List.of("page2/page2-line1.png", "page2/page2-line1.txt")));
+        // the prefix is free again
+        new TarShardWriter(directory, "snippets", 1024 * 1024).close();
+    }
+
+    @Test
+    void shardIsDiscardedWhenAPageFailsHalfway() throws Exception {
+        final List<String> committed = new ArrayList<>();
+        try (TarShardWriter writer = new TarShardWriter(directory, "snippets", 1024 * 1024)) {
+            writer.write(page("page1", 10), () -> committed.add("page1"));
+            final List<TarShardWriter.Entry> page2 = page("page2", 10);
+            // fails after the first file of the page is in the shard
+            final List<TarShardWriter.Entry> failing = new AbstractList<>() {
+                private int gets;
+
+                @Override
+                public TarShardWriter.Entry get(int index) {
+                    if (++gets == page2.size() + 2) {
+                        throw new UncheckedIOException(new IOException("disk full"));
+                    }
+                    return page2.get(index);
+                }
+
+                @Override
+                public int size() {
+                    return page2.size();
+                }
+            };
+            assertThrows(UncheckedIOException.class, () -> writer.write(failing, () -> committed.add("page2")));
+
+            writer.write(page("page3", 10), () -> committed.add("page3"));
+        }
+
+        assertThat(committed, is(List.of("page3")));
+        assertThat(readNames(directory.resolve("snippets-000000.tar")), is(List.of("page3/page3-line1.png", "page3/page3-line1.txt")));
+        assertThat(Files.readAllLines(directory.resolve("snippets-000000.idx")).size(), is(2));
+        assertThat(Files.exists(directory.resolve("snippets-000001.tar")), is(false));
+    }
+
+    private static List<TarShardWriter.Entry> page(String name, int imageBytes) {
+        return List.of(new TarShardWriter.Entry(name + "/" + name + "-line1.png", new byte[imageBytes]),
+                new TarShardWriter.Entry(name + "/" + name + "-line1.txt", ("text of " + name).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static List<String> readNames(Path shard) throws IOException {
+        final List<String> names = new ArrayList<>();
+        try (TarArchiveInputStream tar = new TarArchiveInputStream(Files.newInputStream(shard))) {
+            TarArchiveEntry entry;
+            while ((entry = tar.getNextTarEntry()) != null) {
+                names.add(entry.getName());
+            }
+        }
+        return names;
+    }
+}
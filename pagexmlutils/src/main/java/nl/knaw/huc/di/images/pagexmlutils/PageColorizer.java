@@ -1,7 +1,6 @@
 package nl.knaw.huc.di.images.pagexmlutils;
 
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
-import nl.knaw.huc.di.images.imageanalysiscommon.StringConverter;
 import nl.knaw.huc.di.images.layoutds.models.Page.PcGts;
 import nl.knaw.huc.di.images.layoutds.models.Page.TextLine;
 import nl.knaw.huc.di.images.layoutds.models.Page.TextRegion;
@@ -27,7 +26,7 @@ public class PageColorizer {
     public static void colorizeTextLine(Mat colorized, TextLine textLine) {
         int thickness = 3;
         Scalar color = new Scalar(0, 0, 255);
-        List<Point> points = StringConverter.stringToPoint(textLine.getCoords().getPoints());
+        List<Point> points = textLine.getCoords().getGeometry().toPoints();
         if (points.size()==0){
             return;
         }
@@ -41,7 +40,7 @@ public class PageColorizer {
         Imgproc.line(colorized, points.get(0), points.get(points.size() - 1), color, thickness);
 
         color = new Scalar(255,255,255);
-        points = StringConverter.stringToPoint(textLine.getBaseline().getPoints());
+        points = textLine.getBaseline().getGeometry().toPoints();
         if (points.size()==0){
             return;
         }
@@ -58,7 +57,7 @@ public class PageColorizer {
         int thickness = 3;
         Scalar color = new Scalar(255, 0, 255);
 
-        List<Point> points = StringConverter.stringToPoint(textRegion.getCoords().getPoints());
+        List<Point> points = textRegion.getCoords().getGeometry().toPoints();
 
         List<String> marginaList = new ArrayList<>();
         marginaList.add("marginalia");
@@ -0,0 +1,1102 @@
+package nl.knaw.huc.di.images.pagexmlutils;
+
+import com.ctc.wstx.stax.WstxInputFactory;
+import com.google.common.base.Strings;
+import nl.knaw.huc.di.images.imageanalysiscommon.StringConverter;
+import nl.knaw.huc.di.images.layoutds.models.Page.*;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
+import org.opencv.core.Point;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Reads PageXML into PcGts in a single forward pass over the document, without building a DOM.
+ * Elements are matched on their local name, unknown elements and attributes are reported and skipped.
+ */
+public class PageReader {
+    // the factory is thread safe once configured, the readers it creates are not
+    private static final XMLInputFactory INPUT_FACTORY = createInputFactory();
+
+    private PageReader() {
+    }
+
+    private static XMLInputFactory createInputFactory() {
+        final XMLInputFactory inputFactory = new WstxInputFactory();
+        inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        inputFactory.setProperty(XMLInputFactory.IS_REPLACING_ENTITY_REFERENCES, true);
+        return inputFactory;
+    }
+
+    public static PcGts read(Path path, boolean fixErrors) throws IOException, XMLStreamException {
+        try (InputStream inputStream = Files.newInputStream(path)) {
+            return read(inputStream, fixErrors);
+        }
+    }
+
+    /**
+     * The encoding is taken from the XML declaration, the stream is not closed.
+     */
+    public static PcGts read(InputStream inputStream, boolean fixErrors) throws XMLStreamException {
+        final XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(inputStream);
+        try {
+            return readPcGts(reader, fixErrors);
+        } finally {
+            reader.close();
+        }
+    }
+
+    public static PcGts read(Reader input, boolean fixErrors) throws XMLStreamException {
+        final XMLStreamReader reader = INPUT_FACTORY.createXMLStreamReader(input);
+        try {
+            return readPcGts(reader, fixErrors);
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static PcGts readPcGts(XMLStreamReader reader, boolean fixErrors) throws XMLStreamException {
+        while (reader.next() != XMLStreamConstants.START_ELEMENT) {
+            // skip the prolog
+        }
+        final String rootName = reader.getLocalName();
+        final PcGts pcGts = new PcGts();
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "Metadata":
+                    pcGts.setMetadata(readMetadata(reader));
+                    break;
+                case "Page":
+                    pcGts.setPage(readPage(reader, fixErrors));
+                    break;
+                default:
+                    skipUnknownElement(reader, rootName);
+                    break;
+            }
+        }
+        return pcGts;
+    }
+
+    /**
+     * Moves to the next child element of the current element.
+     *
+     * @return false if the end of the current element is reached
+     */
+    private static boolean nextChild(XMLStreamReader reader) throws XMLStreamException {
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                return true;
+            }
+            if (event == XMLStreamConstants.END_ELEMENT) {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static void skipUnknownElement(XMLStreamReader reader, String parentName) throws XMLStreamException {
+        System.out.println(parentName + " - " + reader.getLocalName());
+        skipElement(reader);
+    }
+
+    private static void skipElement(XMLStreamReader reader) throws XMLStreamException {
+        int depth = 1;
+        while (depth > 0) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * @return all text in the current element and its descendants, the reader is moved to the end of the element
+     */
+    private static String readText(XMLStreamReader reader) throws XMLStreamException {
+        final StringBuilder text = new StringBuilder();
+        int depth = 1;
+        while (depth > 0) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    depth++;
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    depth--;
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    text.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    break;
+                default:
+                    break;
+            }
+        }
+        return text.toString();
+    }
+
+    // attributes of other namespaces, like xsi:schemaLocation, keep their prefix so they are not taken for PAGE attributes
+    private static String getAttributeName(XMLStreamReader reader, int index) {
+        final String prefix = reader.getAttributePrefix(index);
+        if (Strings.isNullOrEmpty(prefix)) {
+            return reader.getAttributeLocalName(index);
+        }
+        return prefix + ":" + reader.getAttributeLocalName(index);
+    }
+
+    private static void printUnknownAttribute(XMLStreamReader reader, int index) {
+        System.out.println("attrib: " + getAttributeName(reader, index));
+    }
+
+    private static String getLanguage(String language) {
+        switch (language) {
+            case "nl":
+                return "Dutch";
+            case "en":
+                return "English";
+            case "fr":
+                return "French";
+            case "it":
+                return "Italian";
+            case "de":
+                return "German";
+            case "la":
+                return "Latin";
+            default:
+                return language;
+        }
+    }
+
+    private static Date getDate(String text) {
+        Date date = null;
+        if (Strings.isNullOrEmpty(text)) {
+            return null;
+        }
+        try {
+            // Should never happen, PAGE XML should only contain UTC times
+            OffsetDateTime offsetDateTime = OffsetDateTime.parse(text);
+            long epochMilli = offsetDateTime.toInstant().toEpochMilli();
+            date = new Date(epochMilli);
+        } catch (Exception ex) {
+            try {
+                DateTime dateTime = new DateTime(text, DateTimeZone.UTC);
+                date = dateTime.toDate();
+            } catch (Exception subEx) {
+                try {
+                    LocalDateTime localDateTime = LocalDateTime.parse(text);
+                    date = localDateTime.toDate(TimeZone.getDefault());
+                } catch (Exception subSubEx) {
+                }
+            }
+        }
+
+        return date;
+    }
+
+    private static Metadata readMetadata(XMLStreamReader reader) throws XMLStreamException {
+        final Metadata metadata = new Metadata();
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "LastChange":
+                    metadata.setLastChange(getDate(readText(reader)));
+                    break;
+                case "Creator":
+                    metadata.setCreator(readText(reader));
+                    break;
+                case "Created":
+                    metadata.setCreated(getDate(readText(reader)));
+                    break;
+                case "TranskribusMetadata":
+                    metadata.setTranskribusMetadata(readTranskribusMetadata(reader));
+                    break;
+                case "Comments":
+                    metadata.setComments(readText(reader));
+                    break;
+                case "MetadataItem":
+                    if (metadata.getMetadataItems() == null) {
+                        metadata.setMetadataItems(new ArrayList<>());
+                    }
+                    metadata.getMetadataItems().add(readMetadataItem(reader));
+                    break;
+                default:
+                    skipUnknownElement(reader, "Metadata");
+                    break;
+            }
+        }
+        return metadata;
+    }
+
+    private static MetadataItem readMetadataItem(XMLStreamReader reader) throws XMLStreamException {
+        final MetadataItem metadataItem = new MetadataItem();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            switch (getAttributeName(reader, i)) {
+                case "type":
+                    metadataItem.setType(value);
+                    break;
+                case "name":
+                    metadataItem.setName(value);
+                    break;
+                case "value":
+                    metadataItem.setValue(value);
+                    break;
+                default:
+                    printUnknownAttribute(reader, i);
+                    break;
+            }
+        }
+        while (nextChild(reader)) {
+            if (reader.getLocalName().equals("Labels")) {
+                metadataItem.setLabels(readLabels(reader));
+            } else {
+                skipUnknownElement(reader, "MetadataItem");
+            }
+        }
+        return metadataItem;
+    }
+
+    private static Labels readLabels(XMLStreamReader reader) throws XMLStreamException {
+        final Labels labels = new Labels();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            printUnknownAttribute(reader, i);
+        }
+        while (nextChild(reader)) {
+            if (reader.getLocalName().equals("Label")) {
+                if (labels.getLabel() == null) {
+                    labels.setLabel(new ArrayList<>());
+                }
+                labels.getLabel().add(readLabel(reader));
+            } else {
+                skipUnknownElement(reader, "Labels");
+            }
+        }
+        return labels;
+    }
+
+    private static Label readLabel(XMLStreamReader reader) throws XMLStreamException {
+        final Label label = new Label();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            switch (getAttributeName(reader, i)) {
+                case "value":
+                    label.setValue(value);
+                    break;
+                case "type":
+                    label.setType(value);
+                    break;
+                case "comments":
+                    label.setComments(value);
+                    break;
+                default:
+                    printUnknownAttribute(reader, i);
+                    break;
+            }
+        }
+        while (nextChild(reader)) {
+            skipUnknownElement(reader, "Label");
+        }
+        return label;
+    }
+
+    private static TranskribusMetadata readTranskribusMetadata(XMLStreamReader reader) throws XMLStreamException {
+        final TranskribusMetadata transkribusMetadata = new TranskribusMetadata();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            switch (getAttributeName(reader, i)) {
+                case "docId":
+                    transkribusMetadata.setDocId(Integer.parseInt(value));
+                    break;
+                case "imageId":
+                    transkribusMetadata.setImageId(Integer.parseInt(value));
+                    break;
+                case "imgUrl":
+                    transkribusMetadata.setImgUrl(value);
+                    break;
+                case "pageId":
+                    transkribusMetadata.setPageId(Integer.parseInt(value));
+                    break;
+                case "pageNr":
+                    transkribusMetadata.setPageNr(Integer.parseInt(value));
+                    break;
+                case "status":
+                    transkribusMetadata.setStatus(value);
+                    break;
+                case "tsid":
+                    transkribusMetadata.setTsid(Integer.parseInt(value));
+                    break;
+                case "userId":
+                    transkribusMetadata.setUserId(Integer.parseInt(value));
+                    break;
+                case "xmlUrl":
+                    transkribusMetadata.setXmlUrl(value);
+                    break;
+                default:
+                    printUnknownAttribute(reader, i);
+                    break;
+            }
+        }
+        while (nextChild(reader)) {
+            skipUnknownElement(reader, "TranskribusMetadata");
+        }
+        return transkribusMetadata;
+    }
+
+    private static Page readPage(XMLStreamReader reader, boolean fixErrors) throws XMLStreamException {
+        final Page page = new Page();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            final String name = getAttributeName(reader, i);
+            switch (name) {
+                case "imageFilename":
+                    page.setImageFilename(value);
+                    break;
+                case "imageWidth":
+                    page.setImageWidth(Integer.parseInt(value));
+                    break;
+                case "imageHeight":
+                    page.setImageHeight(Integer.parseInt(value));
+                    break;
+                case "type":
+                    page.setPageType(value);
+                    break;
+                case "primaryLanguage":
+                    page.setPrimaryLanguage(getLanguage(value));
+                    break;
+                default:
+                    System.out.println("Page attrib: " + name);
+                    break;
+            }
+        }
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "TextRegion":
+                    page.getTextRegions().add(readTextRegion(reader, fixErrors));
+                    break;
+                case "ImageRegion":
+                    page.getImageRegions().add(readImageRegion(reader));
+                    break;
+                case "SeparatorRegion":
+                    page.getSeparatorRegions().add(readSeparatorRegion(reader));
+                    break;
+                case "Border":
+                    page.setBorder(readBorder(reader));
+                    break;
+                case "GraphicRegion":
+                    page.getGraphicRegions().add(readGraphicRegion(reader));
+                    break;
+                case "LineDrawingRegion":
+                    page.getLineDrawingRegions().add(readLineDrawingRegion(reader));
+                    break;
+                case "ChartRegion":
+                    page.getChartRegions().add(readChartRegion(reader));
+                    break;
+                case "NoiseRegion":
+                    page.getNoiseRegions().add(readNoiseRegion(reader));
+                    break;
+                case "MathsRegion":
+                    page.getMathsRegions().add(readMathsRegion(reader));
+                    break;
+                case "TableRegion":
+                    page.getTableRegions().add(readTableRegion(reader));
+                    break;
+                case "FrameRegion":
+                    page.getFrameRegions().add(readFrameRegion(reader));
+                    break;
+                case "ReadingOrder":
+                    page.setReadingOrder(readReadingOrder(reader));
+                    break;
+                case "Unknown":
+                    page.getUnknowns().add(readUnknown(reader));
+                    break;
+                case "PrintSpace":
+                    page.setPrintSpace(readPrintSpace(reader));
+                    break;
+                default:
+                    skipUnknownElement(reader, "Page");
+                    break;
+            }
+        }
+        return page;
+    }
+
+    private static TextRegion readTextRegion(XMLStreamReader reader, boolean fixErrors) throws XMLStreamException {
+        final TextRegion textRegion = new TextRegion();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            final String name = getAttributeName(reader, i);
+            switch (name) {
+                case "id":
+                    textRegion.setId(value);
+                    break;
+                case "custom":
+                    textRegion.setCustom(value);
+                    break;
+                case "type":
+                    textRegion.setRegionType(value);
+                    break;
+                case "orientation":
+                    textRegion.setOrientation(Double.parseDouble(value));
+                    break;
+                case "readingDirection":
+                    textRegion.setReadingDirection(value);
+                    break;
+                case "textColour":
+                    textRegion.setTextColour(value);
+                    break;
+                case "bgColour":
+                    textRegion.setBgColour(value);
+                    break;
+                case "reverseVideo":
+                    textRegion.setReverseVideo(Boolean.parseBoolean(value));
+                    break;
+                case "readingOrientation":
+                    textRegion.setReadingOrientation(Double.parseDouble(value));
+                    break;
+                case "indented":
+                    textRegion.setIndented(Boolean.parseBoolean(value));
+                    break;
+                case "primaryLanguage":
+                    textRegion.setPrimaryLanguage(getLanguage(value));
+                    break;
+                case "primaryScript":
+                    switch (value) {
+                        case "Dutch":
+                        case "English":
+                        case "French":
+                        case "Italian":
+                        case "German":
+                        case "nl":
+                        case "en":
+                        case "fr":
+                        case "it":
+                        case "la":
+                        case "de":
+                            textRegion.setPrimaryScript("Latin");
+                            break;
+                        default:
+                            textRegion.setPrimaryScript(value);
+                            break;
+                    }
+                    break;
+                default:
+                    System.out.println("TextRegion attrib: " + name);
+                    break;
+            }
+        }
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "Coords":
+                    textRegion.setCoords(readCoords(reader, false));
+                    break;
+                case "TextLine":
+                    textRegion.getTextLines().add(readTextLine(reader, fixErrors));
+                    break;
+                case "TextEquiv":
+                    textRegion.setTextEquiv(readTextEquiv(reader));
+                    break;
+                default:
+                    skipUnknownElement(reader, "TextRegion");
+                    break;
+            }
+        }
+        return textRegion;
+    }
+
+    private static TextLine readTextLine(XMLStreamReader reader, boolean fixErrors) throws XMLStreamException {
+        final TextLine textLine = new TextLine();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            final String name = getAttributeName(reader, i);
+            switch (name) {
+                case "id":
+                    textLine.setId(value);
+                    break;
+                case "custom":
+                    textLine.setCustom(value);
+                    break;
+                case "primaryLanguage":
+                    textLine.setPrimaryLanguage(getLanguage(value));
+                    break;
+                default:
+                    System.out.println("TextLine attrib: " + name);
+                    break;
+            }
+        }
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "Coords":
+                    textLine.setCoords(readCoords(reader, false));
+                    break;
+                case "Baseline":
+                    textLine.setBaseline(readBaseline(reader));
+                    break;
+                case "TextEquiv":
+                    textLine.setTextEquiv(readTextEquiv(reader));
+                    break;
+                case "Word":
+                    if (textLine.getWords() == null) {
+                        textLine.setWords(new ArrayList<>());
+                    }
+                    textLine.getWords().add(readWord(reader, fixErrors));
+                    break;
+                case "TextStyle":
+                    textLine.setTextStyle(readTextStyle(reader));
+                    break;
+                default:
+                    skipUnknownElement(reader, "TextLine");
+                    break;
+            }
+        }
+        return textLine;
+    }
+
+    private static TextStyle readTextStyle(XMLStreamReader reader) throws XMLStreamException {
+        final TextStyle textStyle = new TextStyle();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (getAttributeName(reader, i).equals("xHeight")) {
+                textStyle.setxHeight(Integer.parseInt(reader.getAttributeValue(i)));
+            } else {
+                printUnknownAttribute(reader, i);
+            }
+        }
+        while (nextChild(reader)) {
+            skipUnknownElement(reader, "TextStyle");
+        }
+        return textStyle;
+    }
+
+    private static Word readWord(XMLStreamReader reader, boolean fixErrors) throws XMLStreamException {
+        final Word word = new Word();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (getAttributeName(reader, i).equals("id")) {
+                word.setId(reader.getAttributeValue(i));
+            } else {
+                printUnknownAttribute(reader, i);
+            }
+        }
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "Coords":
+                    word.setCoords(readCoords(reader, fixErrors));
+                    break;
+                case "TextEquiv":
+                    word.setTextEquiv(readTextEquiv(reader));
+                    break;
+                case "TextStyle":
+                    word.setTextStyle(readTextStyle(reader));
+                    break;
+                default:
+                    skipUnknownElement(reader, "Word");
+                    break;
+            }
+        }
+        return word;
+    }
+
+    /**
+     * @return null if the TextEquiv contains neither PlainText nor Unicode
+     */
+    private static TextEquiv readTextEquiv(XMLStreamReader reader) throws XMLStreamException {
+        final TextEquiv textEquiv = new TextEquiv();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (getAttributeName(reader, i).equals("conf")) {
+                textEquiv.setConf(reader.getAttributeValue(i));
+            } else {
+                printUnknownAttribute(reader, i);
+            }
+        }
+        while (nextChild(reader)) {
+            switch (reader.getLocalName()) {
+                case "Unicode":
+                    textEquiv.setUnicode(readText(reader));
+                    break;
+                case "PlainText":
+                    textEquiv.setPlainText(PageUtils.UNICODE_TO_ASCII_TRANSLITIRATOR.toAscii(readText(reader)));
+                    break;
+                default:
+                    skipUnknownElement(reader, "TextEquiv");
+                    break;
+            }
+        }
+
+        if (textEquiv.getPlainText() == null && textEquiv.getUnicode() == null) {
+            return null;
+        }
+        return textEquiv;
+    }
+
+    private static Baseline readBaseline(XMLStreamReader reader) throws XMLStreamException {
+        final Baseline baseline = new Baseline();
+        String pointsAttribute = null;
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (getAttributeName(reader, i).equals("points")) {
+                pointsAttribute = reader.getAttributeValue(i);
+            } else {
+                printUnknownAttribute(reader, i);
+            }
+        }
+        while (nextChild(reader)) {
+            if (reader.getLocalName().equals("Points")) {
+                baseline.setPoints(readText(reader));
+            } else {
+                skipUnknownElement(reader, "Baseline");
+            }
+        }
+        // the points attribute takes precedence over a Points element
+        if (pointsAttribute != null) {
+            baseline.setPoints(pointsAttribute);
+        }
+        return baseline;
+    }
+
+    private static Coords readCoords(XMLStreamReader reader, boolean fixErrors) throws XMLStreamException {
+        final Coords coords = new Coords();
+        String pointsAttribute = null;
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (getAttributeName(reader, i).equals("points")) {
+                pointsAttribute = reader.getAttributeValue(i);
+            } else {
+                printUnknownAttribute(reader, i);
+            }
+        }
+        // Point elements as used by the 2010 format
+        while (nextChild(reader)) {
+            if (reader.getLocalName().equals("Point")) {
+                String point = readPoint(reader, fixErrors);
+                if (Strings.isNullOrEmpty(point)) {
+                    continue;
+                }
+                if (Strings.isNullOrEmpty(coords.getPoints())) {
+                    coords.setPoints(point);
+                } else {
+                    coords.setPoints((coords.getPoints() + " " + point).trim());
+                }
+                // each point is added twice, as the DOM based reader used to do
+                coords.setPoints((coords.getPoints() + " " + point).trim());
+            } else {
+                skipUnknownElement(reader, "Coords");
+            }
+        }
+        if (pointsAttribute != null) {
+            // yes duplicated to make sure it contains valid points
+            ArrayList<Point> points = StringConverter.stringToPoint(pointsAttribute, fixErrors);
+            String pointsString = StringConverter.pointToString(points);
+            if (!Strings.isNullOrEmpty(pointsString)) {
+                coords.setPoints(pointsString);
+            }
+        }
+        return coords;
+    }
+
+    private static String readPoint(XMLStreamReader reader, boolean fixErrors) throws XMLStreamException {
+        Integer x = null;
+        Integer y = null;
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String name = getAttributeName(reader, i);
+            if (name.equals("x")) {
+                x = Integer.parseInt(reader.getAttributeValue(i));
+            } else if (name.equals("y")) {
+                y = Integer.parseInt(reader.getAttributeValue(i));
+            } else {
+                printUnknownAttribute(reader, i);
+            }
+        }
+        skipElement(reader);
+        if (fixErrors) {
+            if (x < 0) {
+                x = 0;
+            }
+            if (y < 0) {
+                y = 0;
+            }
+        }
+        if (x != null && y != null) {
+            return String.format("%s,%s", x, y);
+        }
+        return "";
+    }
+
+    /**
+     * Reads the children of a region that only contains Coords.
+     */
+    private static void readRegionCoords(XMLStreamReader reader, Region region, String regionName) throws XMLStreamException {
+        while (nextChild(reader)) {
+            if (reader.getLocalName().equals("Coords")) {
+                region.setCoords(readCoords(reader, false));
+            } else {
+                skipUnknownElement(reader, regionName);
+            }
+        }
+    }
+
+    private static PrintSpace readPrintSpace(XMLStreamReader reader) throws XMLStreamException {
+        final PrintSpace printSpace = new PrintSpace();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            switch (getAttributeName(reader, i)) {
+                case "id":
+                    printSpace.setId(value);
+                    break;
+                case "custom":
+                    printSpace.setCustom(value);
+                    break;
+                default:
+                    printUnknownAttribute(reader, i);
+                    break;
+            }
+        }
+        readRegionCoords(reader, printSpace, "PrintSpace");
+        return printSpace;
+    }
+
+    private static Unknown readUnknown(XMLStreamReader reader) throws XMLStreamException {
+        final Unknown unknown = new Unknown();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            switch (getAttributeName(reader, i)) {
+                case "id":
+                    unknown.setId(value);
+                    break;
+                case "custom":
+                    unknown.setCustom(value);
+                    break;
+                default:
+                    printUnknownAttribute(reader, i);
+                    break;
+            }
+        }
+        readRegionCoords(reader, unknown, "Unknown");
+        return unknown;
+    }
+
+    private static GraphicRegion readGraphicRegion(XMLStreamReader reader) throws XMLStreamException {
+        final GraphicRegion graphicRegion = new GraphicRegion();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            switch (getAttributeName(reader, i)) {
+                case "id":
+                    graphicRegion.setId(value);
+                    break;
+                case "custom":
+                    graphicRegion.setCustom(value);
+                    break;
+                case "type":
+                    graphicRegion.setRegionType(value);
+                    break;
+                case "embText":
+                    graphicRegion.setEmbText(Boolean.parseBoolean(value));
+                    break;
+                case "orientation":
+                    graphicRegion.setOrientation(Double.parseDouble(value));
+                    break;
+                case "numColours":
+                    graphicRegion.setNumColours(Integer.parseInt(value));
+                    break;
+                default:
+                    printUnknownAttribute(reader, i);
+                    break;
+            }
+        }
+        readRegionCoords(reader, graphicRegion, "GraphicRegion");
+        return graphicRegion;
+    }
+
+    private static LineDrawingRegion readLineDrawingRegion(XMLStreamReader reader) throws XMLStreamException {
+        final LineDrawingRegion lineDrawingRegion = new LineDrawingRegion();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            switch (getAttributeName(reader, i)) {
+                case "id":
+                    lineDrawingRegion.setId(value);
+                    break;
+                case "embText":
+                    lineDrawingRegion.setEmbText(Boolean.parseBoolean(value));
+                    break;
+                case "penColour":
+                    lineDrawingRegion.setPenColour(value);
+                    break;
+                case "bgColour":
+                    lineDrawingRegion.setBgColour(value);
+                    break;
+                case "orientation":
+                    lineDrawingRegion.setOrientation(Double.parseDouble(value));
+                    break;
+                default:
+                    printUnknownAttribute(reader, i);
+                    break;
+            }
+        }
+        readRegionCoords(reader, lineDrawingRegion, "LineDrawingRegion");
+        return lineDrawingRegion;
+    }
+
+    private static ChartRegion readChartRegion(XMLStreamReader reader) throws XMLStreamException {
+        final ChartRegion chartRegion = new ChartRegion();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            switch (getAttributeName(reader, i)) {
+                case "id":
+                    chartRegion.setId(value);
+                    break;
+                case "type":
+                    chartRegion.setRegionType(value);
+                    break;
+                case "embText":
+                    chartRegion.setEmbText(Boolean.parseBoolean(value));
+                    break;
+                case "orientation":
+                    chartRegion.setOrientation(Double.parseDouble(value));
+                    break;
+                case "numColours":
+                    chartRegion.setNumColours(Integer.parseInt(value));
+                    break;
+                case "bgColour":
+                    chartRegion.setBgColour(value);
+                    break;
+                default:
+                    printUnknownAttribute(reader, i);
+                    break;
+            }
+        }
+        readRegionCoords(reader, chartRegion, "ChartRegion");
+        return chartRegion;
+    }
+
+    private static NoiseRegion readNoiseRegion(XMLStreamReader reader) throws XMLStreamException {
+        final NoiseRegion noiseRegion = new NoiseRegion();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (getAttributeName(reader, i).equals("id")) {
+                noiseRegion.setId(reader.getAttributeValue(i));
+            } else {
+                printUnknownAttribute(reader, i);
+            }
+        }
+        readRegionCoords(reader, noiseRegion, "NoiseRegion");
+        return noiseRegion;
+    }
+
+    private static MathsRegion readMathsRegion(XMLStreamReader reader) throws XMLStreamException {
+        final MathsRegion mathsRegion = new MathsRegion();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            switch (getAttributeName(reader, i)) {
+                case "id":
+                    mathsRegion.setId(value);
+                    break;
+                case "bgColour":
+                    mathsRegion.setBgColour(value);
+                    break;
+                case "orientation":
+                    mathsRegion.setOrientation(Double.parseDouble(value));
+                    break;
+                default:
+                    printUnknownAttribute(reader, i);
+                    break;
+            }
+        }
+        readRegionCoords(reader, mathsRegion, "MathsRegion");
+        return mathsRegion;
+    }
+
+    private static FrameRegion readFrameRegion(XMLStreamReader reader) throws XMLStreamException {
+        final FrameRegion frameRegion = new FrameRegion();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            if (getAttributeName(reader, i).equals("id")) {
+                frameRegion.setId(reader.getAttributeValue(i));
+            } else {
+                printUnknownAttribute(reader, i);
+            }
+        }
+        readRegionCoords(reader, frameRegion, "FrameRegion");
+        return frameRegion;
+    }
+
+    private static TableRegion readTableRegion(XMLStreamReader reader) throws XMLStreamException {
+        final TableRegion tableRegion = new TableRegion();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            switch (getAttributeName(reader, i)) {
+                case "id":
+                    tableRegion.setId(value);
+                    break;
+                case "orientation":
+                    tableRegion.setOrientation(Double.parseDouble(value));
+                    break;
+                case "rows":
+                    tableRegion.setRows(Integer.parseInt(value));
+                    break;
+                case "columns":
+                    tableRegion.setColumns(Integer.parseInt(value));
+                    break;
+                case "lineColour":
+                    tableRegion.setLineColour(value);
+                    break;
+                case "lineSeparators":
+                    tableRegion.setLineSeparators(value);
+                    break;
+                case "embText":
+                    tableRegion.setEmbText(Boolean.parseBoolean(value));
+                    break;
+                case "bgColour":
+                    tableRegion.setBgColour(value);
+                    break;
+                default:
+                    printUnknownAttribute(reader, i);
+                    break;
+            }
+        }
+        readRegionCoords(reader, tableRegion, "TableRegion");
+        return tableRegion;
+    }
+
+    private static ReadingOrder readReadingOrder(XMLStreamReader reader) throws XMLStreamException {
+        final ReadingOrder readingOrder = new ReadingOrder();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            printUnknownAttribute(reader, i);
+        }
+        while (nextChild(reader)) {
+            if (reader.getLocalName().equals("OrderedGroup")) {
+                readingOrder.setOrderedGroup(readOrderedGroup(reader));
+            } else {
+                skipUnknownElement(reader, "ReadingOrder");
+            }
+        }
+        return readingOrder;
+    }
+
+    private static OrderedGroup readOrderedGroup(XMLStreamReader reader) throws XMLStreamException {
+        final OrderedGroup orderedGroup = new OrderedGroup();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            switch (getAttributeName(reader, i)) {
+                case "caption":
+                    orderedGroup.setCaption(value);
+                    break;
+                case "id":
+                    orderedGroup.setId(value);
+                    break;
+                default:
+                    printUnknownAttribute(reader, i);
+                    break;
+            }
+        }
+        while (nextChild(reader)) {
+            if (reader.getLocalName().equals("RegionRefIndexed")) {
+                orderedGroup.getRegionRefIndexedList().add(readRegionRefIndexed(reader));
+            } else {
+                skipUnknownElement(reader, "OrderedGroup");
+            }
+        }
+        return orderedGroup;
+    }
+
+    private static RegionRefIndexed readRegionRefIndexed(XMLStreamReader reader) throws XMLStreamException {
+        final RegionRefIndexed regionRefIndexed = new RegionRefIndexed();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            switch (getAttributeName(reader, i)) {
+                case "index":
+                    regionRefIndexed.setIndex(Integer.parseInt(value));
+                    break;
+                case "regionRef":
+                    regionRefIndexed.setRegionRef(value);
+                    break;
+                default:
+                    printUnknownAttribute(reader, i);
+                    break;
+            }
+        }
+        while (nextChild(reader)) {
+            skipUnknownElement(reader, "RegionRefIndexed");
+        }
+        return regionRefIndexed;
+    }
+
+    private static Border readBorder(XMLStreamReader reader) throws XMLStreamException {
+        final Border border = new Border();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            switch (getAttributeName(reader, i)) {
+                case "id":
+                    border.setId(value);
+                    break;
+                case "custom":
+                    border.setCustom(value);
+                    break;
+                default:
+                    printUnknownAttribute(reader, i);
+                    break;
+            }
+        }
+        readRegionCoords(reader, border, "Border");
+        return border;
+    }
+
+    private static ImageRegion readImageRegion(XMLStreamReader reader) throws XMLStreamException {
+        final ImageRegion imageRegion = new ImageRegion();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            switch (getAttributeName(reader, i)) {
+                case "id":
+                    imageRegion.setId(value);
+                    break;
+                case "orientation":
+                    imageRegion.setOrientation(Double.parseDouble(value));
+                    break;
+                case "colourDepth":
+                    imageRegion.setColourDepth(value);
+                    break;
+                case "bgColour":
+                    imageRegion.setBgColour(value);
+                    break;
+                case "embText":
+                    imageRegion.setEmbText(Boolean.parseBoolean(value));
+                    break;
+                default:
+                    printUnknownAttribute(reader, i);
+                    break;
+            }
+        }
+        readRegionCoords(reader, imageRegion, "ImageRegion");
+        return imageRegion;
+    }
+
+    private static SeparatorRegion readSeparatorRegion(XMLStreamReader reader) throws XMLStreamException {
+        final SeparatorRegion separatorRegion = new SeparatorRegion();
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            final String value = reader.getAttributeValue(i);
+            switch (getAttributeName(reader, i)) {
+                case "id":
+                    separatorRegion.setId(value);
+                    break;
+                case "orientation":
+                    separatorRegion.setOrientation(Double.parseDouble(value));
+                    break;
+                case "colour":
+                    separatorRegion.setColour(value);
+                    break;
+                default:
+                    printUnknownAttribute(reader, i);
+                    break;
+            }
+        }
+        readRegionCoords(reader, separatorRegion, "SeparatorRegion");
+        return separatorRegion;
+    }
+}
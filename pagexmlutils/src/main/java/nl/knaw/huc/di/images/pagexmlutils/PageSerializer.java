@@ -0,0 +1,107 @@
+package nl.knaw.huc.di.images.pagexmlutils;
+
+import com.ctc.wstx.stax.WstxInputFactory;
+import com.ctc.wstx.stax.WstxOutputFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.xml.XmlFactory;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
+import nl.knaw.huc.di.images.layoutds.models.Page.PcGts;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Result;
+import javax.xml.transform.Templates;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Serializes PcGts to PageXML.
+ * The configured writer of each namespace and the compiled 2019 to 2013 transformation are created once and shared by
+ * all threads, both are immutable after creation.
+ */
+public class PageSerializer {
+    private static final ConcurrentHashMap<String, ObjectWriter> writers = new ConcurrentHashMap<>();
+    private static volatile Templates transformTo2013;
+
+    private PageSerializer() {
+    }
+
+    public static String toString(PcGts page, String namespace) throws JsonProcessingException, TransformerException {
+        final ObjectWriter writer = getWriter(namespace);
+        if (PageUtils.NAMESPACE2013.equals(namespace)) {
+            final StringWriter stringWriter = new StringWriter();
+            transformTo2013(writer.writeValueAsBytes(page), new StreamResult(stringWriter));
+            return stringWriter.toString();
+        }
+        return writer.writeValueAsString(page);
+    }
+
+    /**
+     * Writes the page as UTF-8 to the output stream, the stream is not closed.
+     */
+    public static void write(PcGts page, String namespace, OutputStream outputStream) throws IOException, TransformerException {
+        final ObjectWriter writer = getWriter(namespace);
+        if (PageUtils.NAMESPACE2013.equals(namespace)) {
+            transformTo2013(writer.writeValueAsBytes(page), new StreamResult(outputStream));
+        } else {
+            writer.writeValue(outputStream, page);
+        }
+        outputStream.flush();
+    }
+
+    private static ObjectWriter getWriter(String namespace) {
+        // the annotation introspector needs a namespace, even when it is null
+        return writers.computeIfAbsent(String.valueOf(namespace), key -> createWriter(namespace));
+    }
+
+    private static ObjectWriter createWriter(String namespace) {
+        XmlFactory factory = new XmlFactory(new WstxInputFactory(), new WstxOutputFactory());
+        XmlMapper xmlMapper = new XmlMapper(factory);
+        xmlMapper.enable(SerializationFeature.INDENT_OUTPUT);
+        xmlMapper.configure(ToXmlGenerator.Feature.WRITE_XML_DECLARATION, true);
+        xmlMapper.setAnnotationIntrospector(new AnnotationIntrospector(namespace));
+        // the caller owns the output stream
+        xmlMapper.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        return xmlMapper.writer();
+    }
+
+    // the transformation builds a tree of the whole input anyway, so the 2019 page is kept as UTF-8 bytes
+    private static void transformTo2013(byte[] page2019, Result result) throws TransformerException {
+        final Transformer transformer = getTransformTo2013().newTransformer();
+        // pretty print
+        transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+        transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+        transformer.transform(new StreamSource(new ByteArrayInputStream(page2019)), result);
+    }
+
+    private static Templates getTransformTo2013() throws TransformerConfigurationException {
+        Templates templates = transformTo2013;
+        if (templates == null) {
+            synchronized (PageSerializer.class) {
+                templates = transformTo2013;
+                if (templates == null) {
+                    try (InputStream xslt = PageSerializer.class.getResourceAsStream("/transformpage.xslt")) {
+                        templates = TransformerFactory.newInstance().newTemplates(new StreamSource(xslt));
+                    } catch (IOException e) {
+                        throw new TransformerConfigurationException(e);
+                    }
+                    transformTo2013 = templates;
+                }
+            }
+        }
+        return templates;
+    }
+}
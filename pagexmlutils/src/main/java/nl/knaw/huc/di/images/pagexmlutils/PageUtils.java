@@ -1,14 +1,9 @@
 package nl.knaw.huc.di.images.pagexmlutils;
 
-import com.ctc.wstx.stax.WstxInputFactory;
-import com.ctc.wstx.stax.WstxOutputFactory;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.SerializationFeature;
-import com.fasterxml.jackson.dataformat.xml.XmlFactory;
-import com.fasterxml.jackson.dataformat.xml.XmlMapper;
-import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
 import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
+import nl.knaw.huc.di.images.imageanalysiscommon.StageMetrics;
 import nl.knaw.huc.di.images.imageanalysiscommon.StringConverter;
 import nl.knaw.huc.di.images.imageanalysiscommon.UnicodeToAsciiTranslitirator;
 import nl.knaw.huc.di.images.layoutds.models.Page.*;
@@ -17,9 +12,6 @@ import nl.knaw.huc.di.images.stringtools.StringTools;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.checkerframework.checker.units.qual.A;
-import org.joda.time.DateTime;
-import org.joda.time.DateTimeZone;
-import org.joda.time.LocalDateTime;
 import org.opencv.core.Mat;
 import org.opencv.core.Point;
 import org.opencv.imgcodecs.Imgcodecs;
@@ -27,27 +19,18 @@ import org.opencv.imgproc.Imgproc;
 import org.primaresearch.dla.page.io.xml.XmlPageReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.w3c.dom.Document;
-import org.w3c.dom.Node;
 
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
+import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.stream.StreamResult;
-import javax.xml.transform.stream.StreamSource;
 import java.awt.*;
 import java.io.*;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.time.OffsetDateTime;
 import java.util.List;
 import java.util.*;
 
-import static nl.knaw.huc.di.images.stringtools.StringTools.convertStringToXMLDocument;
-
 public class PageUtils {
 
     private static final Logger LOG = LoggerFactory.getLogger(PageUtils.class);
@@ -55,6 +38,8 @@ public class PageUtils {
     public static final String NAMESPACE2013 = "http://schema.primaresearch.org/PAGE/gts/pagecontent/2013-07-15";
     public static final String NAMESPACE2019 = "http://schema.primaresearch.org/PAGE/gts/pagecontent/2019-07-15";
     private static final int BLACK = 0;
+    private static volatile PageValidationPolicy validationPolicy = PageValidationPolicy.always();
+    private static volatile boolean fsync;
 
     public static HashMap<String, Integer> extractRegionTypes(boolean ignoreCase, String baseInput) throws IOException {
         Path inputPath = Paths.get(baseInput);
@@ -233,1360 +218,227 @@ public class PageUtils {
 
                             )
                     ) {
-                        continue;
-                    }
-                    for (TextRegion textRegion : page.getPage().getTextRegions()) {
-                        String type = getTextRegionType(textRegion);
-                        if (searchType.equalsIgnoreCase(type)) {
-                            System.out.println(searchType + ": " + file.getFileName());
-                        }
-                    }
-                }
-            }
-        }
-    }
-
-    public static String convertPcGtsToString(PcGts page, String namespace) throws JsonProcessingException, TransformerException {
-        XmlFactory factory = new XmlFactory(new WstxInputFactory(), new WstxOutputFactory());
-        XmlMapper xmlMapper = new XmlMapper(factory);
-//        XmlMapper xmlMapper = new XmlMapper();
-        xmlMapper.enable(SerializationFeature.INDENT_OUTPUT);
-        xmlMapper.configure(ToXmlGenerator.Feature.WRITE_XML_DECLARATION, true);
-        xmlMapper.setAnnotationIntrospector(new AnnotationIntrospector(namespace));
-
-        // Transform page to 2013 when namespace is 2013
-        if (PageUtils.NAMESPACE2013.equals(namespace)) {
-            final StreamSource xsltSource = new StreamSource(PageUtils.class.getResourceAsStream("/transformpage.xslt"));
-            final TransformerFactory transformerFactory = TransformerFactory.newInstance();
-            final Transformer transformer = transformerFactory.newTransformer(xsltSource);
-            // pretty print
-            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
-            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
-            String pageString = xmlMapper.writeValueAsString(page);
-            final StreamSource pageSource = new StreamSource(new StringReader(pageString));
-            final StringWriter stringWriter = new StringWriter();
-            final StreamResult streamResult = new StreamResult(stringWriter);
-            transformer.transform(pageSource, streamResult);
-
-            return stringWriter.toString();
-
-        }
-        return xmlMapper.writeValueAsString(page);
-    }
-
-    private static void fixPageXML(PcGts page) {
-        page.getMetadata().setTranskribusMetadata(null);
-    }
-
-    public static String convertAndValidate(PcGts page, String namespace) throws JsonProcessingException, TransformerException {
-        fixPageXML(page);
-        final String pageString = convertPcGtsToString(page, namespace);
-        try {
-            XmlPageReader reader = PageValidator.validate(pageString);
-            if (!reader.getErrors().isEmpty()) {
-                System.err.println("Errors " + page.getPage().getImageFilename() + ": " + reader.getErrors().size());
-                System.err.println("Errors " + page.getPage().getImageFilename() + ": " + reader.getErrors().size());
-                for (org.primaresearch.io.xml.IOError error : reader.getErrors()) {
-                    System.err.println(error.getMessage());
-                }
-                throw new RuntimeException("Page is not valid");
-            }
-        } catch (Exception ex) {
-            System.err.println("Exception: " + ex.getMessage());
-            System.err.println(pageString);
-            throw ex;
-        }
-        return pageString;
-    }
-
-    public static void writePageToFileAtomic(PcGts page, String namespace, Path outputFile) throws
-            IOException, TransformerException {
-        final String pageString = convertAndValidate(page, namespace);
-        StringTools.writeFileAtomic(outputFile.toFile().getAbsolutePath(), pageString, false);
-    }
-
-    public static void writePageToFile(PcGts page, String namespace, Path outputFile) throws
-            IOException, TransformerException {
-        page.getMetadata().setTranskribusMetadata(null);
-        final String pageString = convertAndValidate(page, namespace);
-        StringTools.writeFile(outputFile.toFile().getAbsolutePath(), pageString, false);
-    }
-
-    public static PcGts readPageFromString(String pageXmlString) {
-        return readPageFromString(pageXmlString, false);
-    }
-
-    public static PcGts readPageFromString(String pageXmlString, boolean ignoreErrors) {
-        Document document = convertStringToXMLDocument(pageXmlString);
-        if (document == null) {
-            return null;
-        }
-        Node documentElement = document.getFirstChild();
-
-        PcGts pcGts = new PcGts();
-
-        for (int i = 0; i < documentElement.getChildNodes().getLength(); i++) {
-            Node node = documentElement.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("Metadata")) {
-                pcGts.setMetadata(getMetaData(node));
-            } else if (node.getNodeName().equals("Page")) {
-                pcGts.setPage(getPage(node, ignoreErrors));
-            } else {
-                System.out.println(documentElement.getNodeName() + " - " + node.getNodeName());
-            }
-        }
-        return pcGts;
-    }
-
-    public static PcGts readPageFromFile(String path) throws IOException {
-        String pageXmlString = StringTools.readFile(path);
-        return readPageFromString(pageXmlString);
-    }
-
-    public static PcGts readPageFromFile(Path path) throws IOException {
-        return readPageFromFile(path, false);
-    }
-
-    public static PcGts readPageFromFile(Path path, boolean ignoreErrors) throws IOException {
-        String pageXmlString = StringTools.readFile(path);
-        return readPageFromString(pageXmlString, ignoreErrors);
-    }
-
-    private static Date getDate(Node node) {
-        Date date = null;
-        if (Strings.isNullOrEmpty(node.getTextContent())) {
-            return null;
-        }
-        try {
-            // Should never happen, PAGE XML should only contain UTC times
-            OffsetDateTime offsetDateTime = OffsetDateTime.parse(node.getTextContent());
-            long epochMilli = offsetDateTime.toInstant().toEpochMilli();
-            date = new Date(epochMilli);
-        } catch (Exception ex) {
-            try {
-                DateTime dateTime = new DateTime(node.getTextContent(), DateTimeZone.UTC);
-                date = dateTime.toDate();
-            } catch (Exception subEx) {
-                try {
-                    LocalDateTime localDateTime = LocalDateTime.parse(node.getTextContent());
-                    date = localDateTime.toDate(TimeZone.getDefault());
-                } catch (Exception subSubEx) {
-                }
-            }
-        }
-
-        return date;
-    }
-
-    private static Metadata getMetaData(Node parent) {
-        Metadata metadata = new Metadata();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            switch (node.getNodeName()) {
-                case "LastChange":
-                    metadata.setLastChange(getDate(node));
-                    break;
-                case "Creator":
-                    metadata.setCreator(node.getTextContent());
-                    break;
-                case "Created":
-                    metadata.setCreated(getDate(node));
-                    break;
-                case "TranskribusMetadata":
-                    metadata.setTranskribusMetadata(getTranskribusMetadata(node));
-                    break;
-                case "Comments":
-                    metadata.setComments(node.getTextContent());
-                    break;
-                case "MetadataItem":
-                    if (metadata.getMetadataItems() == null) {
-                        metadata.setMetadataItems(new ArrayList<>());
-                    }
-                    metadata.getMetadataItems().add(getMetadataItem(node));
-                    break;
-
-
-                default:
-                    System.out.println(parent.getNodeName() + " - " + node.getNodeName() + " - " + node.getNodeValue());
-                    break;
-            }
-        }
-        return metadata;
-    }
-
-    private static MetadataItem getMetadataItem(Node parent) {
-        MetadataItem metadataItem = new MetadataItem();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-
-            switch (node.getNodeName()) {
-                case "Labels":
-                    metadataItem.setLabels(getLabels(node));
-                    break;
-                default:
-                    System.out.println(parent.getNodeName() + " - " + node.getNodeName() + " - " + node.getNodeValue());
-                    break;
-            }
-        }
-
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            switch (attribute.getNodeName()) {
-                case "type":
-                    metadataItem.setType(attribute.getNodeValue());
-                    break;
-                case "name":
-                    metadataItem.setName(attribute.getNodeValue());
-                    break;
-                case "value":
-                    metadataItem.setValue(attribute.getNodeValue());
-                    break;
-                default:
-                    System.out.println("attrib: " + attribute.getNodeName());
-                    break;
-            }
-
-        }
-        return metadataItem;
-    }
-
-    private static Labels getLabels(Node parent) {
-        Labels labels = new Labels();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-
-            switch (node.getNodeName()) {
-                case "Label":
-                    if (labels.getLabel() == null) {
-                        labels.setLabel(new ArrayList<>());
-                    }
-                    labels.getLabel().add(getLabel(node));
-                    break;
-                default:
-                    System.out.println(parent.getNodeName() + " - " + node.getNodeName() + " - " + node.getNodeValue());
-                    break;
-            }
-        }
-
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            switch (attribute.getNodeName()) {
-                default:
-                    System.out.println("attrib: " + attribute.getNodeName());
-                    break;
-            }
-
-        }
-        return labels;
-    }
-
-    private static Label getLabel(Node parent) {
-        Label label = new Label();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-
-            switch (node.getNodeName()) {
-                default:
-                    System.out.println(parent.getNodeName() + " - " + node.getNodeName() + " - " + node.getNodeValue());
-                    break;
-            }
-        }
-
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            switch (attribute.getNodeName()) {
-                case "value":
-                    label.setValue(attribute.getNodeValue());
-                    break;
-                case "type":
-                    label.setType(attribute.getNodeValue());
-                    break;
-                case "comments":
-                    label.setComments(attribute.getNodeValue());
-                    break;
-                default:
-                    System.out.println("attrib: " + attribute.getNodeName());
-                    break;
-            }
-        }
-        return label;
-
-
-    }
-
-    private static TranskribusMetadata getTranskribusMetadata(Node parent) {
-        TranskribusMetadata transkribusMetadata = new TranskribusMetadata();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-
-            System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-        }
-
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            switch (attribute.getNodeName()) {
-                case "docId":
-                    transkribusMetadata.setDocId(Integer.parseInt(attribute.getNodeValue()));
-                    break;
-                case "imageId":
-                    transkribusMetadata.setImageId(Integer.parseInt(attribute.getNodeValue()));
-                    break;
-                case "imgUrl":
-                    transkribusMetadata.setImgUrl(attribute.getNodeValue());
-                    break;
-                case "pageId":
-                    transkribusMetadata.setPageId(Integer.parseInt(attribute.getNodeValue()));
-                    break;
-                case "pageNr":
-                    transkribusMetadata.setPageNr(Integer.parseInt(attribute.getNodeValue()));
-                    break;
-                case "status":
-                    transkribusMetadata.setStatus(attribute.getNodeValue());
-                    break;
-                case "tsid":
-                    transkribusMetadata.setTsid(Integer.parseInt(attribute.getNodeValue()));
-                    break;
-                case "userId":
-                    transkribusMetadata.setUserId(Integer.parseInt(attribute.getNodeValue()));
-                    break;
-                case "xmlUrl":
-                    transkribusMetadata.setXmlUrl(attribute.getNodeValue());
-                    break;
-                default:
-                    System.out.println("attrib: " + attribute.getNodeName());
-                    break;
-            }
-
-        }
-        return transkribusMetadata;
-    }
-
-    private static TextRegion getTextRegion(Node parent) {
-        return getTextRegion(parent, false);
-    }
-
-    private static TextRegion getTextRegion(Node parent, boolean fixErrors) {
-        TextRegion textRegion = new TextRegion();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            switch (node.getNodeName()) {
-                case "Coords":
-                    textRegion.setCoords(getCoords(node));
-                    break;
-                case "TextLine":
-                    textRegion.getTextLines().add(getTextLine(node, fixErrors));
-
-                    break;
-                case "TextEquiv":
-                    textRegion.setTextEquiv(getTextEquiv(node));
-                    break;
-                default:
-                    System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-                    break;
-            }
-        }
-
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            switch (attribute.getNodeName()) {
-                case "id":
-                    textRegion.setId(attribute.getNodeValue());
-                    break;
-                case "custom":
-                    textRegion.setCustom(attribute.getNodeValue());
-                    break;
-                case "type":
-                    textRegion.setRegionType(attribute.getNodeValue());
-                    break;
-                case "orientation":
-                    textRegion.setOrientation(Double.parseDouble(attribute.getNodeValue()));
-                    break;
-                case "readingDirection":
-                    textRegion.setReadingDirection(attribute.getNodeValue());
-                    break;
-                case "textColour":
-                    textRegion.setTextColour(attribute.getNodeValue());
-                    break;
-                case "bgColour":
-                    textRegion.setBgColour(attribute.getNodeValue());
-                    break;
-                case "reverseVideo":
-                    textRegion.setReverseVideo(Boolean.parseBoolean(attribute.getNodeValue()));
-                    break;
-                case "readingOrientation":
-                    textRegion.setReadingOrientation(Double.parseDouble(attribute.getNodeValue()));
-                    break;
-                case "indented":
-                    textRegion.setIndented(Boolean.parseBoolean(attribute.getNodeValue()));
-                    break;
-                case "primaryLanguage":
-                    switch (attribute.getNodeValue()) {
-                        case "nl":
-                            textRegion.setPrimaryLanguage("Dutch");
-                            break;
-                        case "en":
-                            textRegion.setPrimaryLanguage("English");
-                            break;
-                        case "fr":
-                            textRegion.setPrimaryLanguage("French");
-                            break;
-                        case "it":
-                            textRegion.setPrimaryLanguage("Italian");
-                            break;
-                        case "de":
-                            textRegion.setPrimaryLanguage("German");
-                            break;
-                        case "la":
-                            textRegion.setPrimaryLanguage("Latin");
-                            break;
-                        default:
-                            textRegion.setPrimaryLanguage(attribute.getNodeValue());
-                            break;
-                    }
-                    break;
-                case "primaryScript":
-                    switch (attribute.getNodeValue()) {
-                        case "Dutch":
-                        case "English":
-                        case "French":
-                        case "Italian":
-                        case "German":
-                        case "nl":
-                        case "en":
-                        case "fr":
-                        case "it":
-                        case "la":
-                        case "de":
-                            textRegion.setPrimaryScript("Latin");
-                            break;
-                        default:
-                            textRegion.setPrimaryScript(attribute.getNodeValue());
-                            break;
-                    }
-                    break;
-                default:
-                    System.out.println("TextRegion attrib: " + attribute.getNodeName());
-                    break;
-            }
-        }
-        return textRegion;
-    }
-
-    private static TextLine getTextLine(Node parent) {
-        return getTextLine(parent, false);
-    }
-
-    private static TextLine getTextLine(Node parent, boolean fixErrors) {
-        TextLine textLine = new TextLine();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            switch (node.getNodeName()) {
-                case "Coords":
-                    textLine.setCoords(getCoords(node));
-                    break;
-                case "Baseline":
-                    textLine.setBaseline(getBaseline(node));
-                    break;
-                case "TextEquiv":
-                    textLine.setTextEquiv(getTextEquiv(node));
-                    break;
-                case "Word":
-                    if (textLine.getWords() == null) {
-                        textLine.setWords(new ArrayList<>());
-                    }
-                    textLine.getWords().add(getWord(node, fixErrors));
-                    break;
-                case "TextStyle":
-                    textLine.setTextStyle(getTextStyle(node));
-                    break;
-                default:
-                    System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-                    break;
-            }
-        }
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            switch (attribute.getNodeName()) {
-                case "id":
-                    textLine.setId(attribute.getNodeValue());
-                    break;
-                case "custom":
-                    textLine.setCustom(attribute.getNodeValue());
-                    break;
-                case "primaryLanguage":
-                    switch (attribute.getNodeValue()) {
-                        case "nl":
-                            textLine.setPrimaryLanguage("Dutch");
-                            break;
-                        case "en":
-                            textLine.setPrimaryLanguage("English");
-                            break;
-                        case "fr":
-                            textLine.setPrimaryLanguage("French");
-                            break;
-                        case "it":
-                            textLine.setPrimaryLanguage("Italian");
-                            break;
-                        case "de":
-                            textLine.setPrimaryLanguage("German");
-                            break;
-                        case "la":
-                            textLine.setPrimaryLanguage("Latin");
-                            break;
-                        default:
-                            textLine.setPrimaryLanguage(attribute.getNodeValue());
-                            break;
-                    }
-                    break;
-                default:
-                    System.out.println("TextLine attrib: " + attribute.getNodeName());
-                    break;
-            }
-        }
-
-        return textLine;
-    }
-
-    private static TextStyle getTextStyle(Node parent) {
-        TextStyle textStyle = new TextStyle();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-        }
-
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-
-            switch (attribute.getNodeName()) {
-                case "xHeight":
-                    textStyle.setxHeight(Integer.parseInt(attribute.getNodeValue()));
-                    break;
-                default:
-                    System.out.println("attrib: " + attribute.getNodeName());
-                    break;
-            }
-
-        }
-        return textStyle;
-    }
-
-    private static Word getWord(Node parent) {
-        return getWord(parent, false);
-    }
-
-    private static Word getWord(Node parent, boolean fixErrors) {
-        Word word = new Word();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            switch (node.getNodeName()) {
-                case "Coords":
-                    word.setCoords(getCoords(node, fixErrors));
-                    break;
-                case "TextEquiv":
-                    word.setTextEquiv(getTextEquiv(node));
-                    break;
-                case "TextStyle":
-                    word.setTextStyle(getTextStyle(node));
-                    break;
-                default:
-                    System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-                    break;
-            }
-        }
-
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            if (attribute.getNodeName().equals("id")) {
-                word.setId(attribute.getNodeValue());
-            } else {
-                System.out.println("attrib: " + attribute.getNodeName());
-            }
-        }
-        return word;
-    }
-
-    private static TextEquiv getTextEquiv(Node parent) {
-        TextEquiv textEquiv = new TextEquiv();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("Unicode")) {
-                textEquiv.setUnicode(node.getTextContent());
-            } else if (node.getNodeName().equals("PlainText")) {
-                textEquiv.setPlainText(UNICODE_TO_ASCII_TRANSLITIRATOR.toAscii(node.getTextContent()));
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-            }
-        }
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            if (attribute.getNodeName().equals("conf")) {
-                textEquiv.setConf(attribute.getNodeValue());
-            } else {
-                System.out.println("attrib: " + attribute.getNodeName());
-            }
-        }
-
-        if (textEquiv.getPlainText() == null && textEquiv.getUnicode() == null) {
-            return null;
-        }
-        return textEquiv;
-    }
-
-    private static Baseline getBaseline(Node parent) {
-        Baseline baseline = new Baseline();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("Points")) {
-                baseline.setPoints(node.getTextContent());
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-            }
-        }
-
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            if (attribute.getNodeName().equals("points")) {
-                baseline.setPoints(attribute.getNodeValue());
-            } else {
-                System.out.println("attrib: " + attribute.getNodeName());
-            }
-        }
-
-        return baseline;
-
-    }
-
-    private static Coords getCoords(Node parent) {
-        return getCoords(parent, false);
-    }
-
-
-    private static Coords getCoords(Node parent, boolean fixErrors) {
-        Coords coords = new Coords();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-
-            if (node.getNodeName().equals("Point")) {
-                String point = getPoint(node, fixErrors);
-                if (Strings.isNullOrEmpty(point)) {
-                    continue;
-                }
-                if (Strings.isNullOrEmpty(coords.getPoints())) {
-                    coords.setPoints(point);
-                } else {
-                    coords.setPoints((coords.getPoints() + " " + point).trim());
-                }
-                coords.setPoints((coords.getPoints() + " " + getPoint(node, fixErrors)).trim());
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-            }
-        }
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            if (attribute.getNodeName().equals("points")) {
-                // yes duplicated to make sure it contains valid points
-                ArrayList<Point> points = StringConverter.stringToPoint(attribute.getNodeValue(), fixErrors);
-                String pointsString = StringConverter.pointToString(points);
-                if (!Strings.isNullOrEmpty(pointsString)) {
-                    coords.setPoints(pointsString);
+                        continue;
+                    }
+                    for (TextRegion textRegion : page.getPage().getTextRegions()) {
+                        String type = getTextRegionType(textRegion);
+                        if (searchType.equalsIgnoreCase(type)) {
+                            System.out.println(searchType + ": " + file.getFileName());
+                        }
+                    }
                 }
-
-            } else {
-                System.out.println("attrib: " + attribute.getNodeName());
             }
         }
-
-        return coords;
     }
 
-    private static String getPoint(Node point, boolean fixErrors) {
-        Integer x = null;
-        Integer y = null;
-        for (int i = 0; i < point.getAttributes().getLength(); i++) {
-            Node attribute = point.getAttributes().item(i);
-            if (attribute.getNodeName().equals("x")) {
-                x = Integer.parseInt(attribute.getNodeValue());
-            } else if (attribute.getNodeName().equals("y")) {
-                y = Integer.parseInt(attribute.getNodeValue());
-            } else {
-                System.out.println("attrib: " + attribute.getNodeName());
-            }
-        }
-        if (fixErrors) {
-            if (x < 0) {
-                x = 0;
-            }
-            if (y < 0) {
-                y = 0;
-            }
-        }
-        if (x != null && y != null) {
-            return String.format("%s,%s", x, y);
-        }
-        return "";
+    public static String convertPcGtsToString(PcGts page, String namespace) throws JsonProcessingException, TransformerException {
+        return PageSerializer.toString(page, namespace);
     }
 
-    private static void addRegionToReadingOrder(OrderedGroup orderedGroup, int readingOrderCount, String
-            regionRef) {
-        RegionRefIndexed regionRefIndexed = new RegionRefIndexed();
-        regionRefIndexed.setIndex(readingOrderCount);
-        readingOrderCount++;
-        regionRefIndexed.setRegionRef(regionRef);
-        orderedGroup.getRegionRefIndexedList().add(regionRefIndexed);
-
+    private static void fixPageXML(PcGts page) {
+        page.getMetadata().setTranskribusMetadata(null);
     }
 
-    private static Page getPage(Node parent) {
-        return getPage(parent, false);
+    /**
+     * Sets the validation policy used by convertAndValidate and the writePageToFile methods, the default is to
+     * validate every page.
+     */
+    public static void setValidationPolicy(PageValidationPolicy validationPolicy) {
+        PageUtils.validationPolicy = validationPolicy;
     }
 
-    private static Page getPage(Node parent, boolean fixErrors) {
-        Page page = new Page();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            switch (node.getNodeName()) {
-                case "TextRegion":
-                    TextRegion textRegion = getTextRegion(node, fixErrors);
-                    page.getTextRegions().add(textRegion);
-//                addRegionToReadingOrder(readingOrder.getOrderedGroup(), readingOrderCount++, textRegion.getId());
-                    break;
-                case "ImageRegion":
-                    ImageRegion imageRegion = getImageRegion(node);
-                    page.getImageRegions().add(imageRegion);
-//                addRegionToReadingOrder(readingOrder.getOrderedGroup(), readingOrderCount++, imageRegion.getId());
-                    break;
-                case "SeparatorRegion":
-                    SeparatorRegion separatorRegion = getSeparatorRegion(node);
-                    page.getSeparatorRegions().add(separatorRegion);
-//                addRegionToReadingOrder(readingOrder.getOrderedGroup(), readingOrderCount++, separatorRegion.getId());
-                    break;
-                case "Border":
-                    page.setBorder(getBorder(node));
-                    break;
-                case "GraphicRegion":
-                    GraphicRegion graphicRegion = getGraphicRegion(node);
-                    page.getGraphicRegions().add(graphicRegion);
-//                addRegionToReadingOrder(readingOrder.getOrderedGroup(), readingOrderCount++, graphicRegion.getId());
-                    break;
-                case "LineDrawingRegion":
-                    LineDrawingRegion lineDrawingRegion = getLineDrawingRegion(node);
-                    page.getLineDrawingRegions().add(lineDrawingRegion);
-//                addRegionToReadingOrder(readingOrder.getOrderedGroup(), readingOrderCount++, lineDrawingRegion.getId());
-                    break;
-                case "ChartRegion":
-                    ChartRegion chartRegion = getChartRegion(node);
-                    page.getChartRegions().add(chartRegion);
-//                addRegionToReadingOrder(readingOrder.getOrderedGroup(), readingOrderCount++, chartRegion.getId());
-                    break;
-                case "NoiseRegion":
-                    NoiseRegion noiseRegion = getNoiseRegion(node);
-                    page.getNoiseRegions().add(noiseRegion);
-//                addRegionToReadingOrder(readingOrder.getOrderedGroup(), readingOrderCount++, noiseRegion.getId());
-                    break;
-                case "MathsRegion":
-                    MathsRegion mathsRegion = getMathsRegion(node);
-                    page.getMathsRegions().add(mathsRegion);
-//                addRegionToReadingOrder(readingOrder.getOrderedGroup(), readingOrderCount++, mathsRegion.getId());
-                    break;
-                case "TableRegion":
-                    TableRegion tableRegion = getTableRegion(node);
-                    page.getTableRegions().add(tableRegion);
-//                addRegionToReadingOrder(readingOrder.getOrderedGroup(), readingOrderCount++, tableRegion.getId());
-                    break;
-                case "FrameRegion":
-                    FrameRegion frameRegion = getFrameRegion(node);
-                    page.getFrameRegions().add(frameRegion);
-//                addRegionToReadingOrder(readingOrder.getOrderedGroup(), readingOrderCount++, frameRegion.getId());
-                    break;
-                case "ReadingOrder":
-                    page.setReadingOrder(getReadingOrder(node));
-                    break;
-                case "Unknown":
-                    page.getUnknowns().add(getUnknown(node));
-                    break;
-                case "PrintSpace":
-                    page.setPrintSpace(getPrintSpace(node));
-                    break;
-                default:
-                    System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-                    break;
-            }
-        }
-//        if (page.getReadingOrder() == null) {
-//            page.setReadingOrder(readingOrder);
-//        }
-//        imageFilename="cPAS-0409.jpg" imageWidth="2512" imageHeight="4096">
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            switch (attribute.getNodeName()) {
-                case "imageFilename":
-                    page.setImageFilename(attribute.getNodeValue());
-                    break;
-                case "imageWidth":
-                    page.setImageWidth(Integer.parseInt(attribute.getNodeValue()));
-                    break;
-                case "imageHeight":
-                    page.setImageHeight(Integer.parseInt(attribute.getNodeValue()));
-                    break;
-                case "type":
-                    page.setPageType(attribute.getNodeValue());
-                    break;
-                case "primaryLanguage":
-                    switch (attribute.getNodeValue()) {
-                        case "nl":
-                            page.setPrimaryLanguage("Dutch");
-                            break;
-                        case "en":
-                            page.setPrimaryLanguage("English");
-                            break;
-                        case "fr":
-                            page.setPrimaryLanguage("French");
-                            break;
-                        case "it":
-                            page.setPrimaryLanguage("Italian");
-                            break;
-                        case "de":
-                            page.setPrimaryLanguage("German");
-                            break;
-                        case "la":
-                            page.setPrimaryLanguage("Latin");
-                            break;
-                        default:
-                            page.setPrimaryLanguage(attribute.getNodeValue());
-                            break;
-                    }
-                    break;
-                default:
-                    System.out.println("Page attrib: " + attribute.getNodeName());
-                    break;
-            }
-        }
-        return page;
+    public static PageValidationPolicy getValidationPolicy() {
+        return validationPolicy;
     }
 
-    private static PrintSpace getPrintSpace(Node parent) {
-        PrintSpace printSpace = new PrintSpace();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("Coords")) {
-                printSpace.setCoords(getCoords(node));
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-            }
-        }
-
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            if (attribute.getNodeName().equals("id")) {
-                printSpace.setId(attribute.getNodeValue());
-            } else if (attribute.getNodeName().equals("custom")) {
-                printSpace.setCustom(attribute.getNodeValue());
-            } else {
-                System.out.println("attrib: " + attribute.getNodeName());
-            }
-        }
-        return printSpace;
-
+    /**
+     * When true writePageToFileAtomic flushes the page and its directory to disk before it returns, so the page
+     * survives a crash of the machine. The default is false.
+     */
+    public static void setFsync(boolean fsync) {
+        PageUtils.fsync = fsync;
     }
 
-    private static Unknown getUnknown(Node parent) {
-        Unknown unknown = new Unknown();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("Coords")) {
-                unknown.setCoords(getCoords(node));
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-            }
-        }
-
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            if (attribute.getNodeName().equals("id")) {
-                unknown.setId(attribute.getNodeValue());
-            } else if (attribute.getNodeName().equals("custom")) {
-                unknown.setCustom(attribute.getNodeValue());
-            } else {
-                System.out.println("attrib: " + attribute.getNodeName());
-            }
-        }
-        return unknown;
+    public static boolean isFsync() {
+        return fsync;
     }
 
-    private static GraphicRegion getGraphicRegion(Node parent) {
-        GraphicRegion graphicRegion = new GraphicRegion();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("Coords")) {
-                graphicRegion.setCoords(getCoords(node));
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-            }
-        }
-
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            switch (attribute.getNodeName()) {
-                case "id":
-                    graphicRegion.setId(attribute.getNodeValue());
-                    break;
-                case "custom":
-                    graphicRegion.setCustom(attribute.getNodeValue());
-                    break;
-                case "type":
-                    graphicRegion.setRegionType(attribute.getNodeValue());
-                    break;
-                case "embText":
-                    graphicRegion.setEmbText(Boolean.parseBoolean(attribute.getNodeValue()));
-                    break;
-                case "orientation":
-                    graphicRegion.setOrientation(Double.parseDouble(attribute.getNodeValue()));
-                    break;
-                case "numColours":
-                    graphicRegion.setNumColours(Integer.parseInt(attribute.getNodeValue()));
-                    break;
-                default:
-                    System.out.println("attrib: " + attribute.getNodeName());
-                    break;
-            }
-        }
-        return graphicRegion;
+    public static String convertAndValidate(PcGts page, String namespace) throws JsonProcessingException, TransformerException {
+        return convertAndValidate(page, namespace, validationPolicy);
     }
 
-    private static LineDrawingRegion getLineDrawingRegion(Node parent) {
-        LineDrawingRegion lineDrawingRegion = new LineDrawingRegion();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("Coords")) {
-                lineDrawingRegion.setCoords(getCoords(node));
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-            }
+    public static String convertAndValidate(PcGts page, String namespace, PageValidationPolicy validationPolicy)
+            throws JsonProcessingException, TransformerException {
+        fixPageXML(page);
+        final String pageString = serialize(page, namespace, validationPolicy);
+        if (validationPolicy.shouldValidate()) {
+            validateSerialized(page, pageString, validationPolicy);
         }
+        return pageString;
+    }
 
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            switch (attribute.getNodeName()) {
-                case "id":
-                    lineDrawingRegion.setId(attribute.getNodeValue());
-                    break;
-                case "embText":
-                    lineDrawingRegion.setEmbText(Boolean.parseBoolean(attribute.getNodeValue()));
-                    break;
-                case "penColour":
-                    lineDrawingRegion.setPenColour(attribute.getNodeValue());
-                    break;
-                case "bgColour":
-                    lineDrawingRegion.setBgColour(attribute.getNodeValue());
-                    break;
-                case "orientation":
-                    lineDrawingRegion.setOrientation(Double.parseDouble(attribute.getNodeValue()));
-                    break;
-                default:
-                    System.out.println("attrib: " + attribute.getNodeName());
-                    break;
+    private static String serialize(PcGts page, String namespace, PageValidationPolicy validationPolicy)
+            throws JsonProcessingException, TransformerException {
+        try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.SERIALIZE)) {
+            return convertPcGtsToString(page, namespace);
+        } catch (JsonProcessingException | TransformerException | RuntimeException e) {
+            if (validationPolicy.validateOnError()) {
+                validateAfterError(page, validationPolicy);
             }
+            throw e;
         }
-        return lineDrawingRegion;
     }
 
-
-    private static ChartRegion getChartRegion(Node parent) {
-        ChartRegion chartRegion = new ChartRegion();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("Coords")) {
-                chartRegion.setCoords(getCoords(node));
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
+    // a page that is not validated is not needed as a string, it is written while it is serialized
+    private static void stream(PcGts page, String namespace, OutputStream outputStream,
+                               PageValidationPolicy validationPolicy) throws IOException, TransformerException {
+        // serializing and writing are one step, timed as the serialization
+        try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.SERIALIZE)) {
+            PageSerializer.write(page, namespace, outputStream);
+        } catch (JsonProcessingException | TransformerException | RuntimeException e) {
+            if (validationPolicy.validateOnError()) {
+                validateAfterError(page, validationPolicy);
             }
+            throw e;
         }
+    }
 
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            switch (attribute.getNodeName()) {
-                case "id":
-                    chartRegion.setId(attribute.getNodeValue());
-                    break;
-                case "type":
-                    chartRegion.setRegionType(attribute.getNodeValue());
-                    break;
-                case "embText":
-                    chartRegion.setEmbText(Boolean.parseBoolean(attribute.getNodeValue()));
-                    break;
-                case "orientation":
-                    chartRegion.setOrientation(Double.parseDouble(attribute.getNodeValue()));
-                    break;
-                case "numColours":
-                    chartRegion.setNumColours(Integer.parseInt(attribute.getNodeValue()));
-                    break;
-                case "bgColour":
-                    chartRegion.setBgColour(attribute.getNodeValue());
-                    break;
-                default:
-                    System.out.println("attrib: " + attribute.getNodeName());
-                    break;
-            }
+    private static void validateSerialized(PcGts page, String pageString, PageValidationPolicy validationPolicy) {
+        try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.VALIDATE)) {
+            validate(page, pageString, validationPolicy);
         }
-        return chartRegion;
     }
 
-    private static NoiseRegion getNoiseRegion(Node parent) {
-        NoiseRegion noiseRegion = new NoiseRegion();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("Coords")) {
-                noiseRegion.setCoords(getCoords(node));
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
+    private static void validate(PcGts page, String pageString, PageValidationPolicy validationPolicy) {
+        try {
+            XmlPageReader reader = PageValidator.read(pageString);
+            validationPolicy.recordValidation(reader.getErrors().size(), reader.getWarnings().size());
+            if (!reader.getErrors().isEmpty()) {
+                LOG.error("Errors {}: {}", page.getPage().getImageFilename(), reader.getErrors().size());
+                for (org.primaresearch.io.xml.IOError error : reader.getErrors()) {
+                    LOG.error(error.getMessage());
+                }
+                throw new RuntimeException("Page is not valid");
             }
+        } catch (Exception ex) {
+            LOG.error("Exception: {}", ex.getMessage());
+            LOG.debug(pageString);
+            throw ex;
         }
+    }
 
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            if (attribute.getNodeName().equals("id")) {
-                noiseRegion.setId(attribute.getNodeValue());
-            } else {
-                System.out.println("attrib: " + attribute.getNodeName());
-            }
+    // the 2013 transformation failed or the page could not be serialized at all, report what is wrong with the page
+    private static void validateAfterError(PcGts page, PageValidationPolicy validationPolicy) {
+        try {
+            validate(page, convertPcGtsToString(page, NAMESPACE2019), validationPolicy);
+        } catch (Exception e) {
+            LOG.error("Could not validate page {}", page.getPage().getImageFilename(), e);
         }
-        return noiseRegion;
     }
 
-    private static MathsRegion getMathsRegion(Node parent) {
-        MathsRegion mathsRegion = new MathsRegion();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("Coords")) {
-                mathsRegion.setCoords(getCoords(node));
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-            }
+    /**
+     * Writes the page to a temporary file that is moved in place. A page the validation policy skips is streamed to
+     * the temporary file, a page that is validated is serialized to a string first, so an invalid page is not written.
+     */
+    public static void writePageToFileAtomic(PcGts page, String namespace, Path outputFile) throws
+            IOException, TransformerException {
+        final PageValidationPolicy validationPolicy = PageUtils.validationPolicy;
+        fixPageXML(page);
+        if (!validationPolicy.shouldValidate()) {
+            StringTools.writeFileAtomic(outputFile, outputStream -> stream(page, namespace, outputStream,
+                    validationPolicy), fsync);
+            return;
         }
-
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            switch (attribute.getNodeName()) {
-                case "id":
-                    mathsRegion.setId(attribute.getNodeValue());
-                    break;
-                case "bgColour":
-                    mathsRegion.setBgColour(attribute.getNodeValue());
-                    break;
-                case "orientation":
-                    mathsRegion.setOrientation(Double.parseDouble(attribute.getNodeValue()));
-                    break;
-                default:
-                    System.out.println("attrib: " + attribute.getNodeName());
-                    break;
-            }
+        final String pageString = serialize(page, namespace, validationPolicy);
+        validateSerialized(page, pageString, validationPolicy);
+        try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.WRITE)) {
+            StringTools.writeFileAtomic(outputFile.toFile().getAbsolutePath(), pageString, false, fsync);
         }
-        return mathsRegion;
     }
 
-    private static FrameRegion getFrameRegion(Node parent) {
-        FrameRegion frameRegion = new FrameRegion();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("Coords")) {
-                frameRegion.setCoords(getCoords(node));
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
+    /**
+     * As {@link #writePageToFileAtomic(PcGts, String, Path)}, but writes to the file itself. A page that could not be
+     * streamed leaves no file.
+     */
+    public static void writePageToFile(PcGts page, String namespace, Path outputFile) throws
+            IOException, TransformerException {
+        final PageValidationPolicy validationPolicy = PageUtils.validationPolicy;
+        fixPageXML(page);
+        if (!validationPolicy.shouldValidate()) {
+            boolean written = false;
+            try (OutputStream outputStream = new BufferedOutputStream(Files.newOutputStream(outputFile))) {
+                stream(page, namespace, outputStream, validationPolicy);
+                written = true;
+            } finally {
+                if (!written) {
+                    Files.deleteIfExists(outputFile);
+                }
             }
+            return;
         }
-
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            if (attribute.getNodeName().equals("id")) {
-                frameRegion.setId(attribute.getNodeValue());
-            } else {
-                System.out.println("attrib: " + attribute.getNodeName());
-            }
+        final String pageString = serialize(page, namespace, validationPolicy);
+        validateSerialized(page, pageString, validationPolicy);
+        try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.WRITE)) {
+            StringTools.writeFile(outputFile.toFile().getAbsolutePath(), pageString, false);
         }
-        return frameRegion;
     }
 
-    private static TableRegion getTableRegion(Node parent) {
-        TableRegion tableRegion = new TableRegion();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("Coords")) {
-                tableRegion.setCoords(getCoords(node));
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-            }
-        }
-
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            switch (attribute.getNodeName()) {
-                case "id":
-                    tableRegion.setId(attribute.getNodeValue());
-                    break;
-                case "orientation":
-                    tableRegion.setOrientation(Double.parseDouble(attribute.getNodeValue()));
-                    break;
-                case "rows":
-                    tableRegion.setRows(Integer.parseInt(attribute.getNodeValue()));
-                    break;
-                case "columns":
-                    tableRegion.setColumns(Integer.parseInt(attribute.getNodeValue()));
-                    break;
-                case "lineColour":
-                    tableRegion.setLineColour(attribute.getNodeValue());
-                    break;
-                case "lineSeparators":
-                    tableRegion.setLineSeparators(attribute.getNodeValue());
-                    break;
-                case "embText":
-                    tableRegion.setEmbText(Boolean.parseBoolean(attribute.getNodeValue()));
-                    break;
-                case "bgColour":
-                    tableRegion.setBgColour(attribute.getNodeValue());
-                    break;
-                default:
-                    System.out.println("attrib: " + attribute.getNodeName());
-                    break;
-            }
-        }
-        return tableRegion;
+    public static PcGts readPageFromString(String pageXmlString) {
+        return readPageFromString(pageXmlString, false);
     }
 
-    private static ReadingOrder getReadingOrder(Node parent) {
-        ReadingOrder readingOrder = new ReadingOrder();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("OrderedGroup")) {
-                readingOrder.setOrderedGroup(getOrderedGroup(node));
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-            }
-        }
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            System.out.println("attrib: " + attribute.getNodeName());
+    /**
+     * @return null if the string is not well formed XML
+     */
+    public static PcGts readPageFromString(String pageXmlString, boolean ignoreErrors) {
+        try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.READ)) {
+            return PageReader.read(new StringReader(pageXmlString), ignoreErrors);
+        } catch (XMLStreamException e) {
+            LOG.error("Could not parse PageXML", e);
+            return null;
         }
-        return readingOrder;
     }
 
-    private static OrderedGroup getOrderedGroup(Node parent) {
-        OrderedGroup orderedGroup = new OrderedGroup();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("RegionRefIndexed")) {
-                orderedGroup.getRegionRefIndexedList().add(getRegionRefIndexed(node));
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-            }
-        }
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            if (attribute.getNodeName().equals("caption")) {
-                orderedGroup.setCaption(attribute.getNodeValue());
-            } else if (attribute.getNodeName().equals("id")) {
-                orderedGroup.setId(attribute.getNodeValue());
-            } else {
-                System.out.println("attrib: " + attribute.getNodeName());
-            }
+    /**
+     * @return null if the stream does not contain well formed XML
+     */
+    public static PcGts readPageFromStream(InputStream inputStream) {
+        try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.READ)) {
+            return PageReader.read(inputStream, false);
+        } catch (XMLStreamException e) {
+            LOG.error("Could not parse PageXML", e);
+            return null;
         }
-        return orderedGroup;
     }
 
-    private static RegionRefIndexed getRegionRefIndexed(Node parent) {
-        RegionRefIndexed regionRefIndexed = new RegionRefIndexed();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-            System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-        }
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            if (attribute.getNodeName().equals("index")) {
-                regionRefIndexed.setIndex(Integer.parseInt(attribute.getNodeValue()));
-            } else if (attribute.getNodeName().equals("regionRef")) {
-                regionRefIndexed.setRegionRef(attribute.getNodeValue());
-            } else {
-                System.out.println("attrib: " + attribute.getNodeName());
-            }
-        }
-        return regionRefIndexed;
+    public static PcGts readPageFromFile(String path) throws IOException {
+        return readPageFromFile(Paths.get(path));
     }
 
-    private static Border getBorder(Node parent) {
-        Border border = new Border();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("Coords")) {
-                border.setCoords(getCoords(node));
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-            }
-        }
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            if (attribute.getNodeName().equals("id")) {
-                border.setId(attribute.getNodeValue());
-            } else if (attribute.getNodeName().equals("custom")) {
-                border.setCustom(attribute.getNodeValue());
-            } else {
-                System.out.println("attrib: " + attribute.getNodeName());
-            }
-        }
-        return border;
+    public static PcGts readPageFromFile(Path path) throws IOException {
+        return readPageFromFile(path, false);
     }
 
-    private static ImageRegion getImageRegion(Node parent) {
-        ImageRegion imageRegion = new ImageRegion();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("Coords")) {
-                imageRegion.setCoords(getCoords(node));
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-            }
-        }
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            switch (attribute.getNodeName()) {
-                case "id":
-                    imageRegion.setId(attribute.getNodeValue());
-                    break;
-                case "orientation":
-                    imageRegion.setOrientation(Double.parseDouble(attribute.getNodeValue()));
-                    break;
-                case "colourDepth":
-                    imageRegion.setColourDepth(attribute.getNodeValue());
-                    break;
-                case "bgColour":
-                    imageRegion.setBgColour(attribute.getNodeValue());
-                    break;
-                case "embText":
-                    imageRegion.setEmbText(Boolean.parseBoolean(attribute.getNodeValue()));
-                    break;
-                default:
-                    System.out.println("attrib: " + attribute.getNodeName());
-                    break;
-            }
+    /**
+     * @return null if the file is not well formed XML
+     */
+    public static PcGts readPageFromFile(Path path, boolean ignoreErrors) throws IOException {
+        try (StageMetrics.StageTimer ignored = StageMetrics.time(StageMetrics.Stage.READ)) {
+            return PageReader.read(path, ignoreErrors);
+        } catch (XMLStreamException e) {
+            LOG.error("Could not parse PageXML " + path, e);
+            return null;
         }
-        return imageRegion;
     }
 
-    private static SeparatorRegion getSeparatorRegion(Node parent) {
-        SeparatorRegion separatorRegion = new SeparatorRegion();
-        for (int i = 0; i < parent.getChildNodes().getLength(); i++) {
-            Node node = parent.getChildNodes().item(i);
-            if (node.getNodeType() != Node.ELEMENT_NODE) {
-                continue;
-            }
-            if (node.getNodeName().equals("Coords")) {
-                separatorRegion.setCoords(getCoords(node));
-            } else {
-                System.out.println(parent.getNodeName() + " - " + node.getNodeName());
-            }
-        }
-        for (int i = 0; i < parent.getAttributes().getLength(); i++) {
-            Node attribute = parent.getAttributes().item(i);
-            switch (attribute.getNodeName()) {
-                case "id":
-                    separatorRegion.setId(attribute.getNodeValue());
-                    break;
-                case "orientation":
-                    separatorRegion.setOrientation(Double.parseDouble(attribute.getNodeValue()));
-                    break;
-                case "colour":
-                    separatorRegion.setColour(attribute.getNodeValue());
-                    break;
-                default:
-                    System.out.println("attrib: " + attribute.getNodeName());
-                    break;
-            }
-        }
+    private static void addRegionToReadingOrder(OrderedGroup orderedGroup, int readingOrderCount, String
+            regionRef) {
+        RegionRefIndexed regionRefIndexed = new RegionRefIndexed();
+        regionRefIndexed.setIndex(readingOrderCount);
+        readingOrderCount++;
+        regionRefIndexed.setRegionRef(regionRef);
+        orderedGroup.getRegionRefIndexedList().add(regionRefIndexed);
 
-        return separatorRegion;
     }
 
     public static void shrinkTextLines(Path imageFile, Path pageFile, String namespace) throws
@@ -1622,7 +474,7 @@ public class PageUtils {
                     textLinesToRemove.add(textLine);
                     continue;
                 }
-                List<org.opencv.core.Point> baseline = StringConverter.stringToPoint(baselinePoints);
+                List<org.opencv.core.Point> baseline = textLine.getBaseline().getGeometry().toPoints();
                 if (baseline.size() < 2) {
                     textLinesToRemove.add(textLine);
                     continue;
@@ -1824,9 +676,9 @@ public class PageUtils {
         for (TextRegion textRegion : page.getPage().getTextRegions()) {
             ArrayList<Point> points = new ArrayList<>();
             for (TextLine textLine : textRegion.getTextLines()) {
-                List<Point> baseline = StringConverter.stringToPoint(textLine.getBaseline().getPoints());
+                List<Point> baseline = textLine.getBaseline().getGeometry().toPoints();
                 if (!baseline.isEmpty()) {
-                    points.addAll(StringConverter.stringToPoint(textLine.getCoords().getPoints()));
+                    points.addAll(textLine.getCoords().getGeometry().toPoints());
                 }
             }
             if (points.isEmpty()) {
@@ -1928,7 +780,7 @@ public class PageUtils {
             TextLine removeline = null;
             int bestY = Integer.MAX_VALUE;
             for (TextLine textLine : textLines) {
-                List<Point> points = StringConverter.stringToPoint(textLine.getBaseline().getPoints());
+                List<Point> points = textLine.getBaseline().getGeometry().toPoints();
                 if (points.size() == 1) {
                     removeline = textLine;
                 }
@@ -1943,33 +795,15 @@ public class PageUtils {
         }
     }
 
-    private static Polygon getPolygon(TextRegion textRegion) {
-        Polygon polygon = new Polygon();
-        for (Point point : StringConverter.stringToPoint(textRegion.getCoords().getPoints())) {
-            polygon.addPoint((int) point.x, (int) point.y);
-        }
-        return polygon;
-    }
-
-    private static boolean pointInRegion(Point point, Polygon polygon, int margin) {
-        return polygon.contains(point.x, point.y) ||
-                polygon.contains(point.x, point.y + margin) ||
-                polygon.contains(point.x + margin, point.y) ||
-                polygon.contains(point.x, point.y - margin) ||
-                polygon.contains(point.x - margin, point.y) ||
-                polygon.contains(point.x + margin, point.y + margin) ||
-                polygon.contains(point.x - margin, point.y - margin);
-    }
-
     private static boolean textLineMostlyInRegion(TextLine textLine, TextRegion textRegion,
                                                   float minimumPercentage, int margin) {
         int pointsInRegion = 0;
         int pointsOutsideRegion = 0;
-        Polygon textRegionPolygon = getPolygon(textRegion);
-        List<Point> expandedBaseline = StringConverter.expandPointList(StringConverter.stringToPoint(textLine.getBaseline().getPoints()));
+        Polygon textRegionPolygon = TextLineAttacher.getPolygon(textRegion);
+        List<Point> expandedBaseline = StringConverter.expandPointList(textLine.getBaseline().getGeometry().toPoints());
         int totalPoints = expandedBaseline.size();
         for (Point point : expandedBaseline) {
-            if (pointInRegion(point, textRegionPolygon, margin)) {
+            if (TextLineAttacher.pointInRegion(point, textRegionPolygon, margin)) {
                 pointsInRegion++;
                 if (pointsInRegion > (totalPoints * minimumPercentage)) {
                     return true;
@@ -2006,9 +840,8 @@ public class PageUtils {
         }
 
         // reattach everything to correct region
-        for (TextRegion textRegion : page.getPage().getTextRegions()) {
-            textLines = attachTextLines(textRegion, textLines, 0.66f, margin);
-        }
+        textLines = new TextLineAttacher(page.getPage().getTextRegions())
+                .attachTextLines(textLines, Collections.singletonList(0.66f), margin);
 
         // These are without region
         for (TextLine textLine : textLines) {
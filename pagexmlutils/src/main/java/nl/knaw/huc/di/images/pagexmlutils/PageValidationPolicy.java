@@ -0,0 +1,159 @@
+package nl.knaw.huc.di.images.pagexmlutils;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Decides which pages written by {@link PageUtils#convertAndValidate(nl.knaw.huc.di.images.layoutds.models.Page.PcGts, String)}
+ * are validated against the PAGE schema. Validation parses the serialized page again, so it is a large part of the
+ * cost of writing a page.
+ * <ul>
+ *     <li>always: validate every page, invalid pages are not written</li>
+ *     <li>never: do not validate</li>
+ *     <li>sample:N: validate one in N pages, invalid pages are not written</li>
+ *     <li>on_error_only: only validate when the serialization of a page fails, to report what is wrong with it</li>
+ * </ul>
+ * The policy also counts the validated pages and the errors and warnings found.
+ */
+public class PageValidationPolicy {
+    public enum Mode {
+        ALWAYS,
+        NEVER,
+        SAMPLE,
+        ON_ERROR_ONLY
+    }
+
+    private final Mode mode;
+    private final int sampleInterval;
+    private final AtomicLong pages = new AtomicLong();
+    private final LongAdder validatedPages = new LongAdder();
+    private final LongAdder skippedPages = new LongAdder();
+    private final LongAdder invalidPages = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder warnings = new LongAdder();
+
+    private PageValidationPolicy(Mode mode, int sampleInterval) {
+        this.mode = mode;
+        this.sampleInterval = sampleInterval;
+    }
+
+    public static PageValidationPolicy always() {
+        return new PageValidationPolicy(Mode.ALWAYS, 1);
+    }
+
+    public static PageValidationPolicy never() {
+        return new PageValidationPolicy(Mode.NEVER, 0);
+    }
+
+    public static PageValidationPolicy sample(int sampleInterval) {
+        if (sampleInterval < 1) {
+            throw new IllegalArgumentException("sample interval should be at least 1, but is " + sampleInterval);
+        }
+        return new PageValidationPolicy(Mode.SAMPLE, sampleInterval);
+    }
+
+    public static PageValidationPolicy onErrorOnly() {
+        return new PageValidationPolicy(Mode.ON_ERROR_ONLY, 0);
+    }
+
+    /**
+     * @param value always, never, on_error_only or sample:N
+     */
+    public static PageValidationPolicy parse(String value) {
+        final String normalized = value.trim().toLowerCase(Locale.ROOT).replace('-', '_');
+        if (normalized.startsWith("sample:")) {
+            try {
+                return sample(Integer.parseInt(normalized.substring("sample:".length())));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid sample interval in page validation policy: " + value);
+            }
+        }
+        switch (normalized) {
+            case "always":
+                return always();
+            case "never":
+                return never();
+            case "on_error_only":
+                return onErrorOnly();
+            default:
+                throw new IllegalArgumentException("unknown page validation policy: " + value
+                        + ", use always, never, on_error_only or sample:N");
+        }
+    }
+
+    /**
+     * Called once for each page, after it is serialized, or before it is when the page is streamed to a file.
+     *
+     * @return true if the page should be validated
+     */
+    public boolean shouldValidate() {
+        final boolean validate;
+        switch (mode) {
+            case ALWAYS:
+                validate = true;
+                break;
+            case SAMPLE:
+                validate = pages.getAndIncrement() % sampleInterval == 0;
+                break;
+            default:
+                validate = false;
+        }
+        if (!validate) {
+            skippedPages.increment();
+        }
+        return validate;
+    }
+
+    /**
+     * @return true if a page that could not be serialized should be validated
+     */
+    public boolean validateOnError() {
+        return mode == Mode.ON_ERROR_ONLY;
+    }
+
+    void recordValidation(int numberOfErrors, int numberOfWarnings) {
+        validatedPages.increment();
+        if (numberOfErrors > 0) {
+            invalidPages.increment();
+        }
+        errors.add(numberOfErrors);
+        warnings.add(numberOfWarnings);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getSampleInterval() {
+        return sampleInterval;
+    }
+
+    public long getValidatedPages() {
+        return validatedPages.sum();
+    }
+
+    public long getSkippedPages() {
+        return skippedPages.sum();
+    }
+
+    public long getInvalidPages() {
+        return invalidPages.sum();
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public long getWarnings() {
+        return warnings.sum();
+    }
+
+    @Override
+    public String toString() {
+        if (mode == Mode.SAMPLE) {
+            return "sample:" + sampleInterval;
+        }
+        return mode.name().toLowerCase(Locale.ROOT);
+    }
+}
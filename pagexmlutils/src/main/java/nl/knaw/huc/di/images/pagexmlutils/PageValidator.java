@@ -17,12 +17,7 @@ public class PageValidator {
     }
 
     public static XmlPageReader validate(String identifier, InputSource inputSource) {
-        XmlPageReader reader = PageXmlInputOutput.getReader();
-        try {
-            reader.read(inputSource);
-        } catch (UnsupportedFormatVersionException e) {
-            e.printStackTrace();
-        }
+        XmlPageReader reader = read(inputSource);
         PageErrorHandler pageErrorHandler = reader.getLastErrors();
 //        List<IOError> warnings = reader.getWarnings();
         System.out.println("errors: " + pageErrorHandler.getErrors().size());
@@ -34,6 +29,23 @@ public class PageValidator {
         return reader;
     }
 
+    /**
+     * Validates the input without printing the errors and warnings.
+     */
+    public static XmlPageReader read(String input) {
+        return read(new StringInput(input));
+    }
+
+    private static XmlPageReader read(InputSource inputSource) {
+        XmlPageReader reader = PageXmlInputOutput.getReader();
+        try {
+            reader.read(inputSource);
+        } catch (UnsupportedFormatVersionException e) {
+            e.printStackTrace();
+        }
+        return reader;
+    }
+
     public static void validate(File file) {
         if (file.isDirectory()) {
             for (File subFile : file.listFiles()) {
@@ -60,6 +60,19 @@ public class StyledString {
         return new StyledString(styledCharList);
     }
 
+    /**
+     * @return true if the string contains one of the style characters, if not fromStringWithStyleCharacters would
+     * return the string without any styles
+     */
+    public static boolean containsStyleCharacters(String string) {
+        for (int i = 0; i < string.length(); i++) {
+            if (CHARACTER_STYLE_MAP.containsKey(String.valueOf(string.charAt(i)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public static boolean isAllowedStyle(String style) {
         return STYLE_CHARACTER_MAP.containsKey(style);
     }
@@ -0,0 +1,155 @@
+package nl.knaw.huc.di.images.pagexmlutils;
+
+import nl.knaw.huc.di.images.imageanalysiscommon.StringConverter;
+import nl.knaw.huc.di.images.layoutds.models.Page.PointsGeometry;
+import nl.knaw.huc.di.images.layoutds.models.Page.TextLine;
+import nl.knaw.huc.di.images.layoutds.models.Page.TextRegion;
+import org.opencv.core.Point;
+
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Attaches text lines to the text regions of a page, the same way as calling
+ * {@link PageUtils#attachTextLines(TextRegion, List, float, int)} for every minimum percentage and for every region,
+ * with the remaining lines of the previous call.
+ * <p>
+ * The polygons of the regions are created once. The number of baseline points of a line in a region is counted once
+ * and is used for all minimum percentages, and regions that are not near the baseline are not tested at all.
+ */
+public class TextLineAttacher {
+    private final List<TextRegion> textRegions;
+    private final Polygon[] polygons;
+    private final Rectangle[] bounds;
+
+    public TextLineAttacher(List<TextRegion> textRegions) {
+        this.textRegions = textRegions;
+        this.polygons = new Polygon[textRegions.size()];
+        this.bounds = new Rectangle[textRegions.size()];
+        for (int i = 0; i < textRegions.size(); i++) {
+            polygons[i] = getPolygon(textRegions.get(i));
+            bounds[i] = polygons[i].getBounds();
+        }
+    }
+
+    /**
+     * Adds every line to the first region it is mostly in, trying all regions for the first minimum percentage before
+     * the next one. The lines are added to the regions in the same order as repeated calls of
+     * {@link PageUtils#attachTextLines(TextRegion, List, float, int)} would.
+     *
+     * @return the lines that are not added to a region
+     */
+    public List<TextLine> attachTextLines(List<TextLine> textLines, List<Float> minimumPercentages, int margin) {
+        final int regions = textRegions.size();
+        // the lines per minimum percentage and region, in the order they are added
+        final List<List<TextLine>> attached = new ArrayList<>();
+        for (int i = 0; i < minimumPercentages.size() * regions; i++) {
+            attached.add(null);
+        }
+        final List<TextLine> remainingLines = new ArrayList<>();
+        final int[] pointsInRegion = new int[regions];
+        for (TextLine textLine : textLines) {
+            final List<Point> expandedBaseline = StringConverter.expandPointList(textLine.getBaseline().getGeometry().toPoints());
+            final Rectangle lineBounds = getBounds(expandedBaseline, margin);
+            Arrays.fill(pointsInRegion, -1);
+            int attachedTo = -1;
+            for (int percentage = 0; percentage < minimumPercentages.size() && attachedTo < 0; percentage++) {
+                for (int region = 0; region < regions; region++) {
+                    if (pointsInRegion[region] < 0) {
+                        pointsInRegion[region] = countPointsInRegion(expandedBaseline, lineBounds, region, margin);
+                    }
+                    if (isMostlyInRegion(pointsInRegion[region], expandedBaseline.size(), minimumPercentages.get(percentage))) {
+                        attachedTo = percentage * regions + region;
+                        break;
+                    }
+                }
+            }
+            if (attachedTo < 0) {
+                remainingLines.add(textLine);
+            } else {
+                if (attached.get(attachedTo) == null) {
+                    attached.set(attachedTo, new ArrayList<>());
+                }
+                attached.get(attachedTo).add(textLine);
+            }
+        }
+        for (int i = 0; i < attached.size(); i++) {
+            if (attached.get(i) != null) {
+                textRegions.get(i % regions).getTextLines().addAll(attached.get(i));
+            }
+        }
+        return remainingLines;
+    }
+
+    /**
+     * The outcome of counting the points one by one, stopping as soon as enough points are in or outside the region.
+     * Once either limit is passed the other one cannot be passed anymore, so only the totals matter.
+     */
+    static boolean isMostlyInRegion(int pointsInRegion, int totalPoints, float minimumPercentage) {
+        final int pointsOutsideRegion = totalPoints - pointsInRegion;
+        if (pointsInRegion > (totalPoints * minimumPercentage)) {
+            return true;
+        }
+        if (pointsOutsideRegion > (totalPoints * (1.0 - minimumPercentage))) {
+            return false;
+        }
+        return ((float) pointsInRegion / (float) (pointsInRegion + pointsOutsideRegion)) > minimumPercentage;
+    }
+
+    private int countPointsInRegion(List<Point> expandedBaseline, Rectangle lineBounds, int region, int margin) {
+        // Polygon.contains is false outside the bounds of the polygon
+        if (!lineBounds.intersects(bounds[region])) {
+            return 0;
+        }
+        int pointsInRegion = 0;
+        for (Point point : expandedBaseline) {
+            if (pointInRegion(point, polygons[region], margin)) {
+                pointsInRegion++;
+            }
+        }
+        return pointsInRegion;
+    }
+
+    // the bounds of the points and the points moved by the margin, with room for rounding
+    private static Rectangle getBounds(List<Point> points, int margin) {
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+        for (Point point : points) {
+            minX = Math.min(minX, point.x);
+            minY = Math.min(minY, point.y);
+            maxX = Math.max(maxX, point.x);
+            maxY = Math.max(maxY, point.y);
+        }
+        if (points.isEmpty()) {
+            return new Rectangle();
+        }
+        final int reach = Math.abs(margin) + 1;
+        final int left = (int) Math.floor(minX) - reach;
+        final int top = (int) Math.floor(minY) - reach;
+        return new Rectangle(left, top, (int) Math.ceil(maxX) + reach - left + 1, (int) Math.ceil(maxY) + reach - top + 1);
+    }
+
+    static Polygon getPolygon(TextRegion textRegion) {
+        Polygon polygon = new Polygon();
+        final PointsGeometry geometry = textRegion.getCoords().getGeometry();
+        for (int i = 0; i < geometry.size(); i++) {
+            polygon.addPoint((int) geometry.getX(i), (int) geometry.getY(i));
+        }
+        return polygon;
+    }
+
+    static boolean pointInRegion(Point point, Polygon polygon, int margin) {
+        return polygon.contains(point.x, point.y) ||
+                polygon.contains(point.x, point.y + margin) ||
+                polygon.contains(point.x + margin, point.y) ||
+                polygon.contains(point.x, point.y - margin) ||
+                polygon.contains(point.x - margin, point.y) ||
+                polygon.contains(point.x + margin, point.y + margin) ||
+                polygon.contains(point.x - margin, point.y - margin);
+    }
+}
@@ -0,0 +1,131 @@
+package nl.knaw.huc.di.images.pagexmlutils;
+
+import com.google.common.io.Resources;
+import nl.knaw.huc.di.images.layoutds.models.Page.PcGts;
+import nl.knaw.huc.di.images.layoutds.models.Page.TextLine;
+import nl.knaw.huc.di.images.layoutds.models.Page.TextRegion;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PageReaderTest {
+    private static final String PAGE = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<PcGts xmlns=\"http://schema.primaresearch.org/PAGE/gts/pagecontent/2019-07-15\">\n" +
+            "  <Metadata>\n" +
+            "    <Creator>loghi &amp; co</Creator>\n" +
+            "    <Created>2020-01-02T03:04:05.678Z</Created>\n" +
+            "    <MetadataItem type=\"processingStep\" name=\"htr\" value=\"loghi\">\n" +
+            "      <Labels><Label type=\"githash\" value=\"abc\"/></Labels>\n" +
+            "    </MetadataItem>\n" +
+            "  </Metadata>\n" +
+            "  <Page imageFilename=\"page.jpg\" imageWidth=\"100\" imageHeight=\"200\" primaryLanguage=\"nl\">\n" +
+            "    <ReadingOrder><OrderedGroup id=\"ro\"><RegionRefIndexed index=\"0\" regionRef=\"r1\"/></OrderedGroup></ReadingOrder>\n" +
+            "    <TextRegion id=\"r1\" custom=\"readingOrder {index:0;}\" primaryScript=\"nl\">\n" +
+            "      <Coords points=\"0,0 10,0 10,10 0,10\"/>\n" +
+            "      <TextLine id=\"l1\" primaryLanguage=\"fr\">\n" +
+            "        <Unexpected><Coords points=\"1,1 2,2\"/></Unexpected>\n" +
+            "        <Coords points=\"0,0 10,0 10,5 0,5\"/>\n" +
+            "        <Baseline points=\"0,4 10,4\"><Points>1,1 2,2</Points></Baseline>\n" +
+            "        <Word id=\"w1\"><Coords points=\"0,0 5,0 5,5\"/><TextEquiv conf=\"0.9\"><Unicode>wörd</Unicode></TextEquiv></Word>\n" +
+            "        <TextEquiv><Unicode>wörd <![CDATA[<two>]]></Unicode></TextEquiv>\n" +
+            "      </TextLine>\n" +
+            "      <TextLine id=\"l2\"><Baseline><Points>7,7 8,8</Points></Baseline><TextEquiv/></TextLine>\n" +
+            "    </TextRegion>\n" +
+            "    <SeparatorRegion id=\"s1\" orientation=\"1.5\"><Coords points=\"1,1 2,2\"/></SeparatorRegion>\n" +
+            "  </Page>\n" +
+            "</PcGts>\n";
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void readBuildsThePage() throws Exception {
+        final PcGts page = PageReader.read(new StringReader(PAGE), false);
+
+        assertThat(page.getMetadata().getCreator(), is("loghi & co"));
+        assertThat(page.getMetadata().getCreated().getTime(), is(1577934245678L));
+        assertThat(page.getMetadata().getMetadataItems().get(0).getLabels().getLabel().get(0).getValue(), is("abc"));
+        assertThat(page.getPage().getImageFilename(), is("page.jpg"));
+        assertThat(page.getPage().getImageHeight(), is(200));
+        assertThat(page.getPage().getPrimaryLanguage(), is("Dutch"));
+        assertThat(page.getPage().getReadingOrder().getOrderedGroup().getRegionRefIndexedList().get(0).getRegionRef(), is("r1"));
+        assertThat(page.getPage().getSeparatorRegions().get(0).getOrientation(), is(1.5));
+
+        final TextRegion textRegion = page.getPage().getTextRegions().get(0);
+        assertThat(textRegion.getId(), is("r1"));
+        assertThat(textRegion.getPrimaryScript(), is("Latin"));
+        assertThat(textRegion.getCoords().getPoints(), is("0,0 10,0 10,10 0,10"));
+        assertThat(textRegion.getTextLines().size(), is(2));
+
+        final TextLine textLine = textRegion.getTextLines().get(0);
+        assertThat(textLine.getPrimaryLanguage(), is("French"));
+        // the unknown element and its Coords are skipped
+        assertThat(textLine.getCoords().getPoints(), is("0,0 10,0 10,5 0,5"));
+        // the points attribute takes precedence over the Points element
+        assertThat(textLine.getBaseline().getPoints(), is("0,4 10,4"));
+        assertThat(textLine.getWords().get(0).getTextEquiv().getConf(), is("0.9"));
+        assertThat(textLine.getTextEquiv().getUnicode(), is("wörd <two>"));
+
+        final TextLine secondTextLine = textRegion.getTextLines().get(1);
+        assertThat(secondTextLine.getBaseline().getPoints(), is("7,7 8,8"));
+        assertThat(secondTextLine.getTextEquiv(), is(nullValue()));
+    }
+
+    @Test
+    public void readFromFileStreamAndStringGiveTheSamePage() throws Exception {
+        final Path file = temporaryFolder.newFile("page.xml").toPath();
+        Files.writeString(file, PAGE);
+
+        final String fromString = PageSerializer.toString(PageUtils.readPageFromString(PAGE), PageUtils.NAMESPACE2019);
+        final String fromFile = PageSerializer.toString(PageUtils.readPageFromFile(file), PageUtils.NAMESPACE2019);
+        final String fromStream = PageSerializer.toString(
+                PageUtils.readPageFromStream(new ByteArrayInputStream(PAGE.getBytes(StandardCharsets.UTF_8))),
+                PageUtils.NAMESPACE2019);
+
+        assertThat(fromFile, is(fromString));
+        assertThat(fromStream, is(fromString));
+    }
+
+    @Test
+    public void readBuildsThePagesOfTheFixtures() throws Exception {
+        assertReadsAs(PAGE, "page-reader/page.expected.xml");
+        // an ALTO document, none of it is read
+        assertReadsAs(getResource("NL-HlmNHA_1972_8_0022.xml"), "page-reader/NL-HlmNHA_1972_8_0022.expected.xml");
+        assertReadsAs(getResource("page-reader/without-text-lines.xml"), "page-reader/without-text-lines.expected.xml");
+        assertReadsAs(getResource("page-reader/NL-HaNA_2.05.31_1_0031.xml"),
+                "page-reader/NL-HaNA_2.05.31_1_0031.expected.xml");
+        assertReadsAs(getResource("page-reader/NL-0400410000_26_005006_000381.xml"),
+                "page-reader/NL-0400410000_26_005006_000381.expected.xml");
+        assertReadsAs(getResource("page-reader/NL-0400410000_26_005006_000381-with-text.xml"),
+                "page-reader/NL-0400410000_26_005006_000381-with-text.expected.xml");
+        assertReadsAs(getResource("page-reader/NL-0400410000_26_005006_000381-2013.xml"),
+                "page-reader/NL-0400410000_26_005006_000381-2013.expected.xml");
+    }
+
+    // the expected pages are the 2019 serialization of what the reader built when the fixture was added
+    private static void assertReadsAs(String page, String expected) throws Exception {
+        for (boolean ignoreErrors : new boolean[]{false, true}) {
+            assertThat(PageSerializer.toString(PageReader.read(new StringReader(page), ignoreErrors), PageUtils.NAMESPACE2019),
+                    is(getResource(expected)));
+        }
+    }
+
+    private static String getResource(String name) throws Exception {
+        return Resources.toString(Resources.getResource(name), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void readPageFromStringReturnsNullForMalformedXml() {
+        assertThat(PageUtils.readPageFromString("<PcGts><Page></PcGts>"), is(nullValue()));
+    }
+}
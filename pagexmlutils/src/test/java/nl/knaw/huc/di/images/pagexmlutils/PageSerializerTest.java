@@ -0,0 +1,109 @@
+package nl.knaw.huc.di.images.pagexmlutils;
+
+import com.ctc.wstx.stax.WstxInputFactory;
+import com.ctc.wstx.stax.WstxOutputFactory;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.xml.XmlFactory;
+import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.fasterxml.jackson.dataformat.xml.ser.ToXmlGenerator;
+import nl.knaw.huc.di.images.layoutds.models.Page.PcGts;
+import nl.knaw.huc.di.images.stringtools.StringTools;
+import org.junit.Test;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.stream.StreamResult;
+import javax.xml.transform.stream.StreamSource;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PageSerializerTest {
+
+    @Test
+    public void toStringIsEqualToUncachedSerialization() throws Exception {
+        final PcGts page = readTestPage();
+
+        for (String namespace : new String[]{PageUtils.NAMESPACE2019, PageUtils.NAMESPACE2013}) {
+            assertThat(PageSerializer.toString(page, namespace), is(convertPcGtsToStringUncached(page, namespace)));
+            // a second time to use the cached writer and transformation
+            assertThat(PageSerializer.toString(page, namespace), is(convertPcGtsToStringUncached(page, namespace)));
+        }
+    }
+
+    @Test
+    public void writeIsEqualToToString() throws Exception {
+        final PcGts page = readTestPage();
+
+        for (String namespace : new String[]{PageUtils.NAMESPACE2019, PageUtils.NAMESPACE2013}) {
+            final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+            PageSerializer.write(page, namespace, outputStream);
+
+            assertThat(outputStream.toString(StandardCharsets.UTF_8), is(PageSerializer.toString(page, namespace)));
+        }
+    }
+
+    @Test
+    public void concurrentSerializationGivesTheSameResult() throws Exception {
+        final PcGts page = readTestPage();
+        final String expected2019 = PageSerializer.toString(page, PageUtils.NAMESPACE2019);
+        final String expected2013 = PageSerializer.toString(page, PageUtils.NAMESPACE2013);
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                final boolean use2013 = i % 2 == 0;
+                futures.add(executorService.submit(() -> {
+                    if (use2013) {
+                        assertThat(PageSerializer.toString(page, PageUtils.NAMESPACE2013), is(expected2013));
+                    } else {
+                        assertThat(PageSerializer.toString(page, PageUtils.NAMESPACE2019), is(expected2019));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+    }
+
+    private static PcGts readTestPage() throws Exception {
+        final URL url = Thread.currentThread().getContextClassLoader().getResource("NL-HlmNHA_1972_8_0022.xml");
+        return PageUtils.readPageFromString(StringTools.readFile(url.getPath()));
+    }
+
+    // the serialization before the mapper and transformation were cached
+    private static String convertPcGtsToStringUncached(PcGts page, String namespace) throws Exception {
+        XmlFactory factory = new XmlFactory(new WstxInputFactory(), new WstxOutputFactory());
+        XmlMapper xmlMapper = new XmlMapper(factory);
+        xmlMapper.enable(SerializationFeature.INDENT_OUTPUT);
+        xmlMapper.configure(ToXmlGenerator.Feature.WRITE_XML_DECLARATION, true);
+        xmlMapper.setAnnotationIntrospector(new AnnotationIntrospector(namespace));
+
+        if (PageUtils.NAMESPACE2013.equals(namespace)) {
+            final StreamSource xsltSource = new StreamSource(PageUtils.class.getResourceAsStream("/transformpage.xslt"));
+            final Transformer transformer = TransformerFactory.newInstance().newTransformer(xsltSource);
+            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+            final StringWriter stringWriter = new StringWriter();
+            transformer.transform(new StreamSource(new StringReader(xmlMapper.writeValueAsString(page))), new StreamResult(stringWriter));
+            return stringWriter.toString();
+        }
+        return xmlMapper.writeValueAsString(page);
+    }
+}
@@ -0,0 +1,123 @@
+package nl.knaw.huc.di.images.pagexmlutils;
+
+import nl.knaw.huc.di.images.layoutds.models.Page.PcGts;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Date;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class PageValidationPolicyTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void parseReadsAllModes() {
+        assertThat(PageValidationPolicy.parse("always").getMode(), is(PageValidationPolicy.Mode.ALWAYS));
+        assertThat(PageValidationPolicy.parse(" NEVER ").getMode(), is(PageValidationPolicy.Mode.NEVER));
+        assertThat(PageValidationPolicy.parse("on-error-only").getMode(), is(PageValidationPolicy.Mode.ON_ERROR_ONLY));
+        final PageValidationPolicy sample = PageValidationPolicy.parse("sample:10");
+        assertThat(sample.getMode(), is(PageValidationPolicy.Mode.SAMPLE));
+        assertThat(sample.getSampleInterval(), is(10));
+        assertThat(sample.toString(), is("sample:10"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsUnknownPolicies() {
+        PageValidationPolicy.parse("sometimes");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseRejectsInvalidSampleIntervals() {
+        PageValidationPolicy.parse("sample:0");
+    }
+
+    @Test
+    public void sampleValidatesOneInNPages() {
+        final PageValidationPolicy policy = PageValidationPolicy.sample(4);
+        int validated = 0;
+        for (int i = 0; i < 100; i++) {
+            if (policy.shouldValidate()) {
+                validated++;
+            }
+        }
+
+        assertThat(validated, is(25));
+        assertThat(policy.getSkippedPages(), is(75L));
+    }
+
+    @Test
+    public void convertAndValidateCountsValidatedAndSkippedPages() throws Exception {
+        final PageValidationPolicy always = PageValidationPolicy.always();
+        final PageValidationPolicy never = PageValidationPolicy.never();
+        final PageValidationPolicy onErrorOnly = PageValidationPolicy.onErrorOnly();
+
+        final String validated = PageUtils.convertAndValidate(createPage(), PageUtils.NAMESPACE2019, always);
+        final String notValidated = PageUtils.convertAndValidate(createPage(), PageUtils.NAMESPACE2019, never);
+        PageUtils.convertAndValidate(createPage(), PageUtils.NAMESPACE2019, onErrorOnly);
+
+        assertThat(notValidated, is(validated));
+        assertThat(always.getValidatedPages(), is(1L));
+        assertThat(always.getInvalidPages(), is(0L));
+        assertThat(always.getErrors(), is(0L));
+        assertThat(never.getValidatedPages(), is(0L));
+        assertThat(never.getSkippedPages(), is(1L));
+        assertThat(onErrorOnly.getValidatedPages(), is(0L));
+        assertThat(onErrorOnly.getSkippedPages(), is(1L));
+    }
+
+    @Test
+    public void pagesThatAreNotValidatedAreStreamedToTheFile() throws Exception {
+        final PageValidationPolicy never = PageValidationPolicy.never();
+        final Path validated = temporaryFolder.getRoot().toPath().resolve("validated.xml");
+        final Path atomic = temporaryFolder.getRoot().toPath().resolve("atomic.xml");
+        final Path plain = temporaryFolder.getRoot().toPath().resolve("plain.xml");
+        try {
+            PageUtils.writePageToFile(createPage(), PageUtils.NAMESPACE2013, validated);
+            PageUtils.setValidationPolicy(never);
+            PageUtils.writePageToFileAtomic(createPage(), PageUtils.NAMESPACE2013, atomic);
+            PageUtils.writePageToFile(createPage(), PageUtils.NAMESPACE2013, plain);
+        } finally {
+            PageUtils.setValidationPolicy(PageValidationPolicy.always());
+        }
+
+        assertThat(Files.readString(atomic), is(Files.readString(validated)));
+        assertThat(Files.readString(plain), is(Files.readString(validated)));
+        assertThat(never.getSkippedPages(), is(2L));
+        // the temporary file of the atomic write is moved in place
+        assertThat(temporaryFolder.getRoot().list().length, is(3));
+    }
+
+    @Test
+    public void atomicWritesWithFsyncWriteTheSamePage() throws Exception {
+        final Path expected = temporaryFolder.getRoot().toPath().resolve("expected.xml");
+        final Path validated = temporaryFolder.getRoot().toPath().resolve("validated.xml");
+        final Path streamed = temporaryFolder.getRoot().toPath().resolve("streamed.xml");
+        PageUtils.writePageToFile(createPage(), PageUtils.NAMESPACE2013, expected);
+        try {
+            PageUtils.setFsync(true);
+            PageUtils.writePageToFileAtomic(createPage(), PageUtils.NAMESPACE2013, validated);
+            PageUtils.setValidationPolicy(PageValidationPolicy.never());
+            PageUtils.writePageToFileAtomic(createPage(), PageUtils.NAMESPACE2013, streamed);
+        } finally {
+            PageUtils.setFsync(false);
+            PageUtils.setValidationPolicy(PageValidationPolicy.always());
+        }
+
+        assertThat(Files.readString(validated), is(Files.readString(expected)));
+        assertThat(Files.readString(streamed), is(Files.readString(expected)));
+        assertThat(temporaryFolder.getRoot().list().length, is(3));
+    }
+
+    private static PcGts createPage() {
+        final Date date = new Date(0);
+        final PcGts page = new PcGts("creator", date, date, "filename.jpg", 100, 200);
+        page.getMetadata().setCreator("test");
+        return page;
+    }
+}
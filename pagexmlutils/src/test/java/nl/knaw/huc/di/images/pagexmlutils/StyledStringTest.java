@@ -280,4 +280,11 @@ public class StyledStringTest {
 
     }
 
-}
\ No newline at end of file
+    @Test
+    public void containsStyleCharactersOnlyForStyledStrings() {
+        assertThat(containsStyleCharacters("Dit is een test"), is(false));
+        assertThat(containsStyleCharacters(""), is(false));
+        assertThat(containsStyleCharacters("Dit is een " + UNDERLINECHAR + "t" + UNDERLINECHAR + "e"), is(true));
+        assertThat(containsStyleCharacters("x" + SUBSCRIPTCHAR), is(true));
+    }
+}
@@ -0,0 +1,129 @@
+package nl.knaw.huc.di.images.pagexmlutils;
+
+import nl.knaw.huc.di.images.layoutds.models.Page.Coords;
+import nl.knaw.huc.di.images.layoutds.models.Page.TextLine;
+import nl.knaw.huc.di.images.layoutds.models.Page.TextRegion;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class TextLineAttacherTest {
+
+    @Test
+    public void attachesTheSameLinesAsAttachingPerRegionAndPercentage() {
+        final Random random = new Random(11);
+        for (int page = 0; page < 30; page++) {
+            final List<String> regionPoints = createRegions(random, 1 + random.nextInt(15));
+            final List<TextLine> textLines = createTextLines(random, random.nextInt(200));
+            final List<Float> percentages = getPercentages();
+            final int margin = random.nextInt(3) * 10;
+
+            final List<TextRegion> expectedRegions = toRegions(regionPoints);
+            List<TextLine> expectedRemaining = textLines;
+            for (float percentage : percentages) {
+                for (TextRegion textRegion : expectedRegions) {
+                    expectedRemaining = PageUtils.attachTextLines(textRegion, expectedRemaining, percentage, margin);
+                }
+            }
+
+            final List<TextRegion> actualRegions = toRegions(regionPoints);
+            final List<TextLine> actualRemaining = new TextLineAttacher(actualRegions).attachTextLines(textLines, percentages, margin);
+
+            assertThat("page " + page, actualRemaining, is(expectedRemaining));
+            for (int i = 0; i < expectedRegions.size(); i++) {
+                assertThat("page " + page + " region " + i, actualRegions.get(i).getTextLines(), is(expectedRegions.get(i).getTextLines()));
+            }
+        }
+    }
+
+    @Test
+    public void mostlyInRegionIsTheSameAsCountingPointByPoint() {
+        for (int totalPoints = 0; totalPoints < 300; totalPoints++) {
+            for (float percentage : getPercentages()) {
+                for (int pointsInRegion = 0; pointsInRegion <= totalPoints; pointsInRegion++) {
+                    assertThat(TextLineAttacher.isMostlyInRegion(pointsInRegion, totalPoints, percentage),
+                            is(countPointByPoint(pointsInRegion, totalPoints, percentage)));
+                }
+            }
+        }
+    }
+
+    // the percentages of MinionExtractBaselines
+    private static List<Float> getPercentages() {
+        final List<Float> percentages = new ArrayList<>();
+        for (float percentage = 0.51f; percentage >= 0.01f; percentage -= 0.05) {
+            percentages.add(percentage);
+        }
+        return percentages;
+    }
+
+    // the order of the points does not matter for the outcome, so all points in the region come first
+    private static boolean countPointByPoint(int pointsInRegionTotal, int totalPoints, float minimumPercentage) {
+        int pointsInRegion = 0;
+        int pointsOutsideRegion = 0;
+        for (int i = 0; i < totalPoints; i++) {
+            if (i < pointsInRegionTotal) {
+                pointsInRegion++;
+                if (pointsInRegion > (totalPoints * minimumPercentage)) {
+                    return true;
+                }
+            } else {
+                pointsOutsideRegion++;
+                if (pointsOutsideRegion > (totalPoints * (1.0 - minimumPercentage))) {
+                    return false;
+                }
+            }
+        }
+        return ((float) pointsInRegion / (float) (pointsInRegion + pointsOutsideRegion)) > minimumPercentage;
+    }
+
+    // overlapping rectangles and triangles
+    private static List<String> createRegions(Random random, int count) {
+        final List<String> regions = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final int x = random.nextInt(2000);
+            final int y = random.nextInt(3000);
+            final int width = 100 + random.nextInt(1000);
+            final int height = 100 + random.nextInt(1000);
+            if (random.nextInt(4) == 0) {
+                regions.add(x + "," + y + " " + (x + width) + "," + y + " " + x + "," + (y + height));
+            } else {
+                regions.add(x + "," + y + " " + (x + width) + "," + y + " " + (x + width) + "," + (y + height) + " " + x + "," + (y + height));
+            }
+        }
+        return regions;
+    }
+
+    private static List<TextRegion> toRegions(List<String> regionPoints) {
+        final List<TextRegion> textRegions = new ArrayList<>();
+        for (String points : regionPoints) {
+            final TextRegion textRegion = new TextRegion();
+            final Coords coords = new Coords();
+            coords.setPoints(points);
+            textRegion.setCoords(coords);
+            textRegion.setTextLines(new ArrayList<>());
+            textRegions.add(textRegion);
+        }
+        return textRegions;
+    }
+
+    private static List<TextLine> createTextLines(Random random, int count) {
+        final List<TextLine> textLines = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            final TextLine textLine = new TextLine();
+            textLine.setId("line_" + i);
+            final double x = random.nextInt(2500) + (random.nextBoolean() ? 0.5 : 0);
+            final double y = random.nextInt(3500) + random.nextDouble();
+            final int length = random.nextInt(600);
+            textLine.getBaseline().setPoints(x + "," + y + " " + (x + length / 2.0) + "," + (y + random.nextInt(11) - 5)
+                    + " " + (x + length) + "," + (y + random.nextInt(41) - 20));
+            textLines.add(textLine);
+        }
+        return textLines;
+    }
+}
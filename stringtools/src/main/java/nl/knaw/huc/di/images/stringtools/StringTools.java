@@ -22,6 +22,8 @@ import javax.xml.transform.stream.StreamResult;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
@@ -241,12 +243,12 @@ public class StringTools {
         return result;
     }
 
-    public static synchronized String readFile(String path) throws IOException {
+    public static String readFile(String path) throws IOException {
         return readFile(Paths.get(path));
     }
     public static final String UTF8_BOM = "\uFEFF";
 
-    public static synchronized String readFile(Path path) throws IOException {
+    public static String readFile(Path path) throws IOException {
         String result = Files.readString(path);
         if (result.startsWith(UTF8_BOM)) {
             result = result.substring(1);
@@ -254,18 +256,16 @@ public class StringTools {
         return result;
     }
 
-    public static synchronized void writeFile(String path, String contents, boolean append) throws IOException {
-        FileWriter fileWriter = new FileWriter(path, StandardCharsets.UTF_8, append);
-        PrintWriter out = new PrintWriter(fileWriter);
-        out.print(contents);
-        out.close();
+    public static void writeFile(String path, String contents, boolean append) throws IOException {
+        writeFile(Paths.get(path), contents, append);
     }
 
-    public static synchronized void writeFile(Path path, String contents, boolean append) throws IOException {
-        FileWriter fileWriter = new FileWriter(path.toAbsolutePath().toString(), StandardCharsets.UTF_8, append);
-        PrintWriter out = new PrintWriter(fileWriter);
-        out.print(contents);
-        out.close();
+    public static void writeFile(Path path, String contents, boolean append) throws IOException {
+        if (append) {
+            Files.writeString(path, contents, CHARSET_UTF8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } else {
+            Files.writeString(path, contents, CHARSET_UTF8);
+        }
     }
 
     public static void writeFile(Path path, String contents) throws IOException {
@@ -275,26 +275,86 @@ public class StringTools {
         writeFile(path, contents, false);
     }
 
-    public static synchronized void writeFileAtomic(String path, String contents, boolean append) throws IOException {
-        final Path filePath = Path.of(path).toAbsolutePath();
-        final String fileName = filePath.getFileName().toString();
-        final Path tmpFilePath = filePath.getParent().resolve("." + fileName);
+    public static void writeFileAtomic(String path, String contents, boolean append) throws IOException {
+        writeFileAtomic(path, contents, append, false);
+    }
 
-        if (append) {
-            Files.write(tmpFilePath, List.of(contents.split("\n")), CHARSET_UTF8, StandardOpenOption.APPEND);
+    /**
+     * Writes the contents to a temporary file in the directory of path and moves it in place, so readers never see a
+     * partially written file.
+     * Every call uses its own temporary file, so concurrent writes do not need a lock, the last move wins.
+     *
+     * @param append when true the current contents of path, if any, are copied to the temporary file first
+     * @param fsync  when true the temporary file and the directory are flushed to disk, so the new contents survive a
+     *               crash of the machine
+     */
+    public static void writeFileAtomic(String path, String contents, boolean append, boolean fsync) throws IOException {
+        final Path filePath = Path.of(path).toAbsolutePath();
+        writeFileAtomic(filePath, outputStream -> {
+            if (append && Files.exists(filePath)) {
+                Files.copy(filePath, outputStream);
+            }
+            final Writer writer = new OutputStreamWriter(outputStream, CHARSET_UTF8);
+            writer.write(contents);
+            writer.flush();
+        }, fsync);
+    }
+
+    /**
+     * Streams the bytes of the contents writer to a temporary file in the directory of path and moves it in place, as
+     * {@link #writeFileAtomic(String, String, boolean, boolean)}. The temporary file is removed when the writer fails.
+     *
+     * @param fsync when true the temporary file and the directory are flushed to disk
+     */
+    public static <E extends Exception> void writeFileAtomic(Path path, ContentsWriter<E> contentsWriter, boolean fsync)
+            throws IOException, E {
+        final Path filePath = path.toAbsolutePath();
+        final Path directory = filePath.getParent();
+        final Path tmpFilePath = directory.resolve("." + filePath.getFileName() + "." + UUID.randomUUID() + ".tmp");
+
+        boolean moved = false;
+        try {
+            try (FileChannel channel = FileChannel.open(tmpFilePath, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                final OutputStream outputStream = new BufferedOutputStream(Channels.newOutputStream(channel));
+                contentsWriter.write(outputStream);
+                outputStream.flush();
+                if (fsync) {
+                    channel.force(true);
+                }
+            }
+            Files.move(tmpFilePath, filePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(tmpFilePath);
+            }
         }
-        else {
-            Files.write(tmpFilePath, List.of(contents.split("\n")), CHARSET_UTF8);
+
+        if (fsync) {
+            forceDirectory(directory);
         }
-        Files.move(tmpFilePath, filePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
     }
 
+    /**
+     * Writes the contents of a file to the stream, the stream is closed by the caller.
+     */
+    @FunctionalInterface
+    public interface ContentsWriter<E extends Exception> {
+        void write(OutputStream outputStream) throws IOException, E;
+    }
 
-    public static synchronized void writeFileAtomic(String path, String contents) throws IOException {
+    public static void writeFileAtomic(String path, String contents) throws IOException {
         writeFileAtomic(path, contents, false);
     }
 
-
+    private static void forceDirectory(Path directory) {
+        // not every platform allows opening a directory, the file contents are on disk already in that case
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // ignore
+        }
+    }
 
     private static boolean isReadingSign(String substring) {
         List<String> readingSigns = new ArrayList<>();
@@ -1,10 +1,27 @@
 package nl.knaw.huc.di.images.stringtools;
 
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class StringToolsTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     @Test()
     public void isRomanNumeralTest1(){
         boolean result = StringTools.isRomanNumeral("MMXX");
@@ -59,4 +76,89 @@ public class StringToolsTest {
         Assert.assertEquals(output,result);
     }
 
+    @Test
+    public void writeFileAtomicWritesTheContentsAsIs() throws IOException {
+        final String path = new File(temporaryFolder.getRoot(), "page.xml").getAbsolutePath();
+
+        StringTools.writeFileAtomic(path, "first line\n\nlast line without newline");
+        Assert.assertEquals("first line\n\nlast line without newline", StringTools.readFile(path));
+
+        StringTools.writeFileAtomic(path, "\nappended", true, true);
+        Assert.assertEquals("first line\n\nlast line without newline\nappended", StringTools.readFile(path));
+
+        // the temporary files are moved or removed
+        Assert.assertArrayEquals(new String[]{"page.xml"}, temporaryFolder.getRoot().list());
+    }
+
+    @Test
+    public void failedStreamLeavesTheFileAsItWas() throws IOException {
+        final Path path = temporaryFolder.getRoot().toPath().resolve("page.xml");
+        StringTools.writeFileAtomic(path.toString(), "complete");
+
+        try {
+            StringTools.writeFileAtomic(path, outputStream -> {
+                outputStream.write("half".getBytes(StandardCharsets.UTF_8));
+                throw new IllegalStateException("could not serialize");
+            }, false);
+            Assert.fail("the failure of the writer is not passed on");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        Assert.assertEquals("complete", StringTools.readFile(path));
+        Assert.assertArrayEquals(new String[]{"page.xml"}, temporaryFolder.getRoot().list());
+    }
+
+    @Test
+    public void concurrentReadsAndWritesOnlySeeCompleteFiles() throws Exception {
+        final int numberOfThreads = 8;
+        final int numberOfFiles = 4;
+        final int writesPerThread = 200;
+        final Set<String> versions = new HashSet<>();
+        for (int thread = 0; thread < numberOfThreads; thread++) {
+            versions.add(createContents(thread));
+        }
+        final List<Path> paths = new ArrayList<>();
+        for (int file = 0; file < numberOfFiles; file++) {
+            final Path path = temporaryFolder.getRoot().toPath().resolve("file" + file + ".txt");
+            StringTools.writeFileAtomic(path.toString(), createContents(0));
+            paths.add(path);
+        }
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(2 * numberOfThreads);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < numberOfThreads; thread++) {
+                final String contents = createContents(thread);
+                futures.add(executorService.submit(() -> {
+                    for (int i = 0; i < writesPerThread; i++) {
+                        StringTools.writeFileAtomic(paths.get(i % numberOfFiles).toString(), contents);
+                    }
+                    return null;
+                }));
+                futures.add(executorService.submit(() -> {
+                    for (int i = 0; i < writesPerThread; i++) {
+                        final String read = StringTools.readFile(paths.get(i % numberOfFiles));
+                        Assert.assertTrue("partially written file read", versions.contains(read));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executorService.shutdown();
+        }
+
+        Assert.assertEquals(numberOfFiles, temporaryFolder.getRoot().list().length);
+    }
+
+    private static String createContents(int version) {
+        final StringBuilder contents = new StringBuilder();
+        for (int line = 0; line < 2000; line++) {
+            contents.append("version ").append(version).append(", line ").append(line).append('\n');
+        }
+        return contents.toString();
+    }
 }